@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.asciifile.rt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.infiniteautomation.asciifile.rt.AsciiFileBulkImporter.ImportListener;
+import com.infiniteautomation.asciifile.vo.AsciiFilePointLocatorVO;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueChangeTracker;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+public class AsciiFileBulkImporterTest extends MangoTestBase {
+
+    private static final long BASE_TIME = 1600000000000L;
+    private static final int LINES = 20000;
+
+    private Path file;
+
+    /**
+     * Records the changes reported to the caches
+     */
+    private static class RecordingTracker extends PointValueChangeTracker {
+        final List<long[]> changes = new ArrayList<>();
+
+        @Override
+        public synchronized void changed(int seriesId, long from) {
+            changes.add(new long[] {seriesId, from});
+        }
+    }
+
+    /**
+     * Records the values instead of saving them
+     */
+    private static class RecordingImporter extends AsciiFileBulkImporter {
+        final List<List<PointValueTime>> saved = new ArrayList<>();
+        final List<String> savedXids = new ArrayList<>();
+
+        RecordingImporter(Path path, List<DataPointVO> points, int chunkSize, int parallelism, PointValueChangeTracker changeTracker) {
+            super(path, points, chunkSize, parallelism, changeTracker);
+        }
+
+        @Override
+        protected void savePointValues(DataPointVO point, List<PointValueTime> values) {
+            savedXids.add(point.getXid());
+            saved.add(new ArrayList<>(values));
+        }
+    }
+
+    private static class CountingListener implements ImportListener {
+        int progressed;
+        int chunks;
+
+        @Override
+        public void progress(int chunksComplete, int chunks) {
+            this.progressed = chunksComplete;
+            this.chunks = chunks;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    }
+
+    private DataPointVO point(int id, String identifier, boolean hasTimestamp) {
+        AsciiFilePointLocatorVO locator = new AsciiFilePointLocatorVO();
+        locator.setDataType(DataTypes.NUMERIC);
+        locator.setValueRegex("(\\w+),(\\d+),([\\d.]+)");
+        locator.setPointIdentifier(identifier);
+        locator.setPointIdentifierIndex(1);
+        locator.setValueIndex(3);
+        locator.setHasTimestamp(hasTimestamp);
+        locator.setTimestampIndex(2);
+        locator.setTimestampFormat(AsciiFileTimestampParser.EPOCH_MILLIS_FORMAT);
+
+        DataPointVO vo = new DataPointVO();
+        vo.setId(id);
+        vo.setSeriesId(id + 100);
+        vo.setXid("DP_" + identifier);
+        vo.setPointLocator(locator);
+        return vo;
+    }
+
+    /**
+     * Write the values newest first
+     */
+    private Path writeFile() throws IOException {
+        file = Files.createTempFile("asciiBulkImport", ".csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int i = LINES; i > 0; i--) {
+                writer.write("temp," + (BASE_TIME + i * 1000L) + "," + i + ".5\n");
+                writer.write("hum," + (BASE_TIME + i * 1000L) + ",50\n");
+            }
+        }
+        return file;
+    }
+
+    @After
+    public void deleteFile() throws IOException {
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void importsInTimeOrderPerWindow() throws IOException {
+        DataPointVO temp = point(1, "temp", true);
+        DataPointVO hum = point(2, "hum", false);
+        RecordingTracker tracker = new RecordingTracker();
+        RecordingImporter importer = new RecordingImporter(writeFile(), Arrays.asList(temp, hum),
+                AsciiFileBulkImporter.MIN_CHUNK_SIZE, 1, tracker);
+        CountingListener listener = new CountingListener();
+        importer.run(listener);
+
+        //Several windows of two chunks
+        assertTrue(listener.chunks > 2);
+        assertEquals(listener.chunks, listener.progressed);
+        assertTrue(importer.saved.size() > 1);
+
+        //Only the point with timestamps is imported
+        assertEquals(Collections.nCopies(importer.saved.size(), temp.getXid()), importer.savedXids);
+        assertEquals(Collections.singletonMap(temp.getXid(), (long) LINES), importer.getPointValuesImported());
+        assertEquals(LINES, importer.getValuesImported());
+        assertEquals(0, importer.getErrors());
+
+        int count = 0;
+        for (int i = 0; i < importer.saved.size(); i++) {
+            List<PointValueTime> window = importer.saved.get(i);
+            count += window.size();
+            for (int j = 1; j < window.size(); j++) {
+                assertTrue(window.get(j - 1).getTime() <= window.get(j).getTime());
+            }
+            //Each window is reported from its earliest value
+            assertEquals(temp.getSeriesId(), tracker.changes.get(i)[0]);
+            assertEquals(window.get(0).getTime(), tracker.changes.get(i)[1]);
+        }
+        assertEquals(LINES, count);
+
+        //Reported again from the earliest value once the import ends
+        assertEquals(importer.saved.size() + 1, tracker.changes.size());
+        long[] last = tracker.changes.get(tracker.changes.size() - 1);
+        assertEquals(temp.getSeriesId(), last[0]);
+        assertEquals(BASE_TIME + 1000, last[1]);
+    }
+
+    @Test
+    public void nothingReportedWithoutValues() throws IOException {
+        DataPointVO hum = point(2, "hum", false);
+        RecordingTracker tracker = new RecordingTracker();
+        RecordingImporter importer = new RecordingImporter(writeFile(), Arrays.asList(hum),
+                AsciiFileBulkImporter.MIN_CHUNK_SIZE, 1, tracker);
+        importer.run(new CountingListener());
+
+        assertTrue(importer.saved.isEmpty());
+        assertTrue(tracker.changes.isEmpty());
+        assertFalse(importer.getPointValuesImported().containsKey(hum.getXid()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void chunkSizeTooSmall() throws IOException {
+        new RecordingImporter(writeFile(), Collections.emptyList(), AsciiFileBulkImporter.MIN_CHUNK_SIZE - 1, 1, new RecordingTracker());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void windowTooLarge() throws IOException {
+        new RecordingImporter(writeFile(), Collections.emptyList(), AsciiFileBulkImporter.MAX_CHUNK_SIZE,
+                AsciiFileBulkImporter.maxParallelism(AsciiFileBulkImporter.MAX_CHUNK_SIZE) + 1, new RecordingTracker());
+    }
+}
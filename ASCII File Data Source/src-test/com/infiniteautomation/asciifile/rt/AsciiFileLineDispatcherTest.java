@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.asciifile.rt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import com.infiniteautomation.asciifile.vo.AsciiFilePointLocatorVO;
+import com.infiniteautomation.mango.regex.MatchCallback;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+
+public class AsciiFileLineDispatcherTest extends MangoTestBase {
+
+    private static final String REGEX = "(\\w+),([\\d.]+)";
+
+    private static class RecordingCallback implements MatchCallback {
+        final List<Double> values = new ArrayList<>();
+        final List<Exception> failures = new ArrayList<>();
+        int notIdentified;
+
+        @Override
+        public void onMatch(String pointIdentifier, PointValueTime value) {
+            values.add(value.getDoubleValue());
+        }
+
+        @Override
+        public void pointPatternMismatch(String message, String pointValueRegex) {
+            //N/A
+        }
+
+        @Override
+        public void messagePatternMismatch(String message, String messageRegex) {
+            //N/A
+        }
+
+        @Override
+        public void pointNotIdentified(String message, String messageRegex, int pointIdentifierIndex) {
+            notIdentified++;
+        }
+
+        @Override
+        public void matchGeneralFailure(Exception e) {
+            failures.add(e);
+        }
+    }
+
+    private AsciiFilePointLocatorVO locator(String identifier, int identifierIndex) {
+        AsciiFilePointLocatorVO locator = new AsciiFilePointLocatorVO();
+        locator.setDataType(DataTypes.NUMERIC);
+        locator.setValueRegex(REGEX);
+        locator.setPointIdentifier(identifier);
+        locator.setPointIdentifierIndex(identifierIndex);
+        locator.setValueIndex(2);
+        return locator;
+    }
+
+    private void dispatch(AsciiFileLineDispatcher dispatcher) {
+        for (String line : Arrays.asList("temp,1.5", "hum,50", "no match", "temp,2.5")) {
+            dispatcher.dispatch(line);
+        }
+    }
+
+    @Test
+    public void pointsSharingRegexMatchedByIdentifier() {
+        AsciiFileLineDispatcher dispatcher = new AsciiFileLineDispatcher();
+        RecordingCallback temp = new RecordingCallback();
+        RecordingCallback hum = new RecordingCallback();
+        dispatcher.addPoint(Pattern.compile(REGEX), locator("temp", 1), temp);
+        dispatcher.addPoint(Pattern.compile(REGEX), locator("hum", 1), hum);
+        dispatch(dispatcher);
+
+        assertEquals(1, dispatcher.getPatternCount());
+        assertEquals(Arrays.asList(1.5, 2.5), temp.values);
+        assertEquals(Arrays.asList(50.0), hum.values);
+        assertTrue(temp.failures.isEmpty());
+    }
+
+    @Test
+    public void missingIdentifierFailsEachMatchedLine() {
+        AsciiFileLineDispatcher dispatcher = new AsciiFileLineDispatcher();
+        RecordingCallback noIdentifier = new RecordingCallback();
+        RecordingCallback temp = new RecordingCallback();
+        dispatcher.addPoint(Pattern.compile(REGEX), locator(null, 1), noIdentifier);
+        dispatcher.addPoint(Pattern.compile(REGEX), locator("temp", 1), temp);
+        dispatch(dispatcher);
+
+        //As when each point matched the line itself, a read failure for every line its regex matches
+        assertEquals(3, noIdentifier.failures.size());
+        assertTrue(noIdentifier.values.isEmpty());
+        assertEquals(Arrays.asList(1.5, 2.5), temp.values);
+    }
+
+    @Test
+    public void identifierGroupOutOfRangeNotIdentified() {
+        AsciiFileLineDispatcher dispatcher = new AsciiFileLineDispatcher();
+        RecordingCallback callback = new RecordingCallback();
+        dispatcher.addPoint(Pattern.compile(REGEX), locator("temp", 3), callback);
+        dispatch(dispatcher);
+
+        assertEquals(3, callback.notIdentified);
+        assertTrue(callback.values.isEmpty());
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.asciifile.rt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.infiniteautomation.asciifile.rt.AsciiFileTailReader.TailPosition;
+
+public class AsciiFileTailReaderTest {
+
+    private Path directory;
+    private Path file;
+
+    @Before
+    public void createFile() throws IOException {
+        directory = Files.createTempDirectory("ascii-tail");
+        file = directory.resolve("data.txt");
+        Files.createFile(file);
+    }
+
+    @After
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(directory.resolve("rotated.txt"));
+        Files.deleteIfExists(directory);
+    }
+
+    private void append(String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    private List<String> read(AsciiFileTailReader reader) throws IOException {
+        List<String> lines = new ArrayList<>();
+        reader.readAppendedLines(lines::add);
+        return lines;
+    }
+
+    @Test
+    public void readsOnlyAppendedLines() throws IOException {
+        AsciiFileTailReader reader = new AsciiFileTailReader(file, StandardCharsets.UTF_8, null);
+        append("a\nb\n");
+        assertEquals(Arrays.asList("a", "b"), read(reader));
+
+        append("c\r\n");
+        assertEquals(Arrays.asList("c"), read(reader));
+        assertEquals(7, reader.getPosition().getOffset());
+
+        //Nothing appended
+        assertFalse(reader.readAppendedLines(line -> {}));
+    }
+
+    @Test
+    public void partialLineReadOnceTerminated() throws IOException {
+        AsciiFileTailReader reader = new AsciiFileTailReader(file, StandardCharsets.UTF_8, null);
+        append("a\npar");
+        assertEquals(Arrays.asList("a"), read(reader));
+        assertEquals(2, reader.getPosition().getOffset());
+
+        append("tial\n");
+        assertEquals(Arrays.asList("partial"), read(reader));
+    }
+
+    @Test
+    public void truncatedFileReadFromStart() throws IOException {
+        AsciiFileTailReader reader = new AsciiFileTailReader(file, StandardCharsets.UTF_8, null);
+        append("first line\nsecond line\n");
+        read(reader);
+
+        Files.write(file, "x\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.TRUNCATE_EXISTING);
+        assertEquals(Arrays.asList("x"), read(reader));
+        assertEquals(2, reader.getPosition().getOffset());
+    }
+
+    @Test
+    public void rotatedFileReadFromStart() throws IOException {
+        AsciiFileTailReader reader = new AsciiFileTailReader(file, StandardCharsets.UTF_8, null);
+        append("a\nb\n");
+        read(reader);
+        String fileKey = reader.getPosition().getFileKey();
+
+        //Replace the file with a longer one so only its identity tells it apart
+        Path rotated = directory.resolve("rotated.txt");
+        Files.write(rotated, "c\nd\ne\n".getBytes(StandardCharsets.UTF_8));
+        Files.move(rotated, file, StandardCopyOption.REPLACE_EXISTING);
+
+        List<String> lines = read(reader);
+        if (fileKey == null) {
+            //File system without file keys, only truncation can be detected
+            assertEquals(Arrays.asList("e"), lines);
+        } else {
+            assertEquals(Arrays.asList("c", "d", "e"), lines);
+        }
+    }
+
+    @Test
+    public void resumesFromSavedPosition() throws IOException {
+        AsciiFileTailReader reader = new AsciiFileTailReader(file, StandardCharsets.UTF_8, null);
+        append("a\nb\n");
+        read(reader);
+        TailPosition saved = reader.getPosition();
+
+        append("c\n");
+        AsciiFileTailReader resumed = new AsciiFileTailReader(file, StandardCharsets.UTF_8, saved);
+        assertEquals(Arrays.asList("c"), read(resumed));
+        assertTrue(resumed.getPosition().getOffset() > saved.getOffset());
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.asciifile.rt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+
+import org.junit.Test;
+
+public class AsciiFileTimestampParserTest {
+
+    /**
+     * Parse as the data source did before the parsers were cached
+     */
+    private void assertParsedLikeSimpleDateFormat(String format, String text) throws ParseException {
+        long expected = new SimpleDateFormat(format).parse(text).getTime();
+        assertEquals(format + " " + text, expected, AsciiFileTimestampParser.get(format).parse(text));
+    }
+
+    @Test
+    public void testPaddedFields() throws ParseException {
+        assertNotNull(AsciiFileTimestampParser.createFormatter("yyyy-MM-dd HH:mm:ss.SSS"));
+        assertParsedLikeSimpleDateFormat("yyyy-MM-dd HH:mm:ss", "2021-03-04 05:06:07");
+        assertParsedLikeSimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", "2021-03-04 05:06:07.123");
+        assertParsedLikeSimpleDateFormat("yyyy-MM-dd", "2021-03-04");
+        assertParsedLikeSimpleDateFormat("HH:mm:ss", "05:06:07");
+        assertParsedLikeSimpleDateFormat("yyyy 'at' HH", "2021 at 07");
+    }
+
+    @Test
+    public void testNonPaddedFields() throws ParseException {
+        assertParsedLikeSimpleDateFormat("yyyy-MM-dd HH:mm:ss", "2021-3-4 5:6:7");
+        assertParsedLikeSimpleDateFormat("dd/MM/yyyy HH:mm", "4/3/2021 5:06");
+        //Milliseconds, not a fraction of a second
+        assertParsedLikeSimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", "2021-03-04 05:06:07.5");
+        assertParsedLikeSimpleDateFormat("yyyy-MM-dd HH:mm:ss.S", "2021-03-04 05:06:07.123");
+    }
+
+    @Test
+    public void testAdjacentFields() throws ParseException {
+        assertParsedLikeSimpleDateFormat("yyyyMMddHHmmss", "20210304050607");
+        //The last field of a run is any width
+        assertParsedLikeSimpleDateFormat("yyyyMMdd HHmmss", "20210304 50607");
+    }
+
+    @Test
+    public void testLenientValues() throws ParseException {
+        assertParsedLikeSimpleDateFormat("yyyy-MM-dd HH:mm:ss", "2021-02-30 00:00:00");
+        assertParsedLikeSimpleDateFormat("yyyy-MM-dd HH:mm:ss", "2021-13-01 24:00:61");
+    }
+
+    @Test
+    public void testTrailingText() throws ParseException {
+        assertParsedLikeSimpleDateFormat("yyyy-MM-dd HH:mm", "2021-03-04 05:06 and more");
+    }
+
+    @Test
+    public void testOffsets() throws ParseException {
+        assertEquals(Instant.parse("2021-03-04T05:06:07Z").toEpochMilli(),
+                AsciiFileTimestampParser.get("yyyy-MM-dd'T'HH:mm:ssX").parse("2021-03-04T05:06:07Z"));
+        assertParsedLikeSimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssX", "2021-03-04T05:06:07-08");
+        assertParsedLikeSimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXX", "2021-03-04T05:06:07+0130");
+        assertParsedLikeSimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX", "2021-03-04T05:06:07+02:00");
+    }
+
+    @Test
+    public void testSimpleDateFormatFallback() throws ParseException {
+        assertNull(AsciiFileTimestampParser.createFormatter("yy-MM-dd"));
+        assertNull(AsciiFileTimestampParser.createFormatter("dd MMM yyyy"));
+        assertNull(AsciiFileTimestampParser.createFormatter("EEE yyyy-MM-dd"));
+        assertParsedLikeSimpleDateFormat("yy-MM-dd", "21-03-04");
+        assertParsedLikeSimpleDateFormat("dd MMM yyyy", "04 Mar 2021");
+        assertParsedLikeSimpleDateFormat("yyyy-MM-dd hh:mm a", "2021-03-04 05:06 PM");
+    }
+
+    @Test
+    public void testSpecialFormats() throws ParseException {
+        assertEquals(1614834367123L, AsciiFileTimestampParser.get(AsciiFileTimestampParser.EPOCH_MILLIS_FORMAT).parse("1614834367123"));
+        assertEquals(Instant.parse("2021-03-04T05:06:07.123Z").toEpochMilli(),
+                AsciiFileTimestampParser.get(AsciiFileTimestampParser.ISO_8601_FORMAT).parse("2021-03-04T05:06:07.123Z"));
+    }
+
+    @Test
+    public void testInvalid() {
+        try {
+            AsciiFileTimestampParser.get("yyyy-MM-dd").parse("garbage");
+            fail("Should not parse");
+        } catch (ParseException e) {
+            //Expected
+        }
+        try {
+            AsciiFileTimestampParser.validate("qq");
+            fail("Should be invalid");
+        } catch (IllegalArgumentException e) {
+            //Expected
+        }
+    }
+
+    @Test
+    public void testCacheBounded() {
+        AsciiFileTimestampParser parser = AsciiFileTimestampParser.get("yyyy-MM-dd");
+        assertSame(parser, AsciiFileTimestampParser.get("yyyy-MM-dd"));
+
+        for (int i = 0; i < AsciiFileTimestampParser.MAX_CACHED * 3; i++) {
+            AsciiFileTimestampParser.get("yyyy-MM-dd '" + i + "'");
+            assertTrue(AsciiFileTimestampParser.cacheSize() <= AsciiFileTimestampParser.MAX_CACHED);
+        }
+
+        //Validating does not cache
+        int size = AsciiFileTimestampParser.cacheSize();
+        AsciiFileTimestampParser.validate("yyyy-MM-dd 'not cached'");
+        assertEquals(size, AsciiFileTimestampParser.cacheSize());
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.infiniteautomation.asciifile.rt.AsciiFileBulkImporter;
+import com.infiniteautomation.mango.util.exception.ValidationException;
+
+public class AsciiFileBulkImportParamsTest {
+
+    private void assertInvalid(Integer chunkSize, Integer parallelism) {
+        try {
+            new AsciiFileBulkImportParams(chunkSize, parallelism).ensureValid();
+            fail("chunkSize " + chunkSize + " parallelism " + parallelism + " is valid");
+        } catch (ValidationException e) {
+            //Expected
+        }
+    }
+
+    @Test
+    public void defaultsAreValid() {
+        AsciiFileBulkImportParams params = new AsciiFileBulkImportParams();
+        params.ensureValid();
+        assertEquals(AsciiFileBulkImporter.DEFAULT_CHUNK_SIZE, params.getChunkSizeOrDefault());
+        assertTrue(params.getParallelismOrDefault() >= 1);
+        assertTrue(params.getParallelismOrDefault() <= Runtime.getRuntime().availableProcessors());
+        assertTrue(AsciiFileBulkImporter.windowSize(params.getChunkSizeOrDefault(), params.getParallelismOrDefault())
+                <= AsciiFileBulkImporter.MAX_WINDOW_SIZE);
+    }
+
+    @Test
+    public void defaultParallelismFitsWindow() {
+        AsciiFileBulkImportParams params = new AsciiFileBulkImportParams(AsciiFileBulkImporter.MAX_CHUNK_SIZE, null);
+        params.ensureValid();
+        assertTrue(params.getParallelismOrDefault() <= AsciiFileBulkImporter.maxParallelism(AsciiFileBulkImporter.MAX_CHUNK_SIZE));
+    }
+
+    @Test
+    public void chunkSizeOutOfRange() {
+        assertInvalid(0, null);
+        assertInvalid(-1, null);
+        assertInvalid(AsciiFileBulkImporter.MIN_CHUNK_SIZE - 1, null);
+        assertInvalid(AsciiFileBulkImporter.MAX_CHUNK_SIZE + 1, null);
+        new AsciiFileBulkImportParams(AsciiFileBulkImporter.MIN_CHUNK_SIZE, 1).ensureValid();
+        new AsciiFileBulkImportParams(AsciiFileBulkImporter.MAX_CHUNK_SIZE, 1).ensureValid();
+    }
+
+    @Test
+    public void parallelismOutOfRange() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        assertInvalid(null, 0);
+        assertInvalid(null, -1);
+        assertInvalid(AsciiFileBulkImporter.MIN_CHUNK_SIZE, processors + 1);
+        new AsciiFileBulkImportParams(AsciiFileBulkImporter.MIN_CHUNK_SIZE, processors).ensureValid();
+    }
+
+    @Test
+    public void windowTooLarge() {
+        int max = AsciiFileBulkImporter.maxParallelism(AsciiFileBulkImporter.MAX_CHUNK_SIZE);
+        if (max < Runtime.getRuntime().availableProcessors()) {
+            assertInvalid(AsciiFileBulkImporter.MAX_CHUNK_SIZE, max + 1);
+        }
+        new AsciiFileBulkImportParams(AsciiFileBulkImporter.MAX_CHUNK_SIZE, Math.min(max, Runtime.getRuntime().availableProcessors())).ensureValid();
+    }
+}
@@ -0,0 +1,374 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.asciifile.rt;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.infiniteautomation.asciifile.vo.AsciiFilePointLocatorVO;
+import com.infiniteautomation.mango.regex.MatchCallback;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueChangeTracker;
+import com.infiniteautomation.mango.rt.PointValueBatch;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.db.dao.PointValueDao;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Imports the historic values of a file in bulk. The file is split on line boundaries into chunks,
+ * each chunk is memory mapped and parsed on a fork/join pool. The values from a window of chunks are
+ * merged per point in time order and then saved.  Only points that read their timestamp from the
+ * file are imported.
+ *
+ * Memory use is bounded by the size of a window (parallelism * 2 chunks), values are only time ordered
+ * within a window so files that are not written in time order are still imported but not in
+ * strict time order.
+ *
+ * The values of running points are saved to their caches in batches off of the import thread, a window waits for
+ * the batches of the previous windows once too many values are pending.  Stopped points are saved asynchronously.
+ * The point value caches are told about the imported values after each window and again once the import ends and
+ * the batches are delivered, so the second notice discards anything cached while they were written.
+ */
+public class AsciiFileBulkImporter {
+
+    private static final Log LOG = LogFactory.getLog(AsciiFileBulkImporter.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 32 * 1024 * 1024;
+    public static final int MIN_CHUNK_SIZE = 64 * 1024;
+    //A chunk is extended to the end of its last line and must still fit in a memory mapping
+    public static final int MAX_CHUNK_SIZE = 256 * 1024 * 1024;
+    public static final long MAX_WINDOW_SIZE = 1024L * 1024 * 1024;
+    private static final Comparator<PointValueTime> TIME_ORDER = Comparator.comparingLong(PointValueTime::getTime);
+
+    /**
+     * Receives the progress of an import
+     */
+    public interface ImportListener {
+        /**
+         * A window of chunks was saved
+         * @param chunksComplete
+         * @param chunks
+         */
+        void progress(int chunksComplete, int chunks);
+
+        /**
+         * @return true to stop the import before the next window
+         */
+        boolean isCancelled();
+    }
+
+    private final Path path;
+    private final Charset charset;
+    private final List<DataPointVO> points;
+    private final int chunkSize;
+    private final int parallelism;
+    private final PointValueDao dao;
+    private final PointValueBatch batch;
+    private final PointValueChangeTracker changeTracker;
+
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong linesRead = new AtomicLong();
+    private final AtomicLong valuesImported = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final Map<String, AtomicLong> pointValuesImported = new HashMap<>();
+    //Earliest value imported for each series
+    private final Map<Integer, Long> importedFrom = new HashMap<>();
+
+    /**
+     * @param path - file to import
+     * @param points - the points of the data source, only those with timestamps are imported
+     * @param chunkSize - approximate size of each chunk in bytes
+     * @param parallelism - number of threads to parse with
+     * @param changeTracker - told about the imported values
+     */
+    public AsciiFileBulkImporter(Path path, List<DataPointVO> points, int chunkSize, int parallelism, PointValueChangeTracker changeTracker) {
+        if (chunkSize < MIN_CHUNK_SIZE || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Chunk size must be between " + MIN_CHUNK_SIZE + " and " + MAX_CHUNK_SIZE);
+        }
+        if (parallelism < 1 || windowSize(chunkSize, parallelism) > MAX_WINDOW_SIZE) {
+            throw new IllegalArgumentException("Parallelism must be between 1 and " + maxParallelism(chunkSize));
+        }
+        this.path = path;
+        this.charset = Charset.defaultCharset();
+        this.points = new ArrayList<>();
+        for (DataPointVO point : points) {
+            AsciiFilePointLocatorVO locator = point.getPointLocator();
+            if (locator.getHasTimestamp()) {
+                this.points.add(point);
+                this.pointValuesImported.put(point.getXid(), new AtomicLong());
+            }
+        }
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+        this.dao = Common.databaseProxy.newPointValueDao();
+        this.batch = new AsciiFilePointValueBatch("ASCII file bulk import " + path);
+        this.changeTracker = changeTracker;
+    }
+
+    /**
+     * @return bytes parsed at once
+     */
+    public static long windowSize(int chunkSize, int parallelism) {
+        return 2L * chunkSize * parallelism;
+    }
+
+    /**
+     * @return the most threads that can parse chunks of this size at once
+     */
+    public static int maxParallelism(int chunkSize) {
+        return (int) Math.max(1, MAX_WINDOW_SIZE / windowSize(chunkSize, 1));
+    }
+
+    /**
+     * Run the import on the calling thread, parsing on a private fork/join pool
+     * @param listener
+     * @throws IOException
+     */
+    public void run(ImportListener listener) throws IOException {
+        if (points.isEmpty()) {
+            listener.progress(0, 0);
+            return;
+        }
+
+        //Precompile once, each chunk gets its own matchers
+        Map<Integer, Pattern> patterns = new HashMap<>();
+        for (DataPointVO point : points) {
+            AsciiFilePointLocatorVO locator = point.getPointLocator();
+            patterns.put(point.getId(), Pattern.compile(locator.getValueRegex()));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            List<long[]> chunks = splitChunks(channel);
+            int window = parallelism * 2;
+            int complete = 0;
+            listener.progress(complete, chunks.size());
+
+            for (int i = 0; i < chunks.size(); i += window) {
+                if (listener.isCancelled()) {
+                    return;
+                }
+                List<ForkJoinTask<Map<Integer, List<PointValueTime>>>> tasks = new ArrayList<>(window);
+                for (long[] chunk : chunks.subList(i, Math.min(i + window, chunks.size()))) {
+                    tasks.add(pool.submit(() -> parseChunk(channel, chunk[0], chunk[1], patterns)));
+                }
+
+                //Merge in file order, then time order per point
+                Map<Integer, List<PointValueTime>> merged = new HashMap<>();
+                for (ForkJoinTask<Map<Integer, List<PointValueTime>>> task : tasks) {
+                    for (Map.Entry<Integer, List<PointValueTime>> entry : task.join().entrySet()) {
+                        merged.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).addAll(entry.getValue());
+                    }
+                }
+                save(merged);
+                batch.flush();
+
+                complete += tasks.size();
+                listener.progress(complete, chunks.size());
+            }
+        } finally {
+            pool.shutdownNow();
+            batch.flush();
+            batch.deliverPending();
+            importedFrom.forEach(changeTracker::changed);
+        }
+    }
+
+    /**
+     * Find chunk boundaries, each chunk ends just after a line terminator or at the end of the file
+     * @return list of [start, end) byte ranges
+     */
+    private List<long[]> splitChunks(FileChannel channel) throws IOException {
+        List<long[]> chunks = new ArrayList<>();
+        long size = channel.size();
+        ByteBuffer scan = ByteBuffer.allocate(4096);
+        long start = 0;
+        while (start < size) {
+            long end = Math.min(start + chunkSize, size);
+            //Move the end to the end of the line
+            boolean found = end == size;
+            while (!found) {
+                scan.clear();
+                int read = channel.read(scan, end);
+                if (read <= 0) {
+                    end = size;
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (scan.get(i) == '\n') {
+                        end += i + 1;
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    end += read;
+                }
+            }
+            chunks.add(new long[] {start, end});
+            start = end;
+        }
+        return chunks;
+    }
+
+    private Map<Integer, List<PointValueTime>> parseChunk(FileChannel channel, long start, long end, Map<Integer, Pattern> patterns) throws IOException {
+        Map<Integer, List<PointValueTime>> values = new HashMap<>();
+        AsciiFileLineDispatcher dispatcher = new AsciiFileLineDispatcher();
+        for (DataPointVO point : points) {
+            List<PointValueTime> pointValues = new ArrayList<>();
+            values.put(point.getId(), pointValues);
+            dispatcher.addPoint(patterns.get(point.getId()), point.getPointLocator(), new ImportCallback(pointValues));
+        }
+
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        byte[] line = new byte[256];
+        int length = 0;
+        long lines = 0;
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (b == '\n') {
+                dispatcher.dispatch(decode(line, length));
+                length = 0;
+                lines++;
+            } else {
+                if (length == line.length) {
+                    line = Arrays.copyOf(line, length * 2);
+                }
+                line[length++] = b;
+            }
+        }
+        if (length > 0) {
+            dispatcher.dispatch(decode(line, length));
+            lines++;
+        }
+
+        bytesRead.addAndGet(end - start);
+        linesRead.addAndGet(lines);
+        return values;
+    }
+
+    private String decode(byte[] line, int length) {
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        return new String(line, 0, length, charset);
+    }
+
+    /**
+     * Save the values of a window and tell the caches about them
+     */
+    private void save(Map<Integer, List<PointValueTime>> merged) {
+        for (DataPointVO point : points) {
+            List<PointValueTime> values = merged.get(point.getId());
+            if (values == null || values.isEmpty()) {
+                continue;
+            }
+            values.sort(TIME_ORDER);
+            savePointValues(point, values);
+            valuesImported.addAndGet(values.size());
+            pointValuesImported.get(point.getXid()).addAndGet(values.size());
+
+            long from = values.get(0).getTime();
+            importedFrom.merge(point.getSeriesId(), from, Math::min);
+            changeTracker.changed(point.getSeriesId(), from);
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Imported " + valuesImported.get() + " values from " + path);
+        }
+    }
+
+    /**
+     * Save the time ordered values of a point, running points are batched and saved via their cache
+     * @param point
+     * @param values
+     */
+    protected void savePointValues(DataPointVO point, List<PointValueTime> values) {
+        DataPointRT rt = Common.runtimeManager.getDataPoint(point.getId());
+        for (PointValueTime pvt : values) {
+            if (rt == null) {
+                dao.savePointValueAsync(point, pvt, null);
+            } else {
+                batch.add(rt, pvt);
+            }
+        }
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public long getLinesRead() {
+        return linesRead.get();
+    }
+
+    public long getValuesImported() {
+        return valuesImported.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * @return xid to number of values imported for each point that can be imported
+     */
+    public Map<String, Long> getPointValuesImported() {
+        Map<String, Long> counts = new HashMap<>();
+        pointValuesImported.forEach((xid, count) -> counts.put(xid, count.get()));
+        return counts;
+    }
+
+    private class ImportCallback implements MatchCallback {
+
+        private final List<PointValueTime> values;
+
+        ImportCallback(List<PointValueTime> values) {
+            this.values = values;
+        }
+
+        @Override
+        public void onMatch(String pointIdentifier, PointValueTime value) {
+            values.add(value);
+        }
+
+        @Override
+        public void pointPatternMismatch(String message, String pointValueRegex) {
+            //N/A
+        }
+
+        @Override
+        public void messagePatternMismatch(String message, String messageRegex) {
+            //N/A
+        }
+
+        @Override
+        public void pointNotIdentified(String message, String messageRegex, int pointIdentifierIndex) {
+            errors.incrementAndGet();
+        }
+
+        @Override
+        public void matchGeneralFailure(Exception e) {
+            errors.incrementAndGet();
+        }
+    }
+}
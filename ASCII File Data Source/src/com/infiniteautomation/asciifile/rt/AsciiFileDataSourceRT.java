@@ -5,11 +5,10 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.NoSuchFileException;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Date;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -21,16 +20,16 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import com.infiniteautomation.asciifile.AsciiFileSystemSettingsDefinition;
+import com.infiniteautomation.asciifile.rt.AsciiFileTailReader.TailPosition;
 import com.infiniteautomation.asciifile.vo.AsciiFileDataSourceVO;
-import com.infiniteautomation.asciifile.vo.AsciiFilePointLocatorVO;
 import com.infiniteautomation.mango.regex.MatchCallback;
 import com.serotonin.ShouldNeverHappenException;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.db.dao.DataSourceDao;
 import com.serotonin.m2m2.db.dao.SystemSettingsDao;
 import com.serotonin.m2m2.i18n.TranslatableMessage;
 import com.serotonin.m2m2.rt.dataImage.DataPointRT;
-import com.serotonin.m2m2.rt.dataImage.DataPointRT.FireEvents;
 import com.serotonin.m2m2.rt.dataImage.PointValueTime;
 import com.serotonin.m2m2.rt.dataImage.SetPointSource;
 import com.serotonin.m2m2.rt.dataSource.PollingDataSource;
@@ -53,9 +52,12 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
     private File file; // File
     private FileAlterationObserver fobs;
     private boolean restrictedPath;
+    private AsciiFileTailReader tailReader;
+    private final AsciiFilePointValueBatch pointValues;
 
     public AsciiFileDataSourceRT(AsciiFileDataSourceVO vo) {
         super(vo);
+        this.pointValues = new AsciiFilePointValueBatch("ASCII file data source point updates " + vo.getXid());
         this.restrictedPath = isPathRestricted(SystemSettingsDao.instance.getValue(AsciiFileSystemSettingsDefinition.RESTRICTED_PATH));
         SystemSettingsEventDispatcher.INSTANCE.addListener(this);
     }
@@ -69,6 +71,9 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
         AsciiFileDataSourceVO vo = this.getVo();
 
         this.file = new File(vo.getFilePath());
+        if (vo.isTailMode()) {
+            this.tailReader = new AsciiFileTailReader(this.file.toPath(), loadTailPosition());
+        }
         if (!file.exists()) {
             raiseEvent(DATA_SOURCE_EXCEPTION_EVENT, System.currentTimeMillis(), true,
                     new TranslatableMessage("file.event.fileNotFound", vo.getFilePath()));
@@ -124,6 +129,9 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
             }
         } finally {
             SystemSettingsEventDispatcher.INSTANCE.removeListener(this);
+            //Save any values we have already read
+            pointValues.flush();
+            pointValues.deliverPending();
         }
     }
 
@@ -173,14 +181,23 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
         // no-op
     }
 
-    @Override //Read the file for only the one point.
+    @Override //Read the whole file for only the one point.
     public void forcePointRead(DataPointRT dataPoint) {
         List<DataPointRT> dataPoints = new ArrayList<>(1);
         dataPoints.add(dataPoint);
-        fileEvent(dataPoints);
+        fileEvent(dataPoints, false);
     }
 
     private void fileEvent(Collection<DataPointRT> dataPoints) {
+        fileEvent(dataPoints, vo.isTailMode());
+    }
+
+    /**
+     * Read the file and give the points the chance to find their data
+     * @param dataPoints
+     * @param tail - only read the lines appended since the last read
+     */
+    private void fileEvent(Collection<DataPointRT> dataPoints, boolean tail) {
         // Should never happen
         if (this.file == null) {
             raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true,
@@ -194,74 +211,33 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
             return;
         }
 
+        if (dataPoints.isEmpty()) {
+            return;
+        }
+
+        // Match each line once per distinct value regex
+        AsciiFileLineDispatcher dispatcher = new AsciiFileLineDispatcher(dataPoints, this::createCallback);
+
         // The file is modified or we've just started, so read it.
         try {
-            BufferedReader reader = new BufferedReader(new FileReader(this.file));
-
-            String msg;
-            if (!dataPoints.isEmpty()) {
-
-                // TODO optimize to be better than numLines*numPoints
-                while ((msg = reader.readLine()) != null) {
-                    // Give all points the chance to find their data
-                    for (final DataPointRT dp : dataPoints) {
-                        AsciiFilePointLocatorRT pl = dp.getPointLocator();
-                        final AsciiFilePointLocatorVO plVo = pl.getVo();
-
-                        MatchCallback callback = new MatchCallback() {
-
-                            @Override
-                            public void onMatch(String pointIdentifier, PointValueTime value) {
-                                if (!plVo.getHasTimestamp())
-                                    dp.updatePointValue(value);
-                                else
-                                    dp.savePointValueDirectToCache(value, null, true, true, FireEvents.NEVER);
-                            }
-
-                            @Override
-                            public void pointPatternMismatch(String message, String pointValueRegex) {
-                                //N/A
-                            }
-
-                            @Override
-                            public void messagePatternMismatch(String message, String messageRegex) {
-                                //N/A
-                            }
-
-                            @Override
-                            public void pointNotIdentified(String message, String messageRegex,
-                                    int pointIdentifierIndex) {
-                                raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), false,
-                                        new TranslatableMessage("file.event.insufficientGroups",
-                                                dp.getVO().getExtendedName()));
-                            }
-
-                            @Override
-                            public void matchGeneralFailure(Exception e) {
-                                if (e instanceof ParseException)
-                                    raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
-                                            new TranslatableMessage("file.event.dateParseFailed", e.getMessage()));
-                                else if (e instanceof NumberFormatException) {
-                                    raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
-                                            new TranslatableMessage("file.event.notNumber", e.getMessage()));
-                                } else
-                                    raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
-                                            new TranslatableMessage("file.event.readFailed", e.getMessage()));
-                            }
-
-                        };
-
-                        matchPointValueTime(msg, pl.getValuePattern(), plVo.getPointIdentifier(),
-                                plVo.getPointIdentifierIndex(), plVo.getDataTypeId(),
-                                plVo.getValueIndex(), plVo.getHasTimestamp(), plVo.getTimestampIndex(),
-                                plVo.getTimestampFormat(), callback);
-
+            if (tail) {
+                synchronized (tailReader) {
+                    if (tailReader.readAppendedLines(dispatcher::dispatch)) {
+                        //Only remember the position once the values read before it are saved
+                        TailPosition read = tailReader.getPosition();
+                        pointValues.flush(() -> saveTailPosition(read));
+                    }
+                }
+            } else {
+                try (BufferedReader reader = new BufferedReader(new FileReader(this.file))) {
+                    String msg;
+                    while ((msg = reader.readLine()) != null) {
+                        dispatcher.dispatch(msg);
                     }
                 }
-                reader.close();
-                returnToNormal(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis());
             }
-        } catch (FileNotFoundException e) {
+            returnToNormal(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis());
+        } catch (FileNotFoundException | NoSuchFileException e) {
             raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
                     new TranslatableMessage("file.event.fileNotFound", e.getMessage()));
         } catch (IOException e) {
@@ -270,8 +246,83 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
         } catch (NumberFormatException e) {
             raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
                     new TranslatableMessage("file.event.notNumber", e.getMessage()));
+        } finally {
+            //Save the values off of the polling thread
+            pointValues.flush();
+        }
+
+    }
+
+    /**
+     * Create the callback to handle matches in the file for a point
+     */
+    private MatchCallback createCallback(DataPointRT dp) {
+        return new MatchCallback() {
+
+            @Override
+            public void onMatch(String pointIdentifier, PointValueTime value) {
+                pointValues.add(dp, value);
+            }
+
+            @Override
+            public void pointPatternMismatch(String message, String pointValueRegex) {
+                //N/A
+            }
+
+            @Override
+            public void messagePatternMismatch(String message, String messageRegex) {
+                //N/A
+            }
+
+            @Override
+            public void pointNotIdentified(String message, String messageRegex,
+                    int pointIdentifierIndex) {
+                raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), false,
+                        new TranslatableMessage("file.event.insufficientGroups",
+                                dp.getVO().getExtendedName()));
+            }
+
+            @Override
+            public void matchGeneralFailure(Exception e) {
+                if (e instanceof ParseException)
+                    raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
+                            new TranslatableMessage("file.event.dateParseFailed", e.getMessage()));
+                else if (e instanceof NumberFormatException) {
+                    raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
+                            new TranslatableMessage("file.event.notNumber", e.getMessage()));
+                } else
+                    raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
+                            new TranslatableMessage("file.event.readFailed", e.getMessage()));
+            }
+
+        };
+    }
+
+    /**
+     * Store the tail position with the data source so we resume from it after a restart
+     * @param position - the values read before it have been saved
+     */
+    private void saveTailPosition(TailPosition position) {
+        try {
+            DataSourceDao.getInstance().savePersistentData(vo.getId(), position);
+        } catch (Exception e) {
+            LOG.warn("Failed to save tail position for data source " + vo.getName(), e);
         }
+    }
 
+    /**
+     * Load the tail position saved by a previous run of this data source
+     */
+    private TailPosition loadTailPosition() {
+        try {
+            Object data = DataSourceDao.getInstance().getPersistentData(vo.getId());
+            if (data instanceof TailPosition) {
+                return (TailPosition) data;
+            }
+        } catch (Exception e) {
+            LOG.warn("Failed to load tail position for data source " + vo.getName(), e);
+        }
+        return null;
     }
 
     @Override
@@ -303,35 +354,8 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
                     if (LOG.isDebugEnabled())
                         LOG.debug("Point Identified: " + messageMatcher.group(pointIdentifierIndex));
 
-                    String value = messageMatcher.group(valueIndex);
-                    PointValueTime newValue;
-                    Date dt;
-                    if (hasTimestamp && !timestampFormat.equals(".")) {
-                        SimpleDateFormat fmt = new SimpleDateFormat(timestampFormat);
-                        dt = fmt.parse(messageMatcher.group(timestampIndex));
-                    } else if (hasTimestamp) {
-                        dt = new Date(Long.parseLong(messageMatcher.group(timestampIndex)));
-                    } else {
-                        dt = new Date();
-                    }
-
-                    // Switch on the type
-                    switch (dataTypeId) {
-                        case DataTypes.ALPHANUMERIC:
-                            newValue = new PointValueTime(value, dt.getTime());
-                            break;
-                        case DataTypes.NUMERIC:
-                            newValue = new PointValueTime(Double.parseDouble(value), dt.getTime());
-                            break;
-                        case DataTypes.MULTISTATE:
-                            newValue = new PointValueTime(Integer.parseInt(value), dt.getTime());
-                            break;
-                        case DataTypes.BINARY:
-                            newValue = new PointValueTime(Boolean.parseBoolean(value), dt.getTime());
-                            break;
-                        default:
-                            throw new ShouldNeverHappenException("Uknown Data type for point");
-                    }
+                    PointValueTime newValue = createPointValueTime(messageMatcher, dataTypeId, valueIndex,
+                            hasTimestamp, timestampIndex, timestampFormat);
                     callback.onMatch(messageMatcher.group(pointIdentifierIndex), newValue);
                 }
             } catch (Exception e) {
@@ -341,6 +365,37 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
         }
     }
 
+    /**
+     * Create the value for a point from a matcher that has matched its value regex
+     *
+     * @throws ParseException if the timestamp cannot be parsed
+     * @throws NumberFormatException if the value or timestamp is not numeric
+     */
+    public static PointValueTime createPointValueTime(Matcher messageMatcher, int dataTypeId, int valueIndex,
+            boolean hasTimestamp, int timestampIndex, String timestampFormat) throws ParseException {
+        String value = messageMatcher.group(valueIndex);
+        long time;
+        if (hasTimestamp) {
+            time = AsciiFileTimestampParser.get(timestampFormat).parse(messageMatcher.group(timestampIndex));
+        } else {
+            time = Common.timer.currentTimeMillis();
+        }
+
+        // Switch on the type
+        switch (dataTypeId) {
+            case DataTypes.ALPHANUMERIC:
+                return new PointValueTime(value, time);
+            case DataTypes.NUMERIC:
+                return new PointValueTime(Double.parseDouble(value), time);
+            case DataTypes.MULTISTATE:
+                return new PointValueTime(Integer.parseInt(value), time);
+            case DataTypes.BINARY:
+                return new PointValueTime(Boolean.parseBoolean(value), time);
+            default:
+                throw new ShouldNeverHappenException("Uknown Data type for point");
+        }
+    }
+
     @Override
     public void systemSettingsSaved(String key, String oldValue, String newValue) {
         this.restrictedPath = isPathRestricted(newValue);
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.asciifile.rt;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.infiniteautomation.asciifile.vo.AsciiFilePointLocatorVO;
+import com.infiniteautomation.mango.regex.MatchCallback;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+
+/**
+ * Matches lines against the value regex of many points at once.  Points sharing an identical
+ * value regex are grouped so each line is matched only once per distinct regex, the point(s)
+ * are then found by the extracted identifier.  This reduces the work per line from
+ * one match per point to one match per distinct regex.
+ *
+ * Not thread safe, the matchers are re-used for every line.
+ */
+public class AsciiFileLineDispatcher {
+
+    private final Map<String, PatternGroup> groups = new LinkedHashMap<>();
+
+    public AsciiFileLineDispatcher() {
+
+    }
+
+    /**
+     * @param dataPoints - the points to dispatch to
+     * @param callbackFactory - creates the callback used to report matches for a point
+     */
+    public AsciiFileLineDispatcher(Collection<DataPointRT> dataPoints, Function<DataPointRT, MatchCallback> callbackFactory) {
+        for (DataPointRT dp : dataPoints) {
+            AsciiFilePointLocatorRT pl = dp.getPointLocator();
+            addPoint(pl.getValuePattern(), pl.getVo(), callbackFactory.apply(dp));
+        }
+    }
+
+    /**
+     * Add a point to dispatch matches to
+     * @param valuePattern - compiled value regex of the locator
+     * @param locator
+     * @param callback - receives matches for this point
+     */
+    public void addPoint(Pattern valuePattern, AsciiFilePointLocatorVO locator, MatchCallback callback) {
+        PatternGroup group = groups.computeIfAbsent(valuePattern.pattern(), k -> new PatternGroup(valuePattern));
+        group.add(new PointEntry(locator, callback));
+    }
+
+    /**
+     * Match a line, each point that is identified is sent its value via its callback
+     * @param message
+     */
+    public void dispatch(String message) {
+        for (PatternGroup group : groups.values()) {
+            group.dispatch(message);
+        }
+    }
+
+    /**
+     * @return the number of distinct value patterns
+     */
+    public int getPatternCount() {
+        return groups.size();
+    }
+
+    private static class PatternGroup {
+        private final Pattern pattern;
+        private final Matcher matcher;
+        private final int groupCount;
+        //Identifier index to identifier to points
+        private final Map<Integer, Map<String, List<PointEntry>>> byIdentifierIndex = new HashMap<>();
+        //Points that require more groups than the pattern has
+        private final List<PointEntry> unidentifiable = new ArrayList<>();
+        //Points without an identifier, they fail to read every matching line
+        private final List<PointEntry> noIdentifier = new ArrayList<>();
+
+        PatternGroup(Pattern pattern) {
+            this.pattern = pattern;
+            this.matcher = pattern.matcher("");
+            this.groupCount = matcher.groupCount();
+        }
+
+        void add(PointEntry entry) {
+            AsciiFilePointLocatorVO vo = entry.vo;
+            if (vo.getPointIdentifierIndex() > groupCount || vo.getValueIndex() > groupCount) {
+                unidentifiable.add(entry);
+            } else if (vo.getPointIdentifier() == null) {
+                noIdentifier.add(entry);
+            } else {
+                byIdentifierIndex.computeIfAbsent(vo.getPointIdentifierIndex(), k -> new HashMap<>())
+                .computeIfAbsent(vo.getPointIdentifier(), k -> new ArrayList<>(1)).add(entry);
+            }
+        }
+
+        void dispatch(String message) {
+            matcher.reset(message);
+            if (!matcher.find()) {
+                return;
+            }
+
+            for (PointEntry entry : unidentifiable) {
+                entry.callback.pointNotIdentified(message, pattern.pattern(), entry.vo.getPointIdentifierIndex());
+            }
+
+            for (PointEntry entry : noIdentifier) {
+                entry.callback.matchGeneralFailure(new NullPointerException("Point identifier is not set"));
+            }
+
+            for (Map.Entry<Integer, Map<String, List<PointEntry>>> byIndex : byIdentifierIndex.entrySet()) {
+                String identifier = matcher.group(byIndex.getKey());
+                if (identifier == null) {
+                    continue;
+                }
+                List<PointEntry> entries = byIndex.getValue().get(identifier);
+                if (entries == null) {
+                    continue;
+                }
+                for (PointEntry entry : entries) {
+                    AsciiFilePointLocatorVO vo = entry.vo;
+                    try {
+                        PointValueTime value = AsciiFileDataSourceRT.createPointValueTime(matcher, vo.getDataTypeId(),
+                                vo.getValueIndex(), vo.getHasTimestamp(), vo.getTimestampIndex(), vo.getTimestampFormat());
+                        entry.callback.onMatch(identifier, value);
+                    } catch (Exception e) {
+                        entry.callback.matchGeneralFailure(e);
+                    }
+                }
+            }
+        }
+    }
+
+    private static class PointEntry {
+        private final AsciiFilePointLocatorVO vo;
+        private final MatchCallback callback;
+
+        PointEntry(AsciiFilePointLocatorVO vo, MatchCallback callback) {
+            this.vo = vo;
+            this.callback = callback;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.asciifile.rt;
+
+import java.util.List;
+
+import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueChangeTracker;
+import com.infiniteautomation.mango.rt.PointValueBatch;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT.FireEvents;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+
+/**
+ * Saves the values read from the file during a poll or a bulk import off of the reading thread.  Points that read
+ * their timestamp from the file are saved directly to their cache without firing events, others are updated as usual.
+ */
+public class AsciiFilePointValueBatch extends PointValueBatch {
+
+    public AsciiFilePointValueBatch(String description) {
+        super(description);
+    }
+
+    @Override
+    protected void deliver(DataPointRT dp, List<PointValueTime> values) {
+        if (!((AsciiFilePointLocatorRT) dp.getPointLocator()).getVo().getHasTimestamp()) {
+            super.deliver(dp, values);
+            return;
+        }
+        long earliest = Long.MAX_VALUE;
+        for (PointValueTime pvt : values) {
+            dp.savePointValueDirectToCache(pvt, null, true, true, FireEvents.NEVER);
+            earliest = Math.min(earliest, pvt.getTime());
+        }
+        //The point does not tell the point value caches about values saved without firing events
+        PointValueChangeTracker.notifyChanged(dp.getVO().getSeriesId(), earliest);
+    }
+}
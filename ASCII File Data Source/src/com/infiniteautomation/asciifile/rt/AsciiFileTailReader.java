@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.asciifile.rt;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Reads only the lines appended to a file since the previous read. The byte offset of the
+ * last complete line and the identity of the file are remembered so that a file which has been
+ * rotated (replaced) or truncated is read again from the start.
+ *
+ * Partial lines at the end of the file are not consumed, they will be read once the writer
+ * has terminated them.
+ */
+public class AsciiFileTailReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path path;
+    private final Charset charset;
+    private TailPosition position;
+
+    public AsciiFileTailReader(Path path, TailPosition position) {
+        this(path, Charset.defaultCharset(), position);
+    }
+
+    public AsciiFileTailReader(Path path, Charset charset, TailPosition position) {
+        this.path = path;
+        this.charset = charset;
+        this.position = position == null ? new TailPosition() : position;
+    }
+
+    /**
+     * Read all complete lines appended since the last call.
+     *
+     * @param lineConsumer receives each line without its terminator
+     * @return true if the position changed and should be persisted
+     * @throws IOException
+     */
+    public boolean readAppendedLines(Consumer<String> lineConsumer) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        String fileKey = attributes.fileKey() == null ? null : attributes.fileKey().toString();
+        long size = attributes.size();
+
+        TailPosition start = position;
+        if (!Objects.equals(fileKey, position.getFileKey()) || size < position.getOffset()) {
+            //File was rotated or truncated, start over
+            start = new TailPosition(fileKey, 0);
+        }
+
+        if (size == start.getOffset()) {
+            boolean changed = start != position;
+            position = start;
+            return changed;
+        }
+
+        long offset = start.getOffset();
+        long consumed = offset;
+        ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.position(offset);
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    offset++;
+                    if (b == '\n') {
+                        lineConsumer.accept(decode(line));
+                        line.reset();
+                        consumed = offset;
+                    } else {
+                        line.write(b);
+                    }
+                }
+                buffer.clear();
+            }
+        }
+
+        position = new TailPosition(fileKey, consumed);
+        return true;
+    }
+
+    /**
+     * Decode a line, dropping the carriage return of CRLF terminated lines
+     */
+    private String decode(ByteArrayOutputStream line) {
+        byte[] bytes = line.toByteArray();
+        int length = bytes.length;
+        if (length > 0 && bytes[length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, 0, length, charset);
+    }
+
+    public TailPosition getPosition() {
+        return position;
+    }
+
+    /**
+     * Immutable position within a file, persisted with the data source so
+     *  reading can resume after a restart
+     */
+    public static class TailPosition implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String fileKey;
+        private final long offset;
+
+        public TailPosition() {
+            this(null, 0);
+        }
+
+        public TailPosition(String fileKey, long offset) {
+            this.fileKey = fileKey;
+            this.offset = offset;
+        }
+
+        /**
+         * @return the file system identity of the file (i.e. device and inode), may be null
+         */
+        public String getFileKey() {
+            return fileKey;
+        }
+
+        /**
+         * @return byte offset just past the last line that was read
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        @Override
+        public String toString() {
+            return "TailPosition [fileKey=" + fileKey + ", offset=" + offset + "]";
+        }
+    }
+}
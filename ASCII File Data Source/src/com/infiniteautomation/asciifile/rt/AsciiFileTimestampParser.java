@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.asciifile.rt;
+
+import java.text.ParseException;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.ResolverStyle;
+import java.time.format.SignStyle;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Thread safe parser for the timestamps captured from a file, parsers are cached per format so
+ * they are only created once no matter how many lines are read.
+ *
+ * Formats are SimpleDateFormat patterns. Patterns of the common numeric fields are parsed with an
+ * immutable DateTimeFormatter that is as lenient as a SimpleDateFormat, any other pattern falls back to
+ * a SimpleDateFormat per thread. The special formats {@link #EPOCH_MILLIS_FORMAT} and {@link #ISO_8601_FORMAT} are
+ * parsed directly.
+ */
+public abstract class AsciiFileTimestampParser {
+
+    /**
+     * Timestamp is milliseconds since the epoch
+     */
+    public static final String EPOCH_MILLIS_FORMAT = ".";
+    /**
+     * Timestamp is an ISO-8601 date time with optional offset/zone, local times are in the server's time zone
+     */
+    public static final String ISO_8601_FORMAT = "ISO-8601";
+
+    /**
+     * Formats in use are few, more than this means formats are being edited and the old ones can go
+     */
+    static final int MAX_CACHED = 64;
+    private static final ConcurrentMap<String, AsciiFileTimestampParser> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * Get the shared parser for a format
+     * @param format
+     * @return
+     * @throws IllegalArgumentException if the format is not a valid pattern
+     */
+    public static AsciiFileTimestampParser get(String format) {
+        AsciiFileTimestampParser parser = CACHE.get(format);
+        if (parser == null) {
+            if (CACHE.size() >= MAX_CACHED) {
+                CACHE.clear();
+            }
+            parser = CACHE.computeIfAbsent(format, AsciiFileTimestampParser::create);
+        }
+        return parser;
+    }
+
+    /**
+     * Check a format without caching its parser
+     * @param format
+     * @throws IllegalArgumentException if the format is not a valid pattern
+     */
+    public static void validate(String format) {
+        create(format);
+    }
+
+    static int cacheSize() {
+        return CACHE.size();
+    }
+
+    /**
+     * Parse a timestamp
+     * @param text
+     * @return epoch milliseconds
+     * @throws ParseException if the text cannot be parsed
+     */
+    public abstract long parse(String text) throws ParseException;
+
+    private static AsciiFileTimestampParser create(String format) {
+        if (EPOCH_MILLIS_FORMAT.equals(format)) {
+            return new EpochMillisParser();
+        } else if (ISO_8601_FORMAT.equals(format)) {
+            return new IsoParser();
+        } else {
+            DateTimeFormatter formatter = createFormatter(format);
+            return formatter != null ? new FormatterParser(formatter) : new SimpleDateFormatParser(format);
+        }
+    }
+
+    /**
+     * Build a DateTimeFormatter that parses a SimpleDateFormat pattern like a lenient SimpleDateFormat. Numbers
+     * are any width unless followed directly by another number and values out of range roll over into the next
+     * field, so "2021-1-5 7:05:3" and "2021-02-30" parse as they did before.
+     *
+     * @return null if the pattern has a field whose meaning is not the same in both, only the common numeric
+     *  fields are allowed
+     */
+    static DateTimeFormatter createFormatter(String format) {
+        List<Object> tokens = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        boolean inQuote = false;
+        int i = 0;
+        while (i < format.length()) {
+            char c = format.charAt(i);
+            if (c == '\'') {
+                if (i + 1 < format.length() && format.charAt(i + 1) == '\'') {
+                    //Escaped quote
+                    literal.append(c);
+                    i += 2;
+                } else {
+                    inQuote = !inQuote;
+                    i++;
+                }
+                continue;
+            }
+            if (inQuote || !isPatternLetter(c)) {
+                literal.append(c);
+                i++;
+                continue;
+            }
+            int count = 1;
+            while (i + count < format.length() && format.charAt(i + count) == c) {
+                count++;
+            }
+            FieldToken field = FieldToken.create(c, count);
+            if (field == null) {
+                return null;
+            }
+            if (literal.length() > 0) {
+                tokens.add(literal.toString());
+                literal.setLength(0);
+            }
+            tokens.add(field);
+            i += count;
+        }
+        if (inQuote) {
+            return null;
+        }
+        if (literal.length() > 0) {
+            tokens.add(literal.toString());
+        }
+
+        DateTimeFormatterBuilder builder = new DateTimeFormatterBuilder();
+        for (int t = 0; t < tokens.size(); t++) {
+            Object token = tokens.get(t);
+            if (token instanceof String) {
+                builder.appendLiteral((String) token);
+            } else {
+                FieldToken field = (FieldToken) token;
+                if (field.field == null) {
+                    builder.appendPattern(field.pattern);
+                } else if (t + 1 < tokens.size() && tokens.get(t + 1) instanceof FieldToken && ((FieldToken) tokens.get(t + 1)).field != null) {
+                    //Like SimpleDateFormat, the width separates adjacent numbers
+                    builder.appendValue(field.field, field.width);
+                } else {
+                    builder.appendValue(field.field, 1, 19, SignStyle.NORMAL);
+                }
+            }
+        }
+        return builder.parseDefaulting(ChronoField.YEAR_OF_ERA, 1970)
+                .parseDefaulting(ChronoField.MONTH_OF_YEAR, 1)
+                .parseDefaulting(ChronoField.DAY_OF_MONTH, 1)
+                .parseDefaulting(ChronoField.HOUR_OF_DAY, 0)
+                .parseDefaulting(ChronoField.MINUTE_OF_HOUR, 0)
+                .parseDefaulting(ChronoField.SECOND_OF_MINUTE, 0)
+                .parseDefaulting(ChronoField.MILLI_OF_SECOND, 0)
+                .toFormatter()
+                .withResolverStyle(ResolverStyle.LENIENT);
+    }
+
+    private static boolean isPatternLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * A numeric field or an offset of a pattern
+     */
+    private static class FieldToken {
+        //Null for an offset
+        final ChronoField field;
+        final int width;
+        final String pattern;
+
+        FieldToken(ChronoField field, int width, String pattern) {
+            this.field = field;
+            this.width = width;
+            this.pattern = pattern;
+        }
+
+        static FieldToken create(char letter, int count) {
+            switch (letter) {
+                case 'y':
+                    //1 and 2 digit years resolve against a different century
+                    return count > 2 ? new FieldToken(ChronoField.YEAR_OF_ERA, count, null) : null;
+                case 'M':
+                    //Text months are locale/style dependent
+                    return count <= 2 ? new FieldToken(ChronoField.MONTH_OF_YEAR, count, null) : null;
+                case 'd':
+                    return new FieldToken(ChronoField.DAY_OF_MONTH, count, null);
+                case 'H':
+                    return new FieldToken(ChronoField.HOUR_OF_DAY, count, null);
+                case 'm':
+                    return new FieldToken(ChronoField.MINUTE_OF_HOUR, count, null);
+                case 's':
+                    return new FieldToken(ChronoField.SECOND_OF_MINUTE, count, null);
+                case 'S':
+                    //Always milliseconds, not a fraction of a second
+                    return new FieldToken(ChronoField.MILLI_OF_SECOND, count, null);
+                case 'X':
+                    //Same ISO 8601 offsets, more than 3 is invalid for SimpleDateFormat
+                    return count <= 3 ? new FieldToken(null, count, format('X', count)) : null;
+                default:
+                    return null;
+            }
+        }
+
+        private static String format(char letter, int count) {
+            StringBuilder pattern = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                pattern.append(letter);
+            }
+            return pattern.toString();
+        }
+    }
+
+    private static class EpochMillisParser extends AsciiFileTimestampParser {
+        @Override
+        public long parse(String text) throws ParseException {
+            return Long.parseLong(text);
+        }
+    }
+
+    private static class IsoParser extends AsciiFileTimestampParser {
+        @Override
+        public long parse(String text) throws ParseException {
+            try {
+                TemporalAccessor parsed = DateTimeFormatter.ISO_DATE_TIME.parse(text);
+                return toEpochMillis(parsed);
+            } catch (DateTimeException e) {
+                throw toParseException(e);
+            }
+        }
+    }
+
+    private static class FormatterParser extends AsciiFileTimestampParser {
+        private final DateTimeFormatter formatter;
+
+        FormatterParser(DateTimeFormatter formatter) {
+            this.formatter = formatter;
+        }
+
+        @Override
+        public long parse(String text) throws ParseException {
+            try {
+                //Like SimpleDateFormat, allow trailing text
+                TemporalAccessor parsed = formatter.parse(text, new ParsePosition(0));
+                return toEpochMillis(parsed);
+            } catch (DateTimeException e) {
+                throw toParseException(e);
+            }
+        }
+    }
+
+    private static class SimpleDateFormatParser extends AsciiFileTimestampParser {
+        private final ThreadLocal<SimpleDateFormat> format;
+
+        SimpleDateFormatParser(String pattern) {
+            //Validate the pattern now
+            new SimpleDateFormat(pattern);
+            this.format = ThreadLocal.withInitial(() -> new SimpleDateFormat(pattern));
+        }
+
+        @Override
+        public long parse(String text) throws ParseException {
+            Date date = format.get().parse(text);
+            return date.getTime();
+        }
+    }
+
+    private static long toEpochMillis(TemporalAccessor parsed) {
+        if (parsed.isSupported(ChronoField.INSTANT_SECONDS)) {
+            return Instant.from(parsed).toEpochMilli();
+        }
+        return LocalDateTime.from(parsed).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static ParseException toParseException(DateTimeException e) {
+        ParseException pe = new ParseException(e.getMessage(), 0);
+        pe.initCause(e);
+        return pe;
+    }
+}
@@ -4,6 +4,7 @@
 package com.infiniteautomation.mango.rest.latest;
 
 import java.io.File;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -12,22 +13,41 @@ import java.util.regex.Pattern;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.text.StringEscapeUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import com.infiniteautomation.asciifile.AsciiFileSystemSettingsDefinition;
+import com.infiniteautomation.asciifile.rt.AsciiFileBulkImporter;
+import com.infiniteautomation.asciifile.rt.AsciiFileBulkImporter.ImportListener;
 import com.infiniteautomation.asciifile.rt.AsciiFileDataSourceRT;
 import com.infiniteautomation.asciifile.vo.AsciiFileDataSourceVO;
 import com.infiniteautomation.asciifile.vo.AsciiFilePointLocatorVO;
 import com.infiniteautomation.mango.regex.MatchCallback;
+import com.infiniteautomation.mango.rest.latest.exception.AbstractRestException;
 import com.infiniteautomation.mango.rest.latest.exception.BadRequestException;
+import com.infiniteautomation.mango.rest.latest.model.AsciiFileBulkImportParams;
+import com.infiniteautomation.mango.rest.latest.model.AsciiFileImportResultModel;
 import com.infiniteautomation.mango.rest.latest.model.AsciiFileTestResultModel;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueChangeTracker;
+import com.infiniteautomation.mango.rest.latest.temporaryResource.MangoTaskTemporaryResourceManager;
+import com.infiniteautomation.mango.rest.latest.temporaryResource.TemporaryResource;
+import com.infiniteautomation.mango.rest.latest.temporaryResource.TemporaryResource.TemporaryResourceStatus;
+import com.infiniteautomation.mango.rest.latest.temporaryResource.TemporaryResourceStatusUpdate;
+import com.infiniteautomation.mango.rest.latest.temporaryResource.TemporaryResourceWebSocketHandler;
+import com.infiniteautomation.mango.spring.service.DataPointService;
 import com.infiniteautomation.mango.spring.service.DataSourceService;
+import com.infiniteautomation.mango.spring.service.PermissionService;
 import com.serotonin.m2m2.db.dao.DataPointDao;
 import com.serotonin.m2m2.db.dao.SystemSettingsDao;
 import com.serotonin.m2m2.i18n.TranslatableMessage;
@@ -51,10 +71,19 @@ import io.swagger.annotations.ApiParam;
 public class AsciiFileDataSourceRestController {
 
     private final DataSourceService service;
+    private final DataPointService dataPointService;
+    private final PermissionService permissionService;
+    private final PointValueChangeTracker changeTracker;
+    private final MangoTaskTemporaryResourceManager<AsciiFileImportResultModel> importResourceManager;
 
     @Autowired
-    public AsciiFileDataSourceRestController(DataSourceService service) {
+    public AsciiFileDataSourceRestController(DataSourceService service, DataPointService dataPointService,
+            PermissionService permissionService, PointValueChangeTracker changeTracker, TemporaryResourceWebSocketHandler websocket, Environment environment) {
         this.service = service;
+        this.dataPointService = dataPointService;
+        this.permissionService = permissionService;
+        this.changeTracker = changeTracker;
+        this.importResourceManager = new MangoTaskTemporaryResourceManager<>(permissionService, websocket, environment);
     }
 
     @PreAuthorize("isGrantedPermission('permissionDatasource')")
@@ -71,6 +100,123 @@ public class AsciiFileDataSourceRestController {
             throw new BadRequestException(new TranslatableMessage("dsEdit.file.ioexceptionCanonical", path));
         }
 
+        ensureReadable(path, user);
+    }
+
+    @PreAuthorize("isGrantedPermission('permissionDatasource')")
+    @ApiOperation(value = "Bulk import the historic values in an ASCII file",
+            notes = "Imports the values of all points that read their timestamp from the file, " +
+            "the file is parsed in parallel. Requires edit permission on the data source and set permission on the points. " +
+            "Use the created header to track progress/cancel")
+    @RequestMapping(method = RequestMethod.POST, value = "/bulk-import/{xid}")
+    public ResponseEntity<TemporaryResource<AsciiFileImportResultModel, AbstractRestException>> bulkImport(
+            @ApiParam(value = "Valid ASCII data source XID", required = true, allowMultiple = false)
+            @PathVariable String xid,
+            @ApiParam(value = "Approximate size of each chunk in bytes, 64KB to 256MB", required = false, allowMultiple = false)
+            @RequestParam(required = false) Integer chunkSize,
+            @ApiParam(value = "Number of threads to parse with, at most the number of processors which is the default. " +
+                    "parallelism * 2 chunks must not exceed 1GB", required = false, allowMultiple = false)
+            @RequestParam(required = false) Integer parallelism,
+            @ApiParam(value = "Time after completion that the task is removed (ms)", required = false, allowMultiple = false)
+            @RequestParam(required = false) Long expiry,
+            @ApiParam(value = "Time after which the task times out (ms)", required = false, allowMultiple = false)
+            @RequestParam(required = false) Long timeout,
+            @AuthenticationPrincipal PermissionHolder user,
+            UriComponentsBuilder builder) {
+
+        AsciiFileBulkImportParams params = new AsciiFileBulkImportParams(chunkSize, parallelism);
+        params.ensureValid();
+
+        DataSourceVO ds = service.get(xid);
+        if(!(ds instanceof AsciiFileDataSourceVO))
+            throw new BadRequestException(new TranslatableMessage("validate.incompatibleDataSourceType"));
+        permissionService.ensurePermission(user, ds.getEditPermission());
+        String filePath = ((AsciiFileDataSourceVO)ds).getFilePath();
+        ensureReadable(filePath, user);
+
+        List<DataPointVO> points = dataPointService.getDataPoints(ds.getId());
+        for(DataPointVO point : points) {
+            AsciiFilePointLocatorVO locator = point.getPointLocator();
+            if(locator.getHasTimestamp() && !permissionService.hasPermission(user, point.getSetPermission()))
+                throw new PermissionException(new TranslatableMessage("permission.exception.setDataPoint", user.getPermissionHolderName()), user);
+        }
+        int size = params.getChunkSizeOrDefault();
+        int threads = params.getParallelismOrDefault();
+
+        TemporaryResource<AsciiFileImportResultModel, AbstractRestException> response = importResourceManager.newTemporaryResource(
+                "ASCII_FILE_IMPORT", null, expiry, timeout, (resource) -> {
+                    AsciiFileBulkImporter importer = new AsciiFileBulkImporter(Paths.get(filePath), points, size, threads, changeTracker);
+                    importer.run(new ImportListener() {
+                        @Override
+                        public void progress(int chunksComplete, int chunks) {
+                            resource.progress(new AsciiFileImportResultModel(filePath, importer), chunksComplete, chunks);
+                        }
+
+                        @Override
+                        public boolean isCancelled() {
+                            return resource.isComplete();
+                        }
+                    });
+                    if(!resource.isComplete()) {
+                        resource.success(new AsciiFileImportResultModel(filePath, importer));
+                    }
+                    return null;
+                });
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setLocation(builder.path("/ascii-file-data-source/bulk-import/{id}").buildAndExpand(response.getId()).toUri());
+        return new ResponseEntity<>(response, headers, HttpStatus.CREATED);
+    }
+
+    @ApiOperation(value = "Update a bulk import task using its id",
+            notes = "Only allowed operation is to change the status to CANCELLED. " +
+            "User can only update their own import task unless they are an admin.")
+    @RequestMapping(method = RequestMethod.PUT, value="/bulk-import/{id}")
+    public TemporaryResource<AsciiFileImportResultModel, AbstractRestException> updateBulkImport(
+            @ApiParam(value = "Temporary resource id", required = true, allowMultiple = false)
+            @PathVariable String id,
+            @RequestBody
+            TemporaryResourceStatusUpdate body) {
+
+        TemporaryResource<AsciiFileImportResultModel, AbstractRestException> resource = importResourceManager.get(id);
+
+        if (body.getStatus() == TemporaryResourceStatus.CANCELLED) {
+            if(!resource.isComplete()) {
+                resource.cancel();
+            }
+        } else {
+            throw new BadRequestException(new TranslatableMessage("rest.error.onlyCancel"));
+        }
+
+        return resource;
+    }
+
+    @ApiOperation(value = "Get the status of a bulk import using its id",
+            notes = "User can only get their own status unless they are an admin")
+    @RequestMapping(method = RequestMethod.GET, value="/bulk-import/{id}")
+    public TemporaryResource<AsciiFileImportResultModel, AbstractRestException> getBulkImportStatus(
+            @ApiParam(value = "Temporary resource id", required = true, allowMultiple = false)
+            @PathVariable String id) {
+
+        return importResourceManager.get(id);
+    }
+
+    @ApiOperation(value = "Remove a bulk import task using its id",
+            notes = "Will only remove a task if it is complete. " +
+            "User can only remove their own import task unless they are an admin.")
+    @RequestMapping(method = RequestMethod.DELETE, value="/bulk-import/{id}")
+    public void removeBulkImport(
+            @ApiParam(value = "Temporary resource id", required = true, allowMultiple = false)
+            @PathVariable String id) {
+
+        TemporaryResource<AsciiFileImportResultModel, AbstractRestException> resource = importResourceManager.get(id);
+        resource.remove();
+    }
+
+    /**
+     * Ensure the path is not restricted and can be read
+     */
+    private void ensureReadable(String path, PermissionHolder user) {
         String restrictedPaths = SystemSettingsDao.instance.getValue(AsciiFileSystemSettingsDefinition.RESTRICTED_PATH);
         if(!StringUtils.isEmpty(restrictedPaths))
             for(String p : restrictedPaths.split(";"))
@@ -78,6 +224,7 @@ public class AsciiFileDataSourceRestController {
                     throw new PermissionException(new TranslatableMessage("dsEdit.file.pathRestrictedBy", path), user);
                 }
 
+        File verify = new File(path);
         if (!verify.exists() || !verify.canRead())
             throw new PermissionException(new TranslatableMessage("dsEdit.file.cannotRead"), user);
     }
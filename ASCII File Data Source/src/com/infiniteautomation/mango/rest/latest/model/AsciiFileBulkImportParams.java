@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model;
+
+import com.infiniteautomation.asciifile.rt.AsciiFileBulkImporter;
+import com.infiniteautomation.mango.util.exception.ValidationException;
+import com.serotonin.m2m2.i18n.ProcessResult;
+
+/**
+ * Request parameters of a bulk import of an ASCII file, null parameters use the defaults
+ *
+ */
+public class AsciiFileBulkImportParams {
+
+    private Integer chunkSize;
+    private Integer parallelism;
+
+    public AsciiFileBulkImportParams() {
+
+    }
+
+    public AsciiFileBulkImportParams(Integer chunkSize, Integer parallelism) {
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * The chunk size must fit in a memory mapping and the chunks parsed at once (parallelism * 2) must not exceed
+     *  {@link AsciiFileBulkImporter#MAX_WINDOW_SIZE}
+     * @throws ValidationException
+     */
+    public void ensureValid() throws ValidationException {
+        ProcessResult result = new ProcessResult();
+        if (chunkSize != null && (chunkSize < AsciiFileBulkImporter.MIN_CHUNK_SIZE || chunkSize > AsciiFileBulkImporter.MAX_CHUNK_SIZE)) {
+            result.addContextualMessage("chunkSize", "file.validate.chunkSize", AsciiFileBulkImporter.MIN_CHUNK_SIZE, AsciiFileBulkImporter.MAX_CHUNK_SIZE);
+        }
+        int processors = Runtime.getRuntime().availableProcessors();
+        if (parallelism != null && (parallelism < 1 || parallelism > processors)) {
+            result.addContextualMessage("parallelism", "file.validate.parallelism", processors);
+        }
+        if (!result.getHasMessages() && AsciiFileBulkImporter.windowSize(getChunkSizeOrDefault(), getParallelismOrDefault()) > AsciiFileBulkImporter.MAX_WINDOW_SIZE) {
+            result.addContextualMessage("parallelism", "file.validate.parallelism", AsciiFileBulkImporter.maxParallelism(getChunkSizeOrDefault()));
+        }
+        result.ensureValid();
+    }
+
+    /**
+     * @return the chunk size to import with
+     */
+    public int getChunkSizeOrDefault() {
+        return chunkSize == null ? AsciiFileBulkImporter.DEFAULT_CHUNK_SIZE : chunkSize;
+    }
+
+    /**
+     * @return the parallelism to import with, by default the number of processors limited by the window size
+     */
+    public int getParallelismOrDefault() {
+        if (parallelism != null) {
+            return parallelism;
+        }
+        return Math.min(Runtime.getRuntime().availableProcessors(), AsciiFileBulkImporter.maxParallelism(getChunkSizeOrDefault()));
+    }
+
+    public Integer getChunkSize() {
+        return chunkSize;
+    }
+    public void setChunkSize(Integer chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+    public Integer getParallelism() {
+        return parallelism;
+    }
+    public void setParallelism(Integer parallelism) {
+        this.parallelism = parallelism;
+    }
+}
@@ -17,6 +17,7 @@ import io.swagger.annotations.ApiModel;
 public class AsciiFileDataSourceModel extends AbstractPollingDataSourceModel<AsciiFileDataSourceVO>{
     
     private String filePath;
+    private boolean tailMode;
     
     public AsciiFileDataSourceModel() {
 
@@ -35,6 +36,7 @@ public class AsciiFileDataSourceModel extends AbstractPollingDataSourceModel<Asc
     public AsciiFileDataSourceVO toVO() {
         AsciiFileDataSourceVO vo = super.toVO();
         vo.setFilePath(filePath);
+        vo.setTailMode(tailMode);
         return vo;
     }
     
@@ -42,6 +44,7 @@ public class AsciiFileDataSourceModel extends AbstractPollingDataSourceModel<Asc
     public void fromVO(AsciiFileDataSourceVO vo) {
         super.fromVO(vo);
         this.filePath = vo.getFilePath();
+        this.tailMode = vo.isTailMode();
     }
     
     /**
@@ -56,5 +59,19 @@ public class AsciiFileDataSourceModel extends AbstractPollingDataSourceModel<Asc
     public String getFilePath() {
         return filePath;
     }
+
+    /**
+     * @return the tailMode
+     */
+    public boolean isTailMode() {
+        return tailMode;
+    }
+
+    /**
+     * @param tailMode the tailMode to set
+     */
+    public void setTailMode(boolean tailMode) {
+        this.tailMode = tailMode;
+    }
     
 }
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model;
+
+import java.util.Map;
+
+import com.infiniteautomation.asciifile.rt.AsciiFileBulkImporter;
+
+/**
+ * Progress of a bulk import of an ASCII file
+ *
+ */
+public class AsciiFileImportResultModel {
+
+    private String filePath;
+    private long bytesRead;
+    private long linesRead;
+    private long valuesImported;
+    private long errors;
+    private Map<String, Long> pointValuesImported;
+
+    public AsciiFileImportResultModel() {
+
+    }
+
+    public AsciiFileImportResultModel(String filePath, AsciiFileBulkImporter importer) {
+        this.filePath = filePath;
+        this.bytesRead = importer.getBytesRead();
+        this.linesRead = importer.getLinesRead();
+        this.valuesImported = importer.getValuesImported();
+        this.errors = importer.getErrors();
+        this.pointValuesImported = importer.getPointValuesImported();
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+    }
+    public long getBytesRead() {
+        return bytesRead;
+    }
+    public void setBytesRead(long bytesRead) {
+        this.bytesRead = bytesRead;
+    }
+    public long getLinesRead() {
+        return linesRead;
+    }
+    public void setLinesRead(long linesRead) {
+        this.linesRead = linesRead;
+    }
+    public long getValuesImported() {
+        return valuesImported;
+    }
+    public void setValuesImported(long valuesImported) {
+        this.valuesImported = valuesImported;
+    }
+    public long getErrors() {
+        return errors;
+    }
+    public void setErrors(long errors) {
+        this.errors = errors;
+    }
+    /**
+     * @return xid to number of values imported
+     */
+    public Map<String, Long> getPointValuesImported() {
+        return pointValuesImported;
+    }
+    public void setPointValuesImported(Map<String, Long> pointValuesImported) {
+        this.pointValuesImported = pointValuesImported;
+    }
+}
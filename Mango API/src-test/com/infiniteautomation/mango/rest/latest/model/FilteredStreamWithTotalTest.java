@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.infiniteautomation.mango.util.RQLUtils;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.MangoTestBase;
+
+public class FilteredStreamWithTotalTest extends MangoTestBase {
+
+    public static class Item {
+        private final int index;
+        private final String group;
+        private final int value;
+
+        Item(int index, String group, int value) {
+            this.index = index;
+            this.group = group;
+            this.value = value;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getGroup() {
+            return group;
+        }
+
+        public int getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * Few distinct values so many items sort equally
+     */
+    private List<Item> items(int count) {
+        Random random = new Random(42);
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            items.add(new Item(i, i % 3 == 0 ? "a" : "b", random.nextInt(20)));
+        }
+        return items;
+    }
+
+    private FilteredStreamWithTotal<Item> query(List<Item> items, String rql) {
+        return new FilteredStreamWithTotal<>(items, RQLUtils.parseRQLtoAST(rql), Common.getTranslations());
+    }
+
+    private List<Integer> indexes(FilteredStreamWithTotal<Item> stream) {
+        return stream.getItems().map(Item::getIndex).collect(Collectors.toList());
+    }
+
+    /**
+     * Sort the matches of the whole list, a stable sort keeps equal items in source order
+     */
+    private List<Integer> expected(List<Item> items, Predicate<Item> filter, Comparator<Item> sort, int offset, int limit) {
+        List<Item> matches = items.stream().filter(filter).collect(Collectors.toList());
+        if (sort != null) {
+            matches.sort(sort);
+        }
+        return matches.stream().skip(offset).limit(limit).map(Item::getIndex).collect(Collectors.toList());
+    }
+
+    @Test
+    public void sortedPageMatchesFullSort() {
+        List<Item> items = items(1000);
+        FilteredStreamWithTotal<Item> stream = query(items, "eq(group,b)&sort(value)&limit(20,30)");
+
+        assertEquals(expected(items, i -> i.getGroup().equals("b"), Comparator.comparingInt(Item::getValue), 30, 20), indexes(stream));
+        assertEquals(items.stream().filter(i -> i.getGroup().equals("b")).count(), stream.getTotal());
+    }
+
+    @Test
+    public void descendingSortKeepsSourceOrderOfEqualItems() {
+        List<Item> items = items(1000);
+        FilteredStreamWithTotal<Item> stream = query(items, "sort(-value)&limit(50)");
+
+        assertEquals(expected(items, i -> true, Comparator.comparingInt(Item::getValue).reversed(), 0, 50), indexes(stream));
+        assertEquals(1000, stream.getTotal());
+    }
+
+    @Test
+    public void unsortedPageKeepsSourceOrder() {
+        List<Item> items = items(100);
+        FilteredStreamWithTotal<Item> stream = query(items, "eq(group,a)&limit(5,10)");
+
+        assertEquals(expected(items, i -> i.getGroup().equals("a"), null, 10, 5), indexes(stream));
+        assertEquals(34, stream.getTotal());
+    }
+
+    @Test
+    public void offsetAfterLastMatch() {
+        List<Item> items = items(100);
+        FilteredStreamWithTotal<Item> sorted = query(items, "sort(value)&limit(10,200)");
+        assertTrue(indexes(sorted).isEmpty());
+        assertEquals(100, sorted.getTotal());
+
+        FilteredStreamWithTotal<Item> unsorted = query(items, "limit(10,200)");
+        assertTrue(indexes(unsorted).isEmpty());
+        assertEquals(100, unsorted.getTotal());
+    }
+
+    @Test
+    public void zeroLimitOnlyCounts() {
+        List<Item> items = items(100);
+        FilteredStreamWithTotal<Item> stream = query(items, "sort(value)&limit(0)");
+        assertTrue(indexes(stream).isEmpty());
+        assertEquals(100, stream.getTotal());
+    }
+
+    @Test
+    public void withoutLimitAllMatchesStreamed() {
+        List<Item> items = items(100);
+        FilteredStreamWithTotal<Item> stream = query(items, "eq(group,a)&sort(value)");
+
+        assertEquals(expected(items, i -> i.getGroup().equals("a"), Comparator.comparingInt(Item::getValue), 0, 100), indexes(stream));
+        assertEquals(34, stream.getTotal());
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.serotonin.m2m2.vo.event.EventInstanceVO;
+
+public class EventAcknowledgeCoalescerTest {
+
+    private EventInstanceVO event(int id) {
+        EventInstanceVO vo = new EventInstanceVO();
+        vo.setId(id);
+        return vo;
+    }
+
+    @Test
+    public void testHeldDuringAndAfterBatch() {
+        EventAcknowledgeCoalescer coalescer = new EventAcknowledgeCoalescer(300);
+        List<List<EventInstanceVO>> notified = new ArrayList<>();
+        coalescer.addListener(notified::add);
+
+        List<EventInstanceVO> batch = Arrays.asList(event(1), event(2));
+        int result = coalescer.acknowledge(batch, () -> {
+            assertTrue(coalescer.isCoalesced(1));
+            assertTrue(coalescer.isCoalesced(2));
+            //Not part of the batch
+            assertFalse(coalescer.isCoalesced(3));
+            assertTrue(notified.isEmpty());
+            return 2;
+        });
+        assertEquals(2, result);
+
+        //Notifications of the event manager may arrive after the batch completes
+        assertTrue(coalescer.isCoalesced(1));
+        assertTrue(coalescer.isCoalesced(2));
+        assertFalse(coalescer.isCoalesced(3));
+
+        assertEquals(1, notified.size());
+        assertSame(batch, notified.get(0));
+    }
+
+    @Test
+    public void testReleasedAfterHoldPeriod() {
+        EventAcknowledgeCoalescer coalescer = new EventAcknowledgeCoalescer(0);
+        coalescer.acknowledge(Arrays.asList(event(1)), () -> {
+            assertTrue(coalescer.isCoalesced(1));
+            return null;
+        });
+        assertFalse(coalescer.isCoalesced(1));
+    }
+
+    @Test
+    public void testReleasedOnFailure() {
+        EventAcknowledgeCoalescer coalescer = new EventAcknowledgeCoalescer(300);
+        List<List<EventInstanceVO>> notified = new ArrayList<>();
+        coalescer.addListener(notified::add);
+
+        try {
+            coalescer.acknowledge(Arrays.asList(event(1)), () -> {
+                throw new IllegalStateException("failed");
+            });
+            fail("Should have thrown");
+        } catch (IllegalStateException e) {
+            //Expected
+        }
+        assertFalse(coalescer.isCoalesced(1));
+        assertTrue(notified.isEmpty());
+    }
+
+    @Test
+    public void testListeners() {
+        EventAcknowledgeCoalescer coalescer = new EventAcknowledgeCoalescer(300);
+        List<List<EventInstanceVO>> first = new ArrayList<>();
+        List<List<EventInstanceVO>> second = new ArrayList<>();
+        EventAcknowledgeCoalescer.AcknowledgedBatchListener failing = events -> {
+            throw new IllegalStateException("failed");
+        };
+        EventAcknowledgeCoalescer.AcknowledgedBatchListener secondListener = second::add;
+        coalescer.addListener(failing);
+        coalescer.addListener(first::add);
+        coalescer.addListener(secondListener);
+
+        //A failing listener does not stop the others
+        coalescer.acknowledge(Arrays.asList(event(1)), () -> null);
+        assertEquals(1, first.size());
+        assertEquals(1, second.size());
+
+        coalescer.removeListener(secondListener);
+        coalescer.acknowledge(Arrays.asList(event(2)), () -> null);
+        assertEquals(2, first.size());
+        assertEquals(1, second.size());
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.infiniteautomation.mango.db.query.ConditionSortLimit;
+import com.infiniteautomation.mango.db.tables.Events;
+import com.infiniteautomation.mango.spring.components.RunAs;
+import com.infiniteautomation.mango.spring.service.EventInstanceService;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.MockEventManager;
+import com.serotonin.m2m2.MockMangoLifecycle;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.rt.event.AlarmLevels;
+import com.serotonin.m2m2.rt.event.type.SystemEventType;
+import com.serotonin.m2m2.vo.event.EventInstanceVO;
+import com.serotonin.m2m2.vo.permission.PermissionHolder;
+
+public class EventBulkAcknowledgerTest extends MangoTestBase {
+
+    private static final int EVENTS = 250;
+    private static final int BATCH_SIZE = 100;
+
+    private void raiseEvents(AlarmLevels level, int count) {
+        SystemEventType type = new SystemEventType(SystemEventType.TYPE_SYSTEM_STARTUP);
+        long timestamp = Common.timer.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            Common.eventManager.raiseEvent(type, timestamp++, false, level, new TranslatableMessage("common.default", "testing"), null);
+        }
+    }
+
+    @Test
+    public void testAcknowledgeInBatches() {
+        raiseEvents(AlarmLevels.CRITICAL, EVENTS);
+        //Not matched by the condition
+        raiseEvents(AlarmLevels.URGENT, 10);
+
+        EventInstanceService service = Common.getBean(EventInstanceService.class);
+        EventAcknowledgeCoalescer coalescer = new EventAcknowledgeCoalescer(300);
+        List<List<EventInstanceVO>> batches = new ArrayList<>();
+        coalescer.addListener(batches::add);
+        List<Integer> progress = new ArrayList<>();
+
+        Events events = Events.EVENTS;
+        ConditionSortLimit conditions = new ConditionSortLimit(
+                events.alarmLevel.eq(AlarmLevels.CRITICAL.value()).and(events.ackTs.isNull()), null, null, null);
+        EventBulkAcknowledger acknowledger = new EventBulkAcknowledger(service, coalescer, BATCH_SIZE);
+        EventAcknowledgeBulkResult result = Common.getBean(RunAs.class).runAs(PermissionHolder.SYSTEM_SUPERADMIN,
+                () -> acknowledger.acknowledge(conditions, null, r -> progress.add(r.getAcknowledged())));
+
+        assertEquals(EVENTS, result.getTotal());
+        assertEquals(EVENTS, result.getAcknowledged());
+        assertEquals(3, result.getBatches());
+        //Before the first batch and after each batch
+        assertEquals(4, progress.size());
+        assertEquals(Integer.valueOf(0), progress.get(0));
+        assertEquals(Integer.valueOf(EVENTS), progress.get(3));
+
+        assertEquals(3, batches.size());
+        assertEquals(BATCH_SIZE, batches.get(0).size());
+        assertEquals(BATCH_SIZE, batches.get(1).size());
+        assertEquals(EVENTS - 2 * BATCH_SIZE, batches.get(2).size());
+
+        Set<Integer> ids = new HashSet<>();
+        int lastId = -1;
+        for (List<EventInstanceVO> batch : batches) {
+            for (EventInstanceVO vo : batch) {
+                //In ascending id order, each event once
+                assertTrue(vo.getId() > lastId);
+                lastId = vo.getId();
+                assertTrue(ids.add(vo.getId()));
+                assertEquals(AlarmLevels.CRITICAL, vo.getAlarmLevel());
+                assertTrue(coalescer.isCoalesced(vo.getId()));
+            }
+        }
+
+        //Nothing left to acknowledge, the other level is untouched
+        assertEquals(0, service.customizedCount(conditions));
+        assertEquals(10, service.customizedCount(new ConditionSortLimit(events.ackTs.isNull(), null, null, null)));
+    }
+
+    @Override
+    protected MockMangoLifecycle getLifecycle() {
+        MockMangoLifecycle lifecycle = super.getLifecycle();
+        lifecycle.setEventManager(new MockEventManager(true));
+        return lifecycle;
+    }
+}
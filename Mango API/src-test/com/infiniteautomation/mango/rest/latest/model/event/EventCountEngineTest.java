@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.infiniteautomation.mango.db.query.ConditionSortLimit;
+import com.infiniteautomation.mango.db.tables.Events;
+import com.infiniteautomation.mango.spring.components.RunAs;
+import com.infiniteautomation.mango.spring.service.EventInstanceService;
+import com.infiniteautomation.mango.spring.service.EventInstanceService.PeriodCounts;
+import com.infiniteautomation.mango.spring.service.PermissionService;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.MockEventManager;
+import com.serotonin.m2m2.MockMangoLifecycle;
+import com.serotonin.m2m2.db.dao.EventInstanceDao;
+import com.serotonin.m2m2.db.dao.UserDao;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.rt.event.AlarmLevels;
+import com.serotonin.m2m2.rt.event.type.SystemEventType;
+import com.serotonin.m2m2.vo.permission.PermissionHolder;
+
+import net.jazdw.rql.parser.ASTNode;
+
+public class EventCountEngineTest extends MangoTestBase {
+
+    /**
+     * Runs the table loads on the calling thread and counts them
+     */
+    private static class CountingExecutor extends AbstractExecutorService {
+        int executed;
+
+        @Override
+        public void execute(Runnable command) {
+            executed++;
+            command.run();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+
+    @Test
+    public void testPeriod() {
+        long[] bounds = {0, 10, 20, 30};
+        assertEquals(-1, EventCountEngine.period(bounds, -1));
+        assertEquals(0, EventCountEngine.period(bounds, 0));
+        assertEquals(0, EventCountEngine.period(bounds, 9));
+        assertEquals(1, EventCountEngine.period(bounds, 10));
+        assertEquals(2, EventCountEngine.period(bounds, 29));
+        //At or after the last boundary is outside of every period
+        assertEquals(3, EventCountEngine.period(bounds, 30));
+        assertEquals(3, EventCountEngine.period(bounds, 31));
+    }
+
+    @Test
+    public void testPeriodDuplicateBoundaries() {
+        //The empty period from 10 to 10 never gets a value
+        long[] bounds = {0, 10, 10, 10, 20};
+        assertEquals(0, EventCountEngine.period(bounds, 9));
+        assertEquals(3, EventCountEngine.period(bounds, 10));
+        assertEquals(3, EventCountEngine.period(bounds, 19));
+        assertEquals(4, EventCountEngine.period(bounds, 20));
+
+        long[] sameEnd = {0, 10, 20, 20};
+        assertEquals(1, EventCountEngine.period(sameEnd, 19));
+        assertEquals(3, EventCountEngine.period(sameEnd, 20));
+    }
+
+    @Test
+    public void testAlarmLevelsNoQuery() {
+        assertEquals(EnumSet.allOf(AlarmLevels.class), EventCountEngine.alarmLevels(null));
+    }
+
+    @Test
+    public void testAlarmLevelsEq() {
+        assertEquals(EnumSet.of(AlarmLevels.URGENT), EventCountEngine.alarmLevels(new ASTNode("eq", "alarmLevel", "URGENT")));
+    }
+
+    @Test
+    public void testAlarmLevelsIn() {
+        assertEquals(EnumSet.of(AlarmLevels.URGENT, AlarmLevels.CRITICAL),
+                EventCountEngine.alarmLevels(new ASTNode("in", "alarmLevel", "URGENT", "CRITICAL")));
+        assertEquals(EnumSet.of(AlarmLevels.URGENT, AlarmLevels.CRITICAL),
+                EventCountEngine.alarmLevels(new ASTNode("in", "alarmLevel", Arrays.asList("URGENT", "CRITICAL"))));
+    }
+
+    @Test
+    public void testAlarmLevelsAnd() {
+        ASTNode query = new ASTNode("and",
+                new ASTNode("in", "alarmLevel", "URGENT", "CRITICAL", "WARNING"),
+                new ASTNode("in", "alarmLevel", "CRITICAL", "WARNING", "NONE"));
+        assertEquals(EnumSet.of(AlarmLevels.CRITICAL, AlarmLevels.WARNING), EventCountEngine.alarmLevels(query));
+    }
+
+    @Test
+    public void testAlarmLevelsOtherRestrictions() {
+        assertNull(EventCountEngine.alarmLevels(new ASTNode("eq", "eventType", "DATA_POINT")));
+        assertNull(EventCountEngine.alarmLevels(new ASTNode("ne", "alarmLevel", "URGENT")));
+        assertNull(EventCountEngine.alarmLevels(new ASTNode("or",
+                new ASTNode("eq", "alarmLevel", "URGENT"), new ASTNode("eq", "alarmLevel", "CRITICAL"))));
+        assertNull(EventCountEngine.alarmLevels(new ASTNode("and",
+                new ASTNode("eq", "alarmLevel", "URGENT"), new ASTNode("eq", "acknowledged", null))));
+        assertNull(EventCountEngine.alarmLevels(new ASTNode("eq", "alarmLevel", "NOT_A_LEVEL")));
+        assertNull(EventCountEngine.alarmLevels(new ASTNode("eq", "alarmLevel")));
+    }
+
+    private void raiseEvents(AlarmLevels level, long timestamp, int count) {
+        SystemEventType type = new SystemEventType(SystemEventType.TYPE_SYSTEM_STARTUP);
+        for (int i = 0; i < count; i++) {
+            Common.eventManager.raiseEvent(type, timestamp + i, false, level, new TranslatableMessage("common.default", "testing"), null);
+        }
+    }
+
+    private List<Integer> count(EventCountEngine engine, Set<AlarmLevels> levels, ZonedDateTime... boundaries) {
+        List<Date> dates = new ArrayList<>();
+        for (ZonedDateTime boundary : boundaries) {
+            dates.add(Date.from(boundary.toInstant()));
+        }
+        Events events = Events.EVENTS;
+        ConditionSortLimit conditions = new ConditionSortLimit(events.activeTs.ge(dates.get(0).getTime())
+                .and(events.activeTs.lt(dates.get(dates.size() - 1).getTime()))
+                .and(events.alarmLevel.in(levels.stream().map(AlarmLevels::value).toArray(Integer[]::new))), null, null, null);
+        List<Integer> counts = new ArrayList<>();
+        for (PeriodCounts period : engine.count(PermissionHolder.SYSTEM_SUPERADMIN, levels, dates, conditions)) {
+            counts.add(period.getCount());
+        }
+        return counts;
+    }
+
+    @Test
+    public void testEventsRaisedDuringCount() {
+        ZoneId zone = ZoneId.systemDefault();
+        ZonedDateTime today = Instant.ofEpochMilli(Common.timer.currentTimeMillis()).atZone(zone).toLocalDate().plusDays(1).atStartOfDay(zone);
+        timer.fastForwardTo(today.plusHours(12).toInstant().toEpochMilli());
+        ZonedDateTime yesterday = today.minusDays(1);
+        ZonedDateTime twoDaysAgo = today.minusDays(2);
+        ZonedDateTime tomorrow = today.plusDays(1);
+
+        raiseEvents(AlarmLevels.CRITICAL, twoDaysAgo.plusHours(1).toInstant().toEpochMilli(), 5);
+        raiseEvents(AlarmLevels.CRITICAL, yesterday.plusHours(1).toInstant().toEpochMilli(), 3);
+        raiseEvents(AlarmLevels.URGENT, yesterday.plusHours(2).toInstant().toEpochMilli(), 2);
+        raiseEvents(AlarmLevels.CRITICAL, today.plusHours(1).toInstant().toEpochMilli(), 4);
+
+        //The raised events are never received, as if their notifications were still on the way
+        EventSummaryCache summaryCache = new EventSummaryCache(true, 10, Common.getBean(EventInstanceService.class),
+                Common.getBean(EventInstanceDao.class), Common.getBean(UserDao.class), Common.getBean(PermissionService.class),
+                Common.getBean(RunAs.class), new CountingExecutor(), new EventAcknowledgeCoalescer(300)) {
+            @Override
+            public boolean isEnabled() {
+                return true;
+            }
+        };
+        CountingExecutor executor = new CountingExecutor();
+        EventCountEngine engine = new EventCountEngine(true, 24, Common.getBean(EventInstanceDao.class),
+                Common.getBean(PermissionService.class), summaryCache, executor);
+        Set<AlarmLevels> all = EnumSet.allOf(AlarmLevels.class);
+
+        //Scanned while the table loads
+        assertEquals(Arrays.asList(5, 5, 4), count(engine, all, twoDaysAgo, yesterday, today, tomorrow));
+        assertEquals(1, executor.executed);
+
+        //Raised after the table loaded, a mismatch would reload it after this long
+        timer.fastForwardTo(today.plusHours(13).toInstant().toEpochMilli());
+        raiseEvents(AlarmLevels.CRITICAL, today.plusHours(12).toInstant().toEpochMilli(), 2);
+        raiseEvents(AlarmLevels.URGENT, today.plusHours(12).toInstant().toEpochMilli(), 1);
+
+        assertEquals(Arrays.asList(5, 5, 7), count(engine, all, twoDaysAgo, yesterday, today, tomorrow));
+        assertEquals(Arrays.asList(0, 2, 1), count(engine, EnumSet.of(AlarmLevels.URGENT), twoDaysAgo, yesterday, today, tomorrow));
+        assertEquals(Arrays.asList(5, 5), count(engine, all, twoDaysAgo, yesterday, today));
+        assertEquals(Arrays.asList(7), count(engine, all, today, tomorrow));
+        assertEquals(1, executor.executed);
+    }
+
+    @Override
+    protected MockMangoLifecycle getLifecycle() {
+        MockMangoLifecycle lifecycle = super.getLifecycle();
+        lifecycle.setEventManager(new MockEventManager(true));
+        return lifecycle;
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang3.mutable.MutableInt;
+import org.junit.Test;
+
+import com.infiniteautomation.mango.permission.MangoPermission;
+import com.infiniteautomation.mango.rest.latest.model.event.EventSummaryCounts.ActiveEvent;
+import com.infiniteautomation.mango.rest.latest.model.event.EventSummaryCounts.LatestEvent;
+import com.infiniteautomation.mango.rest.latest.model.event.EventSummaryCounts.Summary;
+import com.serotonin.m2m2.rt.event.AlarmLevels;
+import com.serotonin.m2m2.vo.role.Role;
+
+public class EventSummaryCountsTest {
+
+    private final MangoPermission permissionA = MangoPermission.requireAnyRole(new Role(1, "a"));
+    private final MangoPermission permissionB = MangoPermission.requireAnyRole(new Role(2, "b"));
+
+    private ActiveEvent event(int id, AlarmLevels level, long activeTimestamp, int dataPointId, MangoPermission permission) {
+        return new ActiveEvent(id, level, activeTimestamp, dataPointId, permission, null);
+    }
+
+    private void assertDelta(EventLevelSummaryDeltaModel delta, AlarmLevels level, int active, int unacknowledged, Integer id) {
+        assertEquals(level, delta.getLevel());
+        assertEquals(active, delta.getActiveCount());
+        assertEquals(unacknowledged, delta.getUnacknowledgedCount());
+        assertEquals(id, delta.getEventId());
+    }
+
+    private Summary summary(List<Summary> summaries, AlarmLevels level) {
+        return summaries.get(level.ordinal());
+    }
+
+    private List<Summary> unacknowledged(EventSummaryCounts counts) {
+        return counts.unacknowledgedSummary(p -> true, (p, l) -> {
+            throw new AssertionError("Latest event should be known");
+        });
+    }
+
+    @Test
+    public void testRaise() {
+        EventSummaryCounts counts = new EventSummaryCounts();
+        assertDelta(counts.raised(event(1, AlarmLevels.URGENT, 100, 10, permissionA), true, true, false), AlarmLevels.URGENT, 1, 1, 1);
+        //Does not return to normal so is never active
+        assertDelta(counts.raised(event(2, AlarmLevels.URGENT, 200, 10, permissionA), false, true, false), AlarmLevels.URGENT, 0, 1, 2);
+        //Already acknowledged
+        assertDelta(counts.raised(event(3, AlarmLevels.CRITICAL, 300, 10, permissionA), true, false, false), AlarmLevels.CRITICAL, 1, 0, 3);
+        assertNull(counts.raised(event(4, AlarmLevels.NONE, 400, 10, permissionA), false, false, false));
+
+        List<Summary> active = counts.activeSummary(p -> true);
+        assertEquals(1, summary(active, AlarmLevels.URGENT).count);
+        assertEquals(1, summary(active, AlarmLevels.URGENT).latestActive.id);
+        assertEquals(1, summary(active, AlarmLevels.CRITICAL).count);
+
+        List<Summary> unacknowledged = unacknowledged(counts);
+        assertEquals(2, summary(unacknowledged, AlarmLevels.URGENT).count);
+        assertEquals(Integer.valueOf(2), summary(unacknowledged, AlarmLevels.URGENT).latestUnacknowledged.id);
+        assertEquals(0, summary(unacknowledged, AlarmLevels.CRITICAL).count);
+        assertNull(summary(unacknowledged, AlarmLevels.CRITICAL).latestUnacknowledged);
+
+        assertEquals(2, counts.getActive(10).size());
+    }
+
+    @Test
+    public void testRaiseCountedByLoad() {
+        EventSummaryCounts counts = new EventSummaryCounts();
+        counts.setUnacknowledged(permissionA, AlarmLevels.URGENT, 1, 100);
+        //The change is still sent but the loaded count already has the event
+        assertDelta(counts.raised(event(1, AlarmLevels.URGENT, 100, 10, permissionA), true, true, true), AlarmLevels.URGENT, 1, 1, 1);
+        assertEquals(1, summary(counts.unacknowledgedSummary(p -> true, (p, l) -> new LatestEvent(1, 100, null)), AlarmLevels.URGENT).count);
+    }
+
+    @Test
+    public void testReturnToNormal() {
+        EventSummaryCounts counts = new EventSummaryCounts();
+        counts.raised(event(1, AlarmLevels.URGENT, 100, 10, permissionA), true, true, false);
+        assertDelta(counts.inactive(1), AlarmLevels.URGENT, -1, 0, 1);
+        //Not active any more
+        assertNull(counts.inactive(1));
+        assertNull(counts.inactive(2));
+
+        assertEquals(0, summary(counts.activeSummary(p -> true), AlarmLevels.URGENT).count);
+        assertEquals(1, summary(unacknowledged(counts), AlarmLevels.URGENT).count);
+        assertEquals(0, counts.getActive(10).size());
+    }
+
+    @Test
+    public void testAcknowledge() {
+        EventSummaryCounts counts = new EventSummaryCounts();
+        counts.raised(event(1, AlarmLevels.URGENT, 100, 10, permissionA), true, true, false);
+        counts.raised(event(2, AlarmLevels.URGENT, 200, 10, permissionA), true, true, false);
+
+        assertDelta(counts.acknowledged(2, AlarmLevels.URGENT, permissionA, true), AlarmLevels.URGENT, 0, -1, 2);
+        assertEquals(2, summary(counts.activeSummary(p -> true), AlarmLevels.URGENT).count);
+
+        //The latest was acknowledged so it is found again
+        MutableInt found = new MutableInt();
+        List<Summary> unacknowledged = counts.unacknowledgedSummary(p -> true, (p, l) -> {
+            found.increment();
+            assertSame(permissionA, p);
+            assertEquals(AlarmLevels.URGENT, l);
+            return new LatestEvent(1, 100, null);
+        });
+        assertEquals(1, found.intValue());
+        assertEquals(1, summary(unacknowledged, AlarmLevels.URGENT).count);
+        assertEquals(Integer.valueOf(1), summary(unacknowledged, AlarmLevels.URGENT).latestUnacknowledged.id);
+
+        //Acknowledged before the counts were loaded, only the change is sent
+        assertDelta(counts.acknowledged(1, AlarmLevels.URGENT, permissionA, false), AlarmLevels.URGENT, 0, -1, 1);
+        assertEquals(1, summary(unacknowledged(counts), AlarmLevels.URGENT).count);
+
+        assertDelta(counts.acknowledged(1, AlarmLevels.URGENT, permissionA, true), AlarmLevels.URGENT, 0, -1, 1);
+        assertEquals(0, summary(unacknowledged(counts), AlarmLevels.URGENT).count);
+        //Never below zero
+        counts.acknowledged(1, AlarmLevels.URGENT, permissionA, true);
+        assertEquals(0, summary(unacknowledged(counts), AlarmLevels.URGENT).count);
+    }
+
+    @Test
+    public void testPermissions() {
+        EventSummaryCounts counts = new EventSummaryCounts();
+        counts.raised(event(1, AlarmLevels.URGENT, 100, 10, permissionA), true, true, false);
+        counts.raised(event(2, AlarmLevels.URGENT, 200, 11, permissionB), true, true, false);
+
+        List<Summary> active = counts.activeSummary(p -> p.equals(permissionA));
+        assertEquals(1, summary(active, AlarmLevels.URGENT).count);
+        assertEquals(1, summary(active, AlarmLevels.URGENT).latestActive.id);
+
+        active = counts.activeSummary(p -> true);
+        assertEquals(2, summary(active, AlarmLevels.URGENT).count);
+        assertEquals(2, summary(active, AlarmLevels.URGENT).latestActive.id);
+
+        List<Summary> unacknowledged = counts.unacknowledgedSummary(p -> p.equals(permissionB), (p, l) -> null);
+        assertEquals(1, summary(unacknowledged, AlarmLevels.URGENT).count);
+        assertEquals(Integer.valueOf(2), summary(unacknowledged, AlarmLevels.URGENT).latestUnacknowledged.id);
+    }
+
+    @Test
+    public void testLoadedCounts() {
+        EventSummaryCounts counts = new EventSummaryCounts();
+        counts.setUnacknowledged(permissionA, AlarmLevels.URGENT, 5, 100);
+        counts.setUnacknowledged(permissionB, AlarmLevels.URGENT, 3, 200);
+
+        //Only the id of the latest is found
+        MutableInt found = new MutableInt();
+        List<Summary> unacknowledged = counts.unacknowledgedSummary(p -> true, (p, l) -> {
+            found.increment();
+            assertSame(permissionB, p);
+            return new LatestEvent(7, 200, null);
+        });
+        assertEquals(1, found.intValue());
+        assertEquals(8, summary(unacknowledged, AlarmLevels.URGENT).count);
+        assertEquals(Integer.valueOf(7), summary(unacknowledged, AlarmLevels.URGENT).latestUnacknowledged.id);
+
+        //A later event replaces the latest
+        counts.raised(event(8, AlarmLevels.URGENT, 300, 10, permissionA), false, true, false);
+        unacknowledged = unacknowledged(counts);
+        assertEquals(9, summary(unacknowledged, AlarmLevels.URGENT).count);
+        assertEquals(Integer.valueOf(8), summary(unacknowledged, AlarmLevels.URGENT).latestUnacknowledged.id);
+
+        counts.clearUnacknowledged();
+        assertEquals(0, summary(unacknowledged(counts), AlarmLevels.URGENT).count);
+    }
+
+    @Test
+    public void testReplaceActive() {
+        EventSummaryCounts counts = new EventSummaryCounts();
+        counts.raised(event(1, AlarmLevels.URGENT, 100, 10, permissionA), true, true, false);
+        counts.raised(event(2, AlarmLevels.URGENT, 200, 10, permissionA), true, true, false);
+
+        //Event 2 was received while the active events were read, event 3 is new
+        counts.replaceActive(Arrays.asList(event(3, AlarmLevels.CRITICAL, 300, 11, permissionA)), Collections.singleton(2));
+        assertEquals(2, counts.activeCount());
+        assertEquals(1, summary(counts.activeSummary(p -> true), AlarmLevels.URGENT).count);
+        assertEquals(1, summary(counts.activeSummary(p -> true), AlarmLevels.CRITICAL).count);
+        assertNull(counts.inactive(1));
+
+        //Returned to normal while the active events were read, event 3 is no longer active
+        counts.inactive(2);
+        counts.replaceActive(Arrays.asList(event(2, AlarmLevels.URGENT, 200, 10, permissionA)), Collections.singleton(2));
+        assertEquals(0, counts.activeCount());
+        assertEquals(0, counts.getActive(10).size());
+    }
+}
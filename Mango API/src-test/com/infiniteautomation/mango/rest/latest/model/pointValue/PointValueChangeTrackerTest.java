@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PointValueChangeTrackerTest {
+
+    @Test
+    public void notifiesRunningTrackers() {
+        PointValueChangeTracker tracker = new PointValueChangeTracker();
+        List<Long> changes = new ArrayList<>();
+        tracker.addListener((seriesId, from) -> changes.add(from));
+
+        //Not started
+        PointValueChangeTracker.notifyChanged(1, 100);
+        tracker.start();
+        PointValueChangeTracker.notifyChanged(1, 200);
+        tracker.stop();
+        PointValueChangeTracker.notifyChanged(1, 300);
+
+        assertEquals(Arrays.asList(200L), changes);
+    }
+}
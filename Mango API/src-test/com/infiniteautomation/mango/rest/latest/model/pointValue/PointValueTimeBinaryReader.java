@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the layout written by {@link PointValueTimeBinaryWriter} so the tests can check what a client would decode
+ */
+public class PointValueTimeBinaryReader {
+
+    private final ByteBuffer buffer;
+    private boolean compressed;
+
+    public PointValueTimeBinaryReader(byte[] bytes) {
+        this.buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return the series of the stream in the order they were written
+     * @throws IOException if the stream is not valid
+     */
+    public List<Series> read() throws IOException {
+        byte[] magic = new byte[PointValueTimeBinaryWriter.MAGIC.length];
+        buffer.get(magic);
+        if(!Arrays.equals(PointValueTimeBinaryWriter.MAGIC, magic))
+            throw new IOException("Invalid magic");
+        short version = buffer.getShort();
+        if(version != PointValueTimeBinaryWriter.VERSION)
+            throw new IOException("Unsupported version " + version);
+        compressed = (buffer.getShort() & PointValueTimeBinaryWriter.FLAG_DEFLATE) != 0;
+
+        List<Series> series = new ArrayList<>();
+        Series current = null;
+        while(true) {
+            byte frame = buffer.get();
+            switch(frame) {
+                case PointValueTimeBinaryWriter.FRAME_END:
+                    if(current != null)
+                        throw new IOException("Series " + current.name + " not ended");
+                    if(buffer.hasRemaining())
+                        throw new IOException(buffer.remaining() + " bytes after the end of the stream");
+                    return series;
+                case PointValueTimeBinaryWriter.FRAME_SERIES_START:
+                    if(current != null)
+                        throw new IOException("Series " + current.name + " not ended");
+                    current = new Series(getString(buffer));
+                    series.add(current);
+                    break;
+                case PointValueTimeBinaryWriter.FRAME_BLOCK:
+                    if(current == null)
+                        throw new IOException("Block outside of a series");
+                    current.blocks.add(readBlock());
+                    break;
+                case PointValueTimeBinaryWriter.FRAME_SERIES_END:
+                    if(current == null)
+                        throw new IOException("Series end outside of a series");
+                    current = null;
+                    break;
+                default:
+                    throw new IOException("Unknown frame " + frame);
+            }
+        }
+    }
+
+    private Block readBlock() throws IOException {
+        ByteBuffer block = buffer;
+        if(compressed) {
+            int compressedLength = buffer.getInt();
+            int length = buffer.getInt();
+            byte[] inflated = new byte[length];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(buffer.array(), buffer.position(), compressedLength);
+                if(inflater.inflate(inflated) != length || !inflater.finished())
+                    throw new IOException("Block did not inflate to " + length + " bytes");
+            }catch(DataFormatException e) {
+                throw new IOException(e);
+            }finally {
+                inflater.end();
+            }
+            buffer.position(buffer.position() + compressedLength);
+            block = ByteBuffer.wrap(inflated).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        int rows = block.getInt();
+        short columnCount = block.getShort();
+        Block result = new Block(rows);
+        for(int c = 0; c < columnCount; c++) {
+            String name = getString(block);
+            Column column = new Column(block.get(), rows);
+            if(result.columns.put(name, column) != null)
+                throw new IOException("Column " + name + " written twice");
+            byte[] bitmap = new byte[(rows + 7) / 8];
+            block.get(bitmap);
+            for(int i = 0; i < rows; i++) {
+                Object value;
+                switch(column.type) {
+                    case PointValueTimeBinaryWriter.TYPE_DOUBLE:
+                        value = block.getDouble();
+                        break;
+                    case PointValueTimeBinaryWriter.TYPE_INT64:
+                        value = block.getLong();
+                        break;
+                    case PointValueTimeBinaryWriter.TYPE_INT32:
+                        value = block.getInt();
+                        break;
+                    case PointValueTimeBinaryWriter.TYPE_BOOLEAN:
+                        value = block.get() != 0;
+                        break;
+                    case PointValueTimeBinaryWriter.TYPE_STRING:
+                        value = getString(block);
+                        break;
+                    default:
+                        throw new IOException("Unknown type " + column.type + " of column " + name);
+                }
+                if((bitmap[i / 8] & (1 << (i % 8))) != 0)
+                    column.values[i] = value;
+            }
+        }
+        if(compressed && block.hasRemaining())
+            throw new IOException(block.remaining() + " bytes after the columns of a block");
+        return result;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static class Series {
+        final String name;
+        final List<Block> blocks = new ArrayList<>();
+
+        Series(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<Block> getBlocks() {
+            return blocks;
+        }
+
+        public int getRows() {
+            return blocks.stream().mapToInt(b -> b.rows).sum();
+        }
+
+        /**
+         * @return the values of a column for every row of the series, null where a row has no value
+         */
+        public List<Object> values(String column) {
+            List<Object> values = new ArrayList<>();
+            for(Block block : blocks) {
+                Column c = block.columns.get(column);
+                values.addAll(c == null ? Arrays.asList(new Object[block.rows]) : Arrays.asList(c.values));
+            }
+            return values;
+        }
+    }
+
+    public static class Block {
+        final int rows;
+        final Map<String, Column> columns = new LinkedHashMap<>();
+
+        Block(int rows) {
+            this.rows = rows;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public Map<String, Column> getColumns() {
+            return columns;
+        }
+    }
+
+    public static class Column {
+        final byte type;
+        final Object[] values;
+
+        Column(byte type, int rows) {
+            this.type = type;
+            this.values = new Object[rows];
+        }
+
+        public byte getType() {
+            return type;
+        }
+
+        public List<Object> getValues() {
+            return Arrays.asList(values);
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.goebl.simplify.Point;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueTimeBinaryReader.Block;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueTimeBinaryReader.Series;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.query.LatestQueryInfo;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.query.PointValueTimeCacheControl;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+public class PointValueTimeBinaryWriterTest extends MangoTestBase {
+
+    /**
+     * Writes its timestamp and a value of whatever type it holds
+     */
+    private static class TestValue implements DataPointValueTime {
+        final DataPointVO vo;
+        final long time;
+        final Object value;
+
+        TestValue(DataPointVO vo, long time, Object value) {
+            this.vo = vo;
+            this.time = time;
+            this.value = value;
+        }
+
+        @Override
+        public DataPointVO getVo() {
+            return vo;
+        }
+
+        @Override
+        public long getTime() {
+            return time;
+        }
+
+        @Override
+        public void writeEntry(PointValueTimeWriter writer, boolean useXid, boolean allowTimestamp) throws IOException {
+            if(allowTimestamp)
+                writer.writeTimestamp(time);
+            if(value == null)
+                writer.writeNullField(PointValueTimeWriter.VALUE);
+            else if(value instanceof Double)
+                writer.writeDoubleField(PointValueTimeWriter.VALUE, (Double)value);
+            else if(value instanceof Integer)
+                writer.writeIntegerField(PointValueTimeWriter.VALUE, (Integer)value);
+            else if(value instanceof Boolean)
+                writer.writeBooleanField(PointValueTimeWriter.VALUE, (Boolean)value);
+            else
+                writer.writeStringField(PointValueTimeWriter.VALUE, value.toString());
+        }
+
+        @Override
+        public double getX() {
+            return time;
+        }
+
+        @Override
+        public double getY() {
+            return 0;
+        }
+
+        @Override
+        public boolean isProcessable() {
+            return true;
+        }
+
+        @Override
+        public int compareTo(Point that) {
+            return Double.compare(getX(), that.getX());
+        }
+    }
+
+    private DataPointVO point(String xid) {
+        DataPointVO vo = new DataPointVO();
+        vo.setXid(xid);
+        return vo;
+    }
+
+    private LatestQueryInfo info(boolean multiplePointsPerArray) {
+        return new LatestQueryInfo(ZonedDateTime.now(), null, "UTC", null, multiplePointsPerArray, true,
+                PointValueTimeCacheControl.NONE, null, null, null);
+    }
+
+    /**
+     * Write each value as a row of a single array
+     */
+    private byte[] write(boolean compress, Object... values) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PointValueTimeBinaryWriter writer = new PointValueTimeBinaryWriter(info(false), out, compress);
+        DataPointVO vo = point("DP_1");
+        writer.writeHeader();
+        writer.writeStartArray();
+        for(int i = 0; i < values.length; i++)
+            writer.writeDataPointValue(new TestValue(vo, i * 1000L, values[i]));
+        writer.writeEndArray();
+        writer.close();
+        return out.toByteArray();
+    }
+
+    private List<Long> times(int count) {
+        List<Long> times = new ArrayList<>();
+        for(int i = 0; i < count; i++)
+            times.add(i * 1000L);
+        return times;
+    }
+
+    @Test
+    public void layout() throws IOException {
+        byte[] bytes = write(false, 1.5, null, 2.5);
+
+        ByteBuffer header = ByteBuffer.wrap(bytes, 0, 8).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] magic = new byte[4];
+        header.get(magic);
+        assertArrayEquals(PointValueTimeBinaryWriter.MAGIC, magic);
+        assertEquals(PointValueTimeBinaryWriter.VERSION, header.getShort());
+        assertEquals(0, header.getShort());
+        assertEquals(PointValueTimeBinaryWriter.FRAME_END, bytes[bytes.length - 1]);
+
+        List<Series> series = new PointValueTimeBinaryReader(bytes).read();
+        assertEquals(1, series.size());
+        assertEquals("", series.get(0).getName());
+        assertEquals(1, series.get(0).getBlocks().size());
+
+        Block block = series.get(0).getBlocks().get(0);
+        assertEquals(3, block.getRows());
+        assertEquals(Arrays.asList(PointValueTimeWriter.TIMESTAMP, PointValueTimeWriter.VALUE), new ArrayList<>(block.getColumns().keySet()));
+        assertEquals(PointValueTimeBinaryWriter.TYPE_INT64, block.getColumns().get(PointValueTimeWriter.TIMESTAMP).getType());
+        assertEquals(PointValueTimeBinaryWriter.TYPE_DOUBLE, block.getColumns().get(PointValueTimeWriter.VALUE).getType());
+        assertEquals(times(3), series.get(0).values(PointValueTimeWriter.TIMESTAMP));
+        assertEquals(Arrays.asList(1.5, null, 2.5), series.get(0).values(PointValueTimeWriter.VALUE));
+    }
+
+    @Test
+    public void columnTypes() throws IOException {
+        Series integers = new PointValueTimeBinaryReader(write(false, 1, 2, null)).read().get(0);
+        assertEquals(PointValueTimeBinaryWriter.TYPE_INT32, integers.getBlocks().get(0).getColumns().get(PointValueTimeWriter.VALUE).getType());
+        assertEquals(Arrays.asList(1, 2, null), integers.values(PointValueTimeWriter.VALUE));
+
+        Series booleans = new PointValueTimeBinaryReader(write(false, true, false)).read().get(0);
+        assertEquals(PointValueTimeBinaryWriter.TYPE_BOOLEAN, booleans.getBlocks().get(0).getColumns().get(PointValueTimeWriter.VALUE).getType());
+        assertEquals(Arrays.asList(true, false), booleans.values(PointValueTimeWriter.VALUE));
+
+        Series strings = new PointValueTimeBinaryReader(write(false, "a", "", "\u00e9")).read().get(0);
+        assertEquals(PointValueTimeBinaryWriter.TYPE_STRING, strings.getBlocks().get(0).getColumns().get(PointValueTimeWriter.VALUE).getType());
+        assertEquals(Arrays.asList("a", "", "\u00e9"), strings.values(PointValueTimeWriter.VALUE));
+
+        //A column with no values at all
+        Series nulls = new PointValueTimeBinaryReader(write(false, null, null)).read().get(0);
+        assertEquals(Arrays.asList(null, null), nulls.values(PointValueTimeWriter.VALUE));
+    }
+
+    @Test
+    public void rowsSplitIntoBlocks() throws IOException {
+        int count = 2 * PointValueTimeBinaryWriter.BLOCK_ROWS + 5;
+        Object[] values = new Object[count];
+        for(int i = 0; i < count; i++)
+            values[i] = (double)i;
+
+        Series series = new PointValueTimeBinaryReader(write(false, values)).read().get(0);
+        assertEquals(3, series.getBlocks().size());
+        assertEquals(PointValueTimeBinaryWriter.BLOCK_ROWS, series.getBlocks().get(0).getRows());
+        assertEquals(PointValueTimeBinaryWriter.BLOCK_ROWS, series.getBlocks().get(1).getRows());
+        assertEquals(5, series.getBlocks().get(2).getRows());
+        assertEquals(times(count), series.values(PointValueTimeWriter.TIMESTAMP));
+        assertEquals(Arrays.asList(values), series.values(PointValueTimeWriter.VALUE));
+    }
+
+    @Test
+    public void compressedMatchesUncompressed() throws IOException {
+        int count = PointValueTimeBinaryWriter.BLOCK_ROWS + 100;
+        Object[] values = new Object[count];
+        for(int i = 0; i < count; i++)
+            values[i] = i % 10 == 0 ? null : (double)(i % 7);
+
+        byte[] plain = write(false, values);
+        byte[] compressed = write(true, values);
+        assertEquals(PointValueTimeBinaryWriter.FLAG_DEFLATE, ByteBuffer.wrap(compressed, 6, 2).order(ByteOrder.LITTLE_ENDIAN).getShort());
+        assertTrue(compressed.length < plain.length);
+
+        Series expected = new PointValueTimeBinaryReader(plain).read().get(0);
+        Series actual = new PointValueTimeBinaryReader(compressed).read().get(0);
+        assertEquals(expected.getBlocks().size(), actual.getBlocks().size());
+        assertEquals(expected.values(PointValueTimeWriter.TIMESTAMP), actual.values(PointValueTimeWriter.TIMESTAMP));
+        assertEquals(expected.values(PointValueTimeWriter.VALUE), actual.values(PointValueTimeWriter.VALUE));
+        assertEquals(Arrays.asList(values), actual.values(PointValueTimeWriter.VALUE));
+    }
+
+    @Test
+    public void mixedTypesPromotedToString() throws IOException {
+        Series series = new PointValueTimeBinaryReader(write(false, 1.5, null, 2, true, "x")).read().get(0);
+        assertEquals(PointValueTimeBinaryWriter.TYPE_STRING, series.getBlocks().get(0).getColumns().get(PointValueTimeWriter.VALUE).getType());
+        assertEquals(Arrays.asList("1.5", null, "2", "true", "x"), series.values(PointValueTimeWriter.VALUE));
+        //Other columns keep their type
+        assertEquals(PointValueTimeBinaryWriter.TYPE_INT64, series.getBlocks().get(0).getColumns().get(PointValueTimeWriter.TIMESTAMP).getType());
+    }
+
+    @Test
+    public void promotedColumnStaysStringInLaterBlocks() throws IOException {
+        int count = PointValueTimeBinaryWriter.BLOCK_ROWS + 2;
+        Object[] values = new Object[count];
+        values[0] = "x";
+        for(int i = 1; i < count; i++)
+            values[i] = (double)i;
+
+        for(boolean compress : new boolean[] {false, true}) {
+            Series series = new PointValueTimeBinaryReader(write(compress, values)).read().get(0);
+            assertEquals(2, series.getBlocks().size());
+            for(Block block : series.getBlocks())
+                assertEquals(PointValueTimeBinaryWriter.TYPE_STRING, block.getColumns().get(PointValueTimeWriter.VALUE).getType());
+            List<Object> read = series.values(PointValueTimeWriter.VALUE);
+            assertEquals("x", read.get(0));
+            assertEquals("1.0", read.get(1));
+            assertEquals(Double.toString(count - 1), read.get(count - 1));
+        }
+    }
+
+    @Test
+    public void seriesPerArray() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PointValueTimeBinaryWriter writer = new PointValueTimeBinaryWriter(info(false), out, false);
+        DataPointVO first = point("DP_1");
+        DataPointVO second = point("DP_2");
+        writer.writeHeader();
+        writer.writeStartArray(first.getXid());
+        writer.writeDataPointValue(new TestValue(first, 0, 1.0));
+        writer.writeDataPointValue(new TestValue(first, 1000, 2.0));
+        writer.writeEndArray();
+        writer.writeStartArray(second.getXid());
+        writer.writeDataPointValue(new TestValue(second, 0, "on"));
+        writer.writeEndArray();
+        writer.close();
+
+        List<Series> series = new PointValueTimeBinaryReader(out.toByteArray()).read();
+        assertEquals(2, series.size());
+        assertEquals("DP_1", series.get(0).getName());
+        assertEquals(Arrays.asList(1.0, 2.0), series.get(0).values(PointValueTimeWriter.VALUE));
+        assertEquals("DP_2", series.get(1).getName());
+        //Columns of the earlier series don't carry over
+        assertEquals(PointValueTimeBinaryWriter.TYPE_STRING, series.get(1).getBlocks().get(0).getColumns().get(PointValueTimeWriter.VALUE).getType());
+        assertEquals(Arrays.asList("on"), series.get(1).values(PointValueTimeWriter.VALUE));
+    }
+
+    @Test
+    public void multiplePointsPerRowPrefixedWithXid() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PointValueTimeBinaryWriter writer = new PointValueTimeBinaryWriter(info(true), out, false);
+        DataPointVO first = point("DP_1");
+        DataPointVO second = point("DP_2");
+        writer.writeHeader();
+        writer.writeStartArray();
+        writer.writeDataPointValues(Arrays.asList(new TestValue(first, 0, 1.0), new TestValue(second, 0, 10)), 0);
+        //Only the second point has a value at this time
+        writer.writeDataPointValues(Arrays.asList(new TestValue(second, 1000, 11)), 1000);
+        writer.writeEndArray();
+        writer.close();
+
+        Series series = new PointValueTimeBinaryReader(out.toByteArray()).read().get(0);
+        assertEquals(Arrays.asList(PointValueTimeWriter.TIMESTAMP, "DP_1.value", "DP_2.value"),
+                new ArrayList<>(series.getBlocks().get(0).getColumns().keySet()));
+        assertEquals(Arrays.asList(0L, 1000L), series.values(PointValueTimeWriter.TIMESTAMP));
+        assertEquals(Arrays.asList(1.0, null), series.values("DP_1.value"));
+        assertEquals(Arrays.asList(10, 11), series.values("DP_2.value"));
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue.emport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.serotonin.m2m2.MangoTestBase;
+
+public class PointValueImportEngineTest extends MangoTestBase {
+
+    @Test
+    public void closeWaitsAndSkipsQueuedChunks() throws Exception {
+        PointValueImportEngine engine = new PointValueImportEngine(1, 10, 4, 1);
+        try {
+            List<Integer> saved = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+
+            PointValueImportEngine.Import importer = engine.start();
+            importer.submit("DP_1", () -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                saved.add(1);
+            });
+            importer.submit("DP_1", () -> saved.add(2));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            //The import fails while the first chunk is saving
+            new Thread(() -> {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                release.countDown();
+            }).start();
+            importer.close();
+
+            //Nothing is saved after close returns
+            assertEquals(Arrays.asList(1), saved);
+            assertEquals(0, engine.getMetrics().getRunning());
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void failedChunkSkipsLaterChunks() throws Exception {
+        PointValueImportEngine engine = new PointValueImportEngine(1, 10, 4, 1);
+        try {
+            List<Integer> saved = Collections.synchronizedList(new ArrayList<>());
+            PointValueImportEngine.Import importer = engine.start();
+            try {
+                //Submit reports the failure if it is done already
+                importer.submit("DP_1", () -> saved.add(1));
+                importer.submit("DP_1", () -> {
+                    throw new IllegalStateException("Database unavailable");
+                });
+                importer.submit("DP_1", () -> saved.add(3));
+                importer.await();
+                fail("Chunk did not fail");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            } finally {
+                importer.close();
+            }
+            assertEquals(Arrays.asList(1), saved);
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void chunksOfADataPointSavedInOrder() throws Exception {
+        int imports = 8;
+        int points = 20;
+        int chunks = 50;
+        PointValueImportEngine engine = new PointValueImportEngine(4, 10, 2, imports);
+        ExecutorService requests = Executors.newFixedThreadPool(imports);
+        try {
+            //The chunk numbers saved per import and data point
+            Map<String, List<Integer>> saved = new ConcurrentHashMap<>();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < imports; i++) {
+                int importId = i;
+                futures.add(requests.submit(() -> {
+                    PointValueImportEngine.Import importer = engine.start();
+                    try {
+                        for (int chunk = 0; chunk < chunks; chunk++) {
+                            for (int point = 0; point < points; point++) {
+                                String xid = "DP_" + point;
+                                int number = chunk;
+                                importer.submit(xid, () -> saved.computeIfAbsent(importId + ":" + xid,
+                                        k -> Collections.synchronizedList(new ArrayList<>())).add(number));
+                            }
+                        }
+                        importer.finish(chunks * points, 0);
+                    } finally {
+                        importer.close();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+
+            assertEquals(imports * points, saved.size());
+            for (List<Integer> numbers : saved.values()) {
+                assertEquals(chunks, numbers.size());
+                for (int i = 0; i < chunks; i++) {
+                    assertEquals(i, (int) numbers.get(i));
+                }
+            }
+            PointValueImportMetricsModel metrics = engine.getMetrics();
+            assertEquals(0, metrics.getRunning());
+            assertEquals(imports, metrics.getCompleted());
+            assertEquals(imports * chunks * points, metrics.getTotalProcessed());
+            assertEquals(0, metrics.getChunksQueued());
+        } finally {
+            requests.shutdownNow();
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void importsTakeTurns() throws Exception {
+        PointValueImportEngine engine = new PointValueImportEngine(1, 10, 2, 2);
+        try {
+            List<String> saved = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+
+            PointValueImportEngine.Import large = engine.start();
+            large.submit("DP_1", () -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                saved.add("large0");
+            });
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            large.submit("DP_1", () -> saved.add("large1"));
+            large.submit("DP_1", () -> saved.add("large2"));
+
+            //The large import has its share queued and waits, the small one does not
+            Future<?> more = engine.supplyAsync(() -> {
+                try {
+                    large.submit("DP_1", () -> saved.add("large3"));
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                return null;
+            });
+            PointValueImportEngine.Import small = engine.start();
+            small.submit("DP_2", () -> saved.add("small0"));
+            assertFalse(more.isDone());
+
+            release.countDown();
+            small.finish(1, 0);
+            more.get(10, TimeUnit.SECONDS);
+            large.finish(4, 0);
+            assertEquals(Arrays.asList("large0", "large1", "small0", "large2", "large3"), saved);
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void requestsRunOnRequestThreads() throws Exception {
+        PointValueImportEngine engine = new PointValueImportEngine(1, 10, 4, 1);
+        try {
+            String name = engine.supplyAsync(() -> Thread.currentThread().getName()).get(10, TimeUnit.SECONDS);
+            assertTrue(name, name.startsWith("point-value-import-request-"));
+        } finally {
+            engine.shutdown();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue.emport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.serotonin.m2m2.i18n.ProcessResult;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT.FireEvents;
+
+public class PointValueUploadResultTest {
+
+    private PointValueTimeImportResult result(String xid, int queued, int skipped, int messages) {
+        ProcessResult processResult = new ProcessResult();
+        for (int i = 0; i < messages; i++) {
+            processResult.addContextualMessage("value", "rest.error.serverError", i);
+        }
+        return new PointValueTimeImportResult(xid, queued, skipped, processResult);
+    }
+
+    @Test
+    public void chunksCommitInAnyOrder() {
+        PointValueUploadResult upload = new PointValueUploadResult(FireEvents.NEVER, 3);
+        assertTrue(upload.begin(2));
+        assertFalse(upload.begin(2));
+        upload.commit(2, Arrays.asList(result("DP_1", 10, 1, 0)));
+        assertEquals(Arrays.asList(0, 1), upload.getMissingChunks());
+        assertEquals(0, upload.getCommittedOffset());
+
+        assertTrue(upload.begin(0));
+        upload.commit(0, Arrays.asList(result("DP_1", 5, 0, 0), result("DP_2", 3, 0, 0)));
+        assertTrue(upload.begin(1));
+        upload.commit(1, Collections.emptyList());
+        assertTrue(upload.isComplete());
+        assertTrue(upload.getMissingChunks().isEmpty());
+
+        //Committed chunks are not imported again
+        assertFalse(upload.begin(1));
+        assertTrue(upload.isCommitted(1));
+
+        List<PointValueTimeImportResult> results = upload.getResults();
+        assertEquals(2, results.size());
+        assertEquals("DP_1", results.get(0).getXid());
+        assertEquals(15, results.get(0).getTotalQueued());
+        assertEquals(1, results.get(0).getTotalSkipped());
+        assertEquals(3, results.get(1).getTotalQueued());
+    }
+
+    @Test
+    public void abortedChunkKeepsSavedValues() {
+        PointValueUploadResult upload = new PointValueUploadResult(FireEvents.NEVER, 2);
+        assertTrue(upload.begin(0));
+        //Nothing of DP_2 was saved
+        upload.abort(0, Arrays.asList(result("DP_1", 1000, 2, 1), result("DP_2", 0, 0, 0)));
+        assertFalse(upload.isCommitted(0));
+        assertEquals(Arrays.asList(0, 1), upload.getMissingChunks());
+        assertTrue(upload.getResults().isEmpty());
+
+        List<PointValueTimeImportResult> partial = upload.getPartialResults(0);
+        assertEquals(1, partial.size());
+        assertEquals("DP_1", partial.get(0).getXid());
+        assertEquals(1000, partial.get(0).getTotalQueued());
+        assertEquals(2, partial.get(0).getTotalSkipped());
+        assertEquals(1, partial.get(0).getResult().getMessages().size());
+        assertTrue(upload.getPartialResults(1).isEmpty());
+
+        //Sent again, the results include the values saved by the failed attempt
+        assertTrue(upload.begin(0));
+        upload.commit(0, Arrays.asList(result("DP_1", 1500, 2, 1), result("DP_2", 10, 0, 0)));
+        assertTrue(upload.getPartialResults(0).isEmpty());
+        assertEquals(1500, upload.getResults().get(0).getTotalQueued());
+        assertEquals(Arrays.asList(1), upload.getMissingChunks());
+    }
+
+    @Test
+    public void abortWithoutValuesClearsPartialResults() {
+        PointValueUploadResult upload = new PointValueUploadResult(FireEvents.NEVER, null);
+        assertTrue(upload.begin(0));
+        upload.abort(0, Arrays.asList(result("DP_1", 10, 0, 0)));
+        assertTrue(upload.begin(0));
+        upload.abort(0, Arrays.asList(result("DP_1", 0, 0, 0)));
+        assertTrue(upload.getPartialResults(0).isEmpty());
+    }
+
+    @Test
+    public void messagesAreBounded() {
+        PointValueUploadResult upload = new PointValueUploadResult(FireEvents.NEVER, null);
+        int chunks = 3;
+        int perChunk = PointValueUploadResult.MAX_MESSAGES / 2 + 1;
+        for (int i = 0; i < chunks; i++) {
+            assertTrue(upload.begin(i));
+            upload.commit(i, Arrays.asList(result("DP_1", 0, perChunk, perChunk)));
+        }
+        assertEquals(PointValueUploadResult.MAX_MESSAGES, upload.getResults().get(0).getResult().getMessages().size());
+        assertEquals(chunks * perChunk - PointValueUploadResult.MAX_MESSAGES, upload.getDroppedMessages());
+        assertEquals(chunks * perChunk, upload.getResults().get(0).getTotalSkipped());
+
+        //The partial results of a failed chunk are bounded too
+        assertTrue(upload.begin(chunks));
+        List<PointValueTimeImportResult> saved = new ArrayList<>();
+        saved.add(result("DP_1", 0, 2 * PointValueUploadResult.MAX_MESSAGES, 2 * PointValueUploadResult.MAX_MESSAGES));
+        upload.abort(chunks, saved);
+        assertEquals(PointValueUploadResult.MAX_MESSAGES, upload.getPartialResults(chunks).get(0).getResult().getMessages().size());
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue.quantize;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.infiniteautomation.mango.db.query.QueryCancelledException;
+import com.infiniteautomation.mango.quantize.BucketCalculator;
+import com.infiniteautomation.mango.quantize.TimePeriodBucketCalculator;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.RollupEnum;
+import com.infiniteautomation.mango.rest.latest.model.time.TimePeriodType;
+import com.infiniteautomation.mango.statistics.AnalogStatistics;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
+import com.serotonin.m2m2.rt.dataImage.types.DataValue;
+import com.serotonin.m2m2.rt.dataImage.types.NumericValue;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.dataPoint.MockPointLocatorVO;
+
+public class NumericStatisticsDataPointQuantizerTest {
+
+    private static final long MINUTE = 60000;
+    //Start of a minute
+    private static final long FROM = 1600000020000L;
+
+    /**
+     * The statistics of a period read as soon as it is quantized
+     */
+    private static class Period {
+        final long start;
+        final long end;
+        final Double startValue;
+        final Double firstValue;
+        final Long firstTime;
+        final Double lastValue;
+        final Long lastTime;
+        final Double minimumValue;
+        final Long minimumTime;
+        final Double maximumValue;
+        final Long maximumTime;
+        final Double average;
+        final Double integral;
+        final double sum;
+        final int count;
+
+        Period(AnalogStatistics stats) {
+            this.start = stats.getPeriodStartTime();
+            this.end = stats.getPeriodEndTime();
+            this.startValue = stats.getStartValue();
+            this.firstValue = stats.getFirstValue();
+            this.firstTime = stats.getFirstTime();
+            this.lastValue = stats.getLastValue();
+            this.lastTime = stats.getLastTime();
+            this.minimumValue = stats.getMinimumValue();
+            this.minimumTime = stats.getMinimumTime();
+            this.maximumValue = stats.getMaximumValue();
+            this.maximumTime = stats.getMaximumTime();
+            this.average = stats.getAverage();
+            this.integral = stats.getIntegral();
+            this.sum = stats.getSum();
+            this.count = stats.getCount();
+        }
+    }
+
+    private DataPointVO point() {
+        DataPointVO vo = new DataPointVO();
+        vo.setId(1);
+        vo.setSeriesId(1);
+        vo.setXid("DP_1");
+        vo.setPointLocator(new MockPointLocatorVO(DataTypes.NUMERIC, true));
+        return vo;
+    }
+
+    private BucketCalculator calculator(long to) {
+        return new TimePeriodBucketCalculator(ZonedDateTime.ofInstant(Instant.ofEpochMilli(FROM), ZoneOffset.UTC),
+                ZonedDateTime.ofInstant(Instant.ofEpochMilli(to), ZoneOffset.UTC), TimePeriodType.convertFrom(TimePeriodType.MINUTES), 1);
+    }
+
+    /**
+     * Quantize the values as the database would send them, with the value before the query as the first bookend
+     */
+    private void quantize(DataPointStatisticsQuantizer<?> quantizer, Double startValue, List<IdPointValueTime> values, long to) throws QueryCancelledException {
+        if(!values.isEmpty() && values.get(0).getTime() == FROM) {
+            quantizer.firstValue(values.get(0), 0, false);
+            for(int i = 1; i < values.size(); i++)
+                quantizer.row(values.get(i), i);
+        }else {
+            quantizer.firstValue(new IdPointValueTime(1, startValue == null ? null : new NumericValue(startValue), FROM), 0, true);
+            for(int i = 0; i < values.size(); i++)
+                quantizer.row(values.get(i), i + 1);
+        }
+        DataValue last = values.isEmpty() ? (startValue == null ? null : new NumericValue(startValue)) : values.get(values.size() - 1).getValue();
+        quantizer.lastValue(new IdPointValueTime(1, last, to), values.size() + 1, true);
+        quantizer.done();
+    }
+
+    private void assertSamePeriods(Double startValue, List<IdPointValueTime> values, long to) throws QueryCancelledException {
+        List<Period> expected = new ArrayList<>();
+        quantize(new AnalogStatisticsDataPointQuantizer(point(), calculator(to),
+                generator -> expected.add(new Period((AnalogStatistics) generator.getGenerator()))), startValue, values, to);
+        List<Period> actual = new ArrayList<>();
+        quantize(new NumericStatisticsDataPointQuantizer(point(), calculator(to),
+                generator -> actual.add(new Period((AnalogStatistics) generator.getGenerator())), RollupEnum.AVERAGE), startValue, values, to);
+
+        assertEquals(expected.size(), actual.size());
+        for(int i = 0; i < expected.size(); i++) {
+            Period e = expected.get(i);
+            Period a = actual.get(i);
+            assertEquals(e.start, a.start);
+            assertEquals(e.end, a.end);
+            assertEquals(e.startValue, a.startValue);
+            assertEquals(e.firstValue, a.firstValue);
+            assertEquals(e.firstTime, a.firstTime);
+            assertEquals(e.lastValue, a.lastValue);
+            assertEquals(e.lastTime, a.lastTime);
+            assertEquals(e.minimumValue, a.minimumValue);
+            assertEquals(e.minimumTime, a.minimumTime);
+            assertEquals(e.maximumValue, a.maximumValue);
+            assertEquals(e.maximumTime, a.maximumTime);
+            assertClose(e.average, a.average);
+            assertClose(e.integral, a.integral);
+            assertEquals(e.sum, a.sum, 1e-9 * Math.abs(e.sum));
+            assertEquals(e.count, a.count);
+        }
+    }
+
+    private void assertClose(Double expected, Double actual) {
+        if(expected == null) {
+            assertNull(actual);
+        }else {
+            assertEquals(expected, actual, 1e-9 * Math.max(1, Math.abs(expected)));
+        }
+    }
+
+    /**
+     * Values at random times, leaving some periods without values
+     */
+    private List<IdPointValueTime> values(long from, long to, int count, long seed) {
+        Random random = new Random(seed);
+        List<IdPointValueTime> values = new ArrayList<>();
+        long time = from;
+        for(int i = 0; i < count; i++) {
+            time += 1 + random.nextInt((int) ((to - from) / count));
+            if(time >= to)
+                break;
+            //Skip the periods starting at an odd minute after the third
+            long minute = (time - FROM) / MINUTE;
+            if(minute > 3 && minute % 2 == 1)
+                continue;
+            values.add(new IdPointValueTime(1, new NumericValue(random.nextGaussian() * 100), time));
+        }
+        return values;
+    }
+
+    @Test
+    public void sameAsGeneratorWithStartValue() throws QueryCancelledException {
+        long to = FROM + 10 * MINUTE;
+        assertSamePeriods(42.5, values(FROM, to, 200, 1), to);
+    }
+
+    @Test
+    public void sameAsGeneratorWithoutStartValue() throws QueryCancelledException {
+        long to = FROM + 10 * MINUTE;
+        assertSamePeriods(null, values(FROM + 2 * MINUTE + 5000, to, 100, 2), to);
+    }
+
+    @Test
+    public void sameAsGeneratorWithValueAtStart() throws QueryCancelledException {
+        long to = FROM + 10 * MINUTE;
+        List<IdPointValueTime> values = values(FROM, to, 100, 3);
+        values.add(0, new IdPointValueTime(1, new NumericValue(7), FROM));
+        assertSamePeriods(null, values, to);
+    }
+
+    @Test
+    public void sameAsGeneratorWithoutValues() throws QueryCancelledException {
+        long to = FROM + 5 * MINUTE;
+        assertSamePeriods(null, new ArrayList<>(), to);
+        assertSamePeriods(3.0, new ArrayList<>(), to);
+    }
+
+    @Test
+    public void sameAsGeneratorWithShortLastPeriod() throws QueryCancelledException {
+        long to = FROM + 9 * MINUTE + 30000;
+        assertSamePeriods(-1.0, values(FROM, to, 150, 4), to);
+    }
+
+    @Test
+    public void statisticsReusedForEveryPeriod() throws QueryCancelledException {
+        long to = FROM + 3 * MINUTE;
+        List<DataPointStatisticsGenerator> generators = new ArrayList<>();
+        List<Double> averages = new ArrayList<>();
+        NumericStatisticsDataPointQuantizer quantizer = new NumericStatisticsDataPointQuantizer(point(), calculator(to), generator -> {
+            generators.add(generator);
+            averages.add(((AnalogStatistics) generator.getGenerator()).getAverage());
+        }, RollupEnum.AVERAGE);
+
+        List<IdPointValueTime> values = new ArrayList<>();
+        values.add(new IdPointValueTime(1, new NumericValue(2), FROM + 30000));
+        values.add(new IdPointValueTime(1, new NumericValue(4), FROM + MINUTE + 30000));
+        quantize(quantizer, 0.0, values, to);
+
+        assertEquals(3, generators.size());
+        assertSame(generators.get(0), generators.get(2));
+        assertSame(generators.get(0).getGenerator(), generators.get(2).getGenerator());
+        //Half of each period at the previous value
+        assertEquals(1.0, averages.get(0), 0);
+        assertEquals(3.0, averages.get(1), 0);
+        assertEquals(4.0, averages.get(2), 0);
+        assertEquals(4.0, ((NumericStatisticsDataPointQuantizer.PeriodGenerator) generators.get(2)).periodValue.getY(), 0);
+    }
+
+    @Test
+    public void supportedRollups() {
+        assertTrue(NumericStatisticsDataPointQuantizer.supports(RollupEnum.AVERAGE));
+        assertTrue(NumericStatisticsDataPointQuantizer.supports(RollupEnum.INTEGRAL));
+        assertFalse(NumericStatisticsDataPointQuantizer.supports(RollupEnum.DELTA));
+        assertFalse(NumericStatisticsDataPointQuantizer.supports(RollupEnum.ALL));
+        assertFalse(NumericStatisticsDataPointQuantizer.supports(RollupEnum.NONE));
+    }
+}
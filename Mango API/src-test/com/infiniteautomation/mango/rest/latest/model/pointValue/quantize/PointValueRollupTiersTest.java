@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue.quantize;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueChangeTracker;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.quantize.PointValueRollupTiers.Tier;
+import com.infiniteautomation.mango.rest.latest.model.time.TimePeriod;
+import com.infiniteautomation.mango.rest.latest.model.time.TimePeriodType;
+import com.infiniteautomation.mango.statistics.AnalogStatistics;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.view.stats.StatisticsGenerator;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.dataPoint.MockPointLocatorVO;
+
+public class PointValueRollupTiersTest {
+
+    private static final int ALL = RollupTierPeriod.START | RollupTierPeriod.FIRST | RollupTierPeriod.LAST
+            | RollupTierPeriod.MINIMUM | RollupTierPeriod.MAXIMUM | RollupTierPeriod.AVERAGE | RollupTierPeriod.INTEGRAL;
+
+    private static final long MINUTE = 60000;
+    private static final long HOUR = 60 * MINUTE;
+
+    /**
+     * Keeps the tasks instead of running them, updates are run by the test
+     */
+    private static class QueueingExecutor extends AbstractExecutorService {
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        @Override
+        public void shutdown() { }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+
+    /**
+     * Values from minute periods with one value at the start of each minute, records the raw aggregations
+     */
+    private static class TestRollupTiers extends PointValueRollupTiers {
+        final Set<Integer> running = new HashSet<>();
+        final List<String> aggregated = new ArrayList<>();
+
+        TestRollupTiers(MockEnvironment env, QueueingExecutor executor) {
+            super(env, null, executor, new PointValueChangeTracker() {
+                @Override
+                public void track(DataPointVO vo) { }
+
+                @Override
+                public void untrack(int dataPointId) { }
+            });
+        }
+
+        @Override
+        protected boolean isRunning(DataPointVO vo) {
+            return running.contains(vo.getId());
+        }
+
+        @Override
+        protected List<RollupTierPeriod> aggregate(DataPointVO vo, Tier tier, long from, long to) {
+            aggregated.add(tier + " " + from + " " + to);
+            List<RollupTierPeriod> periods = new ArrayList<>();
+            for(long start = from; start < to; start = plus(tier, start, 1))
+                periods.add(RollupTierPeriod.merge(minutes(start, plus(tier, start, 1))));
+            return periods;
+        }
+    }
+
+    private static double value(long minuteStart) {
+        return (minuteStart / MINUTE) % 100;
+    }
+
+    private static List<RollupTierPeriod> minutes(long from, long to) {
+        List<RollupTierPeriod> minutes = new ArrayList<>();
+        for(long start = from; start < to; start += MINUTE) {
+            double previous = value(start - MINUTE);
+            double value = value(start);
+            minutes.add(new RollupTierPeriod(start, start + MINUTE, ALL, previous, value, start, value, start,
+                    value, start, value, start, value, MINUTE, value * 60, value, value - previous, 1));
+        }
+        return minutes;
+    }
+
+    private MockEnvironment environment(long maxPeriods) {
+        return new MockEnvironment()
+                .withProperty("rest.pointValues.rollupTiers.enabled", "true")
+                .withProperty("rest.pointValues.rollupTiers.settlePeriod", "0")
+                .withProperty("rest.pointValues.rollupTiers.threads", "1")
+                .withProperty("rest.pointValues.rollupTiers.maxPeriods", Long.toString(maxPeriods))
+                .withProperty("rest.pointValues.rollupTiers.minutes.retention", "180")
+                .withProperty("rest.pointValues.rollupTiers.hours.retention", "48")
+                .withProperty("rest.pointValues.rollupTiers.days.retention", "5");
+    }
+
+    private DataPointVO point(int id) {
+        DataPointVO vo = new DataPointVO();
+        vo.setId(id);
+        vo.setSeriesId(id);
+        vo.setXid("DP_" + id);
+        vo.setPointLocator(new MockPointLocatorVO(DataTypes.NUMERIC, true));
+        return vo;
+    }
+
+    private List<StatisticsGenerator> query(PointValueRollupTiers tiers, DataPointVO vo, TimePeriodType type, long... starts) {
+        return query(tiers, vo, 1, type, starts);
+    }
+
+    private List<StatisticsGenerator> query(PointValueRollupTiers tiers, DataPointVO vo, int periods, TimePeriodType type, long... starts) {
+        List<Long> periodStarts = new ArrayList<>();
+        for(long start : starts)
+            periodStarts.add(start);
+        return tiers.getPeriods(vo, new TimePeriod(periods, type), tiers.getZoneId(), periodStarts);
+    }
+
+    /**
+     * Start of a day in the server's time zone without a daylight saving change in the days around it
+     */
+    private long day(PointValueRollupTiers tiers) {
+        return ZonedDateTime.ofInstant(Instant.parse("2021-06-15T12:00:00Z"), tiers.getZoneId())
+                .truncatedTo(ChronoUnit.DAYS).toInstant().toEpochMilli();
+    }
+
+    @Test
+    public void pointAddedByFirstQuery() {
+        QueueingExecutor executor = new QueueingExecutor();
+        TestRollupTiers tiers = new TestRollupTiers(environment(500000), executor);
+        DataPointVO running = point(1);
+        DataPointVO stopped = point(2);
+        tiers.running.add(running.getId());
+        long now = day(tiers) + 10 * HOUR + 30 * MINUTE;
+
+        assertTrue(query(tiers, stopped, TimePeriodType.HOURS, now - 2 * HOUR).isEmpty());
+        assertEquals(0, tiers.getSeriesCount());
+        assertTrue(executor.tasks.isEmpty());
+
+        assertTrue(query(tiers, running, TimePeriodType.HOURS, now - 2 * HOUR).isEmpty());
+        assertEquals(1, tiers.getSeriesCount());
+        assertEquals(1, executor.tasks.size());
+
+        //Other periods are not stored
+        assertTrue(query(tiers, running, TimePeriodType.SECONDS, now - 2 * HOUR).isEmpty());
+        tiers.update(now);
+        assertTrue(query(tiers, running, TimePeriodType.SECONDS, now - 2 * HOUR).isEmpty());
+        assertEquals(1, query(tiers, running, TimePeriodType.HOURS, day(tiers) + 8 * HOUR).size());
+    }
+
+    @Test
+    public void coarserTiersMergedFromFinerTiers() {
+        TestRollupTiers tiers = new TestRollupTiers(environment(500000), new QueueingExecutor());
+        DataPointVO vo = point(1);
+        tiers.running.add(vo.getId());
+        long day = day(tiers);
+        long now = day + 10 * HOUR + 30 * MINUTE;
+        tiers.add(vo);
+        tiers.update(now);
+
+        //The hours covered by the minutes and the days covered by the hours are not aggregated from the raw values
+        long hoursFrom = day + 10 * HOUR - 48 * HOUR;
+        assertEquals(Arrays.asList(
+                Tier.MINUTES + " " + (now - 180 * MINUTE) + " " + now,
+                Tier.HOURS + " " + hoursFrom + " " + (day + 8 * HOUR),
+                Tier.DAYS + " " + tiers.plus(Tier.DAYS, day, -5) + " " + tiers.plus(Tier.DAYS, day, -1)),
+                tiers.aggregated);
+
+        List<StatisticsGenerator> hours = query(tiers, vo, TimePeriodType.HOURS, day + 8 * HOUR, day + 9 * HOUR, day + 10 * HOUR);
+        assertEquals(2, hours.size());
+        assertPeriod(minutes(day + 8 * HOUR, day + 9 * HOUR), hours.get(0));
+        assertPeriod(minutes(day + 9 * HOUR, day + 10 * HOUR), hours.get(1));
+
+        List<StatisticsGenerator> days = query(tiers, vo, TimePeriodType.DAYS, tiers.plus(Tier.DAYS, day, -2), tiers.plus(Tier.DAYS, day, -1));
+        assertEquals(2, days.size());
+        assertPeriod(minutes(tiers.plus(Tier.DAYS, day, -1), day), days.get(1));
+
+        //Retention
+        assertEquals(1, query(tiers, vo, TimePeriodType.HOURS, hoursFrom).size());
+        assertTrue(query(tiers, vo, TimePeriodType.HOURS, hoursFrom - HOUR).isEmpty());
+    }
+
+    @Test
+    public void coarsestDividingTier() {
+        assertEquals(Tier.MINUTES, Tier.forPeriod(new TimePeriod(1, TimePeriodType.MINUTES)));
+        assertEquals(Tier.MINUTES, Tier.forPeriod(new TimePeriod(15, TimePeriodType.MINUTES)));
+        assertEquals(Tier.MINUTES, Tier.forPeriod(new TimePeriod(120, TimePeriodType.SECONDS)));
+        assertEquals(Tier.HOURS, Tier.forPeriod(new TimePeriod(120, TimePeriodType.MINUTES)));
+        assertEquals(Tier.HOURS, Tier.forPeriod(new TimePeriod(6, TimePeriodType.HOURS)));
+        assertEquals(Tier.HOURS, Tier.forPeriod(new TimePeriod(24, TimePeriodType.HOURS)));
+        assertEquals(Tier.DAYS, Tier.forPeriod(new TimePeriod(2, TimePeriodType.DAYS)));
+        assertEquals(Tier.DAYS, Tier.forPeriod(new TimePeriod(1, TimePeriodType.WEEKS)));
+        assertEquals(Tier.DAYS, Tier.forPeriod(new TimePeriod(1, TimePeriodType.MONTHS)));
+        assertNull(Tier.forPeriod(new TimePeriod(30, TimePeriodType.SECONDS)));
+        assertNull(Tier.forPeriod(new TimePeriod(60000, TimePeriodType.MILLISECONDS)));
+        assertNull(Tier.forPeriod(null));
+    }
+
+    @Test
+    public void multiplesMergedFromStoredPeriods() {
+        TestRollupTiers tiers = new TestRollupTiers(environment(500000), new QueueingExecutor());
+        DataPointVO vo = point(1);
+        tiers.running.add(vo.getId());
+        long day = day(tiers);
+        long now = day + 10 * HOUR + 30 * MINUTE;
+        tiers.add(vo);
+        tiers.update(now);
+
+        //The last period is not stored yet
+        List<StatisticsGenerator> quarters = query(tiers, vo, 15, TimePeriodType.MINUTES,
+                day + 10 * HOUR, day + 10 * HOUR + 15 * MINUTE, now);
+        assertEquals(2, quarters.size());
+        assertPeriod(minutes(day + 10 * HOUR, day + 10 * HOUR + 15 * MINUTE), quarters.get(0));
+        assertPeriod(minutes(day + 10 * HOUR + 15 * MINUTE, now), quarters.get(1));
+
+        List<StatisticsGenerator> hours = query(tiers, vo, 120, TimePeriodType.MINUTES, day + 6 * HOUR, day + 8 * HOUR);
+        assertEquals(2, hours.size());
+        assertPeriod(minutes(day + 6 * HOUR, day + 8 * HOUR), hours.get(0));
+        assertPeriod(minutes(day + 8 * HOUR, day + 10 * HOUR), hours.get(1));
+
+        List<StatisticsGenerator> days = query(tiers, vo, 2, TimePeriodType.DAYS, tiers.plus(Tier.DAYS, day, -4), tiers.plus(Tier.DAYS, day, -2));
+        assertEquals(2, days.size());
+        assertPeriod(minutes(tiers.plus(Tier.DAYS, day, -2), day), days.get(1));
+
+        //Periods not starting at a stored period are read from the raw values
+        assertTrue(query(tiers, vo, 120, TimePeriodType.MINUTES, day + 6 * HOUR + 30 * MINUTE).isEmpty());
+        //Retention
+        assertTrue(query(tiers, vo, 2, TimePeriodType.DAYS, tiers.plus(Tier.DAYS, day, -6)).isEmpty());
+    }
+
+    @Test
+    public void changesDiscardPeriodsFromTheirTime() {
+        TestRollupTiers tiers = new TestRollupTiers(environment(500000), new QueueingExecutor());
+        DataPointVO vo = point(1);
+        tiers.running.add(vo.getId());
+        long day = day(tiers);
+        long now = day + 10 * HOUR + 30 * MINUTE;
+        tiers.add(vo);
+        tiers.update(now);
+
+        //Newer than the stored periods
+        tiers.pointValuesChanged(vo.getSeriesId(), now + 1000);
+        assertEquals(2, query(tiers, vo, TimePeriodType.HOURS, day + 8 * HOUR, day + 9 * HOUR).size());
+
+        tiers.pointValuesChanged(vo.getSeriesId(), day + 9 * HOUR + 15 * MINUTE + 1000);
+        assertEquals(1, query(tiers, vo, TimePeriodType.HOURS, day + 8 * HOUR, day + 9 * HOUR).size());
+        assertEquals(1, query(tiers, vo, TimePeriodType.MINUTES, day + 9 * HOUR + 14 * MINUTE, day + 9 * HOUR + 15 * MINUTE).size());
+        assertEquals(2, query(tiers, vo, TimePeriodType.DAYS, tiers.plus(Tier.DAYS, day, -2), tiers.plus(Tier.DAYS, day, -1)).size());
+
+        //Only the discarded minutes are aggregated again, the hour is merged from them
+        tiers.aggregated.clear();
+        tiers.update(now);
+        assertEquals(Collections.singletonList(Tier.MINUTES + " " + (day + 9 * HOUR + 15 * MINUTE) + " " + now), tiers.aggregated);
+        List<StatisticsGenerator> hours = query(tiers, vo, TimePeriodType.HOURS, day + 8 * HOUR, day + 9 * HOUR);
+        assertEquals(2, hours.size());
+        assertPeriod(minutes(day + 9 * HOUR, day + 10 * HOUR), hours.get(1));
+
+        tiers.invalidate(vo.getSeriesId());
+        assertTrue(query(tiers, vo, TimePeriodType.DAYS, tiers.plus(Tier.DAYS, day, -2)).isEmpty());
+    }
+
+    @Test
+    public void storedPeriodsBounded() {
+        //Room for the periods of one point
+        TestRollupTiers tiers = new TestRollupTiers(environment(300), new QueueingExecutor());
+        DataPointVO first = point(1);
+        DataPointVO second = point(2);
+        DataPointVO third = point(3);
+        tiers.running.addAll(Arrays.asList(first.getId(), second.getId(), third.getId()));
+        long day = day(tiers);
+        long now = day + 10 * HOUR + 30 * MINUTE;
+        tiers.add(first);
+        tiers.add(second);
+        tiers.update(now);
+
+        assertEquals(1, tiers.getSeriesCount());
+        assertEquals(1, query(tiers, second, TimePeriodType.HOURS, day + 8 * HOUR).size());
+        assertTrue(query(tiers, first, TimePeriodType.HOURS, day + 8 * HOUR).isEmpty());
+
+        //The first point was added again by its query and is now the most recent
+        tiers.update(now);
+        assertEquals(1, tiers.getSeriesCount());
+        assertEquals(1, query(tiers, first, TimePeriodType.HOURS, day + 8 * HOUR).size());
+
+        //Points that stopped are dropped
+        tiers.add(third);
+        tiers.running.remove(third.getId());
+        tiers.running.remove(first.getId());
+        tiers.update(now);
+        assertEquals(0, tiers.getSeriesCount());
+    }
+
+    private void assertPeriod(List<RollupTierPeriod> minutes, StatisticsGenerator generator) {
+        AnalogStatistics expected = RollupTierPeriod.merge(minutes).toStatistics();
+        AnalogStatistics actual = (AnalogStatistics) generator;
+        assertEquals(expected.getPeriodStartTime(), actual.getPeriodStartTime());
+        assertEquals(expected.getPeriodEndTime(), actual.getPeriodEndTime());
+        assertEquals(expected.getStartValue(), actual.getStartValue());
+        assertEquals(expected.getFirstValue(), actual.getFirstValue());
+        assertEquals(expected.getLastValue(), actual.getLastValue());
+        assertEquals(expected.getMinimumValue(), actual.getMinimumValue());
+        assertEquals(expected.getMinimumTime(), actual.getMinimumTime());
+        assertEquals(expected.getMaximumValue(), actual.getMaximumValue());
+        assertEquals(expected.getMaximumTime(), actual.getMaximumTime());
+        assertEquals(expected.getAverage(), actual.getAverage(), 0.0000001);
+        assertEquals(expected.getIntegral(), actual.getIntegral(), 0.0000001);
+        assertEquals(expected.getSum(), actual.getSum(), 0.0000001);
+        assertEquals(expected.getDelta(), actual.getDelta(), 0.0000001);
+        assertEquals(expected.getCount(), actual.getCount());
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue.quantize;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueChangeTracker;
+import com.infiniteautomation.mango.rest.latest.model.time.TimePeriodType;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.view.stats.StatisticsGenerator;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.dataPoint.MockPointLocatorVO;
+
+public class RollupStatisticsCacheTest {
+
+    private static final long MINUTE = 60000;
+    private static final ZoneId UTC = ZoneId.of("UTC");
+
+    /**
+     * Records the points tracked instead of listening to them
+     */
+    private static class RecordingTracker extends PointValueChangeTracker {
+        final List<Integer> tracked = new ArrayList<>();
+        final List<Integer> untracked = new ArrayList<>();
+
+        @Override
+        public void track(DataPointVO vo) {
+            tracked.add(vo.getId());
+        }
+
+        @Override
+        public void untrack(int dataPointId) {
+            untracked.add(dataPointId);
+        }
+    }
+
+    private static class TestCache extends RollupStatisticsCache {
+        long now;
+
+        TestCache(long maxPeriods, long ttl, PointValueChangeTracker tracker) {
+            super(maxPeriods, 0, ttl, tracker);
+            start();
+        }
+
+        @Override
+        protected long currentTimeMillis() {
+            return now;
+        }
+    }
+
+    private DataPointVO point(int id) {
+        DataPointVO vo = new DataPointVO();
+        vo.setId(id);
+        vo.setSeriesId(id);
+        vo.setXid("DP_" + id);
+        vo.setPointLocator(new MockPointLocatorVO(DataTypes.NUMERIC, true));
+        return vo;
+    }
+
+    private RollupStatisticsCache.Key key(DataPointVO vo, int minutes) {
+        return new RollupStatisticsCache.Key(vo.getSeriesId(), "AnalogStatisticsDataPointQuantizer", TimePeriodType.MINUTES, minutes, UTC);
+    }
+
+    private StatisticsGenerator period(long start, long end) {
+        return new RollupTierPeriod(start, end, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0).toStatistics();
+    }
+
+    /**
+     * Store consecutive periods from 0
+     */
+    private void fill(RollupStatisticsCache cache, DataPointVO vo, int minutes, int count) {
+        for(int i = 0; i < count; i++)
+            cache.put(key(vo, minutes), vo, period(i * minutes * MINUTE, (i + 1) * minutes * MINUTE));
+    }
+
+    private List<Long> starts(int minutes, int count) {
+        List<Long> starts = new ArrayList<>();
+        for(int i = 0; i < count; i++)
+            starts.add(i * minutes * MINUTE);
+        return starts;
+    }
+
+    @Test
+    public void changeDiscardsPeriodsAfterIt() {
+        RecordingTracker tracker = new RecordingTracker();
+        TestCache cache = new TestCache(1000, 0, tracker);
+        DataPointVO vo = point(1);
+        DataPointVO other = point(2);
+        fill(cache, vo, 1, 10);
+        fill(cache, vo, 5, 2);
+        fill(cache, other, 1, 10);
+        assertEquals(22, cache.getPeriodCount());
+
+        //A value saved late into the fifth minute
+        tracker.changed(vo.getSeriesId(), 4 * MINUTE + 30000);
+        assertEquals(4, cache.getPeriods(key(vo, 1), starts(1, 10)).size());
+        assertTrue(cache.getPeriods(key(vo, 5), starts(5, 2)).isEmpty());
+        assertEquals(10, cache.getPeriods(key(other, 1), starts(1, 10)).size());
+        assertEquals(14, cache.getPeriodCount());
+
+        //The series stay tracked and are stored again
+        assertTrue(tracker.untracked.isEmpty());
+        fill(cache, vo, 1, 10);
+        assertEquals(10, cache.getPeriods(key(vo, 1), starts(1, 10)).size());
+
+        //Any value may have changed
+        tracker.changed(vo.getSeriesId());
+        assertTrue(cache.getPeriods(key(vo, 1), starts(1, 10)).isEmpty());
+        assertEquals(10, cache.getPeriodCount());
+    }
+
+    @Test
+    public void newerValuesKeepPeriods() {
+        RecordingTracker tracker = new RecordingTracker();
+        TestCache cache = new TestCache(1000, 0, tracker);
+        DataPointVO vo = point(1);
+        fill(cache, vo, 1, 10);
+
+        tracker.changed(vo.getSeriesId(), 10 * MINUTE);
+        tracker.changed(vo.getSeriesId(), 20 * MINUTE);
+        assertEquals(10, cache.getPeriods(key(vo, 1), starts(1, 10)).size());
+        assertEquals(10, cache.getPeriodCount());
+    }
+
+    @Test
+    public void periodsExpire() {
+        RecordingTracker tracker = new RecordingTracker();
+        TestCache cache = new TestCache(1000, 60000, tracker);
+        DataPointVO vo = point(1);
+        fill(cache, vo, 1, 5);
+        cache.now = 30000;
+        fill(cache, vo, 1, 10);
+
+        //Expire with the first period stored for the key
+        cache.now = 59999;
+        assertEquals(10, cache.getPeriods(key(vo, 1), starts(1, 10)).size());
+        cache.now = 60000;
+        assertTrue(cache.getPeriods(key(vo, 1), starts(1, 10)).isEmpty());
+        assertEquals(0, cache.getPeriodCount());
+        assertEquals(Arrays.asList(1), tracker.tracked);
+        assertEquals(Arrays.asList(1), tracker.untracked);
+
+        fill(cache, vo, 1, 10);
+        assertEquals(10, cache.getPeriods(key(vo, 1), starts(1, 10)).size());
+    }
+
+    @Test
+    public void trackedWhileStored() {
+        RecordingTracker tracker = new RecordingTracker();
+        TestCache cache = new TestCache(10, 0, tracker);
+        DataPointVO first = point(1);
+        DataPointVO second = point(2);
+        fill(cache, first, 1, 10);
+        fill(cache, first, 5, 2);
+        assertEquals(Arrays.asList(1, 1), tracker.tracked);
+
+        //Both keys of the first series were evicted, the 1 minute key by the 5 minute key
+        fill(cache, second, 1, 10);
+        assertEquals(10, cache.getPeriodCount());
+        assertEquals(Arrays.asList(1, 1, 2), tracker.tracked);
+        assertEquals(Arrays.asList(1, 1), tracker.untracked);
+
+        cache.invalidate(second.getSeriesId());
+        assertEquals(0, cache.getPeriodCount());
+        assertEquals(Arrays.asList(1, 1, 2), tracker.untracked);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue.quantize;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.infiniteautomation.mango.statistics.AnalogStatistics;
+
+public class RollupTierPeriodTest {
+
+    private static final int ALL = RollupTierPeriod.START | RollupTierPeriod.FIRST | RollupTierPeriod.LAST
+            | RollupTierPeriod.MINIMUM | RollupTierPeriod.MAXIMUM | RollupTierPeriod.AVERAGE | RollupTierPeriod.INTEGRAL;
+
+    @Test
+    public void mergeConsecutivePeriods() {
+        RollupTierPeriod first = new RollupTierPeriod(0, 60000, ALL, 5, 3, 10000, 7, 50000, 3, 10000, 7, 50000,
+                5, 60000, 300, 10, 2, 2);
+        RollupTierPeriod second = new RollupTierPeriod(60000, 120000, ALL, 7, 1, 70000, 9, 110000, 1, 70000, 9, 110000,
+                4, 60000, 240, 10, 2, 2);
+        //No values, only the start value
+        RollupTierPeriod third = new RollupTierPeriod(120000, 180000,
+                RollupTierPeriod.START | RollupTierPeriod.AVERAGE | RollupTierPeriod.INTEGRAL,
+                9, 0, 0, 0, 0, 0, 0, 0, 0, 9, 60000, 540, 0, 0, 0);
+
+        AnalogStatistics merged = RollupTierPeriod.merge(Arrays.asList(first, second, third)).toStatistics();
+        assertEquals(0, merged.getPeriodStartTime());
+        assertEquals(180000, merged.getPeriodEndTime());
+        assertEquals(5, merged.getStartValue(), 0);
+        assertEquals(3, merged.getFirstValue(), 0);
+        assertEquals(10000, (long) merged.getFirstTime());
+        assertEquals(9, merged.getLastValue(), 0);
+        assertEquals(110000, (long) merged.getLastTime());
+        assertEquals(1, merged.getMinimumValue(), 0);
+        assertEquals(70000, (long) merged.getMinimumTime());
+        assertEquals(9, merged.getMaximumValue(), 0);
+        assertEquals(110000, (long) merged.getMaximumTime());
+        assertEquals(6, merged.getAverage(), 0.0000001);
+        assertEquals(1080, merged.getIntegral(), 0.0000001);
+        assertEquals(20, merged.getSum(), 0);
+        assertEquals(4, merged.getDelta(), 0);
+        assertEquals(4, merged.getCount());
+    }
+
+    @Test
+    public void earliestExtremeKept() {
+        RollupTierPeriod first = new RollupTierPeriod(0, 60000, ALL, 2, 2, 1000, 2, 1000, 2, 1000, 2, 1000,
+                2, 60000, 120, 2, 0, 1);
+        RollupTierPeriod second = new RollupTierPeriod(60000, 120000, ALL, 2, 2, 61000, 2, 61000, 2, 61000, 2, 61000,
+                2, 60000, 120, 2, 0, 1);
+
+        AnalogStatistics merged = RollupTierPeriod.merge(Arrays.asList(first, second)).toStatistics();
+        assertEquals(1000, (long) merged.getMinimumTime());
+        assertEquals(1000, (long) merged.getMaximumTime());
+        assertEquals(61000, (long) merged.getLastTime());
+    }
+
+    @Test
+    public void averageWeightedByTimeWithValue() {
+        //First value half way through the first period
+        RollupTierPeriod first = new RollupTierPeriod(0, 60000, ALL & ~RollupTierPeriod.START, 0, 10, 30000, 10, 30000,
+                10, 30000, 10, 30000, 10, 30000, 300, 10, 0, 1);
+        RollupTierPeriod second = new RollupTierPeriod(60000, 120000, ALL, 10, 20, 60000, 20, 60000, 20, 60000, 20, 60000,
+                20, 60000, 1200, 20, 10, 1);
+
+        AnalogStatistics merged = RollupTierPeriod.merge(Arrays.asList(first, second)).toStatistics();
+        assertNull(merged.getStartValue());
+        assertEquals(10, merged.getFirstValue(), 0);
+        assertEquals(1500000d / 90000, merged.getAverage(), 0.0000001);
+        assertEquals(1500, merged.getIntegral(), 0.0000001);
+    }
+
+    @Test
+    public void mergeWithoutValues() {
+        RollupTierPeriod first = new RollupTierPeriod(0, 60000, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+        RollupTierPeriod second = new RollupTierPeriod(60000, 120000, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+        RollupTierPeriod merged = RollupTierPeriod.merge(Arrays.asList(first, second));
+        assertFalse(merged.has(RollupTierPeriod.START));
+        assertFalse(merged.has(RollupTierPeriod.AVERAGE));
+        AnalogStatistics stats = merged.toStatistics();
+        assertNull(stats.getFirstValue());
+        assertNull(stats.getLastValue());
+        assertNull(stats.getMinimumValue());
+        assertNull(stats.getAverage());
+        assertNull(stats.getIntegral());
+        assertEquals(0, stats.getCount());
+        assertTrue(stats.getSum() == 0);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.goebl.simplify.Point;
+
+public class LttbDownsamplerTest {
+
+    static class TestPoint implements Point {
+        final double x;
+        final double y;
+
+        TestPoint(double x, double y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public double getX() {
+            return x;
+        }
+
+        @Override
+        public double getY() {
+            return y;
+        }
+
+        @Override
+        public boolean isProcessable() {
+            return true;
+        }
+
+        @Override
+        public int compareTo(Point that) {
+            return Double.compare(x, that.getX());
+        }
+
+        @Override
+        public String toString() {
+            return "(" + x + ", " + y + ")";
+        }
+    }
+
+    private void assertPoints(List<TestPoint> points, double... xy) {
+        assertEquals(points.toString(), xy.length / 2, points.size());
+        for(int i = 0; i < points.size(); i++) {
+            assertEquals(xy[i * 2], points.get(i).getX(), 0);
+            assertEquals(xy[i * 2 + 1], points.get(i).getY(), 0);
+        }
+    }
+
+    @Test
+    public void testSelection() {
+        //4 buckets of 10ms
+        LttbDownsampler<TestPoint> downsampler = new LttbDownsampler<>(0, 40, 6);
+        List<TestPoint> kept = new ArrayList<>();
+
+        //The first point is always kept
+        downsampler.add(new TestPoint(0, 0), kept);
+        assertPoints(kept, 0, 0);
+        kept.clear();
+
+        downsampler.add(new TestPoint(5, 10), kept);
+        downsampler.add(new TestPoint(8, 2), kept);
+        downsampler.add(new TestPoint(12, 1), kept);
+        downsampler.add(new TestPoint(15, -10), kept);
+        assertTrue(kept.isEmpty());
+        assertEquals(5, downsampler.getEarliestPending().getX(), 0);
+
+        //Completes the second bucket, the first is selected from
+        downsampler.add(new TestPoint(25, 0), kept);
+        assertPoints(kept, 5, 10);
+        assertEquals(12, downsampler.getEarliestPending().getX(), 0);
+        kept.clear();
+
+        downsampler.add(new TestPoint(28, 3), kept);
+        downsampler.add(new TestPoint(35, 0), kept);
+        assertPoints(kept, 15, -10);
+        kept.clear();
+
+        downsampler.add(new TestPoint(39, 1), kept);
+        assertTrue(kept.isEmpty());
+
+        //The last point is always kept
+        downsampler.finish(kept);
+        assertPoints(kept, 28, 3, 35, 0, 39, 1);
+        assertNull(downsampler.getEarliestPending());
+    }
+
+    @Test
+    public void testFinishWithOneBucket() {
+        LttbDownsampler<TestPoint> downsampler = new LttbDownsampler<>(0, 40, 6);
+        List<TestPoint> kept = new ArrayList<>();
+        downsampler.add(new TestPoint(0, 0), kept);
+        downsampler.add(new TestPoint(5, 10), kept);
+        downsampler.add(new TestPoint(8, 2), kept);
+        downsampler.finish(kept);
+        assertPoints(kept, 0, 0, 5, 10, 8, 2);
+    }
+
+    @Test
+    public void testReuse() {
+        LttbDownsampler<TestPoint> downsampler = new LttbDownsampler<>(0, 40, 6);
+        List<TestPoint> kept = new ArrayList<>();
+        downsampler.add(new TestPoint(0, 0), kept);
+        downsampler.add(new TestPoint(5, 10), kept);
+        downsampler.finish(kept);
+        kept.clear();
+
+        TestPoint first = new TestPoint(1, 1);
+        downsampler.add(first, kept);
+        assertEquals(1, kept.size());
+        assertSame(first, kept.get(0));
+    }
+
+    @Test
+    public void testTarget() {
+        int target = 100;
+        LttbDownsampler<TestPoint> downsampler = new LttbDownsampler<>(0, 10000, target);
+        List<TestPoint> kept = new ArrayList<>();
+        for(int i = 0; i < 10000; i++)
+            downsampler.add(new TestPoint(i, Math.sin(i / 100d)), kept);
+        downsampler.finish(kept);
+
+        //One per bucket plus the first and last
+        assertEquals(target, kept.size());
+        assertEquals(0, kept.get(0).getX(), 0);
+        assertEquals(9999, kept.get(kept.size() - 1).getX(), 0);
+        for(int i = 1; i < kept.size(); i++)
+            assertTrue(kept.get(i - 1).getX() < kept.get(i).getX());
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueChangeTracker;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.query.PointValueQueryCache.Key;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.query.PointValueQueryCache.Row;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.MockMangoLifecycle;
+import com.serotonin.m2m2.MockRuntimeManager;
+import com.serotonin.m2m2.module.Module;
+import com.serotonin.m2m2.rt.dataImage.DataPointListener;
+import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.rt.dataImage.types.AlphanumericValue;
+import com.serotonin.m2m2.rt.dataImage.types.NumericValue;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.dataPoint.MockPointLocatorVO;
+
+public class PointValueQueryCacheTest extends MangoTestBase {
+
+    /**
+     * Size of a window holding one numeric value
+     */
+    private static final long WINDOW_BYTES = 128;
+
+    private static final TestRuntimeManager runtimeManager = new TestRuntimeManager();
+
+    /**
+     * Records the listeners instead of adding them to running points
+     */
+    static class TestRuntimeManager extends MockRuntimeManager {
+        final Map<Integer, List<DataPointListener>> listeners = new HashMap<>();
+
+        @Override
+        public void addDataPointListener(int dataPointId, DataPointListener l) {
+            listeners.computeIfAbsent(dataPointId, k -> new ArrayList<>()).add(l);
+        }
+
+        @Override
+        public void removeDataPointListener(int dataPointId, DataPointListener l) {
+            listeners.get(dataPointId).remove(l);
+        }
+
+        List<DataPointListener> listeners(int dataPointId) {
+            return listeners.getOrDefault(dataPointId, new ArrayList<>());
+        }
+    }
+
+    static class TestLifecycle extends MockMangoLifecycle {
+        public TestLifecycle(List<Module> modules, TestRuntimeManager runtimeManager) {
+            super(modules);
+            this.runtimeManager = runtimeManager;
+        }
+    }
+
+    @Override
+    protected MockMangoLifecycle getLifecycle() {
+        return new TestLifecycle(modules, runtimeManager);
+    }
+
+    @Override
+    public void after() {
+        super.after();
+        runtimeManager.listeners.clear();
+    }
+
+    private static class TestCache extends PointValueQueryCache {
+        long now;
+
+        TestCache(long maxBytes, long expiryMs, PointValueChangeTracker changeTracker) {
+            super(maxBytes, expiryMs, changeTracker);
+        }
+
+        @Override
+        protected long currentTimeMillis() {
+            return now;
+        }
+    }
+
+    private DataPointVO point(int id) {
+        DataPointVO vo = new DataPointVO();
+        vo.setId(id);
+        vo.setSeriesId(id);
+        vo.setXid("DP_" + id);
+        vo.setPointLocator(new MockPointLocatorVO(DataTypes.NUMERIC, true));
+        return vo;
+    }
+
+    private Key key(int seriesId, long from, long to) {
+        return new Key("values", seriesId, from, to, null, true);
+    }
+
+    private List<Row> rows(int seriesId, long... times) {
+        List<Row> rows = new ArrayList<>();
+        for (long time : times) {
+            rows.add(new Row(new IdPointValueTime(seriesId, new NumericValue(time), time), Row.VALUE, false));
+        }
+        return rows;
+    }
+
+    @Test
+    public void cachedRowsReturnedInOrder() {
+        TestCache cache = new TestCache(10 * WINDOW_BYTES, 5000, null);
+        List<Row> rows = rows(1, 100, 200, 300);
+        cache.put(key(1, 0, 1000), point(1), rows);
+        //Later changes to the list don't change the cached window
+        rows.clear();
+
+        List<Row> cached = cache.get(key(1, 0, 1000));
+        assertEquals(3, cached.size());
+        assertEquals(100, cached.get(0).getValue().getTime());
+        assertEquals(300, cached.get(2).getValue().getTime());
+        assertNull(cache.get(key(1, 0, 999)));
+        assertNull(cache.get(new Key("values", 1, 0, 1000, 10, true)));
+        try {
+            cached.add(cached.get(0));
+            fail("Cached rows modified");
+        } catch (UnsupportedOperationException e) {
+            //Expected
+        }
+    }
+
+    @Test
+    public void windowsExpire() {
+        TestCache cache = new TestCache(10 * WINDOW_BYTES, 5000, null);
+        cache.put(key(1, 0, 1000), point(1), rows(1, 100));
+
+        cache.now = 5000;
+        assertNotNull(cache.get(key(1, 0, 1000)));
+        cache.now = 5001;
+        assertNull(cache.get(key(1, 0, 1000)));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void leastRecentlyUsedEvicted() {
+        TestCache cache = new TestCache(2 * WINDOW_BYTES, 5000, null);
+        cache.put(key(1, 0, 1000), point(1), rows(1, 100));
+        cache.put(key(2, 0, 1000), point(2), rows(2, 100));
+        assertEquals(2 * WINDOW_BYTES, cache.getBytes());
+
+        //Use the first window so the second is the least recently used
+        assertNotNull(cache.get(key(1, 0, 1000)));
+        cache.put(key(3, 0, 1000), point(3), rows(3, 100));
+
+        assertEquals(2, cache.size());
+        assertEquals(2 * WINDOW_BYTES, cache.getBytes());
+        assertNotNull(cache.get(key(1, 0, 1000)));
+        assertNull(cache.get(key(2, 0, 1000)));
+        assertNotNull(cache.get(key(3, 0, 1000)));
+    }
+
+    @Test
+    public void sizeEstimatedFromValues() {
+        TestCache cache = new TestCache(10 * WINDOW_BYTES, 5000, null);
+        List<Row> rows = Arrays.asList(new Row(new IdPointValueTime(1, new AlphanumericValue("abcd"), 100), Row.VALUE, false));
+        cache.put(key(1, 0, 1000), point(1), rows);
+        assertEquals(WINDOW_BYTES + 8, cache.getBytes());
+
+        //Replacing a window replaces its size
+        cache.put(key(1, 0, 1000), point(1), rows(1, 100, 200));
+        assertEquals(WINDOW_BYTES + 64, cache.getBytes());
+    }
+
+    @Test
+    public void windowLargerThanCacheNotCached() {
+        TestCache cache = new TestCache(2 * WINDOW_BYTES, 5000, null);
+        cache.put(key(1, 0, 1000), point(1), rows(1, 100));
+        cache.put(key(2, 0, 1000), point(2), rows(2, 100));
+
+        cache.put(key(1, 0, 1000), point(1), rows(1, 100, 200, 300, 400));
+        //Its old values are gone and nothing else was evicted for it
+        assertNull(cache.get(key(1, 0, 1000)));
+        assertNotNull(cache.get(key(2, 0, 1000)));
+        assertEquals(WINDOW_BYTES, cache.getBytes());
+    }
+
+    @Test
+    public void invalidateFromTime() {
+        TestCache cache = new TestCache(10 * WINDOW_BYTES, 5000, null);
+        cache.put(key(1, 0, 1000), point(1), rows(1, 100));
+        cache.put(key(1, 1000, 2000), point(1), rows(1, 1100));
+        cache.put(key(1, 2000, 3000), point(1), rows(1, 2100));
+        cache.put(key(2, 1000, 2000), point(2), rows(2, 1100));
+
+        cache.invalidate(1, 1500);
+
+        //Ends before the change
+        assertNotNull(cache.get(key(1, 0, 1000)));
+        //Contains the change
+        assertNull(cache.get(key(1, 1000, 2000)));
+        //Starts after the change, the changed value can be its start bookend
+        assertNull(cache.get(key(1, 2000, 3000)));
+        //Other series
+        assertNotNull(cache.get(key(2, 1000, 2000)));
+        assertEquals(2 * WINDOW_BYTES, cache.getBytes());
+
+        //A change at the end of a window
+        cache.invalidate(1, 1000);
+        assertNull(cache.get(key(1, 0, 1000)));
+    }
+
+    @Test
+    public void invalidateSeries() {
+        TestCache cache = new TestCache(10 * WINDOW_BYTES, 5000, null);
+        cache.put(key(1, 0, 1000), point(1), rows(1, 100));
+        cache.put(key(1, 1000, 2000), point(1), rows(1, 1100));
+        cache.put(key(2, 0, 1000), point(2), rows(2, 100));
+
+        cache.invalidate(1);
+        assertEquals(1, cache.size());
+        assertNotNull(cache.get(key(2, 0, 1000)));
+        assertEquals(WINDOW_BYTES, cache.getBytes());
+    }
+
+    @Test
+    public void trackedChangesInvalidate() {
+        PointValueChangeTracker tracker = new PointValueChangeTracker();
+        TestCache cache = new TestCache(10 * WINDOW_BYTES, 5000, tracker);
+        cache.start();
+        cache.put(key(1, 0, 1000), point(1), rows(1, 100));
+        cache.put(key(1, 1000, 2000), point(1), rows(1, 1100));
+
+        tracker.changed(1, 1500);
+        assertNotNull(cache.get(key(1, 0, 1000)));
+        assertNull(cache.get(key(1, 1000, 2000)));
+
+        tracker.changed(1);
+        assertEquals(0, cache.size());
+
+        cache.stop();
+        cache.put(key(1, 0, 1000), point(1), rows(1, 100));
+        tracker.changed(1);
+        assertNotNull(cache.get(key(1, 0, 1000)));
+    }
+
+    @Test
+    public void savedValueInvalidatesCachedWindow() {
+        PointValueChangeTracker tracker = new PointValueChangeTracker();
+        TestCache cache = new TestCache(10 * WINDOW_BYTES, 5000, tracker);
+        cache.start();
+        DataPointVO vo = point(1);
+        cache.put(key(1, 0, 1000), vo, rows(1, 100));
+        cache.put(key(1, 1000, 2000), vo, rows(1, 1100));
+        cache.put(key(2, 0, 1000), point(2), rows(2, 100));
+
+        //One listener per point however many windows it has
+        List<DataPointListener> listeners = runtimeManager.listeners(vo.getId());
+        assertEquals(1, listeners.size());
+        assertEquals(1, runtimeManager.listeners(2).size());
+
+        //A value saved late into the second window
+        listeners.get(0).pointLogged(new PointValueTime(5.0, 1500));
+        assertNotNull(cache.get(key(1, 0, 1000)));
+        assertNull(cache.get(key(1, 1000, 2000)));
+        assertNotNull(cache.get(key(2, 0, 1000)));
+        assertEquals(1, runtimeManager.listeners(vo.getId()).size());
+
+        //Untracked once none of its windows are cached
+        listeners.get(0).pointBackdated(new PointValueTime(5.0, 500));
+        assertNull(cache.get(key(1, 0, 1000)));
+        assertTrue(runtimeManager.listeners(vo.getId()).isEmpty());
+        assertEquals(1, runtimeManager.listeners(2).size());
+
+        //Expired windows are untracked
+        cache.now = 5001;
+        assertNull(cache.get(key(2, 0, 1000)));
+        assertTrue(runtimeManager.listeners(2).isEmpty());
+        cache.stop();
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.infiniteautomation.mango.db.query.QueryCancelledException;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.query.PointValueQueryExecutor.ParallelQuery;
+
+public class PointValueQueryExecutorTest {
+
+    @Test
+    public void seriesRunAheadOfWriterUpToLimit() throws Exception {
+        PointValueQueryExecutor executor = new PointValueQueryExecutor(4, 10, 2, 30000);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            List<Integer> started = Collections.synchronizedList(new ArrayList<>());
+            ParallelQuery query = executor.newQuery();
+            for (int i = 0; i < 5; i++) {
+                int series = i;
+                query.add(() -> {
+                    started.add(series);
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+
+            query.writing(0);
+            waitFor(started, 2);
+            //Threads are free but the third series waits for the writer
+            Thread.sleep(200);
+            assertEquals(2, started.size());
+
+            query.writing(1);
+            waitFor(started, 3);
+            Thread.sleep(200);
+            assertEquals(3, started.size());
+            query.cancel();
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void stalledClientFailsSeries() throws Exception {
+        PointValueQueryExecutor executor = new PointValueQueryExecutor(1, 1, 1, 300);
+        try {
+            ParallelQuery query = executor.newQuery();
+            BlockingQueue<Integer> buffer = new ArrayBlockingQueue<>(1);
+            query.put(buffer, 1, () -> false);
+
+            long start = System.nanoTime();
+            try {
+                query.put(buffer, 2, () -> false);
+                fail("Put to a full buffer");
+            } catch (QueryCancelledException e) {
+                //Expected
+            }
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 300);
+            assertEquals(1, buffer.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void slowClientKeepsSeries() throws Exception {
+        PointValueQueryExecutor executor = new PointValueQueryExecutor(1, 1, 1, 300);
+        try {
+            ParallelQuery query = executor.newQuery();
+            BlockingQueue<Integer> buffer = new ArrayBlockingQueue<>(1);
+            query.put(buffer, 1, () -> false);
+
+            //The writer writes other series for longer than the stall timeout, then takes the value
+            Thread writer = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 10; i++) {
+                        Thread.sleep(100);
+                        query.written();
+                    }
+                    buffer.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            writer.start();
+            long start = System.nanoTime();
+            query.put(buffer, 2, () -> false);
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 900);
+            assertEquals(Integer.valueOf(2), buffer.peek());
+            writer.join();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void cancelledSeriesStopsWaiting() throws Exception {
+        PointValueQueryExecutor executor = new PointValueQueryExecutor(1, 1, 1, 30000);
+        try {
+            ParallelQuery query = executor.newQuery();
+            BlockingQueue<Integer> buffer = new ArrayBlockingQueue<>(1);
+            query.put(buffer, 1, () -> false);
+            try {
+                query.put(buffer, 2, () -> true);
+                fail("Put to a full buffer");
+            } catch (QueryCancelledException e) {
+                //Expected
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = QueryCancelledException.class)
+    public void shutDownExecutorCancelsQuery() throws Exception {
+        PointValueQueryExecutor executor = new PointValueQueryExecutor(1, 1, 1, 30000);
+        ParallelQuery query = executor.newQuery();
+        query.add(() -> {});
+        executor.shutdown();
+        query.writing(0);
+    }
+
+    private void waitFor(List<Integer> started, int count) throws InterruptedException {
+        for (int i = 0; i < 100 && started.size() < count; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(count, started.size());
+    }
+}
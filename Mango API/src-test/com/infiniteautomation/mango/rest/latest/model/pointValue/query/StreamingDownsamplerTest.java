@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.infiniteautomation.mango.rest.latest.model.pointValue.DataPointVOPointValueTimeBookend;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
+import com.serotonin.m2m2.rt.dataImage.types.AlphanumericValue;
+import com.serotonin.m2m2.rt.dataImage.types.NumericValue;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.dataPoint.MockPointLocatorVO;
+
+public class StreamingDownsamplerTest {
+
+    private DataPointVO point(int seriesId, int dataType) {
+        DataPointVO vo = new DataPointVO();
+        vo.setId(seriesId);
+        vo.setSeriesId(seriesId);
+        vo.setXid("DP_" + seriesId);
+        vo.setPointLocator(new MockPointLocatorVO(dataType, true));
+        return vo;
+    }
+
+    private DataPointVOPointValueTimeBookend value(DataPointVO vo, long time, double value) {
+        return new DataPointVOPointValueTimeBookend(vo, new IdPointValueTime(vo.getSeriesId(), new NumericValue(value), time));
+    }
+
+    private DataPointVOPointValueTimeBookend startBookend(DataPointVO vo, long time) {
+        return new DataPointVOPointValueTimeBookend(vo, new IdPointValueTime(vo.getSeriesId(), null, time), true, false, true);
+    }
+
+    private DataPointVOPointValueTimeBookend endBookend(DataPointVO vo, long time) {
+        return new DataPointVOPointValueTimeBookend(vo, new IdPointValueTime(vo.getSeriesId(), null, time), false, true, true);
+    }
+
+    private void assertTimeOrder(List<DataPointVOPointValueTimeBookend> written) {
+        for(int i = 1; i < written.size(); i++)
+            assertTrue("Out of order at " + i + " " + written, written.get(i - 1).getTime() <= written.get(i).getTime());
+    }
+
+    private List<Long> times(List<DataPointVOPointValueTimeBookend> written) {
+        List<Long> times = new ArrayList<>();
+        for(DataPointVOPointValueTimeBookend v : written)
+            times.add(v.getTime());
+        return times;
+    }
+
+    @Test
+    public void testSeriesWithBookends() throws Exception {
+        List<DataPointVOPointValueTimeBookend> written = new ArrayList<>();
+        //4 buckets of 10ms
+        StreamingDownsampler downsampler = new StreamingDownsampler(0, 40, 6, written::add);
+        DataPointVO vo = point(1, DataTypes.NUMERIC);
+
+        DataPointVOPointValueTimeBookend start = startBookend(vo, 0);
+        downsampler.add(start);
+        downsampler.add(value(vo, 0, 0));
+        downsampler.add(value(vo, 5, 10));
+        downsampler.add(value(vo, 8, 2));
+        downsampler.add(value(vo, 12, 1));
+        downsampler.add(value(vo, 15, -10));
+        //Not downsampled, must not be written before the values pending in the downsampler
+        DataPointVOPointValueTimeBookend unprocessable = new DataPointVOPointValueTimeBookend(vo, new IdPointValueTime(1, null, 16));
+        downsampler.add(unprocessable);
+        assertEquals(2, written.size());
+        assertSame(start, written.get(0));
+
+        downsampler.add(value(vo, 25, 0));
+        //Kept values are written as they are selected
+        assertEquals(3, written.size());
+        assertEquals(5, written.get(2).getTime());
+
+        downsampler.add(value(vo, 28, 3));
+        downsampler.add(value(vo, 35, 0));
+        downsampler.add(value(vo, 39, 1));
+        DataPointVOPointValueTimeBookend end = endBookend(vo, 40);
+        downsampler.add(end);
+        downsampler.finishSeries(1);
+
+        assertTimeOrder(written);
+        assertEquals(9, written.size());
+        assertSame(start, written.get(0));
+        assertSame(unprocessable, written.get(4));
+        assertSame(end, written.get(8));
+        assertEquals("[0, 0, 5, 15, 16, 28, 35, 39, 40]", times(written).toString());
+    }
+
+    @Test
+    public void testSeriesAtATime() throws Exception {
+        List<DataPointVOPointValueTimeBookend> written = new ArrayList<>();
+        StreamingDownsampler downsampler = new StreamingDownsampler(0, 40, 6, written::add);
+        DataPointVO first = point(1, DataTypes.NUMERIC);
+        DataPointVO second = point(2, DataTypes.NUMERIC);
+
+        for(DataPointVO vo : new DataPointVO[] {first, second}) {
+            downsampler.add(startBookend(vo, 0));
+            for(int time = 1; time < 40; time++)
+                downsampler.add(value(vo, time, time % 7));
+            downsampler.add(endBookend(vo, 40));
+            downsampler.finishSeries(vo.getSeriesId());
+        }
+        downsampler.finish();
+
+        //The first series is complete before the second starts
+        int i = 0;
+        for(DataPointVO vo : new DataPointVO[] {first, second}) {
+            List<DataPointVOPointValueTimeBookend> series = new ArrayList<>();
+            while(i < written.size() && written.get(i).getSeriesId() == vo.getSeriesId())
+                series.add(written.get(i++));
+            assertTimeOrder(series);
+            assertTrue(series.get(0).isFirstBookend());
+            assertTrue(series.get(series.size() - 1).isLastBookend());
+            //Bookends, first, one per bucket and last
+            assertEquals(8, series.size());
+        }
+        assertEquals(written.size(), i);
+    }
+
+    @Test
+    public void testSingleArray() throws Exception {
+        List<DataPointVOPointValueTimeBookend> written = new ArrayList<>();
+        StreamingDownsampler downsampler = new StreamingDownsampler(0, 40, 6, written::add);
+        DataPointVO numeric = point(1, DataTypes.NUMERIC);
+        DataPointVO alphanumeric = point(2, DataTypes.ALPHANUMERIC);
+
+        downsampler.add(startBookend(numeric, 0));
+        downsampler.add(startBookend(alphanumeric, 0));
+        for(int time = 0; time < 40; time++) {
+            downsampler.add(value(numeric, time, time % 5));
+            if(time % 3 == 0)
+                downsampler.add(new DataPointVOPointValueTimeBookend(alphanumeric,
+                        new IdPointValueTime(2, new AlphanumericValue("v" + time), time)));
+        }
+        downsampler.add(endBookend(numeric, 40));
+        downsampler.add(endBookend(alphanumeric, 40));
+        downsampler.finish();
+
+        assertTimeOrder(written);
+        assertTrue(written.get(0).isFirstBookend());
+        assertTrue(written.get(1).isFirstBookend());
+        assertTrue(written.get(written.size() - 2).isLastBookend());
+        assertTrue(written.get(written.size() - 1).isLastBookend());
+
+        int numericValues = 0;
+        int alphanumericValues = 0;
+        for(DataPointVOPointValueTimeBookend v : written) {
+            if(v.isBookend())
+                continue;
+            if(v.getSeriesId() == 1)
+                numericValues++;
+            else
+                alphanumericValues++;
+        }
+        assertEquals(6, numericValues);
+        //Not downsampled
+        assertEquals(14, alphanumericValues);
+    }
+}
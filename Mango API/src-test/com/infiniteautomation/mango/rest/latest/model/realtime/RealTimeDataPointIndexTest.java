@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.realtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.MockMangoLifecycle;
+import com.serotonin.m2m2.MockRuntimeManager;
+import com.serotonin.m2m2.i18n.Translations;
+import com.serotonin.m2m2.module.Module;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+import com.serotonin.m2m2.rt.dataSource.DataSourceRT;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.dataPoint.DataPointWithEventDetectors;
+import com.serotonin.m2m2.vo.dataPoint.MockPointLocatorVO;
+import com.serotonin.m2m2.vo.dataSource.mock.MockDataSourceVO;
+
+public class RealTimeDataPointIndexTest extends MangoTestBase {
+
+    private static final TestRuntimeManager runtimeManager = new TestRuntimeManager();
+
+    static class TestRuntimeManager extends MockRuntimeManager {
+        final List<DataPointRT> points = new ArrayList<>();
+
+        @Override
+        public Collection<DataPointRT> getRunningDataPoints() {
+            return points;
+        }
+    }
+
+    static class TestLifecycle extends MockMangoLifecycle {
+        public TestLifecycle(List<Module> modules, TestRuntimeManager runtimeManager) {
+            super(modules);
+            this.runtimeManager = runtimeManager;
+        }
+    }
+
+    @Override
+    protected MockMangoLifecycle getLifecycle() {
+        return new TestLifecycle(modules, runtimeManager);
+    }
+
+    @Override
+    public void after() {
+        super.after();
+        runtimeManager.points.clear();
+    }
+
+    private DataPointVO point(int id, String deviceName, int dataType, String... tags) {
+        DataPointVO vo = new DataPointVO();
+        vo.setId(id);
+        vo.setXid("DP_" + id);
+        vo.setName("DP_" + id);
+        vo.setDeviceName(deviceName);
+        vo.setPointLocator(new MockPointLocatorVO(dataType, true));
+        Map<String, String> tagMap = new HashMap<>();
+        for (int i = 0; i < tags.length; i += 2) {
+            tagMap.put(tags[i], tags[i + 1]);
+        }
+        vo.setTags(tagMap);
+        return vo;
+    }
+
+    private void start(DataPointVO vo) {
+        DataSourceRT<?> ds = new MockDataSourceVO().createDataSourceRT();
+        vo.setDataSourceId(ds.getId());
+        runtimeManager.points.add(new DataPointRT(new DataPointWithEventDetectors(vo, new ArrayList<>()), vo.getPointLocator().createRuntime(), ds, null,
+                Common.databaseProxy.newPointValueDao(), Common.databaseProxy.getPointValueCacheDao(), null));
+    }
+
+    private String type(int dataType, Translations translations) {
+        return new MockPointLocatorVO(dataType, true).getDataTypeMessage().translate(translations);
+    }
+
+    @Test
+    public void idsInIdOrder() {
+        start(point(5, "device", DataTypes.NUMERIC));
+        start(point(1, "device", DataTypes.NUMERIC));
+        start(point(3, "other", DataTypes.NUMERIC));
+        RealTimeDataPointIndex index = new RealTimeDataPointIndex();
+
+        assertEquals(Arrays.asList(1, 3, 5), new ArrayList<>(index.getIds()));
+        assertEquals(Arrays.asList(1, 5), new ArrayList<>(index.getIds(RealTimeDataPointIndex.DEVICE_NAME, "device", Common.getTranslations())));
+    }
+
+    @Test
+    public void indexedProperties() {
+        Translations translations = Common.getTranslations();
+        start(point(1, "device", DataTypes.NUMERIC, "site", "north"));
+        start(point(2, "device", DataTypes.BINARY, "site", "south"));
+        start(point(3, "other", DataTypes.NUMERIC));
+        RealTimeDataPointIndex index = new RealTimeDataPointIndex();
+
+        assertEquals(Collections.singleton(2), index.getIds(RealTimeDataPointIndex.XID, "DP_2", translations));
+        assertTrue(index.getIds(RealTimeDataPointIndex.XID, "DP_4", translations).isEmpty());
+        assertEquals(new TreeSet<>(Arrays.asList(1, 2)), index.getIds(RealTimeDataPointIndex.DEVICE_NAME, "device", translations));
+        assertEquals(new TreeSet<>(Arrays.asList(1, 3)), index.getIds(RealTimeDataPointIndex.TYPE, type(DataTypes.NUMERIC, translations), translations));
+        assertEquals(Collections.singleton(2), index.getIds(RealTimeDataPointIndex.TYPE, type(DataTypes.BINARY, translations), translations));
+        assertEquals(Collections.singleton(1), index.getIds("tags.site", "north", translations));
+        assertTrue(index.getIds("tags.site", "east", translations).isEmpty());
+        assertTrue(index.getIds("tags.floor", "1", translations).isEmpty());
+
+        assertTrue(RealTimeDataPointIndex.isIndexed("tags.site"));
+        assertFalse(RealTimeDataPointIndex.isIndexed("tags."));
+        assertFalse(RealTimeDataPointIndex.isIndexed("name"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notIndexedPropertyRejected() {
+        new RealTimeDataPointIndex().getIds("name", "DP_1", Common.getTranslations());
+    }
+
+    @Test
+    public void returnedIdsAreCopies() {
+        start(point(1, "device", DataTypes.NUMERIC));
+        start(point(2, "device", DataTypes.NUMERIC));
+        RealTimeDataPointIndex index = new RealTimeDataPointIndex();
+
+        //The controller intersects the returned sets
+        index.getIds(RealTimeDataPointIndex.DEVICE_NAME, "device", Common.getTranslations()).retainAll(Collections.singleton(1));
+        index.getIds().clear();
+        assertEquals(new TreeSet<>(Arrays.asList(1, 2)), index.getIds(RealTimeDataPointIndex.DEVICE_NAME, "device", Common.getTranslations()));
+    }
+
+    @Test
+    public void stoppedPointsRemoved() {
+        Translations translations = Common.getTranslations();
+        start(point(1, "device", DataTypes.NUMERIC, "site", "north"));
+        start(point(2, "device", DataTypes.NUMERIC, "site", "north"));
+        RealTimeDataPointIndex index = new RealTimeDataPointIndex();
+        index.getIds();
+
+        index.remove(1);
+        assertEquals(Collections.singleton(2), index.getIds());
+        assertTrue(index.getIds(RealTimeDataPointIndex.XID, "DP_1", translations).isEmpty());
+        assertEquals(Collections.singleton(2), index.getIds("tags.site", "north", translations));
+
+        index.remove(2);
+        assertTrue(index.getIds().isEmpty());
+        assertTrue(index.getIds(RealTimeDataPointIndex.DEVICE_NAME, "device", translations).isEmpty());
+        assertTrue(index.getIds("tags.site", "north", translations).isEmpty());
+    }
+
+    @Test
+    public void startedAndUpdatedPointsReindexed() {
+        Translations translations = Common.getTranslations();
+        start(point(1, "device", DataTypes.NUMERIC, "site", "north"));
+        RealTimeDataPointIndex index = new RealTimeDataPointIndex();
+        index.getIds();
+
+        index.update(point(2, "device", DataTypes.NUMERIC, "site", "north"));
+        assertEquals(new TreeSet<>(Arrays.asList(1, 2)), index.getIds("tags.site", "north", translations));
+
+        //Tags changed, the old values are no longer indexed
+        index.tagsUpdated(point(1, "moved", DataTypes.NUMERIC, "site", "south"));
+        assertEquals(Collections.singleton(2), index.getIds("tags.site", "north", translations));
+        assertEquals(Collections.singleton(1), index.getIds("tags.site", "south", translations));
+        assertEquals(Collections.singleton(1), index.getIds(RealTimeDataPointIndex.DEVICE_NAME, "moved", translations));
+
+        //Tag updates of stopped points are ignored
+        index.tagsUpdated(point(3, "device", DataTypes.NUMERIC, "site", "north"));
+        assertEquals(new TreeSet<>(Arrays.asList(1, 2)), index.getIds());
+    }
+
+    @Test
+    public void updatesBeforeFirstUseIgnored() {
+        RealTimeDataPointIndex index = new RealTimeDataPointIndex();
+        //Started before the index is used, it is built from the running points
+        index.update(point(7, "device", DataTypes.NUMERIC));
+        start(point(1, "device", DataTypes.NUMERIC));
+
+        assertEquals(Collections.singleton(1), index.getIds());
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.infiniteautomation.mango.spring.events.DaoEvent;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.permission.PermissionHolder;
+
+public class DaoNotificationWebSocketHandlerTest {
+
+    /**
+     * Records the notifications instead of sending them to the sessions
+     */
+    private static class RecordingHandler extends DaoNotificationWebSocketHandler<DataPointVO> {
+        final List<Integer> notified = Collections.synchronizedList(new ArrayList<>());
+        final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        int failId = -1;
+
+        RecordingHandler(ScheduledExecutorService executor) {
+            this.scheduledExecutor = executor;
+        }
+
+        void connect() {
+            WebSocketSession session = (WebSocketSession) Proxy.newProxyInstance(WebSocketSession.class.getClassLoader(),
+                    new Class<?>[] {WebSocketSession.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "equals":
+                                return proxy == args[0];
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+            sessions.add(session);
+        }
+
+        void publish(int id) {
+            DataPointVO vo = new DataPointVO();
+            vo.setId(id);
+            notify("update", vo, null, null);
+        }
+
+        @Override
+        protected void notifySessions(String action, DataPointVO vo, DataPointVO originalVo, ApplicationEvent event) {
+            threads.add(Thread.currentThread());
+            if (vo.getId() == failId) {
+                throw new IllegalStateException("Notification failed");
+            }
+            notified.add(vo.getId());
+        }
+
+        @Override
+        protected boolean hasPermission(PermissionHolder user, DataPointVO vo) {
+            return true;
+        }
+
+        @Override
+        protected Object createModel(DataPointVO vo, ApplicationEvent event, PermissionHolder user) {
+            return null;
+        }
+
+        @Override
+        protected void handleDaoEvent(DaoEvent<? extends DataPointVO> event) {
+        }
+    }
+
+    private void waitFor(RecordingHandler handler, int count) throws InterruptedException {
+        for (int i = 0; i < 200 && handler.notified.size() < count; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(count, handler.notified.size());
+    }
+
+    @Test
+    public void notificationsSentInOrderOffThePublishingThread() throws Exception {
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(4);
+        try {
+            RecordingHandler handler = new RecordingHandler(executor);
+            handler.connect();
+            int count = 10000;
+            for (int i = 0; i < count; i++) {
+                handler.publish(i);
+            }
+            waitFor(handler, count);
+
+            for (int i = 0; i < count; i++) {
+                assertEquals(i, (int) handler.notified.get(i));
+            }
+            assertFalse(handler.threads.contains(Thread.currentThread()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void concurrentPublishersKeepTheirOrder() throws Exception {
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(4);
+        try {
+            RecordingHandler handler = new RecordingHandler(executor);
+            handler.connect();
+            int publishers = 4;
+            int count = 5000;
+            List<Thread> threads = new ArrayList<>();
+            for (int p = 0; p < publishers; p++) {
+                int first = p * count;
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < count; i++) {
+                        handler.publish(first + i);
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            waitFor(handler, publishers * count);
+
+            int[] last = new int[publishers];
+            for (int p = 0; p < publishers; p++) {
+                last[p] = p * count - 1;
+            }
+            synchronized (handler.notified) {
+                for (int id : handler.notified) {
+                    int p = id / count;
+                    assertTrue(id > last[p]);
+                    last[p] = id;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failedNotificationDoesNotStopLaterOnes() throws Exception {
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
+        try {
+            RecordingHandler handler = new RecordingHandler(executor);
+            handler.connect();
+            handler.failId = 10;
+            for (int i = 1; i <= 100; i++) {
+                handler.publish(i);
+            }
+            waitFor(handler, 99);
+            assertFalse(handler.notified.contains(10));
+            assertEquals(Integer.valueOf(100), handler.notified.get(handler.notified.size() - 1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void nothingQueuedWithoutSessions() throws Exception {
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
+        RecordingHandler handler = new RecordingHandler(executor);
+        for (int i = 0; i < 10; i++) {
+            handler.publish(i);
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(handler.notified.isEmpty());
+        assertTrue(handler.threads.isEmpty());
+    }
+}
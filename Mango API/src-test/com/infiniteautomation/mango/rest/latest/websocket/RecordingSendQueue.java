@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.websocket;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * Records the messages written, a write completes when the test calls writeSuccess()
+ */
+public class RecordingSendQueue extends WebSocketSendQueue {
+    public final List<String> written = Collections.synchronizedList(new ArrayList<>());
+    public boolean fail;
+
+    public RecordingSendQueue(WebSocketSession session, WebSocketSendQueues queues) {
+        super(session, queues);
+    }
+
+    @Override
+    protected void sendString(String message) throws Exception {
+        if (fail) {
+            throw new IOException("Write failed");
+        }
+        written.add(message);
+    }
+
+    /**
+     * Complete the writes until the queue is empty
+     */
+    public void drain() {
+        int count;
+        do {
+            count = written.size();
+            writeSuccess();
+        } while (written.size() > count);
+    }
+}
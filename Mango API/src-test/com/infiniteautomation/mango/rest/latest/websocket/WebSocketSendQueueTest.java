@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+public class WebSocketSendQueueTest {
+
+    /**
+     * The parts of a session used by the queues
+     */
+    private static class TestSession {
+        final Map<String, Object> attributes = new HashMap<>();
+        boolean open = true;
+        CloseStatus closeStatus;
+
+        final WebSocketSession session = (WebSocketSession) Proxy.newProxyInstance(WebSocketSession.class.getClassLoader(),
+                new Class<?>[] {WebSocketSession.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isOpen":
+                            return open;
+                        case "getAttributes":
+                            return attributes;
+                        case "getId":
+                            return "test";
+                        case "close":
+                            open = false;
+                            closeStatus = args == null ? CloseStatus.NORMAL : (CloseStatus) args[0];
+                            return null;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private WebSocketSendQueues queues(int maxMessages, String overflowPolicy) {
+        return new WebSocketSendQueues(new MockEnvironment()
+                .withProperty("web.websocket.sendQueue.maxMessages", Integer.toString(maxMessages))
+                .withProperty("web.websocket.sendQueue.overflowPolicy", overflowPolicy));
+    }
+
+    @Test
+    public void oldestNotificationDropped() {
+        WebSocketSendQueues queues = queues(3, "DROP_OLDEST");
+        TestSession session = new TestSession();
+        RecordingSendQueue queue = new RecordingSendQueue(session.session, queues);
+
+        //Written straight away, the rest wait
+        queue.send("n1", null, true);
+        queue.send("r1");
+        queue.send("n2", null, true);
+        queue.send("n3", null, true);
+        queue.send("n4", null, true);
+        queue.send("r2");
+        assertEquals(3, queue.getMessages());
+
+        queue.drain();
+        assertEquals(Arrays.asList("n1", "r1", "n4", "r2"), queue.written);
+        assertEquals(2, queues.getMetrics().getDropped());
+        assertTrue(session.open);
+    }
+
+    @Test
+    public void notificationDroppedWhenOnlyResponsesWait() {
+        WebSocketSendQueues queues = queues(2, "DROP_OLDEST");
+        TestSession session = new TestSession();
+        RecordingSendQueue queue = new RecordingSendQueue(session.session, queues);
+
+        queue.send("r1");
+        queue.send("r2");
+        queue.send("r3");
+        queue.send("n1", null, true);
+        assertEquals(2, queue.getMessages());
+        assertTrue(session.open);
+
+        queue.drain();
+        assertEquals(Arrays.asList("r1", "r2", "r3"), queue.written);
+        assertEquals(1, queues.getMetrics().getDropped());
+    }
+
+    @Test
+    public void closedWhenResponsesOverflow() {
+        WebSocketSendQueues queues = queues(2, "DROP_OLDEST");
+        TestSession session = new TestSession();
+        RecordingSendQueue queue = new RecordingSendQueue(session.session, queues);
+
+        queue.send("r1");
+        queue.send("r2");
+        queue.send("r3");
+        queue.send("r4");
+        assertFalse(session.open);
+        assertEquals(WebSocketSendQueue.SEND_QUEUE_FULL, session.closeStatus);
+        assertEquals(0, queue.getMessages());
+        assertEquals(0, queues.getMetrics().getDropped());
+        assertEquals(1, queues.getMetrics().getClosed());
+
+        try {
+            queue.send("r5");
+            fail("Sent to a closed queue");
+        } catch (WebSocketClosedException e) {
+            //Expected
+        }
+    }
+
+    @Test
+    public void closePolicyClosesOnNotifications() {
+        WebSocketSendQueues queues = queues(2, "CLOSE");
+        TestSession session = new TestSession();
+        RecordingSendQueue queue = new RecordingSendQueue(session.session, queues);
+
+        queue.send("n1", null, true);
+        queue.send("n2", null, true);
+        queue.send("n3", null, true);
+        queue.send("n4", null, true);
+        assertFalse(session.open);
+        assertEquals(WebSocketSendQueue.SEND_QUEUE_FULL, session.closeStatus);
+        assertEquals(Arrays.asList("n1"), queue.written);
+    }
+
+    @Test
+    public void coalescedNotificationMovesToEnd() {
+        WebSocketSendQueues queues = queues(10, "DROP_OLDEST");
+        TestSession session = new TestSession();
+        RecordingSendQueue queue = new RecordingSendQueue(session.session, queues);
+
+        queue.send("first", null, true);
+        queue.send("a1", "a", true);
+        queue.send("b1", "b", true);
+        queue.send("a2", "a", true);
+        assertEquals(2, queue.getMessages());
+
+        queue.drain();
+        assertEquals(Arrays.asList("first", "b1", "a2"), queue.written);
+        assertEquals(1, queues.getMetrics().getCoalesced());
+        assertEquals(0, queues.getMetrics().getDropped());
+    }
+
+    @Test
+    public void closedSessionGetsNoQueue() {
+        WebSocketSendQueues queues = queues(10, "DROP_OLDEST");
+        TestSession session = new TestSession();
+        WebSocketSendQueue queue = queues.getQueue(session.session);
+        assertSame(queue, queues.getQueue(session.session));
+        assertEquals(1, queues.getMetrics().getSessions());
+
+        queues.sessionClosed(session.session);
+        session.open = false;
+        try {
+            queues.getQueue(session.session);
+            fail("Created a queue for a closed session");
+        } catch (WebSocketClosedException e) {
+            //Expected
+        }
+        assertNull(session.attributes.get(WebSocketSendQueues.SEND_QUEUE_ATTR));
+        assertEquals(0, queues.getMetrics().getSessions());
+    }
+
+    @Test
+    public void failedWriteClosesSession() {
+        WebSocketSendQueues queues = queues(10, "DROP_OLDEST");
+        TestSession session = new TestSession();
+        RecordingSendQueue queue = new RecordingSendQueue(session.session, queues);
+
+        queue.send("r1");
+        queue.send("n1", null, true);
+        queue.writeFailed(new IOException("Connection reset"));
+        assertFalse(session.open);
+        assertEquals(CloseStatus.SESSION_NOT_RELIABLE, session.closeStatus);
+        assertEquals(0, queue.getMessages());
+
+        //Thrown by the write itself
+        TestSession other = new TestSession();
+        RecordingSendQueue failing = new RecordingSendQueue(other.session, queues);
+        failing.fail = true;
+        failing.send("r1");
+        assertEquals(CloseStatus.SESSION_NOT_RELIABLE, other.closeStatus);
+    }
+}
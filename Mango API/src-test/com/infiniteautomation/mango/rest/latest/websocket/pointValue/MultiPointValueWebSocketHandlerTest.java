@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.websocket.pointValue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.infiniteautomation.mango.rest.latest.websocket.MangoWebSocketHandshakeInterceptor;
+import com.infiniteautomation.mango.rest.latest.websocket.MangoWebSocketSessionTracker;
+import com.infiniteautomation.mango.rest.latest.websocket.RecordingSendQueue;
+import com.infiniteautomation.mango.rest.latest.websocket.WebSocketSendQueues;
+import com.infiniteautomation.mango.spring.service.PermissionService;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.db.dao.DataPointDao;
+import com.serotonin.m2m2.vo.permission.PermissionHolder;
+
+public class MultiPointValueWebSocketHandlerTest extends MangoTestBase {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * A handler wired without the Spring context, batches are flushed as soon as they are scheduled
+     */
+    private static class TestHandler extends MultiPointValueWebSocketHandler {
+        TestHandler(ScheduledExecutorService executor, WebSocketSendQueues queues, ObjectMapper mapper) {
+            super(DataPointDao.getInstance(), new PointValueEventPublisher(DataPointDao.getInstance()));
+            this.scheduledExecutor = executor;
+            this.sendQueues = queues;
+            this.jacksonMapper = mapper;
+            this.sessionTracker = new MangoWebSocketSessionTracker();
+            this.permissionService = Common.getBean(PermissionService.class);
+        }
+    }
+
+    /**
+     * The parts of a session used by the handler, closing it is recorded
+     */
+    private static class TestSession {
+        final Map<String, Object> attributes = new HashMap<>();
+        boolean open = true;
+
+        final WebSocketSession session = (WebSocketSession) Proxy.newProxyInstance(WebSocketSession.class.getClassLoader(),
+                new Class<?>[] {WebSocketSession.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isOpen":
+                            return open;
+                        case "getAttributes":
+                            return attributes;
+                        case "getId":
+                            return "test";
+                        case "getPrincipal":
+                            return null;
+                        case "close":
+                            open = false;
+                            return null;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    /**
+     * Wait for the scheduled flushes to run
+     */
+    private void flushed(ScheduledExecutorService executor) throws Exception {
+        executor.submit(() -> {}).get();
+    }
+
+    private JsonNode events(String message) throws Exception {
+        return mapper.readTree(message).get("payload").get("events");
+    }
+
+    @Test
+    public void slowSessionDropsBatchesAndStaysOpen() throws Exception {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            WebSocketSendQueues queues = new WebSocketSendQueues(new MockEnvironment()
+                    .withProperty("web.websocket.sendQueue.maxMessages", "2"));
+            TestSession session = new TestSession();
+            //Writes never complete until the queue is drained
+            RecordingSendQueue queue = new RecordingSendQueue(session.session, queues);
+            session.attributes.put(WebSocketSendQueues.SEND_QUEUE_ATTR, queue);
+            session.attributes.put(MangoWebSocketHandshakeInterceptor.USER_ATTR, PermissionHolder.SYSTEM_SUPERADMIN);
+
+            TestHandler handler = new TestHandler(executor, queues, mapper);
+            handler.afterConnectionEstablished(session.session);
+
+            int batches = 20;
+            for (int i = 0; i < batches; i++) {
+                handler.pointValueEvent(new PointValueBatchEventModel("DP_" + i, PointValueEventType.UPDATE));
+                flushed(executor);
+            }
+
+            //The first batch is being written and only the latest waits
+            assertTrue(session.open);
+            assertEquals(1, queue.written.size());
+            assertEquals(1, queue.getMessages());
+            assertEquals(batches - 2, queues.getMetrics().getCoalesced());
+
+            queue.drain();
+            assertTrue(session.open);
+            assertEquals(2, queue.written.size());
+            assertEquals("DP_0", events(queue.written.get(0)).get(0).get("xid").asText());
+            JsonNode latest = events(queue.written.get(1));
+            assertEquals(1, latest.size());
+            assertEquals("DP_" + (batches - 1), latest.get(0).get("xid").asText());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.websocket.pointValue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.infiniteautomation.mango.rest.latest.websocket.pointValue.PointValueEventPublisher.PointValueEventSubscriber;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.MockMangoLifecycle;
+import com.serotonin.m2m2.MockRuntimeManager;
+import com.serotonin.m2m2.db.dao.DataPointDao;
+import com.serotonin.m2m2.db.dao.DataSourceDao;
+import com.serotonin.m2m2.module.Module;
+import com.serotonin.m2m2.rt.dataImage.DataPointListener;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.dataPoint.MockPointLocatorVO;
+import com.serotonin.m2m2.vo.dataSource.mock.MockDataSourceVO;
+
+public class PointValueEventPublisherTest extends MangoTestBase {
+
+    private static final TestRuntimeManager runtimeManager = new TestRuntimeManager();
+
+    /**
+     * Records the listeners instead of adding them to running points
+     */
+    static class TestRuntimeManager extends MockRuntimeManager {
+        final Map<Integer, List<DataPointListener>> listeners = new HashMap<>();
+
+        @Override
+        public void addDataPointListener(int dataPointId, DataPointListener l) {
+            listeners.computeIfAbsent(dataPointId, k -> new ArrayList<>()).add(l);
+        }
+
+        @Override
+        public void removeDataPointListener(int dataPointId, DataPointListener l) {
+            listeners.get(dataPointId).remove(l);
+        }
+
+        DataPointListener listener(int dataPointId) {
+            List<DataPointListener> added = listeners.get(dataPointId);
+            assertEquals(1, added.size());
+            return added.get(0);
+        }
+    }
+
+    static class TestLifecycle extends MockMangoLifecycle {
+        public TestLifecycle(List<Module> modules, TestRuntimeManager runtimeManager) {
+            super(modules);
+            this.runtimeManager = runtimeManager;
+        }
+    }
+
+    @Override
+    protected MockMangoLifecycle getLifecycle() {
+        return new TestLifecycle(modules, runtimeManager);
+    }
+
+    @Override
+    public void after() {
+        super.after();
+        runtimeManager.listeners.clear();
+    }
+
+    private static class RecordingSubscriber implements PointValueEventSubscriber {
+        final Set<PointValueEventType> types;
+        final List<PointValueBatchEventModel> events = new ArrayList<>();
+        boolean fail;
+
+        RecordingSubscriber(PointValueEventType first, PointValueEventType... rest) {
+            this.types = EnumSet.of(first, rest);
+        }
+
+        @Override
+        public boolean isSubscribed(int dataPointId, PointValueEventType type) {
+            return types.contains(type);
+        }
+
+        @Override
+        public void pointValueEvent(PointValueBatchEventModel event) {
+            if (fail) {
+                throw new IllegalStateException("Subscriber failed");
+            }
+            events.add(event);
+        }
+    }
+
+    private DataPointVO createDataPoint() {
+        MockDataSourceVO ds = new MockDataSourceVO();
+        ds.setXid(DataSourceDao.getInstance().generateUniqueXid());
+        ds.setName("Test DS");
+        DataSourceDao.getInstance().insert(ds);
+
+        DataPointVO vo = new DataPointVO();
+        vo.setPointLocator(new MockPointLocatorVO(DataTypes.NUMERIC, true));
+        vo.setXid(DataPointDao.getInstance().generateUniqueXid());
+        vo.setName("Test point");
+        vo.setDataSourceId(ds.getId());
+        DataPointDao.getInstance().insert(vo);
+        return vo;
+    }
+
+    @Test
+    public void oneListenerPerPoint() {
+        PointValueEventPublisher publisher = new PointValueEventPublisher(DataPointDao.getInstance());
+        DataPointVO vo = createDataPoint();
+        RecordingSubscriber first = new RecordingSubscriber(PointValueEventType.UPDATE);
+        RecordingSubscriber second = new RecordingSubscriber(PointValueEventType.UPDATE);
+
+        PointValueBatchEventModel registered = publisher.subscribe(vo, first);
+        publisher.subscribe(vo, second);
+        assertEquals(PointValueEventType.REGISTERED, registered.getEvent());
+        assertEquals(vo.getXid(), registered.getXid());
+        assertFalse(registered.getEnabled());
+        assertNotNull(runtimeManager.listener(vo.getId()));
+
+        //Removed with the last subscriber
+        publisher.unsubscribe(vo.getId(), first);
+        assertEquals(1, runtimeManager.listeners.get(vo.getId()).size());
+        publisher.unsubscribe(vo.getId(), first);
+        assertEquals(1, runtimeManager.listeners.get(vo.getId()).size());
+        publisher.unsubscribe(vo.getId(), second);
+        assertTrue(runtimeManager.listeners.get(vo.getId()).isEmpty());
+
+        publisher.subscribe(vo, first);
+        assertNotNull(runtimeManager.listener(vo.getId()));
+    }
+
+    @Test
+    public void eventCreatedOnceForItsSubscribers() {
+        PointValueEventPublisher publisher = new PointValueEventPublisher(DataPointDao.getInstance());
+        DataPointVO vo = createDataPoint();
+        RecordingSubscriber first = new RecordingSubscriber(PointValueEventType.UPDATE, PointValueEventType.CHANGE);
+        RecordingSubscriber second = new RecordingSubscriber(PointValueEventType.UPDATE);
+        RecordingSubscriber other = new RecordingSubscriber(PointValueEventType.TERMINATE);
+        publisher.subscribe(vo, first);
+        publisher.subscribe(vo, second);
+        publisher.subscribe(vo, other);
+
+        DataPointListener listener = runtimeManager.listener(vo.getId());
+        PointValueTime value = new PointValueTime(1.5, 1000);
+        listener.pointUpdated(value);
+        listener.pointChanged(null, value);
+
+        assertEquals(1, second.events.size());
+        assertSame(first.events.get(0), second.events.get(0));
+        assertEquals(PointValueEventType.UPDATE, first.events.get(0).getEvent());
+        assertEquals(1000, first.events.get(0).getValue().getTimestamp());
+        assertEquals(Arrays.asList(PointValueEventType.UPDATE, PointValueEventType.CHANGE),
+                Arrays.asList(first.events.get(0).getEvent(), first.events.get(1).getEvent()));
+        assertTrue(other.events.isEmpty());
+
+        listener.pointTerminated(vo);
+        assertEquals(1, other.events.size());
+        assertEquals(PointValueEventType.TERMINATE, other.events.get(0).getEvent());
+        assertFalse(other.events.get(0).getEnabled());
+    }
+
+    @Test
+    public void failedSubscriberDoesNotStopOthers() {
+        PointValueEventPublisher publisher = new PointValueEventPublisher(DataPointDao.getInstance());
+        DataPointVO vo = createDataPoint();
+        RecordingSubscriber failing = new RecordingSubscriber(PointValueEventType.UPDATE);
+        failing.fail = true;
+        RecordingSubscriber working = new RecordingSubscriber(PointValueEventType.UPDATE);
+        publisher.subscribe(vo, failing);
+        publisher.subscribe(vo, working);
+
+        runtimeManager.listener(vo.getId()).pointUpdated(new PointValueTime(1.5, 1000));
+        assertEquals(1, working.events.size());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.rt.dataSource.DataSourceRT;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.dataPoint.DataPointWithEventDetectors;
+import com.serotonin.m2m2.vo.dataPoint.MockPointLocatorVO;
+import com.serotonin.m2m2.vo.dataSource.mock.MockDataSourceVO;
+
+public class PointValueBatchTest extends MangoTestBase {
+
+    /**
+     * Records the values instead of updating the points
+     */
+    private static class RecordingBatch extends PointValueBatch {
+        final Map<String, List<Long>> delivered = new LinkedHashMap<>();
+        int maxWaiting;
+
+        RecordingBatch(int maxPending) {
+            super("Test point value batch", maxPending);
+        }
+
+        @Override
+        protected void deliver(DataPointRT dp, List<PointValueTime> values) {
+            synchronized (delivered) {
+                List<Long> times = delivered.computeIfAbsent(dp.getVO().getXid(), k -> new ArrayList<>());
+                for (PointValueTime value : values) {
+                    times.add(value.getTime());
+                }
+            }
+        }
+
+        @Override
+        public synchronized void flush() {
+            super.flush();
+            maxWaiting = Math.max(maxWaiting, getPendingValues());
+        }
+    }
+
+    private DataPointRT point(int id, DataSourceRT<?> ds) {
+        DataPointVO vo = new DataPointVO();
+        vo.setId(id);
+        vo.setXid("DP_" + id);
+        vo.setName("DP_" + id);
+        vo.setDataSourceId(ds.getId());
+        vo.setPointLocator(new MockPointLocatorVO(DataTypes.NUMERIC, true));
+        return new DataPointRT(new DataPointWithEventDetectors(vo, new ArrayList<>()), vo.getPointLocator().createRuntime(), ds, null,
+                Common.databaseProxy.newPointValueDao(), Common.databaseProxy.getPointValueCacheDao(), null);
+    }
+
+    @Test
+    public void valuesDeliveredInReadOrder() {
+        DataSourceRT<?> ds = new MockDataSourceVO().createDataSourceRT();
+        DataPointRT first = point(1, ds);
+        DataPointRT second = point(2, ds);
+        RecordingBatch batch = new RecordingBatch(PointValueBatch.MAX_PENDING);
+
+        int values = 5 * PointValueBatch.MAX_BATCH_SIZE + 10;
+        for (int i = 0; i < values; i++) {
+            batch.add(i % 3 == 0 ? second : first, new PointValueTime((double) i, i));
+        }
+        batch.flush();
+        batch.deliverPending();
+
+        assertEquals(0, batch.getPendingValues());
+        int count = 0;
+        for (List<Long> times : batch.delivered.values()) {
+            count += times.size();
+            for (int i = 1; i < times.size(); i++) {
+                assertTrue(times.get(i - 1) < times.get(i));
+            }
+        }
+        assertEquals(values, count);
+        assertEquals(values / 3 + 1, batch.delivered.get(second.getVO().getXid()).size());
+    }
+
+    @Test
+    public void pendingValuesBounded() {
+        DataSourceRT<?> ds = new MockDataSourceVO().createDataSourceRT();
+        DataPointRT point = point(1, ds);
+        int maxPending = 2 * PointValueBatch.MAX_BATCH_SIZE;
+        RecordingBatch batch = new RecordingBatch(maxPending);
+
+        int values = 20 * PointValueBatch.MAX_BATCH_SIZE;
+        for (int i = 0; i < values; i++) {
+            batch.add(point, new PointValueTime((double) i, i));
+        }
+        batch.deliverPending();
+
+        //Whatever the delivery thread managed, the reader delivered once too many values were waiting
+        assertTrue(batch.maxWaiting <= maxPending);
+        assertEquals(values, batch.delivered.get(point.getVO().getXid()).size());
+    }
+
+    @Test
+    public void deliveredCallbackRunsAfterItsValues() {
+        DataSourceRT<?> ds = new MockDataSourceVO().createDataSourceRT();
+        DataPointRT point = point(1, ds);
+        RecordingBatch batch = new RecordingBatch(PointValueBatch.MAX_PENDING);
+        List<Integer> deliveredWhenCalled = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            batch.add(point, new PointValueTime((double) i, i));
+        }
+        batch.flush(() -> deliveredWhenCalled.add(batch.delivered.get(point.getVO().getXid()).size()));
+        //Nothing read since, still runs after the earlier values
+        batch.flush(() -> deliveredWhenCalled.add(batch.delivered.get(point.getVO().getXid()).size()));
+        batch.deliverPending();
+
+        assertEquals(0, batch.getPendingValues());
+        assertEquals(Arrays.asList(10, 10), deliveredWhenCalled);
+    }
+}
@@ -13,6 +13,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -22,9 +23,11 @@ import javax.servlet.http.HttpServletRequest;
 
 import org.jooq.Field;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.util.Assert;
@@ -38,6 +41,9 @@ import org.springframework.web.util.UriComponentsBuilder;
 import com.infiniteautomation.mango.db.query.ConditionSortLimit;
 import com.infiniteautomation.mango.db.query.ConditionSortLimitWithTagKeys;
 import com.infiniteautomation.mango.db.tables.Events;
+import com.infiniteautomation.mango.rest.latest.exception.AbstractRestException;
+import com.infiniteautomation.mango.rest.latest.exception.BadRequestException;
+import com.infiniteautomation.mango.rest.latest.model.FilteredStreamWithTotal;
 import com.infiniteautomation.mango.rest.latest.model.JSONStreamedArray;
 import com.infiniteautomation.mango.rest.latest.model.ListWithTotal;
 import com.infiniteautomation.mango.rest.latest.model.RestModelMapper;
@@ -47,18 +53,34 @@ import com.infiniteautomation.mango.rest.latest.model.StreamedVORqlQueryWithTota
 import com.infiniteautomation.mango.rest.latest.model.TranslatableMessageModel;
 import com.infiniteautomation.mango.rest.latest.model.event.AlarmPointTagCountModel;
 import com.infiniteautomation.mango.rest.latest.model.event.DataPointEventSummaryModel;
+import com.infiniteautomation.mango.rest.latest.model.event.EventAcknowledgeBulkModel;
+import com.infiniteautomation.mango.rest.latest.model.event.EventAcknowledgeBulkResult;
+import com.infiniteautomation.mango.rest.latest.model.event.EventAcknowledgeCoalescer;
+import com.infiniteautomation.mango.rest.latest.model.event.EventBulkAcknowledger;
+import com.infiniteautomation.mango.rest.latest.model.event.EventCountEngine;
 import com.infiniteautomation.mango.rest.latest.model.event.EventInstanceModel;
 import com.infiniteautomation.mango.rest.latest.model.event.EventLevelSummaryModel;
 import com.infiniteautomation.mango.rest.latest.model.event.EventQueryBySourceType;
+import com.infiniteautomation.mango.rest.latest.model.event.EventSummaryCache;
+import com.infiniteautomation.mango.rest.latest.temporaryResource.MangoTaskTemporaryResourceManager;
+import com.infiniteautomation.mango.rest.latest.temporaryResource.TemporaryResource;
+import com.infiniteautomation.mango.rest.latest.temporaryResource.TemporaryResource.StatusUpdateException;
+import com.infiniteautomation.mango.rest.latest.temporaryResource.TemporaryResource.TemporaryResourceStatus;
+import com.infiniteautomation.mango.rest.latest.temporaryResource.TemporaryResourceStatusUpdate;
+import com.infiniteautomation.mango.rest.latest.temporaryResource.TemporaryResourceWebSocketHandler;
 import com.infiniteautomation.mango.spring.service.DataPointService;
 import com.infiniteautomation.mango.spring.service.DataSourceService;
 import com.infiniteautomation.mango.spring.service.EventInstanceService;
 import com.infiniteautomation.mango.spring.service.EventInstanceService.AlarmPointTagCount;
 import com.infiniteautomation.mango.spring.service.EventInstanceService.PeriodCounts;
+import com.infiniteautomation.mango.spring.service.PermissionService;
 import com.infiniteautomation.mango.util.RQLUtils;
 import com.infiniteautomation.mango.util.exception.ValidationException;
+import com.serotonin.m2m2.db.dao.DataPointDao;
 import com.serotonin.m2m2.i18n.ProcessResult;
 import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.i18n.Translations;
+import com.serotonin.m2m2.rt.event.AlarmLevels;
 import com.serotonin.m2m2.rt.event.DataPointEventLevelSummary;
 import com.serotonin.m2m2.rt.event.EventInstance;
 import com.serotonin.m2m2.rt.event.UserEventLevelSummary;
@@ -81,6 +103,8 @@ import net.jazdw.rql.parser.ASTNode;
 @RequestMapping("/events")
 public class EventsRestController {
 
+    private static final String RESOURCE_TYPE_BULK_ACKNOWLEDGE = "BULK_EVENT_ACKNOWLEDGE";
+
     private final RestModelMapper modelMapper;
     private final EventInstanceService service;
     private final BiFunction<EventInstanceVO, PermissionHolder, EventInstanceModel> map;
@@ -90,12 +114,18 @@ public class EventsRestController {
 
     private final DataSourceService dataSourceService;
     private final DataPointService dataPointService;
+    private final EventSummaryCache summaryCache;
+    private final EventCountEngine countEngine;
+    private final MangoTaskTemporaryResourceManager<EventAcknowledgeBulkResult> acknowledgeManager;
+    private final EventBulkAcknowledger bulkAcknowledger;
 
     private final Events eventTable = Events.EVENTS;
 
     @Autowired
     public EventsRestController(RestModelMapper modelMapper, EventInstanceService service,
-            DataSourceService dataSourceService, DataPointService dataPointService) {
+            DataSourceService dataSourceService, DataPointService dataPointService, EventSummaryCache summaryCache,
+            EventCountEngine countEngine, EventAcknowledgeCoalescer acknowledgeCoalescer, PermissionService permissionService,
+            TemporaryResourceWebSocketHandler websocket, Environment environment) {
         this.modelMapper = modelMapper;
         this.service = service;
         this.map = (vo, user) -> modelMapper.map(vo, EventInstanceModel.class, user);
@@ -105,6 +135,11 @@ public class EventsRestController {
 
         this.dataPointService = dataPointService;
         this.dataSourceService = dataSourceService;
+        this.summaryCache = summaryCache;
+        this.countEngine = countEngine;
+        this.acknowledgeManager = new MangoTaskTemporaryResourceManager<>(permissionService, websocket, environment);
+        this.bulkAcknowledger = new EventBulkAcknowledger(service, acknowledgeCoalescer,
+                environment.getProperty("rest.events.acknowledge.batchSize", Integer.class, 1000));
     }
 
     @ApiOperation(
@@ -122,6 +157,12 @@ public class EventsRestController {
             )
     @RequestMapping(method = RequestMethod.GET, value = "/active-summary")
     public List<EventLevelSummaryModel> getActiveSummary(@AuthenticationPrincipal PermissionHolder user) {
+        if (summaryCache.isEnabled()) {
+            return summaryCache.getActiveSummary(user).stream().map(s -> {
+                EventInstanceModel instanceModel = s.getLatest() != null ? modelMapper.map(s.getLatest(), EventInstanceModel.class, user) : null;
+                return new EventLevelSummaryModel(s.getLevel(), s.getCount(), instanceModel);
+            }).collect(Collectors.toList());
+        }
         List<UserEventLevelSummary> summaries = service.getActiveSummary();
         return summaries.stream().map(s -> {
             EventInstanceModel instanceModel = s.getLatest() != null ? modelMapper.map(s.getLatest(), EventInstanceModel.class, user) : null;
@@ -135,6 +176,12 @@ public class EventsRestController {
             )
     @RequestMapping(method = RequestMethod.GET, value = "/unacknowledged-summary")
     public List<EventLevelSummaryModel> getUnacknowledgedSummary(@AuthenticationPrincipal PermissionHolder user) {
+        if (summaryCache.isEnabled()) {
+            return summaryCache.getUnacknowledgedSummary(user).stream().map(s -> {
+                EventInstanceModel instanceModel = s.getLatest() != null ? modelMapper.map(s.getLatest(), EventInstanceModel.class, user) : null;
+                return new EventLevelSummaryModel(s.getLevel(), s.getCount(), instanceModel);
+            }).collect(Collectors.toList());
+        }
         List<UserEventLevelSummary> summaries = service.getUnacknowledgedSummary();
         return summaries.stream().map(s -> {
             EventInstanceModel instanceModel = s.getLatest() != null ? modelMapper.map(s.getLatest(), EventInstanceModel.class, user) : null;
@@ -151,6 +198,16 @@ public class EventsRestController {
             @RequestBody
             String[] xids,
             @AuthenticationPrincipal PermissionHolder user) {
+        if (summaryCache.isEnabled()) {
+            List<DataPointEventSummaryModel> models = new ArrayList<>(xids.length);
+            for (String xid : xids) {
+                Integer id = DataPointDao.getInstance().getIdByXid(xid);
+                if (id != null) {
+                    models.add(new DataPointEventSummaryModel(xid, summaryCache.getDataPointCounts(user, id)));
+                }
+            }
+            return models;
+        }
         Collection<DataPointEventLevelSummary> summaries = service.getDataPointEventSummaries(xids);
         return summaries.stream().map(s -> new DataPointEventSummaryModel(s.getXid(), s.getCounts())).collect(Collectors.toList());
     }
@@ -219,6 +276,95 @@ public class EventsRestController {
         return CompletableFuture.completedFuture(count);
     }
 
+    @ApiOperation(value = "Acknowledge the events matching a query in the background",
+            notes = "Events are acknowledged in batches of rest.events.acknowledge.batchSize, the progress is reported by the temporary resource")
+    @RequestMapping(method = RequestMethod.POST, value = "/acknowledge/bulk")
+    public ResponseEntity<TemporaryResource<EventAcknowledgeBulkResult, AbstractRestException>> bulkAcknowledge(
+            @RequestBody(required=false) EventAcknowledgeBulkModel body,
+            ASTNode rql,
+            UriComponentsBuilder builder) {
+
+        EventAcknowledgeBulkModel request = body == null ? new EventAcknowledgeBulkModel() : body;
+        TranslatableMessageModel message = request.getMessage();
+        TranslatableMessage tlm = message == null ? null : new TranslatableMessage(message.getKey(), message.getArgs().toArray());
+
+        ASTNode query = RQLUtils.addAndRestriction(rql, new ASTNode("eq", "acknowledged", null));
+        ConditionSortLimit conditions = service.rqlToCondition(query, null, fieldMap, valueConverters);
+
+        TemporaryResource<EventAcknowledgeBulkResult, AbstractRestException> responseBody = acknowledgeManager.newTemporaryResource(
+                RESOURCE_TYPE_BULK_ACKNOWLEDGE, request.getId(), request.getExpiration(), request.getTimeout(), (resource) -> {
+                    try {
+                        EventAcknowledgeBulkResult result = bulkAcknowledger.acknowledge(conditions, tlm, progress -> {
+                            resource.progress(progress, Math.min(progress.getAcknowledged(), progress.getTotal()), progress.getTotal());
+                        });
+                        resource.success(result);
+                    } catch (StatusUpdateException e) {
+                        //Cancelled or timed out
+                    }
+                    return null;
+                });
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setLocation(builder.path("/events/acknowledge/bulk/{id}").buildAndExpand(responseBody.getId()).toUri());
+        return new ResponseEntity<>(responseBody, headers, HttpStatus.CREATED);
+    }
+
+    @ApiOperation(value = "Get a list of current bulk acknowledge operations", notes = "User can only get their own bulk operations unless they are an admin")
+    @RequestMapping(method = RequestMethod.GET, value = "/acknowledge/bulk")
+    public MappingJacksonValue getBulkAcknowledgeOperations(
+            ASTNode query,
+            Translations translations) {
+
+        List<TemporaryResource<EventAcknowledgeBulkResult, AbstractRestException>> preFiltered = this.acknowledgeManager.list();
+
+        // hide result property by setting a view
+        MappingJacksonValue resultWithView = new MappingJacksonValue(new FilteredStreamWithTotal<>(preFiltered, query, translations));
+        resultWithView.setSerializationView(Object.class);
+        return resultWithView;
+    }
+
+    @ApiOperation(value = "Update a bulk acknowledge operation using its id", notes = "Only allowed operation is to change the status to CANCELLED. " +
+            "Events of the batches already completed stay acknowledged.")
+    @RequestMapping(method = RequestMethod.PUT, value = "/acknowledge/bulk/{id}")
+    public TemporaryResource<EventAcknowledgeBulkResult, AbstractRestException> updateBulkAcknowledgeOperation(
+            @ApiParam(value = "Temporary resource id", required = true, allowMultiple = false)
+            @PathVariable String id,
+
+            @RequestBody
+            TemporaryResourceStatusUpdate body) {
+
+        TemporaryResource<EventAcknowledgeBulkResult, AbstractRestException> resource = acknowledgeManager.get(id);
+
+        if (body.getStatus() == TemporaryResourceStatus.CANCELLED) {
+            resource.cancel();
+        } else {
+            throw new BadRequestException(new TranslatableMessage("rest.error.onlyCancel"));
+        }
+
+        return resource;
+    }
+
+    @ApiOperation(value = "Get the status of a bulk acknowledge operation using its id", notes = "User can only get their own bulk operations unless they are an admin")
+    @RequestMapping(method = RequestMethod.GET, value = "/acknowledge/bulk/{id}")
+    public TemporaryResource<EventAcknowledgeBulkResult, AbstractRestException> getBulkAcknowledgeOperation(
+            @ApiParam(value = "Temporary resource id", required = true, allowMultiple = false)
+            @PathVariable String id) {
+
+        return acknowledgeManager.get(id);
+    }
+
+    @ApiOperation(value = "Remove a bulk acknowledge operation using its id",
+            notes = "Will only remove a bulk operation if it is complete. " +
+            "User can only remove their own bulk operations unless they are an admin.")
+    @RequestMapping(method = RequestMethod.DELETE, value = "/acknowledge/bulk/{id}")
+    public void removeBulkAcknowledgeOperation(
+            @ApiParam(value = "Temporary resource id", required = true, allowMultiple = false)
+            @PathVariable String id) {
+
+        TemporaryResource<EventAcknowledgeBulkResult, AbstractRestException> resource = acknowledgeManager.get(id);
+        resource.remove();
+    }
+
     @ApiOperation(
             value = "Find Events for a set of sources found by the supplied sourceType RQL query, then query for events with these sources using eventsRql",
             response = EventQueryResult.class
@@ -290,11 +436,14 @@ public class EventsRestController {
         Date from = sorted.get(0);
         Date to = sorted.get(periodBoundaries.size() - 1);
 
+        //Levels of the supplied query, before it is restricted to the periods
+        Set<AlarmLevels> levels = EventCountEngine.alarmLevels(rql);
+
         rql = RQLUtils.addAndRestriction(rql, new ASTNode("ge", "activeTs", from));
         rql = RQLUtils.addAndRestriction(rql, new ASTNode("lt", "activeTs", to));
 
         ConditionSortLimit conditions = service.rqlToCondition(rql, Collections.emptyMap(), fieldMap, valueConverters);
-        return service.countQuery(conditions, sorted);
+        return countEngine.count(user, levels, sorted, conditions);
     }
 
     @ApiOperation(value="Query for event counts using RQL",
@@ -52,6 +52,7 @@ import com.infiniteautomation.mango.rest.latest.mapping.JsonStreamMessageConvert
 import com.infiniteautomation.mango.rest.latest.mapping.SingleMintermPermissionConverter;
 import com.infiniteautomation.mango.rest.latest.mapping.PermissionConverter;
 import com.infiniteautomation.mango.rest.latest.mapping.MangoRestJacksonModule;
+import com.infiniteautomation.mango.rest.latest.mapping.PointValueTimeStreamBinaryMessageConverter;
 import com.infiniteautomation.mango.rest.latest.mapping.PointValueTimeStreamCsvMessageConverter;
 import com.infiniteautomation.mango.rest.latest.mapping.SerotoninJsonMessageConverter;
 import com.infiniteautomation.mango.rest.latest.mapping.SqlMessageConverter;
@@ -131,6 +132,7 @@ public class MangoRestDispatcherConfiguration implements WebMvcConfigurer {
         converters.add(new SerotoninJsonMessageConverter());
         converters.add(new SqlMessageConverter());
         converters.add(new PointValueTimeStreamCsvMessageConverter(csvMapper()));
+        converters.add(new PointValueTimeStreamBinaryMessageConverter());
         converters.add(new GenericCSVMessageConverter(csvObjectMapper()));
         converters.add(new StringHttpMessageConverter(StandardCharsets.UTF_8));
     }
@@ -172,6 +174,7 @@ public class MangoRestDispatcherConfiguration implements WebMvcConfigurer {
         .mediaType("sjson", MediaTypes.SEROTONIN_JSON)
         .mediaType("csv", MediaTypes.CSV_V2)
         .mediaType("csv2", MediaTypes.CSV_V2)
+        .mediaType("binary", PointValueTimeStreamBinaryMessageConverter.POINT_VALUES_BINARY)
         .mediaType("txt", MediaType.TEXT_PLAIN);
     }
 
@@ -4,28 +4,52 @@
 package com.infiniteautomation.mango.rest.latest;
 
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.Async;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import com.infiniteautomation.mango.rest.latest.exception.AbstractRestException;
+import com.infiniteautomation.mango.rest.latest.exception.BadRequestException;
+import com.infiniteautomation.mango.rest.latest.exception.ConfictRestException;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueChangeTracker;
 import com.infiniteautomation.mango.rest.latest.model.pointValue.XidPointValueTimeModel;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.emport.PointValueImportEngine;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.emport.PointValueImportMetricsModel;
 import com.infiniteautomation.mango.rest.latest.model.pointValue.emport.PointValueTimeDeleteResult;
 import com.infiniteautomation.mango.rest.latest.model.pointValue.emport.PointValueTimeImportResult;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.emport.PointValueUploadModel;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.emport.PointValueUploadResult;
+import com.infiniteautomation.mango.rest.latest.temporaryResource.MangoTaskTemporaryResourceManager;
+import com.infiniteautomation.mango.rest.latest.temporaryResource.TemporaryResource;
+import com.infiniteautomation.mango.rest.latest.temporaryResource.TemporaryResource.StatusUpdateException;
+import com.infiniteautomation.mango.rest.latest.temporaryResource.TemporaryResource.TemporaryResourceStatus;
+import com.infiniteautomation.mango.rest.latest.temporaryResource.TemporaryResourceStatusUpdate;
+import com.infiniteautomation.mango.rest.latest.temporaryResource.TemporaryResourceWebSocketHandler;
 import com.infiniteautomation.mango.spring.service.PermissionService;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.DataTypes;
@@ -63,11 +87,21 @@ public class PointValueModificationRestController {
 
     private final DataPointDao dataPointDao;
     private final PermissionService permissionService;
+    private final PointValueChangeTracker changeTracker;
+    private final PointValueImportEngine importEngine;
+    private final MangoTaskTemporaryResourceManager<PointValueUploadResult> uploadManager;
+    private final long uploadTimeout;
 
     @Autowired
-    public PointValueModificationRestController(DataPointDao dataPointDao, PermissionService permissionService) {
+    public PointValueModificationRestController(DataPointDao dataPointDao, PermissionService permissionService,
+            PointValueChangeTracker changeTracker, PointValueImportEngine importEngine,
+            TemporaryResourceWebSocketHandler websocket, Environment environment) {
         this.dataPointDao = dataPointDao;
         this.permissionService = permissionService;
+        this.changeTracker = changeTracker;
+        this.importEngine = importEngine;
+        this.uploadManager = new MangoTaskTemporaryResourceManager<>(permissionService, websocket, environment);
+        this.uploadTimeout = environment.getProperty("rest.pointValues.upload.timeout", Long.class, 600000L);
     }
 
     @ApiOperation(
@@ -81,32 +115,222 @@ public class PointValueModificationRestController {
             @RequestParam(defaultValue="NEVER") FireEvents fireEvents,
             @RequestBody Stream<XidPointValueTimeModel> stream,
             @AuthenticationPrincipal PermissionHolder user) {
-        return CompletableFuture.supplyAsync(() -> {
+        return importEngine.supplyAsync(() -> {
             try {
-                PointValueDao pointValueDao = Common.databaseProxy.newPointValueDao();
-                Map<String, PointValueTimeImport> results = new LinkedHashMap<>();
-                stream.forEach((pvt) -> {
+                return importValues(stream, fireEvents, user, Collections.emptyList(), new LinkedHashMap<>());
+            }catch(CompletionException e) {
+                throw e;
+            }catch(Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
 
-                    results.compute(pvt.getXid(), (xidKey, entry) ->{
-                        if(entry == null) {
-                            entry = new PointValueTimeImport(pvt.getXid(), pointValueDao, dataPointDao, fireEvents, user);
-                        }
-                        entry.saveValue(pvt.getValue(), pvt.getTimestamp(), pvt.getAnnotation());
-                        return entry;
-                    });
+    /**
+     * Save the values and wait until they are queued for writing
+     * @param stream
+     * @param fireEvents
+     * @param user
+     * @param resume - results of an earlier attempt to import the same values, the values they counted are skipped
+     * @param results - the import of each XID, if the import fails it holds the values that were saved
+     * @return the result for each XID
+     * @throws ExecutionException if a chunk failed to save
+     * @throws InterruptedException
+     */
+    private List<PointValueTimeImportResult> importValues(Stream<XidPointValueTimeModel> stream, FireEvents fireEvents, PermissionHolder user,
+            List<PointValueTimeImportResult> resume, Map<String, PointValueTimeImport> results) throws ExecutionException, InterruptedException {
+        PointValueImportEngine.Import importer = importEngine.start();
+        try {
+            PointValueDao pointValueDao = Common.databaseProxy.newPointValueDao();
+            for(PointValueTimeImportResult previous : resume) {
+                PointValueTimeImport entry = new PointValueTimeImport(previous.getXid(), pointValueDao, dataPointDao, fireEvents, user);
+                entry.resume(previous);
+                results.put(previous.getXid(), entry);
+            }
+            stream.forEach((pvt) -> {
+                PointValueTimeImport entry = results.computeIfAbsent(pvt.getXid(), (xidKey) -> new PointValueTimeImport(xidKey, pointValueDao, dataPointDao, fireEvents, user));
+                entry.addValue(pvt, importer);
+            });
+            for(PointValueTimeImport entry : results.values()) {
+                entry.submitChunk(importer);
+            }
 
-                });
+            //Wait for the chunks to be saved
+            try {
+                importer.await();
+            }finally {
+                results.values().forEach(PointValueTimeImport::invalidateQueryCache);
+            }
+            long processed = 0;
+            long skipped = 0;
+            for(PointValueTimeImport entry : results.values()) {
+                processed += entry.totalProcessed;
+                skipped += entry.totalSkipped;
+            }
+            importer.finish(processed, skipped);
 
-                return results.values().stream().map((v) -> {
-                    return new PointValueTimeImportResult(v.xid, v.totalProcessed, v.totalSkipped, v.result);
-                }).collect(Collectors.toList());
+            return toResults(results);
+        }finally {
+            //Waits for the chunks that are running if the import failed
+            importer.close();
+        }
+    }
+
+    private List<PointValueTimeImportResult> toResults(Map<String, PointValueTimeImport> results) {
+        return results.values().stream().map((v) -> {
+            return new PointValueTimeImportResult(v.xid, v.totalProcessed, v.totalSkipped, v.result);
+        }).collect(Collectors.toList());
+    }
+
+    @ApiOperation(
+            value = "Start a chunked point value upload",
+            notes = "Send the values in numbered chunks to /import/uploads/{id}/chunks/{index}, chunks can be sent concurrently. " +
+                    "If the upload is interrupted get its status and send the missing chunks, a chunk that failed must be sent again with the same values. " +
+                    "The upload times out if no chunk is sent for timeout ms. Use the created header to track progress/cancel"
+            )
+    @RequestMapping(method = RequestMethod.POST, value="/import/uploads")
+    public ResponseEntity<TemporaryResource<PointValueUploadResult, AbstractRestException>> startUpload(
+            @RequestBody PointValueUploadModel model,
+            UriComponentsBuilder builder) {
+
+        PointValueUploadResult upload = new PointValueUploadResult(model.getFireEvents() == null ? FireEvents.NEVER : model.getFireEvents(), model.getChunks());
+        //The values are imported as the chunks arrive, the resource only tracks the upload and times out once it is inactive
+        TemporaryResource<PointValueUploadResult, AbstractRestException> resource = uploadManager.newTemporaryResource(
+                "POINT_VALUE_UPLOAD", null, model.getExpiry(), model.getTimeout() == null ? uploadTimeout : model.getTimeout(), (r) -> null);
+        resource.progress(upload, 0, model.getChunks());
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setLocation(builder.path("/point-value-modification/import/uploads/{id}").buildAndExpand(resource.getId()).toUri());
+        return new ResponseEntity<>(resource, headers, HttpStatus.CREATED);
+    }
 
+    @ApiOperation(
+            value = "Import a chunk of a point value upload",
+            notes = "Data Point must exist and user must have write access. A chunk that is already committed is not imported again, " +
+                    "the values a failed chunk saved are skipped when it is sent again."
+            )
+    @RequestMapping(method = RequestMethod.PUT, value="/import/uploads/{id}/chunks/{index}")
+    @Async
+    public CompletableFuture<TemporaryResource<PointValueUploadResult, AbstractRestException>> importChunk(
+            @ApiParam(value = "Temporary resource id", required = true, allowMultiple = false)
+            @PathVariable String id,
+            @ApiParam(value = "Chunk number starting at 0", required = true, allowMultiple = false)
+            @PathVariable int index,
+            @RequestBody Stream<XidPointValueTimeModel> stream,
+            @AuthenticationPrincipal PermissionHolder user) {
+
+        TemporaryResource<PointValueUploadResult, AbstractRestException> resource = uploadManager.get(id);
+        PointValueUploadResult upload = resource.getResult();
+        if(resource.isComplete() || upload == null) {
+            throw new ConfictRestException(new TranslatableMessage("rest.error.uploadComplete"));
+        }
+        if(index < 0 || (upload.getChunks() != null && index >= upload.getChunks())) {
+            throw new BadRequestException(new TranslatableMessage("rest.error.invalidChunk", index));
+        }
+        if(!upload.begin(index)) {
+            if(upload.isCommitted(index)) {
+                return CompletableFuture.completedFuture(resource);
+            }
+            throw new ConfictRestException(new TranslatableMessage("rest.error.chunkInProgress", index));
+        }
+        uploadManager.extendTimeout(resource);
+
+        return importEngine.supplyAsync(() -> {
+            Map<String, PointValueTimeImport> results = new LinkedHashMap<>();
+            try {
+                upload.commit(index, importValues(stream, upload.getFireEvents(), user, upload.getPartialResults(index), results));
             }catch(Exception e) {
-                throw new CompletionException(e);
+                upload.abort(index, toResults(results));
+                throw e instanceof CompletionException ? (CompletionException)e : new CompletionException(e);
+            }finally {
+                //Time out from the end of the chunk
+                uploadManager.extendTimeout(resource);
             }
+            try {
+                if(upload.isComplete()) {
+                    resource.success(upload);
+                }else {
+                    resource.progress(upload, upload.getCommittedChunks(), upload.getChunks());
+                }
+            }catch(StatusUpdateException e) {
+                //Completed by another chunk, cancelled or timed out while this chunk was imported
+            }
+            return resource;
         });
     }
 
+    @ApiOperation(value = "Complete a point value upload",
+            notes = "Only required when the number of chunks was not set when the upload was started")
+    @RequestMapping(method = RequestMethod.POST, value="/import/uploads/{id}/complete")
+    public TemporaryResource<PointValueUploadResult, AbstractRestException> completeUpload(
+            @ApiParam(value = "Temporary resource id", required = true, allowMultiple = false)
+            @PathVariable String id) {
+
+        TemporaryResource<PointValueUploadResult, AbstractRestException> resource = uploadManager.get(id);
+        PointValueUploadResult upload = resource.getResult();
+        if(resource.isComplete() || upload == null) {
+            throw new ConfictRestException(new TranslatableMessage("rest.error.uploadComplete"));
+        }
+        if(upload.isInProgress()) {
+            throw new ConfictRestException(new TranslatableMessage("rest.error.chunksInProgress"));
+        }
+        resource.success(upload);
+        return resource;
+    }
+
+    @ApiOperation(value = "Get the status of a point value upload using its id",
+            notes = "User can only get their own status unless they are an admin")
+    @RequestMapping(method = RequestMethod.GET, value="/import/uploads/{id}")
+    public TemporaryResource<PointValueUploadResult, AbstractRestException> getUploadStatus(
+            @ApiParam(value = "Temporary resource id", required = true, allowMultiple = false)
+            @PathVariable String id) {
+
+        return uploadManager.get(id);
+    }
+
+    @ApiOperation(value = "Update a point value upload using its id",
+            notes = "Only allowed operation is to change the status to CANCELLED, values of committed chunks are not removed. " +
+            "User can only update their own upload unless they are an admin.")
+    @RequestMapping(method = RequestMethod.PUT, value="/import/uploads/{id}")
+    public TemporaryResource<PointValueUploadResult, AbstractRestException> updateUpload(
+            @ApiParam(value = "Temporary resource id", required = true, allowMultiple = false)
+            @PathVariable String id,
+
+            @RequestBody
+            TemporaryResourceStatusUpdate body) {
+
+        TemporaryResource<PointValueUploadResult, AbstractRestException> resource = uploadManager.get(id);
+
+        if (body.getStatus() == TemporaryResourceStatus.CANCELLED) {
+            if(!resource.isComplete()) {
+                resource.cancel();
+            }
+        } else {
+            throw new BadRequestException(new TranslatableMessage("rest.error.onlyCancel"));
+        }
+
+        return resource;
+    }
+
+    @ApiOperation(value = "Remove a point value upload using its id",
+            notes = "Will only remove an upload if it is complete. " +
+            "User can only remove their own upload unless they are an admin.")
+    @RequestMapping(method = RequestMethod.DELETE, value="/import/uploads/{id}")
+    public void removeUpload(
+            @ApiParam(value = "Temporary resource id", required = true, allowMultiple = false)
+            @PathVariable String id) {
+
+        TemporaryResource<PointValueUploadResult, AbstractRestException> resource = uploadManager.get(id);
+        resource.remove();
+    }
+
+    @PreAuthorize("isAdmin()")
+    @ApiOperation(value = "Get the throughput of point value imports since startup")
+    @RequestMapping(method = RequestMethod.GET, value="/import/metrics")
+    public PointValueImportMetricsModel getImportMetrics() {
+        return importEngine.getMetrics();
+    }
+
     class PointValueTimeImport {
 
         protected String xid;
@@ -120,6 +344,9 @@ public class PointValueModificationRestController {
         protected DataPointRT rt;
         protected final DataPointVO vo;
         protected final int dataTypeId;
+        protected List<XidPointValueTimeModel> chunk;
+        //Values already saved by an earlier attempt
+        protected int resumeAfter;
 
         public PointValueTimeImport(String xid, PointValueDao dao, DataPointDao dataPointDao, FireEvents fireEvents, PermissionHolder user) {
             this.xid = xid;
@@ -144,13 +371,96 @@ public class PointValueModificationRestController {
             }
         }
 
+        /**
+         * Cached query windows and stored rollup periods may no longer match the database
+         */
+        protected void invalidateQueryCache() {
+            if(vo != null && totalProcessed > 0) {
+                changeTracker.changed(vo.getSeriesId());
+            }
+        }
+
+        /**
+         * Continue an earlier attempt, its values are counted but not saved again
+         * @param previous
+         */
+        protected void resume(PointValueTimeImportResult previous) {
+            totalProcessed = previous.getTotalQueued();
+            totalSkipped = previous.getTotalSkipped();
+            resumeAfter = totalProcessed + totalSkipped;
+            result = previous.getResult();
+        }
+
+        /**
+         * Add a value to the current chunk, the chunk is queued for saving once it is full
+         * @param model
+         * @param importer
+         */
+        protected void addValue(XidPointValueTimeModel model, PointValueImportEngine.Import importer) {
+            if(resumeAfter > 0) {
+                resumeAfter--;
+                return;
+            }
+            if(!valid) {
+                totalSkipped++;
+                return;
+            }
+            if(chunk == null) {
+                chunk = new ArrayList<>(importEngine.getChunkSize());
+            }
+            chunk.add(model);
+            if(chunk.size() >= importEngine.getChunkSize()) {
+                submitChunk(importer);
+            }
+        }
+
+        /**
+         * Queue the current chunk for saving
+         * @param importer
+         */
+        protected void submitChunk(PointValueImportEngine.Import importer) {
+            if(chunk == null || chunk.isEmpty()) {
+                return;
+            }
+            List<XidPointValueTimeModel> values = chunk;
+            chunk = null;
+            try {
+                importer.submit(xid, () -> saveChunk(values));
+            }catch(ExecutionException | InterruptedException e) {
+                throw new CompletionException(e);
+            }
+        }
+
+        /**
+         * Save the valid values of the chunk in order, each value is counted as processed or skipped once it is done
+         *  so a failed chunk can resume after the values it saved
+         * @param values
+         */
+        private void saveChunk(List<XidPointValueTimeModel> values) {
+            for(XidPointValueTimeModel model : values) {
+                PointValueTime pvt = toPointValueTime(model.getValue(), model.getTimestamp(), model.getAnnotation());
+                if(pvt == null) {
+                    continue;
+                }
+                if(rt == null) {
+                    dao.savePointValueAsync(vo, pvt, null);
+                    //Try for next value to see if the point is enabled now
+                    rt = Common.runtimeManager.getDataPoint(vo.getId());
+                }else {
+                    rt.savePointValueDirectToCache(pvt, null, true, true, fireEvents);
+                }
+                totalProcessed++;
+            }
+        }
+
         /**
          *
          * @param value
          * @param date
          * @param annotation
+         * @return the value to save or null if it is invalid
          */
-        private void saveValue(Object value, ZonedDateTime date, String annotation) {
+        private PointValueTime toPointValueTime(Object value, ZonedDateTime date, String annotation) {
 
             if(valid && value != null) {
 
@@ -158,7 +468,7 @@ public class PointValueModificationRestController {
                 long timestamp;
                 if(date == null || date.toInstant().toEpochMilli() == 0) {
                     totalSkipped++;
-                    return;
+                    return null;
                 }else {
                     timestamp = date.toInstant().toEpochMilli();
                 }
@@ -187,7 +497,7 @@ public class PointValueModificationRestController {
                                         // Lots can go wrong here so let the user know
                                         result.addContextualMessage("value", "event.valueParse.textParse", e.getMessage());
                                         totalSkipped++;
-                                        return;
+                                        return null;
                                     }
                                 }
                             }else {
@@ -204,12 +514,13 @@ public class PointValueModificationRestController {
                         case DataTypes.IMAGE:
                         default:
                             result.addContextualMessage("dataType", "rest.validate.imageNotSupported");
-                            return;
+                            totalSkipped++;
+                            return null;
                     }
                 }catch(Exception e) {
                     result.addContextualMessage("value", "rest.error.serverError", e.getMessage());
                     totalSkipped++;
-                    return;
+                    return null;
                 }
 
                 PointValueTime pvt;
@@ -218,16 +529,10 @@ public class PointValueModificationRestController {
                 }else {
                     pvt = new AnnotatedPointValueTime(dataValue, timestamp, new TranslatableMessage("common.default", annotation));
                 }
-                if(rt == null) {
-                    dao.savePointValueAsync(vo, pvt, null);
-                    //Try for next value to see if the point is enabled now
-                    rt = Common.runtimeManager.getDataPoint(vo.getId());
-                }else {
-                    rt.savePointValueDirectToCache(pvt, null, true, true, fireEvents);
-                }
-                totalProcessed++;
+                return pvt;
             }else {
                 totalSkipped++;
+                return null;
             }
         }
     }
@@ -241,7 +546,7 @@ public class PointValueModificationRestController {
     public CompletableFuture<List<PointValueTimeDeleteResult>> deletePointValues(
             @RequestBody  Stream<XidPointValueTimeModel> stream,
             @AuthenticationPrincipal PermissionHolder user) {
-        return CompletableFuture.supplyAsync(() -> {
+        return importEngine.supplyAsync(() -> {
             try {
                 PointValueDao pointValueDao = Common.databaseProxy.newPointValueDao();
                 Map<String, PointValueTimeDelete> results = new HashMap<>();
@@ -258,6 +563,7 @@ public class PointValueModificationRestController {
 
                 });
 
+                results.values().forEach(PointValueTimeImport::invalidateQueryCache);
                 return results.values().stream().map((v) -> {
                     return new PointValueTimeDeleteResult(v.xid, v.totalProcessed, v.totalSkipped, v.result);
                 }).collect(Collectors.toList());
@@ -44,6 +44,7 @@ import com.infiniteautomation.mango.rest.latest.exception.ServerErrorException;
 import com.infiniteautomation.mango.rest.latest.model.pointValue.DataTypeEnum;
 import com.infiniteautomation.mango.rest.latest.model.pointValue.LegacyPointValueTimeModel;
 import com.infiniteautomation.mango.rest.latest.model.pointValue.LegacyXidPointValueTimeModel;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueChangeTracker;
 import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueField;
 import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueImportResult;
 import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueTimeModel;
@@ -53,12 +54,16 @@ import com.infiniteautomation.mango.rest.latest.model.pointValue.PurgePointValue
 import com.infiniteautomation.mango.rest.latest.model.pointValue.RollupEnum;
 import com.infiniteautomation.mango.rest.latest.model.pointValue.quantize.MultiDataPointDefaultRollupStatisticsQuantizerStream;
 import com.infiniteautomation.mango.rest.latest.model.pointValue.quantize.MultiDataPointStatisticsQuantizerStream;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.quantize.PointValueRollupTiers;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.quantize.RollupStatisticsCache;
 import com.infiniteautomation.mango.rest.latest.model.pointValue.query.LatestQueryInfo;
 import com.infiniteautomation.mango.rest.latest.model.pointValue.query.MultiPointLatestDatabaseStream;
 import com.infiniteautomation.mango.rest.latest.model.pointValue.query.MultiPointSimplifyLatestDatabaseStream;
 import com.infiniteautomation.mango.rest.latest.model.pointValue.query.MultiPointSimplifyTimeRangeDatabaseStream;
 import com.infiniteautomation.mango.rest.latest.model.pointValue.query.MultiPointStatisticsStream;
 import com.infiniteautomation.mango.rest.latest.model.pointValue.query.MultiPointTimeRangeDatabaseStream;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.query.PointValueQueryCache;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.query.PointValueQueryExecutor;
 import com.infiniteautomation.mango.rest.latest.model.pointValue.query.PointValueTimeCacheControl;
 import com.infiniteautomation.mango.rest.latest.model.pointValue.query.XidLatestQueryInfoModel;
 import com.infiniteautomation.mango.rest.latest.model.pointValue.query.XidRollupTimeRangeQueryModel;
@@ -120,11 +125,23 @@ public class PointValueRestController extends AbstractMangoRestController {
     private final PermissionService permissionService;
     private final DataPointService dataPointService;
     private final DataSourceService dataSourceService;
+    private final PointValueQueryCache queryCache;
+    private final PointValueQueryExecutor queryExecutor;
+    private final RollupStatisticsCache rollupCache;
+    private final PointValueRollupTiers rollupTiers;
+    private final PointValueChangeTracker changeTracker;
 
     @Autowired
     public PointValueRestController(TemporaryResourceWebSocketHandler websocket,
-                                    PermissionService permissionService, DataPointService dataPointService, DataSourceService dataSourceService, Environment environment) {
+                                    PermissionService permissionService, DataPointService dataPointService, DataSourceService dataSourceService, Environment environment,
+                                    PointValueQueryCache queryCache, PointValueQueryExecutor queryExecutor, RollupStatisticsCache rollupCache,
+                                    PointValueRollupTiers rollupTiers, PointValueChangeTracker changeTracker) {
         this.dataSourceService = dataSourceService;
+        this.queryCache = queryCache;
+        this.queryExecutor = queryExecutor;
+        this.rollupCache = rollupCache;
+        this.rollupTiers = rollupTiers;
+        this.changeTracker = changeTracker;
         this.resourceManager = new MangoTaskTemporaryResourceManager<>(permissionService, websocket, environment);
         this.permissionService = permissionService;
         this.dataPointService = dataPointService;
@@ -1025,6 +1042,10 @@ public class PointValueRestController extends AbstractMangoRestController {
             //Attempt to save it
             result.saveValue(model);
         }
+        for(PointValueImportResult result : results.values()) {
+            if(result.getTotal() > 0)
+                changeTracker.changed(result.getVo().getSeriesId());
+        }
 
         return ResponseEntity.ok(results.values());
     }
@@ -1086,7 +1107,9 @@ public class PointValueRestController extends AbstractMangoRestController {
         else
             to = ZonedDateTime.ofInstant(Instant.ofEpochMilli(current), zoneId);
 
-        return ResponseEntity.ok(Common.runtimeManager.purgeDataPointValuesBetween(vo, from.toInstant().toEpochMilli(), to.toInstant().toEpochMilli()));
+        long count = Common.runtimeManager.purgeDataPointValuesBetween(vo, from.toInstant().toEpochMilli(), to.toInstant().toEpochMilli());
+        changeTracker.changed(vo.getSeriesId(), from.toInstant().toEpochMilli());
+        return ResponseEntity.ok(count);
     }
 
     @ApiOperation(
@@ -1181,13 +1204,16 @@ public class PointValueRestController extends AbstractMangoRestController {
                                 throw new NotFoundException();
 
                             //Do purge based on settings
-                            if(model.isPurgeAll())
+                            if(model.isPurgeAll()) {
                                 Common.runtimeManager.purgeDataPointValuesWithoutCount(dp);
-                            else if(model.isUseTimeRange())
+                                changeTracker.changed(dp.getSeriesId());
+                            }else if(model.isUseTimeRange()) {
                                 Common.runtimeManager.purgeDataPointValuesBetween(dp, model.getTimeRange().getFrom().getTime(), model.getTimeRange().getTo().getTime());
-                            else {
+                                changeTracker.changed(dp.getSeriesId(), model.getTimeRange().getFrom().getTime());
+                            }else {
                                 long before = DateUtils.minus(Common.timer.currentTimeMillis(), TimePeriodType.convertFrom(model.getDuration().getType()), model.getDuration().getPeriods());
                                 Common.runtimeManager.purgeDataPointValuesWithoutCount(dp, before);
+                                changeTracker.changed(dp.getSeriesId());
                             }
                             result.getSuccessfullyPurged().add(xid);
                         }catch(NotFoundException e) {
@@ -1270,7 +1296,7 @@ public class PointValueRestController extends AbstractMangoRestController {
                     throw new BadRequestException(new TranslatableMessage("rest.validation.noSimplifySupport", vo.getXid()));
             return ResponseEntity.ok(new MultiPointSimplifyLatestDatabaseStream<T, INFO>(info, voMap, this.dao));
         }else
-            return ResponseEntity.ok(new MultiPointLatestDatabaseStream<T, INFO>(info, voMap, this.dao));
+            return ResponseEntity.ok(new MultiPointLatestDatabaseStream<T, INFO>(info, voMap, this.dao, queryCache));
     }
 
     /**
@@ -1289,7 +1315,7 @@ public class PointValueRestController extends AbstractMangoRestController {
             if(info.getRollup() == RollupEnum.POINT_DEFAULT)
                 return ResponseEntity.ok(new MultiDataPointDefaultRollupStatisticsQuantizerStream<T, INFO>(info, voMap, this.dao));
             else
-                return ResponseEntity.ok(new MultiDataPointStatisticsQuantizerStream<T, INFO>(info, voMap, this.dao));
+                return ResponseEntity.ok(new MultiDataPointStatisticsQuantizerStream<T, INFO>(info, voMap, this.dao, rollupCache, rollupTiers, queryExecutor));
         } else {
             if(info.isUseSimplify()) {
                 //Ensure no Simplify support
@@ -1299,7 +1325,7 @@ public class PointValueRestController extends AbstractMangoRestController {
                 return ResponseEntity.ok(new MultiPointSimplifyTimeRangeDatabaseStream<T, INFO>(info, voMap, this.dao));
             }
             else
-                return ResponseEntity.ok(new MultiPointTimeRangeDatabaseStream<T, INFO>(info, voMap, this.dao));
+                return ResponseEntity.ok(new MultiPointTimeRangeDatabaseStream<T, INFO>(info, voMap, this.dao, queryCache, queryExecutor));
         }
     }
 
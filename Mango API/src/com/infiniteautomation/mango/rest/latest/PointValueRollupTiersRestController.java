@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.infiniteautomation.mango.rest.latest.model.pointValue.quantize.PointValueRollupTiers;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.quantize.RollupTierStatusModel;
+import com.infiniteautomation.mango.spring.service.DataPointService;
+import com.infiniteautomation.mango.util.exception.TranslatableIllegalStateException;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+
+/**
+ * Status and maintenance of the pre-aggregated point value rollup tiers
+ */
+@Api(value="Point Value Rollup Tiers", description="Status of the pre-aggregated minute, hour and day statistics")
+@RestController
+@RequestMapping("/point-value-rollup-tiers")
+public class PointValueRollupTiersRestController {
+
+    private final PointValueRollupTiers rollupTiers;
+    private final DataPointService service;
+
+    @Autowired
+    public PointValueRollupTiersRestController(PointValueRollupTiers rollupTiers, DataPointService service) {
+        this.rollupTiers = rollupTiers;
+        this.service = service;
+    }
+
+    @PreAuthorize("isAdmin()")
+    @ApiOperation(
+            value = "Get the status of each tier over all points",
+            notes = "The lag is that of the point furthest behind"
+            )
+    @RequestMapping(method = RequestMethod.GET)
+    public List<RollupTierStatusModel> getStatus() {
+        ensureEnabled();
+        return rollupTiers.getStatus();
+    }
+
+    @PreAuthorize("isAdmin()")
+    @ApiOperation(value = "Get the status of each tier for a data point")
+    @RequestMapping(method = RequestMethod.GET, value = "/{xid}")
+    public List<RollupTierStatusModel> getStatus(
+            @ApiParam(value = "Valid Data Point XID", required = true, allowMultiple = false)
+            @PathVariable String xid) {
+        ensureEnabled();
+        DataPointVO vo = service.get(xid);
+        return rollupTiers.getStatus(vo.getSeriesId());
+    }
+
+    @PreAuthorize("isAdmin()")
+    @ApiOperation(
+            value = "Rebuild the tiers of a data point",
+            notes = "The stored periods are discarded and aggregated again from the point values in the background"
+            )
+    @RequestMapping(method = RequestMethod.POST, value = "/{xid}/rebuild")
+    public void rebuild(
+            @ApiParam(value = "Valid Data Point XID", required = true, allowMultiple = false)
+            @PathVariable String xid) {
+        ensureEnabled();
+        DataPointVO vo = service.get(xid);
+        rollupTiers.rebuild(vo.getSeriesId());
+    }
+
+    private void ensureEnabled() {
+        if(!rollupTiers.isEnabled())
+            throw new TranslatableIllegalStateException(new TranslatableMessage("rest.error.rollupTiersDisabled"));
+    }
+}
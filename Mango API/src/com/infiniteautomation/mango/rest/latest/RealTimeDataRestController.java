@@ -6,7 +6,10 @@ package com.infiniteautomation.mango.rest.latest;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.SortedSet;
 import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -18,6 +21,7 @@ import org.springframework.web.util.UriComponentsBuilder;
 import com.infiniteautomation.mango.rest.latest.model.FilteredStreamWithTotal;
 import com.infiniteautomation.mango.rest.latest.model.RestModelMapper;
 import com.infiniteautomation.mango.rest.latest.model.StreamWithTotal;
+import com.infiniteautomation.mango.rest.latest.model.realtime.RealTimeDataPointIndex;
 import com.infiniteautomation.mango.rest.latest.model.realtime.RealTimeDataPointValueModel;
 import com.infiniteautomation.mango.spring.service.PermissionService;
 import com.serotonin.m2m2.Common;
@@ -47,12 +51,14 @@ public class RealTimeDataRestController {
     private final UriComponentsBuilder imageServletBuilder = UriComponentsBuilder.fromPath("/imageValue/{ts}_{id}.jpg");
 
     private final PermissionService permissionService;
+    private final RealTimeDataPointIndex index;
     private final BiFunction<DataPointRT, PermissionHolder, RealTimeDataPointValueModel> map;
 
 
     @Autowired
-    public RealTimeDataRestController(PermissionService permissionService, RestModelMapper modelMapper){
+    public RealTimeDataRestController(PermissionService permissionService, RestModelMapper modelMapper, RealTimeDataPointIndex index){
         this.permissionService = permissionService;
+        this.index = index;
         this.map = (rt, user) -> {
             RealTimeDataPointValueModel model = new RealTimeDataPointValueModel();
 
@@ -89,7 +95,9 @@ public class RealTimeDataRestController {
     }
 
     /**
-     * Query the User's Real Time Data
+     * Query the User's Real Time Data, equality on xid, deviceName, type and tags is answered by the
+     *  {@link RealTimeDataPointIndex} so only the matching points are read.  When the query is only
+     *  indexed conditions and a limit, models are only built for the returned page.
      * @return
      */
     @ApiOperation(value = "Query realtime values",
@@ -99,16 +107,109 @@ public class RealTimeDataRestController {
             @AuthenticationPrincipal PermissionHolder user,
             ASTNode query,
             Translations translations) {
-        //First build all the models
-        List<RealTimeDataPointValueModel> models = new ArrayList<>();
-        for(DataPointRT rt : Common.runtimeManager.getRunningDataPoints()) {
-            if(permissionService.hasPermission(user, rt.getVO().getReadPermission())) {
-                models.add(map.apply(rt, user));
+
+        IndexedQuery indexed = new IndexedQuery(query);
+
+        SortedSet<Integer> ids = null;
+        for (ASTNode condition : indexed.conditions) {
+            SortedSet<Integer> matching = index.getIds((String) condition.getArguments().get(0),
+                    (String) condition.getArguments().get(1), translations);
+            if (ids == null) {
+                ids = matching;
+            } else {
+                ids.retainAll(matching);
+            }
+        }
+        if (ids == null) {
+            ids = index.getIds();
+        }
+
+        List<DataPointRT> points = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            DataPointRT rt = Common.runtimeManager.getDataPoint(id);
+            if (rt != null && permissionService.hasPermission(user, rt.getVO().getReadPermission())) {
+                points.add(rt);
             }
         }
 
-        //Query the results
+        if (indexed.complete) {
+            Stream<DataPointRT> page = points.stream().skip(indexed.offset);
+            if (indexed.limit != null) {
+                page = page.limit(indexed.limit);
+            }
+            List<RealTimeDataPointValueModel> models = page.map(rt -> map.apply(rt, user)).collect(Collectors.toList());
+            return new StreamWithTotal<RealTimeDataPointValueModel>() {
+                @Override
+                public Stream<RealTimeDataPointValueModel> getItems() {
+                    return models.stream();
+                }
+
+                @Override
+                public int getTotal() {
+                    return points.size();
+                }
+            };
+        }
+
+        //Filter the models of the candidate points
+        List<RealTimeDataPointValueModel> models = new ArrayList<>(points.size());
+        for (DataPointRT rt : points) {
+            models.add(map.apply(rt, user));
+        }
         return new FilteredStreamWithTotal<>(models, query, translations);
     }
 
+    /**
+     * The top level equality conditions of a query that the index can answer
+     */
+    private static class IndexedQuery {
+        private final List<ASTNode> conditions = new ArrayList<>();
+        private Long limit;
+        private long offset;
+        //True if the query has nothing but indexed conditions and a limit
+        private boolean complete = true;
+
+        private IndexedQuery(ASTNode query) {
+            if (query != null) {
+                add(query);
+            }
+        }
+
+        private void add(ASTNode node) {
+            List<Object> args = node.getArguments();
+            switch (node.getName()) {
+                case "and":
+                    for (Object arg : args) {
+                        if (arg instanceof ASTNode) {
+                            add((ASTNode) arg);
+                        } else {
+                            complete = false;
+                        }
+                    }
+                    break;
+                case "eq":
+                    if (args.size() == 2 && args.get(0) instanceof String && args.get(1) instanceof String
+                            && RealTimeDataPointIndex.isIndexed((String) args.get(0))) {
+                        conditions.add(node);
+                    } else {
+                        complete = false;
+                    }
+                    break;
+                case "limit":
+                    if (!args.isEmpty() && args.get(0) instanceof Number
+                            && (args.size() < 2 || args.get(1) instanceof Number)) {
+                        limit = Math.max(0, ((Number) args.get(0)).longValue());
+                        if (args.size() > 1) {
+                            offset = Math.max(0, ((Number) args.get(1)).longValue());
+                        }
+                    } else {
+                        complete = false;
+                    }
+                    break;
+                default:
+                    complete = false;
+            }
+        }
+    }
+
 }
@@ -53,8 +53,10 @@ import com.infiniteautomation.mango.rest.latest.model.StreamWithTotal;
 import com.infiniteautomation.mango.rest.latest.model.email.EmailContentModel;
 import com.infiniteautomation.mango.rest.latest.model.server.NetworkInterfaceModel;
 import com.infiniteautomation.mango.rest.latest.model.server.ServerCommandModel;
+import com.infiniteautomation.mango.rest.latest.model.server.WebSocketSendQueueMetricsModel;
 import com.infiniteautomation.mango.rest.latest.model.system.TimezoneModel;
 import com.infiniteautomation.mango.rest.latest.model.system.TimezoneUtility;
+import com.infiniteautomation.mango.rest.latest.websocket.WebSocketSendQueues;
 import com.infiniteautomation.mango.spring.service.MailingListService;
 import com.infiniteautomation.mango.spring.service.PermissionService;
 import com.infiniteautomation.mango.spring.service.UsersService;
@@ -107,14 +109,16 @@ public class ServerRestController extends AbstractMangoRestController {
 
     private final UsersService userService;
     private final PermissionService permissionService;
+    private final WebSocketSendQueues sendQueues;
 
     private List<TimezoneModel> allTimezones;
     private TimezoneModel defaultServerTimezone;
 
     @Autowired
     public ServerRestController(UsersService userService, MailingListService mailingListService,
-            PermissionService permissionService, MangoSessionRegistry sessionRegistry) {
+            PermissionService permissionService, MangoSessionRegistry sessionRegistry, WebSocketSendQueues sendQueues) {
         this.userService = userService;
+        this.sendQueues = sendQueues;
         this.mailingListService = mailingListService;
         this.sessionRegistry = sessionRegistry;
         this.permissionService = permissionService;
@@ -287,6 +291,13 @@ public class ServerRestController extends AbstractMangoRestController {
         return new ResponseEntity<>(sessions, HttpStatus.OK);
     }
 
+    @PreAuthorize("isAdmin()")
+    @ApiOperation(value = "Get the depth of the websocket outbound queues", notes = "Admin only")
+    @RequestMapping(method = RequestMethod.GET, value = "/websocket-send-queues")
+    public WebSocketSendQueueMetricsModel getWebSocketSendQueues() {
+        return sendQueues.getMetrics();
+    }
+
     @PreAuthorize("isAdmin()")
     @ApiOperation(value = "Get all available system information", notes = "")
     @ApiResponses({
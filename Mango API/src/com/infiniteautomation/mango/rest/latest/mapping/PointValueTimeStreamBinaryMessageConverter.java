@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.mapping;
+
+import java.io.IOException;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import com.infiniteautomation.mango.db.query.QueryCancelledException;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueTimeBinaryWriter;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueTimeStream;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueTimeStream.StreamContentType;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.quantize.MultiDataPointDefaultRollupStatisticsQuantizerStream;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.quantize.MultiDataPointStatisticsQuantizerStream;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.query.MultiPointLatestDatabaseStream;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.query.MultiPointTimeRangeDatabaseStream;
+
+/**
+ * Message converter to write point value streams in the columnar layout of {@link PointValueTimeBinaryWriter},
+ *  the blocks are deflate compressed when the media type has the parameter compression=deflate
+ *
+ */
+public class PointValueTimeStreamBinaryMessageConverter extends AbstractHttpMessageConverter<PointValueTimeStream<?,?>> {
+
+    public static final MediaType POINT_VALUES_BINARY = new MediaType("application", "vnd.infiniteautomation.point-values");
+    public static final String COMPRESSION_PARAMETER = "compression";
+    public static final String DEFLATE = "deflate";
+
+    public PointValueTimeStreamBinaryMessageConverter() {
+        super(POINT_VALUES_BINARY);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return MultiPointLatestDatabaseStream.class.isAssignableFrom(clazz)
+                || MultiPointTimeRangeDatabaseStream.class.isAssignableFrom(clazz)
+                || MultiDataPointStatisticsQuantizerStream.class.isAssignableFrom(clazz)
+                || MultiDataPointDefaultRollupStatisticsQuantizerStream.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected PointValueTimeStream<?, ?> readInternal(Class<? extends PointValueTimeStream<?, ?>> clazz, HttpInputMessage inputMessage)
+            throws IOException, HttpMessageNotReadableException {
+        throw new HttpMessageNotReadableException("Reading binary point values is not supported", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(PointValueTimeStream<?, ?> stream, HttpOutputMessage outputMessage)
+            throws IOException, HttpMessageNotWritableException {
+        MediaType contentType = outputMessage.getHeaders().getContentType();
+        boolean compress = contentType != null && DEFLATE.equalsIgnoreCase(contentType.getParameter(COMPRESSION_PARAMETER));
+
+        stream.setContentType(StreamContentType.BINARY);
+        PointValueTimeBinaryWriter writer = new PointValueTimeBinaryWriter(stream.getQueryInfo(), outputMessage.getBody(), compress);
+        try{
+            writer.writeHeader();
+            stream.start(writer);
+            stream.streamData(writer);
+            stream.finish(writer);
+            writer.close();
+        }catch(QueryCancelledException e) {
+            throw new HttpMessageNotWritableException("Query Cancelled");
+        }
+    }
+}
@@ -3,7 +3,13 @@
  */
 package com.infiniteautomation.mango.rest.latest.model;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -15,12 +21,17 @@ import com.serotonin.m2m2.i18n.Translations;
 import net.jazdw.rql.parser.ASTNode;
 
 /**
+ * When the query has a limit the source is filtered once, counting the matches and keeping only the items up to the
+ * offset plus limit in sort order, the total and items are both taken from that pass. Without a limit the items are
+ * streamed lazily and counted in a separate pass.
+ *
  * @author Jared Wiltshire
  */
 public class FilteredStreamWithTotal<T> implements StreamWithTotal<T> {
 
     private final Supplier<Stream<T>> streamSupplier;
     private final RQLFilter<T> filter;
+    private Result<T> result;
 
     public FilteredStreamWithTotal(Iterable<T> iterable, ASTNode query, Translations translations) {
         this(iterable, new RQLFilterJavaBean<>(query, translations));
@@ -46,12 +57,118 @@ public class FilteredStreamWithTotal<T> implements StreamWithTotal<T> {
 
     @Override
     public Stream<T> getItems() {
-        return filter.apply(streamSupplier.get());
+        if (filter.getLimit() == null) {
+            return filter.apply(streamSupplier.get());
+        }
+        return getResult().items.stream();
     }
 
     @Override
     public int getTotal() {
-        return (int) filter.count(streamSupplier.get());
+        if (filter.getLimit() == null) {
+            return (int) filter.count(streamSupplier.get());
+        }
+        return getResult().total;
     }
 
+    private synchronized Result<T> getResult() {
+        if (result == null) {
+            Predicate<T> predicate = filter.getFilter();
+            long offset = filter.getOffset() == null ? 0 : Math.max(0, filter.getOffset());
+            long keep = Math.min(Integer.MAX_VALUE - 8, offset + Math.max(0, filter.getLimit()));
+            TopItems<T> top = new TopItems<>((int) keep, filter.getSort());
+
+            int total = 0;
+            Iterator<T> it = streamSupplier.get().iterator();
+            while (it.hasNext()) {
+                T item = it.next();
+                if (predicate == null || predicate.test(item)) {
+                    total++;
+                    top.add(item);
+                }
+            }
+            result = new Result<>(total, top.toList((int) Math.min(offset, keep)));
+        }
+        return result;
+    }
+
+    private static class Result<T> {
+        private final int total;
+        private final List<T> items;
+
+        private Result(int total, List<T> items) {
+            this.total = total;
+            this.items = items;
+        }
+    }
+
+    /**
+     * Keeps the first items in sort order, items that sort equally stay in the order they were added
+     */
+    private static class TopItems<T> {
+
+        private final int size;
+        private final Comparator<Ranked<T>> order;
+        private final PriorityQueue<Ranked<T>> sorted;
+        private final List<T> unsorted;
+        private long index;
+
+        private TopItems(int size, Comparator<T> sort) {
+            this.size = size;
+            if (sort == null) {
+                this.order = null;
+                this.sorted = null;
+                this.unsorted = new ArrayList<>(Math.min(size, 1024));
+            } else {
+                Comparator<Ranked<T>> bySort = (a, b) -> sort.compare(a.item, b.item);
+                this.order = bySort.thenComparingLong(r -> r.index);
+                //Largest first so the head is the item to remove
+                this.sorted = new PriorityQueue<>(Math.max(1, Math.min(size, 1024)), order.reversed());
+                this.unsorted = null;
+            }
+        }
+
+        private void add(T item) {
+            if (size == 0) {
+                return;
+            }
+            if (sorted == null) {
+                if (unsorted.size() < size) {
+                    unsorted.add(item);
+                }
+                return;
+            }
+
+            Ranked<T> ranked = new Ranked<>(item, index++);
+            if (sorted.size() < size) {
+                sorted.add(ranked);
+            } else if (order.compare(ranked, sorted.peek()) < 0) {
+                sorted.poll();
+                sorted.add(ranked);
+            }
+        }
+
+        private List<T> toList(int offset) {
+            if (sorted == null) {
+                return unsorted.subList(Math.min(offset, unsorted.size()), unsorted.size());
+            }
+            List<Ranked<T>> ranked = new ArrayList<>(sorted);
+            ranked.sort(order);
+            List<T> items = new ArrayList<>(Math.max(0, ranked.size() - offset));
+            for (int i = offset; i < ranked.size(); i++) {
+                items.add(ranked.get(i).item);
+            }
+            return items;
+        }
+    }
+
+    private static class Ranked<T> {
+        private final T item;
+        private final long index;
+
+        private Ranked(T item, long index) {
+            this.item = item;
+            this.index = index;
+        }
+    }
 }
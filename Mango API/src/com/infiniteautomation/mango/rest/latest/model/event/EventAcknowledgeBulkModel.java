@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.event;
+
+import com.infiniteautomation.mango.rest.latest.model.TranslatableMessageModel;
+
+/**
+ * Request to acknowledge the events matching a query in the background
+ */
+public class EventAcknowledgeBulkModel {
+
+    private String id;
+    private TranslatableMessageModel message;
+    private Long timeout;
+    private Long expiration;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    /**
+     * @return message stored with the acknowledgement, optional
+     */
+    public TranslatableMessageModel getMessage() {
+        return message;
+    }
+
+    public void setMessage(TranslatableMessageModel message) {
+        this.message = message;
+    }
+
+    public Long getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(Long timeout) {
+        this.timeout = timeout;
+    }
+
+    public Long getExpiration() {
+        return expiration;
+    }
+
+    public void setExpiration(Long expiration) {
+        this.expiration = expiration;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.event;
+
+/**
+ * Progress of a bulk acknowledge
+ */
+public class EventAcknowledgeBulkResult {
+
+    private int total;
+    private int acknowledged;
+    private int batches;
+
+    /**
+     * @return unacknowledged events matching the query when started
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    public int getAcknowledged() {
+        return acknowledged;
+    }
+
+    public void setAcknowledged(int acknowledged) {
+        this.acknowledged = acknowledged;
+    }
+
+    public int getBatches() {
+        return batches;
+    }
+
+    public void setBatches(int batches) {
+        this.batches = batches;
+    }
+}
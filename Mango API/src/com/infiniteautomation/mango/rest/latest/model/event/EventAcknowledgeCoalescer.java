@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.event;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.serotonin.m2m2.vo.event.EventInstanceVO;
+
+/**
+ * Coalesces the acknowledge notifications of a batch of events into one.  The batch registers its events before
+ * acknowledging them, listeners of the event manager skip the acknowledge notifications of registered events and
+ * the batch notifies the {@link AcknowledgedBatchListener}s once when it completes.
+ *
+ * Only the events of the batch are held back, the notifications of other events are sent as they happen.  The event
+ * manager sends its notifications in the background so they may arrive after the batch completes, the events stay
+ * registered for rest.events.acknowledge.coalesceSeconds (300) after it.
+ */
+@Component
+public class EventAcknowledgeCoalescer {
+
+    private final Log log = LogFactory.getLog(EventAcknowledgeCoalescer.class);
+
+    /**
+     * Receives the events of each completed batch
+     */
+    public interface AcknowledgedBatchListener {
+        /**
+         * @param events the events acknowledged by the batch, listeners must check the read permission of each
+         */
+        void acknowledged(List<EventInstanceVO> events);
+    }
+
+    private final long holdPeriod;
+    //Map value is the time the event is no longer held
+    private final Map<Integer, Long> held = new ConcurrentHashMap<>();
+    private final Set<AcknowledgedBatchListener> listeners = new CopyOnWriteArraySet<>();
+
+    @Autowired
+    public EventAcknowledgeCoalescer(@Value("${rest.events.acknowledge.coalesceSeconds:300}") int holdSeconds) {
+        this.holdPeriod = TimeUnit.SECONDS.toMillis(holdSeconds);
+    }
+
+    public void addListener(AcknowledgedBatchListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(AcknowledgedBatchListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Run a task that acknowledges a batch of events, the listeners are notified of the batch when it completes
+     * @param events the events the task acknowledges
+     * @param task
+     * @return the result of the task
+     */
+    public <T> T acknowledge(List<EventInstanceVO> events, Supplier<T> task) {
+        long now = System.currentTimeMillis();
+        held.values().removeIf(until -> until <= now);
+        for (EventInstanceVO event : events) {
+            held.put(event.getId(), Long.MAX_VALUE);
+        }
+
+        T result;
+        try {
+            result = task.get();
+        } catch (RuntimeException e) {
+            //Acknowledged events of a failed batch are notified one at a time
+            for (EventInstanceVO event : events) {
+                held.remove(event.getId());
+            }
+            throw e;
+        }
+
+        long until = System.currentTimeMillis() + holdPeriod;
+        for (EventInstanceVO event : events) {
+            held.put(event.getId(), until);
+        }
+        for (AcknowledgedBatchListener listener : listeners) {
+            try {
+                listener.acknowledged(events);
+            } catch (Exception e) {
+                log.error("Failed to notify acknowledged batch listener", e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the acknowledge notification of the event is sent with its batch
+     */
+    public boolean isCoalesced(int eventId) {
+        Long until = held.get(eventId);
+        return until != null && until > System.currentTimeMillis();
+    }
+}
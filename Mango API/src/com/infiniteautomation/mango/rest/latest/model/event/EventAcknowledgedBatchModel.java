@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.event;
+
+import java.util.List;
+
+/**
+ * Events acknowledged together by a bulk acknowledge, sent instead of a notification per event
+ */
+public class EventAcknowledgedBatchModel {
+
+    private List<Integer> ids;
+    private List<EventLevelSummaryDeltaModel> changes;
+
+    public EventAcknowledgedBatchModel() { }
+
+    public EventAcknowledgedBatchModel(List<Integer> ids, List<EventLevelSummaryDeltaModel> changes) {
+        this.ids = ids;
+        this.changes = changes;
+    }
+
+    /**
+     * @return ids of the acknowledged events
+     */
+    public List<Integer> getIds() {
+        return ids;
+    }
+
+    public void setIds(List<Integer> ids) {
+        this.ids = ids;
+    }
+
+    /**
+     * @return change to the unacknowledged count of each level
+     */
+    public List<EventLevelSummaryDeltaModel> getChanges() {
+        return changes;
+    }
+
+    public void setChanges(List<EventLevelSummaryDeltaModel> changes) {
+        this.changes = changes;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.jooq.Condition;
+
+import com.infiniteautomation.mango.db.query.ConditionSortLimit;
+import com.infiniteautomation.mango.db.tables.Events;
+import com.infiniteautomation.mango.spring.service.EventInstanceService;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.vo.event.EventInstanceVO;
+
+/**
+ * Acknowledges the events matching a condition in batches of ascending id.  Each batch is read by a limit query
+ * starting after the last id of the previous batch, acknowledged events no longer match so no offset is needed.
+ * The acknowledge notifications of each batch are coalesced by the {@link EventAcknowledgeCoalescer}.
+ */
+public class EventBulkAcknowledger {
+
+    private final EventInstanceService service;
+    private final EventAcknowledgeCoalescer coalescer;
+    private final int batchSize;
+    private final Events eventTable = Events.EVENTS;
+
+    public EventBulkAcknowledger(EventInstanceService service, EventAcknowledgeCoalescer coalescer, int batchSize) {
+        this.service = service;
+        this.coalescer = coalescer;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * @param conditions the unacknowledged events to acknowledge, the sort, limit and offset are not used
+     * @param message alternate acknowledge source, may be null
+     * @param progress called with the total before the first batch and after each batch, throw to stop
+     * @return the result after the last batch
+     */
+    public EventAcknowledgeBulkResult acknowledge(ConditionSortLimit conditions, TranslatableMessage message, Consumer<EventAcknowledgeBulkResult> progress) {
+        Condition condition = conditions.getCondition();
+        EventAcknowledgeBulkResult result = new EventAcknowledgeBulkResult();
+        result.setTotal(service.customizedCount(new ConditionSortLimit(condition, null, null, null)));
+        progress.accept(result);
+
+        int lastId = -1;
+        while (true) {
+            Condition after = condition == null ? eventTable.id.gt(lastId) : condition.and(eventTable.id.gt(lastId));
+            List<EventInstanceVO> batch = new ArrayList<>(batchSize);
+            service.customizedQuery(new ConditionSortLimit(after, Collections.singletonList(eventTable.id.asc()), batchSize, null), batch::add);
+            if (batch.isEmpty()) {
+                return result;
+            }
+            lastId = batch.get(batch.size() - 1).getId();
+
+            List<Integer> ids = new ArrayList<>(batch.size());
+            for (EventInstanceVO vo : batch) {
+                ids.add(vo.getId());
+            }
+            ConditionSortLimit batchConditions = new ConditionSortLimit(eventTable.id.in(ids), null, null, null);
+            int count = coalescer.acknowledge(batch, () -> service.acknowledgeMany(batchConditions, message));
+
+            result.setAcknowledged(result.getAcknowledged() + count);
+            result.setBatches(result.getBatches() + 1);
+            progress.accept(result);
+        }
+    }
+}
@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.event;
+
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jooq.Condition;
+import org.jooq.Cursor;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Record4;
+import org.jooq.SelectJoinStep;
+import org.jooq.impl.DSL;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.infiniteautomation.mango.db.query.ConditionSortLimit;
+import com.infiniteautomation.mango.db.tables.Events;
+import com.infiniteautomation.mango.permission.MangoPermission;
+import com.infiniteautomation.mango.rest.latest.model.event.EventSummaryCache.EventSummaryListener;
+import com.infiniteautomation.mango.spring.service.EventInstanceService.PeriodCounts;
+import com.infiniteautomation.mango.spring.service.PermissionService;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.db.dao.EventInstanceDao;
+import com.serotonin.m2m2.rt.event.AlarmLevels;
+import com.serotonin.m2m2.rt.event.EventInstance;
+import com.serotonin.m2m2.vo.permission.PermissionHolder;
+
+import net.jazdw.rql.parser.ASTNode;
+
+/**
+ * Counts events into adjacent periods.  The active timestamps of the matching events are read once and the period of
+ * each event is found by a binary search of the boundaries, instead of a count query per period.
+ *
+ * When rest.events.countTable.enabled is set a table of event counts per day, alarm level and read permission is kept
+ * in memory.  Queries with boundaries at the start of days in the server's time zone that only restrict the alarm
+ * level are answered from it.  The table is loaded in the background by a count query grouped by read permission,
+ * alarm level and 15 minute bucket, events are added as they are raised and it is reloaded after
+ * rest.events.countTable.maxAgeHours (24).  Requests never wait for a load, the events are scanned until the table is
+ * ready.
+ *
+ * The table only answers for the days before the current day, the raised events are received asynchronously so the
+ * events of the current day are always counted in the database.  Before the table answers a query the number of events
+ * from the first boundary to the start of the current day is counted in the database, if it differs from the table
+ * (events purged or deleted) the events are scanned and the table reloaded.  The raised events are received by the
+ * {@link EventSummaryCache} which must also be enabled.
+ */
+@Component
+public class EventCountEngine implements EventSummaryListener {
+
+    private final Log log = LogFactory.getLog(EventCountEngine.class);
+
+    private static final String ALARM_LEVEL = "alarmLevel";
+    //Levels that are never saved
+    private static final Set<AlarmLevels> NOT_STORED = EnumSet.of(AlarmLevels.DO_NOT_LOG, AlarmLevels.IGNORE);
+    //Every time zone offset is a multiple of 15 minutes, so each bucket is within one day
+    private static final long BUCKET = TimeUnit.MINUTES.toMillis(15);
+    //Least time between reloads of a table that does not match the database
+    private static final long MIN_RELOAD_PERIOD = TimeUnit.MINUTES.toMillis(1);
+
+    private final boolean tableEnabled;
+    private final long tableMaxAge;
+    private final EventInstanceDao eventInstanceDao;
+    private final PermissionService permissionService;
+    private final EventSummaryCache summaryCache;
+    private final ExecutorService executor;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final Events eventTable = Events.EVENTS;
+
+    private final AtomicBoolean loading = new AtomicBoolean();
+    private volatile CountTable table;
+    //Table being loaded, receives the raised events so none are missed
+    private volatile CountTable loadingTable;
+
+    @Autowired
+    public EventCountEngine(@Value("${rest.events.countTable.enabled:false}") boolean tableEnabled,
+            @Value("${rest.events.countTable.maxAgeHours:24}") int tableMaxAgeHours,
+            EventInstanceDao eventInstanceDao, PermissionService permissionService,
+            EventSummaryCache summaryCache, ExecutorService executor) {
+        this.tableEnabled = tableEnabled;
+        this.tableMaxAge = TimeUnit.HOURS.toMillis(tableMaxAgeHours);
+        this.eventInstanceDao = eventInstanceDao;
+        this.permissionService = permissionService;
+        this.summaryCache = summaryCache;
+        this.executor = executor;
+        if (tableEnabled) {
+            summaryCache.addListener(this);
+        }
+    }
+
+    /**
+     * Count the events in each period
+     * @param user
+     * @param levels the levels allowed by the query, from {@link #alarmLevels(ASTNode)} of the query before it was
+     *  restricted to the periods, null if the query restricts more than the alarm level
+     * @param boundaries sorted period boundaries, at least 2
+     * @param conditions restricted to the events from the first to the last boundary
+     * @return the counts of each period
+     */
+    public List<PeriodCounts> count(PermissionHolder user, Set<AlarmLevels> levels, List<Date> boundaries, ConditionSortLimit conditions) {
+        long[] bounds = new long[boundaries.size()];
+        for (int i = 0; i < bounds.length; i++) {
+            bounds[i] = boundaries.get(i).getTime();
+        }
+
+        int[] counts = null;
+        if (tableEnabled && levels != null && isStartOfDays(bounds)) {
+            CountTable table = getTable();
+            if (table != null) {
+                long today = startOfToday();
+                counts = table.count(user, levels, bounds, today);
+                if (counts != null && bounds[bounds.length - 1] > today) {
+                    int[] open = scan(user, bounds, conditions, eventTable.activeTs.ge(today));
+                    for (int i = 0; i < counts.length; i++) {
+                        counts[i] += open[i];
+                    }
+                }
+            }
+        }
+        if (counts == null) {
+            counts = scan(user, bounds, conditions, DSL.noCondition());
+        }
+
+        List<PeriodCounts> result = new ArrayList<>(counts.length);
+        for (int i = 0; i < counts.length; i++) {
+            result.add(new PeriodCounts(boundaries.get(i), boundaries.get(i + 1), counts[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Read the active timestamp of the events the user can read with the conditions of the query
+     * @param restriction further restricts the events
+     */
+    private int[] scan(PermissionHolder user, long[] bounds, ConditionSortLimit conditions, Condition restriction) {
+        int[] counts = new int[bounds.length - 1];
+        SelectJoinStep<Record> select = eventInstanceDao.getSelectQuery(Collections.<Field<?>>singletonList(eventTable.activeTs));
+        select = eventInstanceDao.joinTables(select, conditions);
+        select = eventInstanceDao.joinPermissions(select, user);
+        Condition condition = conditions.getCondition() == null ? restriction : conditions.getCondition().and(restriction);
+        try (Cursor<Record> cursor = select.where(condition).fetchLazy()) {
+            for (Record record : cursor) {
+                int period = period(bounds, record.get(eventTable.activeTs));
+                if (period >= 0 && period < counts.length) {
+                    counts[period]++;
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @return index of the period starting at or before the time, the last one if periods share a boundary.  -1 for
+     *  a time before the first boundary and bounds.length - 1 for a time at or after the last boundary.
+     */
+    static int period(long[] bounds, long time) {
+        int i = Arrays.binarySearch(bounds, time);
+        if (i < 0) {
+            return -i - 2;
+        }
+        while (i + 1 < bounds.length && bounds[i + 1] == time) {
+            i++;
+        }
+        return i;
+    }
+
+    private long startOfToday() {
+        return Instant.ofEpochMilli(Common.timer.currentTimeMillis()).atZone(zone).toLocalDate().atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    private boolean isStartOfDays(long[] bounds) {
+        for (long bound : bounds) {
+            ZonedDateTime time = Instant.ofEpochMilli(bound).atZone(zone);
+            if (!time.toLocalTime().equals(LocalTime.MIDNIGHT)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param rql query of the events, before it is restricted to the periods
+     * @return the levels allowed by a query that only restricts the alarm level, null for any other query
+     */
+    @SuppressWarnings("unchecked")
+    public static Set<AlarmLevels> alarmLevels(ASTNode rql) {
+        Set<AlarmLevels> levels = EnumSet.allOf(AlarmLevels.class);
+        if (rql == null) {
+            return levels;
+        }
+        switch (rql.getName()) {
+            case "and":
+                for (Object arg : rql.getArguments()) {
+                    Set<AlarmLevels> restriction = arg instanceof ASTNode ? alarmLevels((ASTNode) arg) : null;
+                    if (restriction == null) {
+                        return null;
+                    }
+                    levels.retainAll(restriction);
+                }
+                return levels;
+            case "eq":
+            case "in":
+                List<Object> args = rql.getArguments();
+                if (args.size() < 2 || !ALARM_LEVEL.equals(args.get(0))) {
+                    return null;
+                }
+                levels.clear();
+                List<Object> values = args.size() == 2 && args.get(1) instanceof List ? (List<Object>) args.get(1) : args.subList(1, args.size());
+                for (Object value : values) {
+                    try {
+                        levels.add(AlarmLevels.valueOf(String.valueOf(value)));
+                    } catch (IllegalArgumentException e) {
+                        return null;
+                    }
+                }
+                return levels;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return the loaded table, null while it is first loaded.  A table older than the max age is returned while it
+     *  is reloaded in the background.
+     */
+    private CountTable getTable() {
+        if (!summaryCache.isEnabled()) {
+            return null;
+        }
+        CountTable table = this.table;
+        if (table == null || table.loaded + tableMaxAge <= Common.timer.currentTimeMillis()) {
+            reload();
+        }
+        return table;
+    }
+
+    private void reload() {
+        if (!loading.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    this.table = load(Common.databaseProxy.getContext());
+                } catch (Exception e) {
+                    log.error("Failed to load event count table", e);
+                } finally {
+                    this.loadingTable = null;
+                    loading.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            loading.set(false);
+            throw e;
+        }
+    }
+
+    private CountTable load(DSLContext create) {
+        Integer maxId = create.select(DSL.max(eventTable.id)).from(eventTable).fetchOne(0, Integer.class);
+        //Events after the max id are added as they are raised
+        CountTable loading = new CountTable(maxId == null ? 0 : maxId);
+        this.loadingTable = loading;
+
+        Field<Long> bucket = DSL.floor(eventTable.activeTs.div(BUCKET));
+        for (Record4<Integer, Integer, Long, Integer> record : create
+                .select(eventTable.readPermissionId, eventTable.alarmLevel, bucket, DSL.count())
+                .from(eventTable)
+                .where(eventTable.id.le(loading.maxId))
+                .groupBy(eventTable.readPermissionId, eventTable.alarmLevel, bucket)
+                .fetch()) {
+            MangoPermission readPermission = permissionService.get(record.value1());
+            loading.add(readPermission, AlarmLevels.fromValue(record.value2()), record.value3() * BUCKET, record.value4());
+        }
+        loading.loaded = Common.timer.currentTimeMillis();
+
+        if (log.isDebugEnabled()) {
+            log.debug("Loaded event count table of " + loading.days() + " days");
+        }
+        return loading;
+    }
+
+    /**
+     * @return number of saved events from the start up to the end
+     */
+    private int countSaved(long start, long end) {
+        return Common.databaseProxy.getContext().selectCount()
+                .from(eventTable)
+                .where(eventTable.activeTs.ge(start).and(eventTable.activeTs.lt(end)))
+                .fetchOne(0, int.class);
+    }
+
+    @Override
+    public void summaryChanged(MangoPermission readPermission, EventLevelSummaryDeltaModel delta) {
+    }
+
+    @Override
+    public void raised(MangoPermission readPermission, EventInstance evt) {
+        CountTable table = this.table;
+        if (table != null) {
+            table.raised(readPermission, evt);
+        }
+        CountTable loadingTable = this.loadingTable;
+        if (loadingTable != null && loadingTable != table) {
+            loadingTable.raised(readPermission, evt);
+        }
+    }
+
+    private class CountTable {
+        private final Map<MangoPermission, NavigableMap<Long, int[]>> days = new HashMap<>();
+        //Events up to this id were counted by the load query
+        private final int maxId;
+        private volatile long loaded = Long.MIN_VALUE;
+
+        private CountTable(int maxId) {
+            this.maxId = maxId;
+        }
+
+        private synchronized void raised(MangoPermission readPermission, EventInstance evt) {
+            if (NOT_STORED.contains(evt.getAlarmLevel()) || evt.getId() <= maxId) {
+                return;
+            }
+            add(readPermission, evt.getAlarmLevel(), evt.getActiveTimestamp(), 1);
+        }
+
+        private synchronized void add(MangoPermission readPermission, AlarmLevels level, long activeTimestamp, int count) {
+            long day = Instant.ofEpochMilli(activeTimestamp).atZone(zone).toLocalDate().toEpochDay();
+            int[] counts = days.computeIfAbsent(readPermission, p -> new TreeMap<>())
+                    .computeIfAbsent(day, d -> new int[AlarmLevels.values().length]);
+            counts[level.ordinal()] += count;
+        }
+
+        private synchronized int days() {
+            return days.values().stream().mapToInt(Map::size).sum();
+        }
+
+        /**
+         * @param today start of the current day, the events from it are not counted
+         * @return counts of each period before the current day, null if the table no longer matches the saved events
+         */
+        private int[] count(PermissionHolder user, Set<AlarmLevels> levels, long[] bounds, long today) {
+            long[] boundDays = new long[bounds.length];
+            for (int i = 0; i < bounds.length; i++) {
+                boundDays[i] = Instant.ofEpochMilli(bounds[i]).atZone(zone).toLocalDate().toEpochDay();
+            }
+            long end = Math.min(bounds[bounds.length - 1], today);
+            long endDay = Instant.ofEpochMilli(end).atZone(zone).toLocalDate().toEpochDay();
+
+            int[] result = new int[bounds.length - 1];
+            if (bounds[0] >= end) {
+                return result;
+            }
+
+            int total = 0;
+            synchronized (this) {
+                for (Map.Entry<MangoPermission, NavigableMap<Long, int[]>> group : days.entrySet()) {
+                    boolean permitted = permissionService.hasPermission(user, group.getKey());
+                    NavigableMap<Long, int[]> range = group.getValue().subMap(boundDays[0], true, endDay, false);
+                    for (Map.Entry<Long, int[]> day : range.entrySet()) {
+                        int[] levelCounts = day.getValue();
+                        for (int count : levelCounts) {
+                            total += count;
+                        }
+                        if (permitted) {
+                            int period = period(boundDays, day.getKey());
+                            for (AlarmLevels level : levels) {
+                                result[period] += levelCounts[level.ordinal()];
+                            }
+                        }
+                    }
+                }
+            }
+
+            if (total != countSaved(bounds[0], end)) {
+                if (loaded + MIN_RELOAD_PERIOD <= Common.timer.currentTimeMillis()) {
+                    reload();
+                }
+                return null;
+            }
+            return result;
+        }
+    }
+}
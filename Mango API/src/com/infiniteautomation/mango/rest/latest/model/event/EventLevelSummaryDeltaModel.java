@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.event;
+
+import com.serotonin.m2m2.rt.event.AlarmLevels;
+
+/**
+ * Change to the active and unacknowledged counts of a level caused by one event, or by many events when they are
+ * changed together, added to the counts of the {@link EventLevelSummaryModel} of the same level
+ */
+public class EventLevelSummaryDeltaModel {
+
+    private AlarmLevels level;
+    private int activeCount;
+    private int unacknowledgedCount;
+    private Integer eventId;
+
+    public EventLevelSummaryDeltaModel() { }
+
+    public EventLevelSummaryDeltaModel(AlarmLevels level, int activeCount, int unacknowledgedCount, Integer eventId) {
+        this.level = level;
+        this.activeCount = activeCount;
+        this.unacknowledgedCount = unacknowledgedCount;
+        this.eventId = eventId;
+    }
+
+    public AlarmLevels getLevel() {
+        return level;
+    }
+
+    public void setLevel(AlarmLevels level) {
+        this.level = level;
+    }
+
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    public void setActiveCount(int activeCount) {
+        this.activeCount = activeCount;
+    }
+
+    public int getUnacknowledgedCount() {
+        return unacknowledgedCount;
+    }
+
+    public void setUnacknowledgedCount(int unacknowledgedCount) {
+        this.unacknowledgedCount = unacknowledgedCount;
+    }
+
+    /**
+     * @return id of the changed event, null if the changes of many events are combined
+     */
+    public Integer getEventId() {
+        return eventId;
+    }
+
+    public void setEventId(Integer eventId) {
+        this.eventId = eventId;
+    }
+}
@@ -0,0 +1,501 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.event;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jooq.DSLContext;
+import org.jooq.Record2;
+import org.jooq.Record4;
+import org.jooq.Result;
+import org.jooq.impl.DSL;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.infiniteautomation.mango.db.tables.Events;
+import com.infiniteautomation.mango.permission.MangoPermission;
+import com.infiniteautomation.mango.rest.latest.model.event.EventSummaryCounts.ActiveEvent;
+import com.infiniteautomation.mango.rest.latest.model.event.EventSummaryCounts.LatestEvent;
+import com.infiniteautomation.mango.rest.latest.model.event.EventSummaryCounts.Summary;
+import com.infiniteautomation.mango.spring.components.RunAs;
+import com.infiniteautomation.mango.spring.events.DaoEvent;
+import com.infiniteautomation.mango.spring.events.DaoEventType;
+import com.infiniteautomation.mango.spring.service.EventInstanceService;
+import com.infiniteautomation.mango.spring.service.PermissionService;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.db.dao.EventInstanceDao;
+import com.serotonin.m2m2.db.dao.UserDao;
+import com.serotonin.m2m2.rt.event.AlarmLevels;
+import com.serotonin.m2m2.rt.event.EventInstance;
+import com.serotonin.m2m2.rt.event.UserEventListener;
+import com.serotonin.m2m2.vo.User;
+import com.serotonin.m2m2.vo.event.EventInstanceI;
+import com.serotonin.m2m2.vo.event.EventInstanceVO;
+import com.serotonin.m2m2.vo.permission.PermissionHolder;
+
+/**
+ * Active and unacknowledged events counted in memory by read permission and alarm level so the summaries of a
+ * user only check each distinct permission once.  The active events are read from the event manager and the
+ * unacknowledged events are counted by a query grouped by read permission and alarm level.  The counts are then
+ * updated from the raise, return to normal, deactivate and acknowledge notifications of the event manager.
+ *
+ * Events that are purged, deleted or acknowledged without a notification are not seen, so the counts are reloaded in
+ * the background every rest.events.summaryCache.reloadMinutes (10).
+ *
+ * The event manager only notifies listeners on behalf of a user, the cache listens as the first enabled administrator
+ * and reloads if that user is disabled, deleted or loses the admin role.
+ *
+ * Enabled by setting rest.events.summaryCache.enabled, when disabled or no administrator exists {@link #isEnabled()}
+ * returns false and callers should use the {@link EventInstanceService}.
+ */
+@Component
+public class EventSummaryCache implements UserEventListener {
+
+    private final Log log = LogFactory.getLog(EventSummaryCache.class);
+
+    /**
+     * Receives the changes to the counts
+     */
+    public interface EventSummaryListener {
+        /**
+         * @param readPermission of the event that changed, listeners must check it before sending the change
+         * @param delta
+         */
+        void summaryChanged(MangoPermission readPermission, EventLevelSummaryDeltaModel delta);
+
+        /**
+         * Called for every event raised after the change to the summary
+         * @param readPermission
+         * @param evt
+         */
+        default void raised(MangoPermission readPermission, EventInstance evt) { }
+    }
+
+    public static class LevelSummary {
+        private final AlarmLevels level;
+        private final int count;
+        private final EventInstanceI latest;
+
+        private LevelSummary(AlarmLevels level, int count, EventInstanceI latest) {
+            this.level = level;
+            this.count = count;
+            this.latest = latest;
+        }
+
+        public AlarmLevels getLevel() {
+            return level;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public EventInstanceI getLatest() {
+            return latest;
+        }
+    }
+
+    private final boolean enabled;
+    private final long reloadPeriod;
+    private final EventInstanceService service;
+    private final EventInstanceDao eventInstanceDao;
+    private final UserDao userDao;
+    private final PermissionService permissionService;
+    private final RunAs runAs;
+    private final ExecutorService executor;
+    private final EventAcknowledgeCoalescer acknowledgeCoalescer;
+    private final Events eventTable = Events.EVENTS;
+
+    private final EventSummaryCounts counts = new EventSummaryCounts();
+    private final Set<EventSummaryListener> listeners = new CopyOnWriteArraySet<>();
+
+    private final Object startLock = new Object();
+    private final AtomicBoolean reloading = new AtomicBoolean();
+    private volatile int userId = -1;
+    private volatile User user;
+    private volatile boolean started;
+    private volatile long loaded;
+    private boolean listening;
+    //Ids of the events received while reading the active events, the read state of these events is older
+    private Set<Integer> received;
+    //Changes to the unacknowledged counts received while counting, applied to the new counts when they are loaded
+    private List<Runnable> unacknowledgedChanges;
+    //Events up to this id and acknowledged before the load time are in the unacknowledged counts
+    private int loadedMaxId = Integer.MAX_VALUE;
+    private long loadTime = Long.MAX_VALUE;
+
+    @Autowired
+    public EventSummaryCache(@Value("${rest.events.summaryCache.enabled:false}") boolean enabled,
+            @Value("${rest.events.summaryCache.reloadMinutes:10}") int reloadMinutes,
+            EventInstanceService service, EventInstanceDao eventInstanceDao, UserDao userDao,
+            PermissionService permissionService, RunAs runAs, ExecutorService executor,
+            EventAcknowledgeCoalescer acknowledgeCoalescer) {
+        this.enabled = enabled;
+        this.reloadPeriod = TimeUnit.MINUTES.toMillis(reloadMinutes);
+        this.service = service;
+        this.eventInstanceDao = eventInstanceDao;
+        this.userDao = userDao;
+        this.permissionService = permissionService;
+        this.runAs = runAs;
+        this.executor = executor;
+        this.acknowledgeCoalescer = acknowledgeCoalescer;
+        acknowledgeCoalescer.addListener(this::acknowledgedBatch);
+    }
+
+    /**
+     * Starts the cache if necessary
+     * @return true if the summaries can be read from the cache
+     */
+    public boolean isEnabled() {
+        if (!enabled) {
+            return false;
+        }
+        if (started) {
+            if (loaded + reloadPeriod <= Common.timer.currentTimeMillis()) {
+                reloadInBackground();
+            }
+            return true;
+        }
+        synchronized (startLock) {
+            if (!started) {
+                start();
+            }
+            return started;
+        }
+    }
+
+    /**
+     * @return the administrator the events are received as, null until the cache is started
+     */
+    public User getUser() {
+        return started ? user : null;
+    }
+
+    public void addListener(EventSummaryListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(EventSummaryListener listener) {
+        listeners.remove(listener);
+    }
+
+    public List<LevelSummary> getActiveSummary(PermissionHolder user) {
+        List<Summary> summaries;
+        synchronized (this) {
+            summaries = counts.activeSummary(p -> permissionService.hasPermission(user, p));
+        }
+        List<LevelSummary> result = new ArrayList<>(summaries.size());
+        for (Summary summary : summaries) {
+            result.add(new LevelSummary(summary.level, summary.count, summary.latestActive == null ? null : summary.latestActive.instance));
+        }
+        return result;
+    }
+
+    public List<LevelSummary> getUnacknowledgedSummary(PermissionHolder user) {
+        List<Summary> summaries;
+        synchronized (this) {
+            summaries = counts.unacknowledgedSummary(p -> permissionService.hasPermission(user, p), this::findLatest);
+        }
+        List<LevelSummary> result = new ArrayList<>(summaries.size());
+        for (Summary summary : summaries) {
+            LatestEvent latest = summary.latestUnacknowledged;
+            EventInstanceI instance = null;
+            if (latest != null) {
+                instance = latest.instance != null ? latest.instance : eventInstanceDao.get(latest.id);
+            }
+            result.add(new LevelSummary(summary.level, summary.count, instance));
+        }
+        return result;
+    }
+
+    /**
+     * Count the active events of a point that the user can read
+     * @param user
+     * @param dataPointId
+     * @return
+     */
+    public synchronized Map<AlarmLevels, Integer> getDataPointCounts(PermissionHolder user, int dataPointId) {
+        Map<AlarmLevels, Integer> result = new EnumMap<>(AlarmLevels.class);
+        for (AlarmLevels level : AlarmLevels.values()) {
+            result.put(level, 0);
+        }
+        for (ActiveEvent event : counts.getActive(dataPointId)) {
+            if (permissionService.hasPermission(user, event.readPermission)) {
+                result.merge(event.level, 1, Integer::sum);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the latest unacknowledged event of a permission and level, null if none
+     */
+    private LatestEvent findLatest(MangoPermission readPermission, AlarmLevels level) {
+        Integer permissionId = readPermission.getId() != null ? readPermission.getId() : permissionService.findOrCreate(readPermission).getId();
+        Record2<Integer, Long> record = Common.databaseProxy.getContext()
+                .select(eventTable.id, eventTable.activeTs)
+                .from(eventTable)
+                .where(eventTable.ackTs.isNull(), eventTable.alarmLevel.eq(level.value()), eventTable.readPermissionId.eq(permissionId))
+                .orderBy(eventTable.activeTs.desc(), eventTable.id.desc())
+                .limit(1)
+                .fetchOne();
+        return record == null ? null : new LatestEvent(record.value1(), record.value2(), null);
+    }
+
+    private void start() {
+        User admin = null;
+        for (User user : userDao.getAll()) {
+            if (!user.isDisabled() && permissionService.hasAdminRole(user)) {
+                admin = user;
+                break;
+            }
+        }
+        if (admin == null) {
+            log.warn("No enabled administrator to receive events, event summaries will be queried for each request");
+            return;
+        }
+
+        this.userId = admin.getId();
+        this.user = admin;
+        synchronized (this) {
+            this.listening = true;
+        }
+        Common.eventManager.addUserEventListener(this);
+        load(admin);
+        this.started = true;
+    }
+
+    private void reloadInBackground() {
+        if (!reloading.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    synchronized (startLock) {
+                        User admin = this.user;
+                        if (started && admin != null) {
+                            load(admin);
+                        }
+                    }
+                } catch (Exception e) {
+                    log.error("Failed to reload event summary cache", e);
+                } finally {
+                    reloading.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            reloading.set(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Read the active events and count the unacknowledged events
+     */
+    private void load(User admin) {
+        synchronized (this) {
+            this.received = new HashSet<>();
+            this.unacknowledgedChanges = new ArrayList<>();
+        }
+
+        //Not holding the lock so the event manager is never blocked while querying it
+        List<ActiveEvent> active = new ArrayList<>();
+        runAs.runAs(admin, () -> {
+            for (EventInstance evt : service.getAllActiveUserEvents()) {
+                if (evt.isActive()) {
+                    active.add(activeEvent(evt));
+                }
+            }
+            return null;
+        });
+
+        //The raises and acknowledgements received while counting are applied again to the new counts
+        DSLContext create = Common.databaseProxy.getContext();
+        long loadTime = Common.timer.currentTimeMillis();
+        Integer maxId = create.select(DSL.max(eventTable.id)).from(eventTable).fetchOne(0, Integer.class);
+        Result<Record4<Integer, Integer, Integer, Long>> unacknowledged = create
+                .select(eventTable.readPermissionId, eventTable.alarmLevel, DSL.count(), DSL.max(eventTable.activeTs))
+                .from(eventTable)
+                .where(eventTable.ackTs.isNull(), eventTable.id.le(maxId == null ? 0 : maxId))
+                .groupBy(eventTable.readPermissionId, eventTable.alarmLevel)
+                .fetch();
+
+        synchronized (this) {
+            counts.replaceActive(active, received);
+            this.received = null;
+
+            counts.clearUnacknowledged();
+            for (Record4<Integer, Integer, Integer, Long> record : unacknowledged) {
+                counts.setUnacknowledged(permissionService.get(record.value1()), AlarmLevels.fromValue(record.value2()),
+                        record.value3(), record.value4());
+            }
+            this.loadedMaxId = maxId == null ? 0 : maxId;
+            this.loadTime = loadTime;
+            this.loaded = loadTime;
+            for (Runnable change : unacknowledgedChanges) {
+                change.run();
+            }
+            this.unacknowledgedChanges = null;
+
+            if (log.isDebugEnabled()) {
+                log.debug("Loaded " + counts.activeCount() + " active events and counted the unacknowledged events as user " + admin.getUsername());
+            }
+        }
+    }
+
+    private synchronized void stop() {
+        if (listening) {
+            Common.eventManager.removeUserEventListener(this);
+            counts.clear();
+            listening = false;
+            started = false;
+        }
+    }
+
+    private ActiveEvent activeEvent(EventInstance evt) {
+        return new ActiveEvent(evt.getId(), evt.getAlarmLevel(), evt.getActiveTimestamp(), evt.getEventType().getDataPointId(),
+                evt.getReadPermission(), evt);
+    }
+
+    private void changed(MangoPermission readPermission, EventLevelSummaryDeltaModel delta) {
+        if (delta != null) {
+            notifyListeners(readPermission, delta);
+        }
+    }
+
+    /**
+     * Send the changes of a batch of acknowledged events as one delta per read permission and level
+     */
+    private void acknowledgedBatch(List<EventInstanceVO> events) {
+        synchronized (this) {
+            if (!listening) {
+                return;
+            }
+        }
+        Map<MangoPermission, Map<AlarmLevels, EventLevelSummaryDeltaModel>> changes = new LinkedHashMap<>();
+        for (EventInstanceVO event : events) {
+            EventLevelSummaryDeltaModel combined = changes.computeIfAbsent(event.getReadPermission(), p -> new EnumMap<>(AlarmLevels.class))
+                    .computeIfAbsent(event.getAlarmLevel(), l -> new EventLevelSummaryDeltaModel(l, 0, 0, null));
+            combined.setUnacknowledgedCount(combined.getUnacknowledgedCount() - 1);
+        }
+        for (Map.Entry<MangoPermission, Map<AlarmLevels, EventLevelSummaryDeltaModel>> permission : changes.entrySet()) {
+            for (EventLevelSummaryDeltaModel delta : permission.getValue().values()) {
+                notifyListeners(permission.getKey(), delta);
+            }
+        }
+    }
+
+    private void notifyListeners(MangoPermission readPermission, EventLevelSummaryDeltaModel delta) {
+        for (EventSummaryListener listener : listeners) {
+            try {
+                listener.summaryChanged(readPermission, delta);
+            } catch (Exception e) {
+                log.error("Failed to notify event summary listener", e);
+            }
+        }
+    }
+
+    @EventListener
+    private void userDaoEvent(DaoEvent<User> event) {
+        if (event.getVo().getId() != userId) {
+            return;
+        }
+        if (event.getType() == DaoEventType.DELETE
+                || (event.getType() == DaoEventType.UPDATE && (event.getVo().isDisabled() || !permissionService.hasAdminRole(event.getVo())))) {
+            //Reloaded as another administrator on next use
+            stop();
+        }
+    }
+
+    @Override
+    public int getUserId() {
+        return userId;
+    }
+
+    @Override
+    public void raised(EventInstance evt) {
+        EventLevelSummaryDeltaModel delta;
+        synchronized (this) {
+            if (!listening) {
+                return;
+            }
+            if (received != null) {
+                received.add(evt.getId());
+            }
+            ActiveEvent event = activeEvent(evt);
+            if (unacknowledgedChanges != null && !evt.isAcknowledged()) {
+                unacknowledgedChanges.add(() -> counts.raised(event, false, true, event.id <= loadedMaxId));
+            }
+            delta = counts.raised(event, evt.isActive(), !evt.isAcknowledged(), evt.getId() <= loadedMaxId);
+        }
+        changed(evt.getReadPermission(), delta);
+        for (EventSummaryListener listener : listeners) {
+            try {
+                listener.raised(evt.getReadPermission(), evt);
+            } catch (Exception e) {
+                log.error("Failed to notify event summary listener", e);
+            }
+        }
+    }
+
+    @Override
+    public void returnToNormal(EventInstance evt) {
+        inactive(evt);
+    }
+
+    @Override
+    public void deactivated(EventInstance evt) {
+        inactive(evt);
+    }
+
+    private void inactive(EventInstance evt) {
+        EventLevelSummaryDeltaModel delta;
+        synchronized (this) {
+            if (!listening) {
+                return;
+            }
+            if (received != null) {
+                received.add(evt.getId());
+            }
+            delta = counts.inactive(evt.getId());
+        }
+        changed(evt.getReadPermission(), delta);
+    }
+
+    @Override
+    public void acknowledged(EventInstance evt) {
+        EventLevelSummaryDeltaModel delta;
+        synchronized (this) {
+            if (!listening) {
+                return;
+            }
+            if (unacknowledgedChanges != null) {
+                unacknowledgedChanges.add(() -> counts.acknowledged(evt.getId(), evt.getAlarmLevel(), evt.getReadPermission(),
+                        evt.getId() > loadedMaxId || evt.getAcknowledgedTimestamp() >= loadTime));
+            }
+            //Acknowledged before the count query ran so not counted
+            boolean counted = evt.getId() > loadedMaxId || evt.getAcknowledgedTimestamp() >= loadTime;
+            delta = counts.acknowledged(evt.getId(), evt.getAlarmLevel(), evt.getReadPermission(), counted);
+        }
+        //Sent with the other events of its batch
+        if (!acknowledgeCoalescer.isCoalesced(evt.getId())) {
+            changed(evt.getReadPermission(), delta);
+        }
+    }
+}
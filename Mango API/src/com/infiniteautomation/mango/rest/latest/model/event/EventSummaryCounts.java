@@ -0,0 +1,375 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.event;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+
+import com.infiniteautomation.mango.permission.MangoPermission;
+import com.serotonin.m2m2.rt.event.AlarmLevels;
+import com.serotonin.m2m2.vo.event.EventInstanceI;
+
+/**
+ * Counts of the active and unacknowledged events of each read permission and alarm level.  The active events are
+ * kept so the latest of each level and the counts of each data point are known, the unacknowledged events are only
+ * counted.  The latest unacknowledged event of a level is found by a query when it is not known.
+ *
+ * Each change returns the delta to send to the listeners.  Not thread safe, {@link EventSummaryCache} synchronizes
+ * access.
+ */
+class EventSummaryCounts {
+
+    static final Comparator<ActiveEvent> LATEST_FIRST = Comparator.comparingLong((ActiveEvent e) -> e.activeTimestamp)
+            .thenComparingInt(e -> e.id).reversed();
+
+    /**
+     * An active event
+     */
+    static class ActiveEvent {
+        final int id;
+        final AlarmLevels level;
+        final long activeTimestamp;
+        final int dataPointId;
+        final MangoPermission readPermission;
+        final EventInstanceI instance;
+
+        ActiveEvent(int id, AlarmLevels level, long activeTimestamp, int dataPointId, MangoPermission readPermission, EventInstanceI instance) {
+            this.id = id;
+            this.level = level;
+            this.activeTimestamp = activeTimestamp;
+            this.dataPointId = dataPointId;
+            this.readPermission = readPermission;
+            this.instance = instance;
+        }
+    }
+
+    /**
+     * The latest unacknowledged event of a read permission and level
+     */
+    static class LatestEvent {
+        //Not known when loaded from the counts
+        final Integer id;
+        final long activeTimestamp;
+        final EventInstanceI instance;
+
+        LatestEvent(Integer id, long activeTimestamp, EventInstanceI instance) {
+            this.id = id;
+            this.activeTimestamp = activeTimestamp;
+            this.instance = instance;
+        }
+
+        boolean isNewer(LatestEvent other) {
+            if (activeTimestamp != other.activeTimestamp) {
+                return activeTimestamp > other.activeTimestamp;
+            }
+            return id != null && (other.id == null || id > other.id);
+        }
+    }
+
+    /**
+     * The count of a level and the latest event, null if none
+     */
+    static class Summary {
+        final AlarmLevels level;
+        final int count;
+        final ActiveEvent latestActive;
+        final LatestEvent latestUnacknowledged;
+
+        private Summary(AlarmLevels level, int count, ActiveEvent latestActive, LatestEvent latestUnacknowledged) {
+            this.level = level;
+            this.count = count;
+            this.latestActive = latestActive;
+            this.latestUnacknowledged = latestUnacknowledged;
+        }
+    }
+
+    private final Map<Integer, ActiveEvent> active = new HashMap<>();
+    private final Map<MangoPermission, PermissionGroup> groups = new HashMap<>();
+    private final Map<Integer, Set<ActiveEvent>> activeByDataPoint = new HashMap<>();
+
+    /**
+     * @return the number of active events
+     */
+    int activeCount() {
+        return active.size();
+    }
+
+    boolean isActive(int id) {
+        return active.containsKey(id);
+    }
+
+    /**
+     * An event was raised
+     * @param event
+     * @param isActive true if the event returns to normal
+     * @param unacknowledged true if it must be acknowledged
+     * @param counted the event is already in the loaded unacknowledged counts
+     * @return the change, null if none
+     */
+    EventLevelSummaryDeltaModel raised(ActiveEvent event, boolean isActive, boolean unacknowledged, boolean counted) {
+        int activeChange = 0;
+        int unacknowledgedChange = 0;
+        if (isActive && !active.containsKey(event.id)) {
+            addActive(event);
+            activeChange = 1;
+        }
+        if (unacknowledged) {
+            unacknowledgedChange = 1;
+            if (!counted) {
+                PermissionGroup group = group(event.readPermission);
+                int level = event.level.ordinal();
+                LatestEvent raised = new LatestEvent(event.id, event.activeTimestamp, event.instance);
+                LatestEvent latest = group.latest[level];
+                if (group.unacknowledged[level] == 0 || (latest != null && raised.isNewer(latest))) {
+                    group.latest[level] = raised;
+                }
+                group.unacknowledged[level]++;
+            }
+        }
+        return delta(event.level, activeChange, unacknowledgedChange, event.id);
+    }
+
+    /**
+     * An event returned to normal or was deactivated
+     * @return the change, null if the event was not active
+     */
+    EventLevelSummaryDeltaModel inactive(int id) {
+        ActiveEvent event = active.remove(id);
+        if (event == null) {
+            return null;
+        }
+        removeActive(event);
+        return delta(event.level, -1, 0, id);
+    }
+
+    /**
+     * An event was acknowledged
+     * @param counted the event is counted as unacknowledged, false if it was acknowledged before the counts were
+     *  loaded
+     * @return the change
+     */
+    EventLevelSummaryDeltaModel acknowledged(int id, AlarmLevels level, MangoPermission readPermission, boolean counted) {
+        if (counted) {
+            PermissionGroup group = groups.get(readPermission);
+            int ordinal = level.ordinal();
+            if (group != null && group.unacknowledged[ordinal] > 0) {
+                group.unacknowledged[ordinal]--;
+                LatestEvent latest = group.latest[ordinal];
+                if (group.unacknowledged[ordinal] == 0 || (latest != null && latest.id != null && latest.id == id)) {
+                    //Found again when needed
+                    group.latest[ordinal] = null;
+                }
+                removeIfEmpty(readPermission, group);
+            }
+        }
+        return delta(level, 0, -1, id);
+    }
+
+    /**
+     * Replace the active events
+     * @param events the active events
+     * @param keep ids of the events to keep the current state of, they changed after the events were read
+     */
+    void replaceActive(Collection<ActiveEvent> events, Set<Integer> keep) {
+        List<ActiveEvent> kept = new ArrayList<>();
+        for (ActiveEvent event : active.values()) {
+            if (keep.contains(event.id)) {
+                kept.add(event);
+            }
+        }
+        for (ActiveEvent event : new ArrayList<>(active.values())) {
+            removeActive(event);
+        }
+        active.clear();
+        for (ActiveEvent event : kept) {
+            addActive(event);
+        }
+        for (ActiveEvent event : events) {
+            if (!keep.contains(event.id) && !active.containsKey(event.id)) {
+                addActive(event);
+            }
+        }
+    }
+
+    /**
+     * Remove all unacknowledged counts before they are loaded by {@link #setUnacknowledged}
+     */
+    void clearUnacknowledged() {
+        for (Map.Entry<MangoPermission, PermissionGroup> group : new ArrayList<>(groups.entrySet())) {
+            PermissionGroup value = group.getValue();
+            for (int i = 0; i < value.unacknowledged.length; i++) {
+                value.unacknowledged[i] = 0;
+                value.latest[i] = null;
+            }
+            removeIfEmpty(group.getKey(), value);
+        }
+    }
+
+    /**
+     * Set the loaded unacknowledged count of a read permission and level
+     * @param latestActiveTimestamp active timestamp of the latest unacknowledged event
+     */
+    void setUnacknowledged(MangoPermission readPermission, AlarmLevels level, int count, long latestActiveTimestamp) {
+        if (count <= 0) {
+            return;
+        }
+        PermissionGroup group = group(readPermission);
+        group.unacknowledged[level.ordinal()] += count;
+        LatestEvent loaded = new LatestEvent(null, latestActiveTimestamp, null);
+        LatestEvent latest = group.latest[level.ordinal()];
+        if (latest == null || loaded.isNewer(latest)) {
+            group.latest[level.ordinal()] = loaded;
+        }
+    }
+
+    /**
+     * @param permitted the permissions the user has
+     * @return the active count and latest active event of each level
+     */
+    List<Summary> activeSummary(Predicate<MangoPermission> permitted) {
+        Map<AlarmLevels, Integer> counts = new EnumMap<>(AlarmLevels.class);
+        Map<AlarmLevels, ActiveEvent> latest = new EnumMap<>(AlarmLevels.class);
+        for (Map.Entry<MangoPermission, PermissionGroup> group : groups.entrySet()) {
+            if (!permitted.test(group.getKey())) {
+                continue;
+            }
+            for (Map.Entry<AlarmLevels, NavigableSet<ActiveEvent>> level : group.getValue().active.entrySet()) {
+                NavigableSet<ActiveEvent> events = level.getValue();
+                counts.merge(level.getKey(), events.size(), Integer::sum);
+                latest.merge(level.getKey(), events.first(), (a, b) -> LATEST_FIRST.compare(a, b) <= 0 ? a : b);
+            }
+        }
+
+        List<Summary> summaries = new ArrayList<>();
+        for (AlarmLevels level : AlarmLevels.values()) {
+            summaries.add(new Summary(level, counts.getOrDefault(level, 0), latest.get(level), null));
+        }
+        return summaries;
+    }
+
+    /**
+     * @param permitted the permissions the user has
+     * @param findLatest finds the latest unacknowledged event of a permission and level when it is not known, the
+     *  result is kept until that event is acknowledged
+     * @return the unacknowledged count and latest unacknowledged event of each level
+     */
+    List<Summary> unacknowledgedSummary(Predicate<MangoPermission> permitted, BiFunction<MangoPermission, AlarmLevels, LatestEvent> findLatest) {
+        List<Map.Entry<MangoPermission, PermissionGroup>> permittedGroups = new ArrayList<>();
+        for (Map.Entry<MangoPermission, PermissionGroup> group : groups.entrySet()) {
+            if (permitted.test(group.getKey())) {
+                permittedGroups.add(group);
+            }
+        }
+
+        List<Summary> summaries = new ArrayList<>();
+        for (AlarmLevels level : AlarmLevels.values()) {
+            int ordinal = level.ordinal();
+            int count = 0;
+            Map.Entry<MangoPermission, PermissionGroup> latestGroup = null;
+            for (Map.Entry<MangoPermission, PermissionGroup> group : permittedGroups) {
+                PermissionGroup value = group.getValue();
+                if (value.unacknowledged[ordinal] == 0) {
+                    continue;
+                }
+                count += value.unacknowledged[ordinal];
+                if (value.latest[ordinal] == null) {
+                    value.latest[ordinal] = findLatest.apply(group.getKey(), level);
+                }
+                LatestEvent latest = value.latest[ordinal];
+                if (latest != null && (latestGroup == null || latest.isNewer(latestGroup.getValue().latest[ordinal]))) {
+                    latestGroup = group;
+                }
+            }
+
+            LatestEvent latest = null;
+            if (latestGroup != null) {
+                latest = latestGroup.getValue().latest[ordinal];
+                if (latest.id == null) {
+                    //Only the time is known after loading the counts
+                    latest = findLatest.apply(latestGroup.getKey(), level);
+                    latestGroup.getValue().latest[ordinal] = latest;
+                }
+            }
+            summaries.add(new Summary(level, count, null, latest));
+        }
+        return summaries;
+    }
+
+    /**
+     * @return the active events of a data point
+     */
+    Collection<ActiveEvent> getActive(int dataPointId) {
+        return activeByDataPoint.getOrDefault(dataPointId, Collections.emptySet());
+    }
+
+    void clear() {
+        active.clear();
+        groups.clear();
+        activeByDataPoint.clear();
+    }
+
+    private void addActive(ActiveEvent event) {
+        active.put(event.id, event);
+        group(event.readPermission).active.computeIfAbsent(event.level, l -> new TreeSet<>(LATEST_FIRST)).add(event);
+        if (event.dataPointId > 0) {
+            activeByDataPoint.computeIfAbsent(event.dataPointId, id -> new HashSet<>()).add(event);
+        }
+    }
+
+    private void removeActive(ActiveEvent event) {
+        PermissionGroup group = groups.get(event.readPermission);
+        if (group != null) {
+            NavigableSet<ActiveEvent> events = group.active.get(event.level);
+            if (events != null && events.remove(event) && events.isEmpty()) {
+                group.active.remove(event.level);
+            }
+            removeIfEmpty(event.readPermission, group);
+        }
+        Set<ActiveEvent> pointEvents = activeByDataPoint.get(event.dataPointId);
+        if (pointEvents != null && pointEvents.remove(event) && pointEvents.isEmpty()) {
+            activeByDataPoint.remove(event.dataPointId);
+        }
+    }
+
+    private PermissionGroup group(MangoPermission readPermission) {
+        return groups.computeIfAbsent(readPermission, p -> new PermissionGroup());
+    }
+
+    private void removeIfEmpty(MangoPermission readPermission, PermissionGroup group) {
+        if (!group.active.isEmpty()) {
+            return;
+        }
+        for (int count : group.unacknowledged) {
+            if (count > 0) {
+                return;
+            }
+        }
+        groups.remove(readPermission);
+    }
+
+    private static EventLevelSummaryDeltaModel delta(AlarmLevels level, int activeChange, int unacknowledgedChange, int id) {
+        if (activeChange == 0 && unacknowledgedChange == 0) {
+            return null;
+        }
+        return new EventLevelSummaryDeltaModel(level, activeChange, unacknowledgedChange, id);
+    }
+
+    private static class PermissionGroup {
+        private final Map<AlarmLevels, NavigableSet<ActiveEvent>> active = new EnumMap<>(AlarmLevels.class);
+        private final int[] unacknowledged = new int[AlarmLevels.values().length];
+        private final LatestEvent[] latest = new LatestEvent[AlarmLevels.values().length];
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.stereotype.Component;
+
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.rt.dataImage.DataPointListener;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Tells the point value caches when stored values of a series change.  Values modified, deleted or imported are
+ * reported by whoever changes them, values saved by a running point are reported for the points the caches
+ * track so late and backdated values reach the caches too.  Code outside of the REST contexts, such as a data source
+ * saving values without firing events, reports through {@link #notifyChanged(int, long)}.
+ */
+@Component
+public class PointValueChangeTracker {
+
+    private final Log log = LogFactory.getLog(PointValueChangeTracker.class);
+
+    //Trackers of the running contexts
+    private static final Set<PointValueChangeTracker> TRACKERS = new CopyOnWriteArraySet<>();
+
+    /**
+     * Receives the changes of all series
+     */
+    @FunctionalInterface
+    public interface PointValueChangeListener {
+        /**
+         * Called for every value saved by a tracked point so must be quick, usually it is newer than anything cached
+         * @param seriesId
+         * @param from - values at or after this time changed, Long.MIN_VALUE if any value may have changed
+         */
+        void pointValuesChanged(int seriesId, long from);
+    }
+
+    private final Set<PointValueChangeListener> listeners = new CopyOnWriteArraySet<>();
+    //Map key is data point id
+    private final Map<Integer, SavedValueListener> tracked = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void start() {
+        TRACKERS.add(this);
+    }
+
+    @PreDestroy
+    public void stop() {
+        TRACKERS.remove(this);
+    }
+
+    /**
+     * Values of a series at or after a time changed, reported to every running tracker
+     * @param seriesId
+     * @param from
+     */
+    public static void notifyChanged(int seriesId, long from) {
+        for (PointValueChangeTracker tracker : TRACKERS) {
+            tracker.changed(seriesId, from);
+        }
+    }
+
+    public void addListener(PointValueChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(PointValueChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Report the values saved by a running point until it is untracked as many times as it was tracked, the
+     * listener stays registered if the point restarts
+     * @param vo
+     */
+    public void track(DataPointVO vo) {
+        tracked.compute(vo.getId(), (id, listener) -> {
+            if (listener == null) {
+                listener = new SavedValueListener(vo);
+                Common.runtimeManager.addDataPointListener(id, listener);
+            }
+            listener.references++;
+            return listener;
+        });
+    }
+
+    /**
+     * Stop reporting the values saved by a point once nothing else tracks it
+     * @param dataPointId
+     */
+    public void untrack(int dataPointId) {
+        tracked.computeIfPresent(dataPointId, (id, listener) -> {
+            if (--listener.references > 0) {
+                return listener;
+            }
+            Common.runtimeManager.removeDataPointListener(id, listener);
+            return null;
+        });
+    }
+
+    /**
+     * Any value of a series may have changed
+     * @param seriesId
+     */
+    public void changed(int seriesId) {
+        changed(seriesId, Long.MIN_VALUE);
+    }
+
+    /**
+     * Values of a series at or after a time changed
+     * @param seriesId
+     * @param from
+     */
+    public void changed(int seriesId, long from) {
+        for (PointValueChangeListener listener : listeners) {
+            try {
+                listener.pointValuesChanged(seriesId, from);
+            } catch (Exception e) {
+                log.error("Failed to notify point value change listener", e);
+            }
+        }
+    }
+
+    private class SavedValueListener implements DataPointListener {
+
+        private final DataPointVO vo;
+        //Guarded by the tracked map
+        private int references;
+
+        SavedValueListener(DataPointVO vo) {
+            this.vo = vo;
+        }
+
+        @Override
+        public void pointLogged(PointValueTime value) {
+            changed(vo.getSeriesId(), value.getTime());
+        }
+
+        @Override
+        public void pointBackdated(PointValueTime value) {
+            changed(vo.getSeriesId(), value.getTime());
+        }
+
+        @Override
+        public void pointInitialized() { }
+
+        @Override
+        public void pointUpdated(PointValueTime newValue) { }
+
+        @Override
+        public void pointChanged(PointValueTime oldValue, PointValueTime newValue) { }
+
+        @Override
+        public void pointSet(PointValueTime oldValue, PointValueTime newValue) { }
+
+        @Override
+        public void attributeChanged(Map<String, Object> attributes) { }
+
+        @Override
+        public void pointTerminated(DataPointVO vo) { }
+
+        @Override
+        public String getListenerName() {
+            return "Point value cache tracker for DP " + vo.getXid();
+        }
+    }
+}
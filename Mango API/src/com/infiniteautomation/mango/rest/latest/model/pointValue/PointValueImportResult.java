@@ -114,6 +114,14 @@ public class PointValueImportResult {
         this.result = result;
     }
 
+    /**
+     * @return the point the values are saved to, null if it was not found
+     */
+    @JsonIgnore
+    public DataPointVO getVo() {
+        return vo;
+    }
+
     public boolean isValid() {
         return valid;
     }
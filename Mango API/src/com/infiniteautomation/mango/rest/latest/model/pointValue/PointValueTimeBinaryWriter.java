@@ -0,0 +1,448 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import com.infiniteautomation.mango.rest.latest.model.pointValue.query.LatestQueryInfo;
+
+/**
+ * Writes point values in a little-endian columnar layout, the fields of each value are written to columns
+ * of primitive values which are sent in blocks of up to {@link #BLOCK_ROWS} rows.
+ *
+ * <pre>
+ * stream  := header frame* END
+ * header  := "MPVB" version:int16 flags:int16      flags bit 0 = block payloads are deflate compressed
+ * frame   := SERIES_START name:string              one series per point for multiple arrays, name "" for a single array
+ *          | BLOCK rows:int32 columns:int16 column*
+ *          | SERIES_END
+ * column  := name:string type:int8 present:bitmap value*
+ * bitmap  := ceil(rows / 8) bytes, bit (row % 8) of byte (row / 8) is set when the row has a value
+ * value   := one entry per row, zero/empty when not present:
+ *            DOUBLE float64 | INT64 int64 | INT32 int32 | BOOLEAN int8 | STRING length:int32 utf8
+ * string  := length:int32 utf8
+ * </pre>
+ *
+ * When compressed each BLOCK frame is followed by compressedLength:int32 uncompressedLength:int32 and the
+ * deflated rows, columns and column data. Frame codes are END 0, SERIES_START 1, BLOCK 2 and SERIES_END 3.
+ *
+ * Fields are named as in the JSON output, nested objects are flattened with a dot i.e. xid.value or average.timestamp
+ */
+public class PointValueTimeBinaryWriter extends PointValueTimeWriter {
+
+    public static final byte[] MAGIC = {'M', 'P', 'V', 'B'};
+    public static final short VERSION = 1;
+    public static final short FLAG_DEFLATE = 1;
+    public static final int BLOCK_ROWS = 4096;
+
+    public static final byte FRAME_END = 0;
+    public static final byte FRAME_SERIES_START = 1;
+    public static final byte FRAME_BLOCK = 2;
+    public static final byte FRAME_SERIES_END = 3;
+
+    public static final byte TYPE_DOUBLE = 1;
+    public static final byte TYPE_INT64 = 2;
+    public static final byte TYPE_INT32 = 3;
+    public static final byte TYPE_BOOLEAN = 4;
+    public static final byte TYPE_STRING = 5;
+
+    private final OutputStream out;
+    private final Deflater deflater;
+    private final Map<String, Column> columns = new LinkedHashMap<>();
+    //Prefixes of the objects and arrays open within the current row
+    private final Deque<Prefix> prefixes = new ArrayDeque<>();
+
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    private byte[] compressed = new byte[0];
+    private boolean seriesOpen;
+    private boolean inRow;
+    private int rows;
+
+    /**
+     * @param info
+     * @param out
+     * @param compress - deflate the blocks
+     */
+    public PointValueTimeBinaryWriter(LatestQueryInfo info, OutputStream out, boolean compress) {
+        super(info);
+        this.out = out;
+        this.deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+    }
+
+    /**
+     * Write the header
+     * @throws IOException
+     */
+    public void writeHeader() throws IOException {
+        buffer.clear();
+        buffer.put(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putShort(deflater != null ? FLAG_DEFLATE : 0);
+        flushBuffer();
+    }
+
+    /**
+     * Finish any open series and write the end of the stream
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        if(seriesOpen)
+            endSeries();
+        buffer.clear();
+        buffer.put(FRAME_END);
+        flushBuffer();
+        out.flush();
+        if(deflater != null)
+            deflater.end();
+    }
+
+    @Override
+    public void writeDataPointValue(DataPointValueTime value) throws IOException {
+        startRow();
+        if(info.isMultiplePointsPerArray()) {
+            pushPrefix(value.getVo().getXid());
+            value.writeEntry(this, false, true);
+            prefixes.pop();
+        }else {
+            value.writeEntry(this, false, true);
+        }
+        endRow();
+    }
+
+    @Override
+    public void writeDataPointValues(List<DataPointValueTime> currentValues, long timestamp) throws IOException {
+        startRow();
+        if(info.fieldsContains(PointValueField.TIMESTAMP))
+            writeTimestamp(timestamp);
+        for(DataPointValueTime value : currentValues) {
+            if(info.isMultiplePointsPerArray()) {
+                pushPrefix(value.getVo().getXid());
+                value.writeEntry(this, false, false);
+                prefixes.pop();
+            }else {
+                value.writeEntry(this, false, false);
+            }
+        }
+        endRow();
+    }
+
+    @Override
+    public void writeStringField(String name, String value) throws IOException {
+        Column column = column(name);
+        if(value != null)
+            column.setString(rows, value);
+    }
+
+    @Override
+    public void writeDoubleField(String name, Double value) throws IOException {
+        Column column = column(name);
+        if(value != null)
+            column.set(rows, TYPE_DOUBLE, Double.doubleToRawLongBits(value));
+    }
+
+    @Override
+    public void writeIntegerField(String name, Integer value) throws IOException {
+        Column column = column(name);
+        if(value != null)
+            column.set(rows, TYPE_INT32, value);
+    }
+
+    @Override
+    public void writeLongField(String name, Long value) throws IOException {
+        Column column = column(name);
+        if(value != null)
+            column.set(rows, TYPE_INT64, value);
+    }
+
+    @Override
+    public void writeBooleanField(String name, Boolean value) throws IOException {
+        Column column = column(name);
+        if(value != null)
+            column.set(rows, TYPE_BOOLEAN, value ? 1 : 0);
+    }
+
+    @Override
+    public void writeNullField(String name) throws IOException {
+        column(name);
+    }
+
+    @Override
+    public void writeStartArray() throws IOException {
+        if(inRow)
+            pushArray(null);
+        else
+            startSeries("");
+    }
+
+    @Override
+    public void writeStartArray(String name) throws IOException {
+        if(inRow)
+            pushArray(name);
+        else
+            startSeries(name);
+    }
+
+    @Override
+    public void writeEndArray() throws IOException {
+        if(inRow)
+            prefixes.pop();
+        else if(seriesOpen)
+            endSeries();
+    }
+
+    @Override
+    public void writeStartObject(String name) throws IOException {
+        if(inRow)
+            pushPrefix(name);
+    }
+
+    @Override
+    public void writeStartObject() throws IOException {
+        if(inRow) {
+            //An element of an array within the row
+            Prefix array = prefixes.peek();
+            pushPrefix(array == null ? "" : Integer.toString(array.nextIndex++));
+        }
+    }
+
+    @Override
+    public void writeEndObject() throws IOException {
+        if(inRow)
+            prefixes.pop();
+    }
+
+    private void startSeries(String name) throws IOException {
+        if(seriesOpen)
+            endSeries();
+        buffer.clear();
+        buffer.put(FRAME_SERIES_START);
+        putString(name);
+        flushBuffer();
+        seriesOpen = true;
+    }
+
+    private void endSeries() throws IOException {
+        writeBlock();
+        columns.clear();
+        buffer.clear();
+        buffer.put(FRAME_SERIES_END);
+        flushBuffer();
+        seriesOpen = false;
+    }
+
+    private void startRow() throws IOException {
+        if(!seriesOpen)
+            startSeries("");
+        inRow = true;
+    }
+
+    private void endRow() throws IOException {
+        inRow = false;
+        prefixes.clear();
+        rows++;
+        if(rows == BLOCK_ROWS)
+            writeBlock();
+    }
+
+    private void pushPrefix(String name) {
+        Prefix parent = prefixes.peek();
+        prefixes.push(new Prefix(parent == null ? name + DOT : parent.name + name + DOT));
+    }
+
+    private void pushArray(String name) {
+        if(name == null) {
+            Prefix parent = prefixes.peek();
+            prefixes.push(new Prefix(parent == null ? "" : parent.name));
+        }else {
+            pushPrefix(name);
+        }
+    }
+
+    private Column column(String name) {
+        Prefix prefix = prefixes.peek();
+        String fullName = prefix == null ? name : prefix.name + name;
+        Column column = columns.get(fullName);
+        if(column == null) {
+            column = new Column(fullName);
+            columns.put(fullName, column);
+        }
+        return column;
+    }
+
+    /**
+     * Write the rows collected so far, the column buffers are reused for the next block
+     * @throws IOException
+     */
+    private void writeBlock() throws IOException {
+        if(rows == 0)
+            return;
+
+        buffer.clear();
+        buffer.putInt(rows);
+        buffer.putShort((short)columns.size());
+        for(Column column : columns.values()) {
+            column.write(rows);
+            column.clear(rows);
+        }
+
+        int length = buffer.position();
+        if(deflater == null) {
+            out.write(FRAME_BLOCK);
+            out.write(buffer.array(), 0, length);
+        }else {
+            deflater.reset();
+            deflater.setInput(buffer.array(), 0, length);
+            deflater.finish();
+            if(compressed.length < length + 64)
+                compressed = new byte[length + 64];
+            int compressedLength = 0;
+            while(!deflater.finished()) {
+                if(compressedLength == compressed.length)
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+            }
+            ByteBuffer frame = ByteBuffer.allocate(9).order(ByteOrder.LITTLE_ENDIAN);
+            frame.put(FRAME_BLOCK);
+            frame.putInt(compressedLength);
+            frame.putInt(length);
+            out.write(frame.array());
+            out.write(compressed, 0, compressedLength);
+        }
+        rows = 0;
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer.array(), 0, buffer.position());
+        buffer.clear();
+    }
+
+    private void ensureCapacity(int bytes) {
+        if(buffer.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes)).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+    }
+
+    private void putString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ensureCapacity(4 + bytes.length);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static final class Prefix {
+        final String name;
+        int nextIndex;
+
+        Prefix(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * Values of one field for the rows of a block, numbers are held as the bits of a long
+     */
+    private final class Column {
+        final String name;
+        byte type;
+        final long[] values = new long[BLOCK_ROWS];
+        final boolean[] present = new boolean[BLOCK_ROWS];
+        String[] strings;
+
+        Column(String name) {
+            this.name = name;
+        }
+
+        void set(int row, byte valueType, long value) {
+            if(type == 0)
+                type = valueType;
+            if(type == valueType) {
+                values[row] = value;
+                present[row] = true;
+            }else {
+                //Mixed types are written as strings
+                setString(row, toString(valueType, value));
+            }
+        }
+
+        void setString(int row, String value) {
+            if(type != TYPE_STRING) {
+                if(strings == null)
+                    strings = new String[BLOCK_ROWS];
+                //Convert the values of this block
+                for(int i = 0; i < row; i++) {
+                    if(present[i])
+                        strings[i] = toString(type, values[i]);
+                }
+                type = TYPE_STRING;
+            }
+            strings[row] = value;
+            present[row] = true;
+        }
+
+        void write(int rows) {
+            putString(name);
+            byte writeType = type == 0 ? TYPE_DOUBLE : type;
+            ensureCapacity(1 + (rows + 7) / 8 + rows * 8);
+            buffer.put(writeType);
+            for(int i = 0; i < rows; i += 8) {
+                int bits = 0;
+                for(int j = 0; j < 8 && i + j < rows; j++) {
+                    if(present[i + j])
+                        bits |= 1 << j;
+                }
+                buffer.put((byte)bits);
+            }
+            switch(writeType) {
+                case TYPE_DOUBLE:
+                case TYPE_INT64:
+                    for(int i = 0; i < rows; i++)
+                        buffer.putLong(present[i] ? values[i] : 0);
+                    break;
+                case TYPE_INT32:
+                    for(int i = 0; i < rows; i++)
+                        buffer.putInt(present[i] ? (int)values[i] : 0);
+                    break;
+                case TYPE_BOOLEAN:
+                    for(int i = 0; i < rows; i++)
+                        buffer.put(present[i] ? (byte)values[i] : 0);
+                    break;
+                case TYPE_STRING:
+                    for(int i = 0; i < rows; i++)
+                        putString(present[i] ? strings[i] : "");
+                    break;
+            }
+        }
+
+        void clear(int rows) {
+            Arrays.fill(present, 0, rows, false);
+            if(strings != null)
+                Arrays.fill(strings, 0, rows, null);
+        }
+
+        private String toString(byte valueType, long value) {
+            switch(valueType) {
+                case TYPE_DOUBLE:
+                    return Double.toString(Double.longBitsToDouble(value));
+                case TYPE_BOOLEAN:
+                    return Boolean.toString(value != 0);
+                default:
+                    return Long.toString(value);
+            }
+        }
+    }
+}
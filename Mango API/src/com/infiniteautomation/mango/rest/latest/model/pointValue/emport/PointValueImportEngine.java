@@ -0,0 +1,333 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue.emport;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import com.serotonin.m2m2.Common;
+
+/**
+ * Saves imported point values in chunks on a set of partitions, the chunks of a data point always run on the same
+ * partition so its values are saved in the order they were imported.  Each partition queues a limited number of chunks
+ * per import, when an import has filled its share it waits so the reader can't get ahead of the database.  The
+ * partitions take turns between the imports with queued chunks so a large import does not hold up the others.
+ *
+ * rest.pointValues.import.threads (default half the processors) partitions are used,
+ * rest.pointValues.import.chunkSize (default 1000) values are saved per chunk and rest.pointValues.import.queueSize
+ * (default 4) chunks are queued per partition and import.
+ *
+ * The import requests read their values on rest.pointValues.import.requestThreads (default the number of partitions)
+ * threads of their own, a request waiting for a full partition does not hold a thread of the common pool.
+ */
+@Component
+public class PointValueImportEngine {
+
+    private final int chunkSize;
+    private final int queueSize;
+    private final Partition[] partitions;
+    private final ExecutorService requestExecutor;
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong totalProcessed = new AtomicLong();
+    private final AtomicLong totalSkipped = new AtomicLong();
+    private volatile PointValueImportMetricsModel.LastImport lastImport;
+
+    @Autowired
+    public PointValueImportEngine(Environment env) {
+        this(env.getProperty("rest.pointValues.import.threads", Integer.class, Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+                env.getProperty("rest.pointValues.import.chunkSize", Integer.class, 1000),
+                env.getProperty("rest.pointValues.import.queueSize", Integer.class, 4),
+                env.getProperty("rest.pointValues.import.requestThreads", Integer.class, 0));
+    }
+
+    public PointValueImportEngine(int threads, int chunkSize, int queueSize) {
+        this(threads, chunkSize, queueSize, 0);
+    }
+
+    /**
+     * @param threads - number of partitions
+     * @param chunkSize
+     * @param queueSize - chunks queued per partition and import
+     * @param requestThreads - threads the requests read their values on, 0 for one per partition
+     */
+    public PointValueImportEngine(int threads, int chunkSize, int queueSize, int requestThreads) {
+        this.chunkSize = Math.max(1, chunkSize);
+        this.queueSize = Math.max(1, queueSize);
+        this.partitions = new Partition[Math.max(1, threads)];
+        ThreadFactory factory = new BasicThreadFactory.Builder().namingPattern("point-value-import-%d").daemon(true).build();
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = new Partition(factory);
+        }
+        this.requestExecutor = Executors.newFixedThreadPool(requestThreads > 0 ? requestThreads : partitions.length,
+                new BasicThreadFactory.Builder().namingPattern("point-value-import-request-%d").daemon(true).build());
+    }
+
+    /**
+     * Run an import or delete request on the request threads
+     * @param request
+     * @return
+     */
+    public <T> CompletableFuture<T> supplyAsync(Supplier<T> request) {
+        return CompletableFuture.supplyAsync(request, requestExecutor);
+    }
+
+    /**
+     * @return number of values to save per chunk
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Start tracking an import
+     * @return
+     */
+    public Import start() {
+        running.incrementAndGet();
+        return new Import();
+    }
+
+    public PointValueImportMetricsModel getMetrics() {
+        PointValueImportMetricsModel model = new PointValueImportMetricsModel();
+        model.setThreads(partitions.length);
+        model.setChunkSize(chunkSize);
+        int queued = 0;
+        for (Partition partition : partitions) {
+            queued += partition.getChunksQueued();
+        }
+        model.setChunksQueued(queued);
+        model.setRunning(running.get());
+        model.setCompleted(completed.get());
+        model.setTotalProcessed(totalProcessed.get());
+        model.setTotalSkipped(totalSkipped.get());
+        model.setLastImport(lastImport);
+        return model;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Partition partition : partitions) {
+            partition.shutdown();
+        }
+        requestExecutor.shutdownNow();
+    }
+
+    /**
+     * Saves the chunks of a set of data points on one thread.  The chunks are queued per import and the imports take
+     * turns, one chunk each.
+     */
+    private class Partition implements Runnable {
+
+        //Imports with queued chunks in the order of their turns
+        private final Map<Import, Deque<FutureTask<?>>> queues = new LinkedHashMap<>();
+        private final Thread thread;
+        private int queued;
+        private boolean active;
+        private boolean shutdown;
+
+        Partition(ThreadFactory factory) {
+            this.thread = factory.newThread(this);
+            this.thread.start();
+        }
+
+        /**
+         * Queue a chunk, waits while the import has its share of chunks queued
+         * @param importer
+         * @param chunk
+         * @return
+         * @throws InterruptedException
+         */
+        synchronized Future<?> submit(Import importer, Runnable chunk) throws InterruptedException {
+            Deque<FutureTask<?>> queue = queues.get(importer);
+            while (!shutdown && queue != null && queue.size() >= queueSize) {
+                wait();
+                queue = queues.get(importer);
+            }
+            if (shutdown) {
+                throw new RejectedExecutionException("Point value import shut down");
+            }
+            if (queue == null) {
+                queue = new ArrayDeque<>(queueSize);
+                queues.put(importer, queue);
+            }
+            FutureTask<?> task = new FutureTask<>(chunk, null);
+            queue.add(task);
+            queued++;
+            notifyAll();
+            return task;
+        }
+
+        /**
+         * Take the next chunk of the import whose turn it is
+         * @return null once shut down
+         * @throws InterruptedException
+         */
+        private synchronized FutureTask<?> take() throws InterruptedException {
+            active = false;
+            while (!shutdown && queues.isEmpty()) {
+                wait();
+            }
+            if (shutdown) {
+                return null;
+            }
+            Iterator<Map.Entry<Import, Deque<FutureTask<?>>>> it = queues.entrySet().iterator();
+            Map.Entry<Import, Deque<FutureTask<?>>> next = it.next();
+            FutureTask<?> task = next.getValue().poll();
+            it.remove();
+            if (!next.getValue().isEmpty()) {
+                //Back of the line
+                queues.put(next.getKey(), next.getValue());
+            }
+            queued--;
+            active = true;
+            //There is room for the import
+            notifyAll();
+            return task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                FutureTask<?> task;
+                while ((task = take()) != null) {
+                    //Failures are reported through the future
+                    task.run();
+                }
+            } catch (InterruptedException e) {
+                //Shut down
+            }
+        }
+
+        synchronized int getChunksQueued() {
+            return queued + (active ? 1 : 0);
+        }
+
+        void shutdown() {
+            synchronized (this) {
+                shutdown = true;
+                for (Deque<FutureTask<?>> queue : queues.values()) {
+                    for (FutureTask<?> task : queue) {
+                        task.cancel(false);
+                    }
+                }
+                queues.clear();
+                queued = 0;
+                notifyAll();
+            }
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Chunks of one import
+     */
+    public class Import {
+
+        private final long start = Common.timer.currentTimeMillis();
+        private final Deque<Future<?>> pending = new ArrayDeque<>();
+        private boolean finished;
+        //Set when a chunk fails or the import is closed, every chunk of the import not yet started is skipped
+        private volatile boolean aborted;
+
+        /**
+         * Queue a chunk of a data point, waits if the import has its share of the partition queued
+         * @param xid
+         * @param chunk
+         * @throws ExecutionException if an earlier chunk failed
+         * @throws InterruptedException
+         */
+        public void submit(String xid, Runnable chunk) throws ExecutionException, InterruptedException {
+            pending.add(partitions[Math.floorMod(xid.hashCode(), partitions.length)].submit(this, () -> {
+                if (!aborted) {
+                    try {
+                        chunk.run();
+                    } catch (RuntimeException e) {
+                        //Abort the whole import, the chunks of all data points not yet started are skipped
+                        aborted = true;
+                        throw e;
+                    }
+                }
+            }));
+            //Don't hold on to the chunks that are done
+            while (!pending.isEmpty() && pending.peek().isDone()) {
+                pending.poll().get();
+            }
+        }
+
+        /**
+         * Wait for all chunks to be saved
+         * @throws ExecutionException if a chunk failed
+         * @throws InterruptedException
+         */
+        public void await() throws ExecutionException, InterruptedException {
+            while (!pending.isEmpty()) {
+                pending.poll().get();
+            }
+        }
+
+        /**
+         * Wait for all chunks to be saved and record the metrics of the import
+         * @param processed - values saved
+         * @param skipped - values not saved
+         * @throws ExecutionException if a chunk failed
+         * @throws InterruptedException
+         */
+        public void finish(long processed, long skipped) throws ExecutionException, InterruptedException {
+            await();
+            long duration = Common.timer.currentTimeMillis() - start;
+            totalProcessed.addAndGet(processed);
+            totalSkipped.addAndGet(skipped);
+            completed.incrementAndGet();
+            lastImport = new PointValueImportMetricsModel.LastImport(start, duration, processed, skipped);
+            close();
+        }
+
+        /**
+         * Stop tracking the import.  If the import did not finish the chunks not yet started are skipped and
+         *  this waits for the running ones, afterwards no more values of the import are saved.
+         */
+        public void close() {
+            if (!finished) {
+                finished = true;
+                running.decrementAndGet();
+                aborted = true;
+                while (!pending.isEmpty()) {
+                    try {
+                        pending.poll().get();
+                    } catch (ExecutionException | CancellationException e) {
+                        //Failed chunks are reported by await()
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                pending.clear();
+            }
+        }
+    }
+}
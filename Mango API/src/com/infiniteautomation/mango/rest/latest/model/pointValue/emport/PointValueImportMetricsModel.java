@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue.emport;
+
+/**
+ * Throughput of the point value imports since startup
+ */
+public class PointValueImportMetricsModel {
+
+    private int threads;
+    private int chunkSize;
+    private int chunksQueued;
+    private int running;
+    private long completed;
+    private long totalProcessed;
+    private long totalSkipped;
+    private LastImport lastImport;
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @return chunks waiting to be saved or being saved
+     */
+    public int getChunksQueued() {
+        return chunksQueued;
+    }
+
+    public void setChunksQueued(int chunksQueued) {
+        this.chunksQueued = chunksQueued;
+    }
+
+    /**
+     * @return imports in progress
+     */
+    public int getRunning() {
+        return running;
+    }
+
+    public void setRunning(int running) {
+        this.running = running;
+    }
+
+    /**
+     * @return imports completed
+     */
+    public long getCompleted() {
+        return completed;
+    }
+
+    public void setCompleted(long completed) {
+        this.completed = completed;
+    }
+
+    public long getTotalProcessed() {
+        return totalProcessed;
+    }
+
+    public void setTotalProcessed(long totalProcessed) {
+        this.totalProcessed = totalProcessed;
+    }
+
+    public long getTotalSkipped() {
+        return totalSkipped;
+    }
+
+    public void setTotalSkipped(long totalSkipped) {
+        this.totalSkipped = totalSkipped;
+    }
+
+    public LastImport getLastImport() {
+        return lastImport;
+    }
+
+    public void setLastImport(LastImport lastImport) {
+        this.lastImport = lastImport;
+    }
+
+    /**
+     * The most recently completed import
+     */
+    public static class LastImport {
+        private final long start;
+        private final long duration;
+        private final long processed;
+        private final long skipped;
+
+        public LastImport(long start, long duration, long processed, long skipped) {
+            this.start = start;
+            this.duration = duration;
+            this.processed = processed;
+            this.skipped = skipped;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * @return ms from the start of the request until all values were saved
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        public long getProcessed() {
+            return processed;
+        }
+
+        public long getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * @return values saved per second
+         */
+        public double getValuesPerSecond() {
+            return duration > 0 ? processed * 1000d / duration : processed;
+        }
+    }
+}
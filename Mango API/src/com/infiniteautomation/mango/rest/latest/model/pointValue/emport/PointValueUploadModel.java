@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue.emport;
+
+import com.serotonin.m2m2.rt.dataImage.DataPointRT.FireEvents;
+
+/**
+ * Request to start a chunked point value upload
+ */
+public class PointValueUploadModel {
+
+    private FireEvents fireEvents = FireEvents.NEVER;
+    private Integer chunks;
+    private Long expiry;
+    private Long timeout;
+
+    public FireEvents getFireEvents() {
+        return fireEvents;
+    }
+
+    public void setFireEvents(FireEvents fireEvents) {
+        this.fireEvents = fireEvents;
+    }
+
+    /**
+     * @return total number of chunks, if set the upload completes once they are all committed
+     */
+    public Integer getChunks() {
+        return chunks;
+    }
+
+    public void setChunks(Integer chunks) {
+        this.chunks = chunks;
+    }
+
+    /**
+     * @return ms after completion that the upload status is removed
+     */
+    public Long getExpiry() {
+        return expiry;
+    }
+
+    public void setExpiry(Long expiry) {
+        this.expiry = expiry;
+    }
+
+    /**
+     * @return ms without a chunk being sent after which the upload times out if not complete, 0 for no timeout
+     */
+    public Long getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(Long timeout) {
+        this.timeout = timeout;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue.emport;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.serotonin.m2m2.i18n.ProcessMessage;
+import com.serotonin.m2m2.i18n.ProcessResult;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT.FireEvents;
+
+/**
+ * Progress of a chunked point value upload.  Chunks are numbered from 0 and may be uploaded in any order and
+ * concurrently, a chunk is committed once all of its values are queued for writing.  An interrupted upload resumes by
+ * sending the missing chunks, all chunks before the committed offset are committed.
+ *
+ * A chunk that fails part way keeps the results of the values it saved, when the same chunk is sent again those values
+ * are skipped so they are not saved twice.  At most {@link #MAX_MESSAGES} messages are kept, the rest are counted.
+ */
+public class PointValueUploadResult {
+
+    public static final int MAX_MESSAGES = 1000;
+
+    private final FireEvents fireEvents;
+    private final Integer chunks;
+
+    private final BitSet committed = new BitSet();
+    private final BitSet inProgress = new BitSet();
+    private final Map<String, PointValueTimeImportResult> results = new LinkedHashMap<>();
+    //Values saved by the failed attempts of a chunk
+    private final Map<Integer, List<PointValueTimeImportResult>> partialResults = new HashMap<>();
+    private int messages;
+    private int droppedMessages;
+
+    public PointValueUploadResult(FireEvents fireEvents, Integer chunks) {
+        this.fireEvents = fireEvents;
+        this.chunks = chunks;
+    }
+
+    /**
+     * Start importing a chunk
+     * @param index
+     * @return false if the chunk is committed or being imported
+     */
+    public synchronized boolean begin(int index) {
+        if (committed.get(index) || inProgress.get(index)) {
+            return false;
+        }
+        inProgress.set(index);
+        return true;
+    }
+
+    /**
+     * Record a chunk as committed and add its results
+     * @param index
+     * @param chunkResults
+     */
+    public synchronized void commit(int index, List<PointValueTimeImportResult> chunkResults) {
+        inProgress.clear(index);
+        committed.set(index);
+        partialResults.remove(index);
+        for (PointValueTimeImportResult chunkResult : chunkResults) {
+            PointValueTimeImportResult result = results.computeIfAbsent(chunkResult.getXid(),
+                    xid -> new PointValueTimeImportResult(xid, 0, 0, new ProcessResult()));
+            result.setTotalQueued(result.getTotalQueued() + chunkResult.getTotalQueued());
+            result.setTotalSkipped(result.getTotalSkipped() + chunkResult.getTotalSkipped());
+            for (ProcessMessage message : chunkResult.getResult().getMessages()) {
+                if (messages < MAX_MESSAGES) {
+                    result.getResult().addMessage(message);
+                    messages++;
+                } else {
+                    droppedMessages++;
+                }
+            }
+        }
+    }
+
+    public synchronized boolean isCommitted(int index) {
+        return committed.get(index);
+    }
+
+    /**
+     * A chunk failed to import, it may be sent again
+     * @param index
+     * @param saved - the values of each XID that were saved or skipped before it failed, in the order of the chunk
+     */
+    public synchronized void abort(int index, List<PointValueTimeImportResult> saved) {
+        inProgress.clear(index);
+        List<PointValueTimeImportResult> partial = new ArrayList<>(saved.size());
+        for (PointValueTimeImportResult result : saved) {
+            if (result.getTotalQueued() + result.getTotalSkipped() > 0) {
+                //Only the counts are needed to resume, keep a bounded number of messages
+                ProcessResult messages = new ProcessResult();
+                for (ProcessMessage message : result.getResult().getMessages()) {
+                    if (messages.getMessages().size() >= MAX_MESSAGES) {
+                        break;
+                    }
+                    messages.addMessage(message);
+                }
+                partial.add(new PointValueTimeImportResult(result.getXid(), result.getTotalQueued(), result.getTotalSkipped(), messages));
+            }
+        }
+        if (partial.isEmpty()) {
+            partialResults.remove(index);
+        } else {
+            partialResults.put(index, partial);
+        }
+    }
+
+    /**
+     * @param index
+     * @return the values saved by the failed attempts of a chunk, the chunk resumes after them
+     */
+    public synchronized List<PointValueTimeImportResult> getPartialResults(int index) {
+        return partialResults.getOrDefault(index, Collections.emptyList());
+    }
+
+    @JsonIgnore
+    public FireEvents getFireEvents() {
+        return fireEvents;
+    }
+
+    public Integer getChunks() {
+        return chunks;
+    }
+
+    /**
+     * @return true if the total number of chunks is known and all are committed
+     */
+    @JsonIgnore
+    public synchronized boolean isComplete() {
+        return chunks != null && committed.cardinality() >= chunks;
+    }
+
+    /**
+     * @return true if a chunk is being imported
+     */
+    @JsonIgnore
+    public synchronized boolean isInProgress() {
+        return !inProgress.isEmpty();
+    }
+
+    /**
+     * @return index of the first chunk that is not committed
+     */
+    public synchronized int getCommittedOffset() {
+        return committed.nextClearBit(0);
+    }
+
+    public synchronized int getCommittedChunks() {
+        return committed.cardinality();
+    }
+
+    /**
+     * @return chunks after the committed offset that must still be sent, up to the total or the last committed chunk
+     */
+    public synchronized List<Integer> getMissingChunks() {
+        int limit = chunks != null ? chunks : committed.length();
+        List<Integer> missing = new ArrayList<>();
+        for (int i = committed.nextClearBit(0); i < limit; i = committed.nextClearBit(i + 1)) {
+            missing.add(i);
+        }
+        return missing;
+    }
+
+    public synchronized List<PointValueTimeImportResult> getResults() {
+        return new ArrayList<>(results.values());
+    }
+
+    /**
+     * @return number of messages not kept after the first {@link #MAX_MESSAGES}
+     */
+    public synchronized int getDroppedMessages() {
+        return droppedMessages;
+    }
+}
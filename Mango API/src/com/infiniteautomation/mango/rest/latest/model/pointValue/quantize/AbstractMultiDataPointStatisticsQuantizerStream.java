@@ -40,6 +40,7 @@ public abstract class AbstractMultiDataPointStatisticsQuantizerStream <T, INFO e
     protected long periodToMillis; //For performance
     protected long currentTime;
     protected int currentDataPointId; //Track point change in order by ID queries
+    protected DataPointStatisticsQuantizer<?> currentQuantizer; //Quantizer of currentDataPointId, saves a lookup per value
 
     public AbstractMultiDataPointStatisticsQuantizerStream(INFO info, Map<Integer, DataPointVO> voMap, PointValueDao dao) {
         super(info, voMap, dao);
@@ -81,14 +82,14 @@ public abstract class AbstractMultiDataPointStatisticsQuantizerStream <T, INFO e
      */
     protected void updateQuantizers(IdPointValueTime value) throws IOException, QueryCancelledException {
         long time = value.getTime();
-        if(!info.isSingleArray()) {
-            //In this query the values are returned in data point ID and time order
-            //Advance the previous quantizer
-            if(currentDataPointId != -1 && currentDataPointId != value.getSeriesId()) {
-                DataPointStatisticsQuantizer<?> quant = this.quantizerMap.get(currentDataPointId);
-                if(!quant.isDone())
-                    quant.done();
+        if(currentDataPointId != value.getSeriesId()) {
+            if(!info.isSingleArray()) {
+                //In this query the values are returned in data point ID and time order
+                //Advance the previous quantizer
+                if(currentQuantizer != null && !currentQuantizer.isDone())
+                    currentQuantizer.done();
             }
+            currentQuantizer = this.quantizerMap.get(value.getSeriesId());
         }
         currentTime = time;
         currentDataPointId = value.getSeriesId();
@@ -96,29 +97,44 @@ public abstract class AbstractMultiDataPointStatisticsQuantizerStream <T, INFO e
 
     protected void createQuantizerMap() {
         for(Entry<Integer, DataPointVO> entry : voMap.entrySet()) {
-            DataPointVO vo = entry.getValue();
-            DataPointStatisticsQuantizer<?> quantizer;
-            if(info.getRollup() == RollupEnum.POINT_DEFAULT && vo.getRollup() == RollupEnum.NONE.getId()) {
-                //Raw Data Stream
-                quantizer = new NoStatisticsDataPointQuantizer(vo, getBucketCalculator(), this);
-            }else {
-                switch(vo.getPointLocator().getDataTypeId()) {
-                    case DataTypes.ALPHANUMERIC:
-                    case DataTypes.IMAGE:
-                        quantizer = new ValueChangeCounterDataPointQuantizer(vo, getBucketCalculator(), this);
-                        break;
-                    case DataTypes.BINARY:
-                    case DataTypes.MULTISTATE:
-                        quantizer = new StartsAndRuntimeListDataPointQuantizer(vo, getBucketCalculator(), this);
-                        break;
-                    case DataTypes.NUMERIC:
-                        quantizer = new AnalogStatisticsDataPointQuantizer(vo, getBucketCalculator(), this);
-                        break;
-                    default:
-                        throw new RuntimeException("Unknown Data Type: " + vo.getPointLocator().getDataTypeId());
-                }
+            this.quantizerMap.put(entry.getKey(), createQuantizer(entry.getValue(), getBucketCalculator()));
+        }
+    }
+
+    /**
+     * Create the quantizer for a data point
+     * @param vo
+     * @param calculator
+     * @return
+     */
+    protected DataPointStatisticsQuantizer<?> createQuantizer(DataPointVO vo, BucketCalculator calculator) {
+        return createQuantizer(vo, calculator, this);
+    }
+
+    /**
+     * Create the quantizer for a data point
+     * @param vo
+     * @param calculator
+     * @param callback - receives the statistics of each period
+     * @return
+     */
+    protected DataPointStatisticsQuantizer<?> createQuantizer(DataPointVO vo, BucketCalculator calculator, ChildStatisticsGeneratorCallback callback) {
+        if(info.getRollup() == RollupEnum.POINT_DEFAULT && vo.getRollup() == RollupEnum.NONE.getId()) {
+            //Raw Data Stream
+            return new NoStatisticsDataPointQuantizer(vo, calculator, callback);
+        }else {
+            switch(vo.getPointLocator().getDataTypeId()) {
+                case DataTypes.ALPHANUMERIC:
+                case DataTypes.IMAGE:
+                    return new ValueChangeCounterDataPointQuantizer(vo, calculator, callback);
+                case DataTypes.BINARY:
+                case DataTypes.MULTISTATE:
+                    return new StartsAndRuntimeListDataPointQuantizer(vo, calculator, callback);
+                case DataTypes.NUMERIC:
+                    return new AnalogStatisticsDataPointQuantizer(vo, calculator, callback);
+                default:
+                    throw new RuntimeException("Unknown Data Type: " + vo.getPointLocator().getDataTypeId());
             }
-            this.quantizerMap.put(entry.getKey(), quantizer);
         }
     }
 
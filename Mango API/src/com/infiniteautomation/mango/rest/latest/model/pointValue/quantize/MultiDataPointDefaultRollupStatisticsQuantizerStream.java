@@ -184,8 +184,7 @@ public class MultiDataPointDefaultRollupStatisticsQuantizerStream <T, INFO exten
                 return;
             }
             updateQuantizers(value);
-            DataPointStatisticsQuantizer<?> quantizer = this.quantizerMap.get(value.getSeriesId());
-            quantizer.row(value, index);
+            currentQuantizer.row(value, index);
         }catch(IOException e) {
             throw new QueryCancelledException(e);
         }
@@ -231,6 +230,11 @@ public class MultiDataPointDefaultRollupStatisticsQuantizerStream <T, INFO exten
         }
     }
 
+    @Override
+    protected boolean isWritingPeriodsWhenQuantized() {
+        return !useSimplify && super.isWritingPeriodsWhenQuantized();
+    }
+
     @Override
     protected RollupEnum getRollup(DataPointVO vo) {
         return RollupEnum.convertTo(vo.getRollup());
@@ -7,12 +7,19 @@ import java.io.IOException;
 import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
+import com.infiniteautomation.mango.db.query.BookendQueryCallback;
 import com.infiniteautomation.mango.db.query.QueryCancelledException;
 import com.infiniteautomation.mango.quantize.BucketCalculator;
 import com.infiniteautomation.mango.quantize.BucketsBucketCalculator;
@@ -20,10 +27,16 @@ import com.infiniteautomation.mango.quantize.TimePeriodBucketCalculator;
 import com.infiniteautomation.mango.rest.latest.model.pointValue.DataPointValueTime;
 import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueTimeWriter;
 import com.infiniteautomation.mango.rest.latest.model.pointValue.RollupEnum;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.query.PointValueQueryExecutor;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.query.PointValueQueryExecutor.ParallelQuery;
 import com.infiniteautomation.mango.rest.latest.model.pointValue.query.ZonedDateTimeRangeQueryInfo;
 import com.infiniteautomation.mango.rest.latest.model.time.TimePeriodType;
+import com.infiniteautomation.mango.statistics.NoStatisticsGenerator;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.DataTypes;
 import com.serotonin.m2m2.db.dao.PointValueDao;
 import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
+import com.serotonin.m2m2.view.stats.StatisticsGenerator;
 import com.serotonin.m2m2.vo.DataPointVO;
 
 /**
@@ -36,17 +49,50 @@ public class MultiDataPointStatisticsQuantizerStream<T, INFO extends ZonedDateTi
     //Cached statistic values intra period until all points are ready to be flushed at a timestamp
     protected final LinkedHashMap<Long,List<DataPointValueTime>> periodStats;
 
+    //Value of each point at lastTime, rows are reused so no objects are created per value
     private final Map<Integer, IdPointValueTimeRow> currentValueTimeMap;
+    //Rows holding a value at lastTime
+    private final List<IdPointValueTimeRow> pendingRows;
     //So we can finish the statistics efficiently
     private long lastFullPeriodToMillis;
     //Track when we are moving to a new timestamp within time ordered queries
-    private Long lastTime;
+    private long lastTime = Long.MIN_VALUE;
+
+    //Optional store of the statistics of closed periods
+    protected final RollupStatisticsCache rollupCache;
+    //Optional pre-aggregated periods of numeric points
+    protected final PointValueRollupTiers rollupTiers;
+    protected final boolean useStoredPeriods;
+    //Periods that end at or before this time can be stored
+    protected long closedBefore;
+    //Stored statistics to write before the statistics computed from raw values, map key is seriesId
+    protected final Map<Integer, List<StatisticsGenerator>> storedPeriods;
+
+    //Optional pool to quantize points concurrently
+    protected final PointValueQueryExecutor queryExecutor;
 
     public MultiDataPointStatisticsQuantizerStream(INFO info, Map<Integer, DataPointVO> voMap, PointValueDao dao) {
+        this(info, voMap, dao, null, null);
+    }
+
+    public MultiDataPointStatisticsQuantizerStream(INFO info, Map<Integer, DataPointVO> voMap, PointValueDao dao, RollupStatisticsCache rollupCache, PointValueRollupTiers rollupTiers) {
+        this(info, voMap, dao, rollupCache, rollupTiers, null);
+    }
+
+    public MultiDataPointStatisticsQuantizerStream(INFO info, Map<Integer, DataPointVO> voMap, PointValueDao dao, RollupStatisticsCache rollupCache,
+            PointValueRollupTiers rollupTiers, PointValueQueryExecutor queryExecutor) {
         super(info, voMap, dao);
         this.periodStats = new LinkedHashMap<>();
         this.currentValueTimeMap = new HashMap<>();
+        this.pendingRows = new ArrayList<>();
         this.lastFullPeriodToMillis = periodToMillis;
+        this.rollupCache = rollupCache;
+        this.rollupTiers = rollupTiers;
+        //Only when each series is written separately as the stored periods are written per series
+        this.useStoredPeriods = (isRollupCacheEnabled() || (rollupTiers != null && rollupTiers.isEnabled()))
+                && info.getTimePeriod() != null && (!info.isSingleArray() || voMap.size() == 1);
+        this.storedPeriods = new HashMap<>();
+        this.queryExecutor = queryExecutor;
     }
 
     @Override
@@ -55,6 +101,7 @@ public class MultiDataPointStatisticsQuantizerStream<T, INFO extends ZonedDateTi
             DataPointStatisticsQuantizer<?> quantizer = this.quantizerMap.get(value.getSeriesId());
             if(!info.isSingleArray())
                 writer.writeStartArray(quantizer.vo.getXid());
+            writeStoredPeriods(quantizer.vo);
             updateQuantizers(value);
             quantizer.firstValue(value, index, bookend);
         }catch(IOException e) {
@@ -70,31 +117,29 @@ public class MultiDataPointStatisticsQuantizerStream<T, INFO extends ZonedDateTi
             if(info.isSingleArray() && voMap.size() > 1) {
                 //Possibly fast forward as samples come in time order and we will not receive another value at this timestamp
                 //this will keep our periodStats to a minimum
-                if(lastTime != null && value.getTime() != lastTime) {
+                if(lastTime != Long.MIN_VALUE && value.getTime() != lastTime) {
                     //Finish by forwarding to the point value time
-                    Iterator<Integer> it = this.currentValueTimeMap.keySet().iterator();
-                    while(it.hasNext()) {
-                        Integer id = it.next();
-                        DataPointStatisticsQuantizer<?> q = this.quantizerMap.get(id);
-                        IdPointValueTimeRow row = this.currentValueTimeMap.get(id);
-                        it.remove();
-                        if(row == null) {
-                            //No values in this sample period
-                            q.fastForward(lastTime);
-                        }else {
-                            q.row(row.value, row.index);
-                        }
+                    for(IdPointValueTimeRow row : pendingRows) {
+                        if(row.value != null)
+                            row.flush();
                     }
-                    currentValueTimeMap.put(value.getSeriesId(), new IdPointValueTimeRow(value, index));
-                }else {
-                    //cache the value so as not to trigger quantization until all values are ready
-                    currentValueTimeMap.put(value.getSeriesId(), new IdPointValueTimeRow(value, index));
+                    pendingRows.clear();
                 }
 
+                //cache the value so as not to trigger quantization until all values are ready
+                IdPointValueTimeRow row = currentValueTimeMap.get(value.getSeriesId());
+                if(row == null) {
+                    row = new IdPointValueTimeRow(currentQuantizer);
+                    currentValueTimeMap.put(value.getSeriesId(), row);
+                }
+                if(row.value == null)
+                    pendingRows.add(row);
+                row.value = value;
+                row.index = index;
+
                 lastTime = value.getTime();
             }else {
-                DataPointStatisticsQuantizer<?> quantizer = this.quantizerMap.get(value.getSeriesId());
-                quantizer.row(value, index);
+                currentQuantizer.row(value, index);
             }
         }catch(IOException e) {
             throw new QueryCancelledException(e);
@@ -105,9 +150,9 @@ public class MultiDataPointStatisticsQuantizerStream<T, INFO extends ZonedDateTi
     public void lastValue(IdPointValueTime value, int index, boolean bookend) throws QueryCancelledException {
         try {
             DataPointStatisticsQuantizer<?> quantizer = this.quantizerMap.get(value.getSeriesId());
-            IdPointValueTimeRow row = this.currentValueTimeMap.remove(value.getSeriesId());
-            if(row != null) {
-                quantizer.row(row.value, row.index);
+            IdPointValueTimeRow row = this.currentValueTimeMap.get(value.getSeriesId());
+            if(row != null && row.value != null) {
+                row.flush();
             }
             quantizer.lastValue(value, index, bookend);
             //This will definitely be the last time we see this point
@@ -123,7 +168,186 @@ public class MultiDataPointStatisticsQuantizerStream<T, INFO extends ZonedDateTi
     @Override
     public void streamData(PointValueTimeWriter writer) throws QueryCancelledException, IOException {
         createQuantizerMap();
-        dao.wideBookendQuery(new ArrayList<DataPointVO>(voMap.values()), info.getFromMillis(), info.getToMillis(), !info.isSingleArray(), null, this);
+        if(useStoredPeriods)
+            streamDataThroughStoredPeriods();
+        else
+            queryDatabase(Collections.singletonMap(info.getFromMillis(), new ArrayList<DataPointVO>(voMap.values())));
+    }
+
+    /**
+     * Numeric points are quantized into primitive statistics that are reused for every period when each period is
+     * written as soon as it is quantized
+     */
+    @Override
+    protected DataPointStatisticsQuantizer<?> createQuantizer(DataPointVO vo, BucketCalculator calculator, ChildStatisticsGeneratorCallback callback) {
+        if(callback == this && vo.getPointLocator().getDataTypeId() == DataTypes.NUMERIC
+                && NumericStatisticsDataPointQuantizer.supports(getRollup(vo)) && isWritingPeriodsWhenQuantized())
+            return new NumericStatisticsDataPointQuantizer(vo, calculator, callback, getRollup(vo));
+        return super.createQuantizer(vo, calculator, callback);
+    }
+
+    /**
+     * @return false if periods are collected or stored after they are quantized, they then need their own statistics
+     */
+    protected boolean isWritingPeriodsWhenQuantized() {
+        return !(info.isSingleArray() && voMap.size() > 1) && !(useStoredPeriods && isRollupCacheEnabled());
+    }
+
+    /**
+     * Query the points and quantize their values
+     * @param queries - points to query by the time to query raw values from
+     * @throws QueryCancelledException
+     * @throws IOException
+     */
+    protected void queryDatabase(Map<Long, List<DataPointVO>> queries) throws QueryCancelledException, IOException {
+        //Points are independent when they are not written as a single array
+        if(queryExecutor != null && queryExecutor.isEnabled() && !info.isSingleArray() && voMap.size() > 1) {
+            quantizeInParallel(queries);
+        }else {
+            for(Entry<Long, List<DataPointVO>> entry : queries.entrySet())
+                dao.wideBookendQuery(entry.getValue(), entry.getKey(), info.getToMillis(), !info.isSingleArray(), null, this);
+        }
+    }
+
+    /**
+     * Query and quantize the points on the query executor ahead of the writer and write them in order as their statistics
+     * become available, the number of periods buffered per point is limited so a slow writer blocks the quantization until it stalls.
+     * @param queries
+     * @throws QueryCancelledException
+     * @throws IOException
+     */
+    protected void quantizeInParallel(Map<Long, List<DataPointVO>> queries) throws QueryCancelledException, IOException {
+        ParallelQuery parallelQuery = queryExecutor.newQuery();
+        List<PointQuantization> points = new ArrayList<>();
+        try {
+            for(Entry<Long, List<DataPointVO>> entry : queries.entrySet()) {
+                for(DataPointVO vo : entry.getValue()) {
+                    PointQuantization point = new PointQuantization(vo, entry.getKey(), parallelQuery, queryExecutor.getBufferSize());
+                    points.add(point);
+                    parallelQuery.add(point);
+                }
+            }
+            for(int i = 0; i < points.size(); i++) {
+                parallelQuery.writing(i);
+                points.get(i).write();
+            }
+        }finally {
+            for(PointQuantization point : points) {
+                point.cancelled = true;
+            }
+            parallelQuery.cancel();
+        }
+    }
+
+    /**
+     * Use the stored statistics of closed periods and only query the raw values after them
+     * @throws QueryCancelledException
+     * @throws IOException
+     */
+    protected void streamDataThroughStoredPeriods() throws QueryCancelledException, IOException {
+        long now = Common.timer.currentTimeMillis();
+        closedBefore = isRollupCacheEnabled() ? rollupCache.getClosedBefore(now) : now;
+        List<Long> periodStarts = getClosedPeriodStarts();
+
+        //Points to query by the time to query raw values from
+        Map<Long, List<DataPointVO>> queries = new TreeMap<>();
+        for(DataPointVO vo : voMap.values()) {
+            long from = info.getFromMillis();
+            DataPointStatisticsQuantizer<?> quantizer = this.quantizerMap.get(vo.getSeriesId());
+            if(!periodStarts.isEmpty() && !(quantizer instanceof NoStatisticsDataPointQuantizer)) {
+                List<StatisticsGenerator> stored = getStoredPeriods(quantizer, periodStarts);
+                if(!stored.isEmpty()) {
+                    this.storedPeriods.put(vo.getSeriesId(), stored);
+                    from = stored.get(stored.size() - 1).getPeriodEndTime();
+                    if(from >= info.getToMillis()) {
+                        //Every period is stored
+                        this.quantizerMap.remove(vo.getSeriesId());
+                        if(!info.isSingleArray())
+                            writer.writeStartArray(vo.getXid());
+                        writeStoredPeriods(vo);
+                        if(!info.isSingleArray())
+                            writer.writeEndArray();
+                        continue;
+                    }
+                    this.quantizerMap.put(vo.getSeriesId(), createQuantizer(vo, getBucketCalculator(from)));
+                }
+            }
+            queries.computeIfAbsent(from, k -> new ArrayList<>()).add(vo);
+        }
+
+        queryDatabase(queries);
+    }
+
+    /**
+     * @return start of each period of the query that is closed, in time order
+     */
+    protected List<Long> getClosedPeriodStarts() {
+        List<Long> starts = new ArrayList<>();
+        BucketCalculator bc = getBucketCalculator();
+        long start = bc.getStartTime().toInstant().toEpochMilli();
+        long end = bc.getEndTime().toInstant().toEpochMilli();
+        while(start < end) {
+            long next = bc.getNextPeriodTo().toInstant().toEpochMilli();
+            if(next > closedBefore)
+                break;
+            starts.add(start);
+            start = next;
+        }
+        return starts;
+    }
+
+    /**
+     * Calculator for the periods of the query starting at a period boundary
+     * @param from
+     * @return
+     */
+    protected BucketCalculator getBucketCalculator(long from) {
+        return new TimePeriodBucketCalculator(ZonedDateTime.ofInstant(Instant.ofEpochMilli(from), info.getZoneId()), info.getTo(), TimePeriodType.convertFrom(this.info.getTimePeriod().getType()), this.info.getTimePeriod().getPeriods());
+    }
+
+    /**
+     * Get the stored statistics of consecutive periods from the start of the query, from the
+     *  rollup tiers if they hold this period otherwise from the rollup cache
+     * @param quantizer
+     * @param periodStarts
+     * @return
+     */
+    protected List<StatisticsGenerator> getStoredPeriods(DataPointStatisticsQuantizer<?> quantizer, List<Long> periodStarts) {
+        List<StatisticsGenerator> stored = Collections.emptyList();
+        if(rollupTiers != null && rollupTiers.isEnabled()
+                && (quantizer instanceof AnalogStatisticsDataPointQuantizer || quantizer instanceof NumericStatisticsDataPointQuantizer))
+            stored = rollupTiers.getPeriods(quantizer.vo, info.getTimePeriod(), info.getZoneId(), periodStarts);
+        if(stored.isEmpty() && isRollupCacheEnabled())
+            stored = rollupCache.getPeriods(createRollupCacheKey(quantizer), periodStarts);
+
+        //The last period of the query may be cut short by the end of the query
+        for(int i = 0; i < stored.size(); i++) {
+            if(stored.get(i).getPeriodEndTime() > info.getToMillis())
+                return stored.subList(0, i);
+        }
+        return stored;
+    }
+
+    protected boolean isRollupCacheEnabled() {
+        return rollupCache != null && rollupCache.isEnabled();
+    }
+
+    protected RollupStatisticsCache.Key createRollupCacheKey(DataPointStatisticsQuantizer<?> quantizer) {
+        return new RollupStatisticsCache.Key(quantizer.vo.getSeriesId(), quantizer.getClass().getSimpleName(),
+                info.getTimePeriod().getType(), info.getTimePeriod().getPeriods(), info.getZoneId());
+    }
+
+    /**
+     * Write the stored statistics for a point
+     * @param vo
+     * @throws QueryCancelledException
+     */
+    protected void writeStoredPeriods(DataPointVO vo) throws QueryCancelledException {
+        List<StatisticsGenerator> stored = this.storedPeriods.remove(vo.getSeriesId());
+        if(stored != null) {
+            for(StatisticsGenerator generator : stored)
+                writePeriodStats(new DataPointRollupPeriodValue(new DataPointStatisticsGenerator(vo, generator), getRollup(vo)));
+        }
     }
 
     protected void writePeriodStats(List<DataPointValueTime> generators) throws QueryCancelledException {
@@ -147,6 +371,17 @@ public class MultiDataPointStatisticsQuantizerStream<T, INFO extends ZonedDateTi
 
     @Override
     public void quantizedStatistics(DataPointStatisticsGenerator generator) throws QueryCancelledException {
+        if(useStoredPeriods && isRollupCacheEnabled()) {
+            //Store closed periods, a period that ends at the end of the query may have been cut short
+            StatisticsGenerator statistics = generator.getGenerator();
+            if(statistics.getPeriodEndTime() <= closedBefore && statistics.getPeriodEndTime() < info.getToMillis()
+                    && !(statistics instanceof NoStatisticsGenerator)) {
+                DataPointStatisticsQuantizer<?> quantizer = this.quantizerMap.get(generator.getVo().getSeriesId());
+                if(quantizer != null)
+                    rollupCache.put(createRollupCacheKey(quantizer), quantizer.vo, statistics);
+            }
+        }
+
         //Collect the stats for this period
         if(info.isSingleArray() && voMap.size() > 1) {
             //Do we have any entries for this period
@@ -161,6 +396,9 @@ public class MultiDataPointStatisticsQuantizerStream<T, INFO extends ZonedDateTi
                 writePeriodStats(entries);
                 this.lastFullPeriodToMillis = generator.getGenerator().getPeriodEndTime();
             }
+        }else if(generator instanceof NumericStatisticsDataPointQuantizer.PeriodGenerator) {
+            //Reused for every period of the point
+            writePeriodStats(((NumericStatisticsDataPointQuantizer.PeriodGenerator)generator).periodValue);
         }else {
             //Just write it out
             writePeriodStats(new DataPointRollupPeriodValue(generator, getRollup(generator.getVo())));
@@ -229,6 +467,121 @@ public class MultiDataPointStatisticsQuantizerStream<T, INFO extends ZonedDateTi
         return info.getRollup();
     }
 
+    /**
+     * Quantizes one point on the query executor and buffers its statistics until they are written
+     */
+    private class PointQuantization implements Runnable, BookendQueryCallback<IdPointValueTime>, ChildStatisticsGeneratorCallback {
+
+        private final DataPointStatisticsGenerator end;
+        private final DataPointVO vo;
+        private final long from;
+        private final DataPointStatisticsQuantizer<?> quantizer;
+        private final ParallelQuery parallelQuery;
+        private final BlockingQueue<DataPointStatisticsGenerator> periods;
+        private volatile boolean cancelled;
+        //Set when the quantization ended without buffering the end
+        private volatile boolean finished;
+        private volatile Throwable failure;
+
+        PointQuantization(DataPointVO vo, long from, ParallelQuery parallelQuery, int bufferSize) {
+            this.vo = vo;
+            this.from = from;
+            this.parallelQuery = parallelQuery;
+            this.end = new DataPointStatisticsGenerator(vo, null);
+            this.periods = new LinkedBlockingQueue<>(bufferSize);
+            BucketCalculator calculator = from == info.getFromMillis() ? getBucketCalculator() : getBucketCalculator(from);
+            this.quantizer = createQuantizer(vo, calculator, this);
+            //Replace the quantizer so the point is finished by this quantizer
+            quantizerMap.put(vo.getSeriesId(), quantizer);
+        }
+
+        @Override
+        public void run() {
+            try {
+                dao.wideBookendQuery(Collections.singletonList(vo), from, info.getToMillis(), true, null, this);
+                if(!quantizer.isDone())
+                    quantizer.done();
+            }catch(QueryCancelledException e) {
+                //Cancelled by the writer or the client stalled
+                if(!cancelled)
+                    failure = e;
+            }catch(Throwable t) {
+                failure = t;
+            }finally {
+                try {
+                    //Don't wait again for a client that stalled
+                    if(failure == null)
+                        put(end);
+                    else if(!periods.offer(end))
+                        finished = true;
+                }catch(QueryCancelledException e) {
+                    //Nobody is waiting
+                    finished = true;
+                }
+            }
+        }
+
+        @Override
+        public void firstValue(IdPointValueTime value, int index, boolean bookend) throws QueryCancelledException {
+            quantizer.firstValue(value, index, bookend);
+        }
+
+        @Override
+        public void row(IdPointValueTime value, int index) throws QueryCancelledException {
+            quantizer.row(value, index);
+        }
+
+        @Override
+        public void lastValue(IdPointValueTime value, int index, boolean bookend) throws QueryCancelledException {
+            quantizer.lastValue(value, index, bookend);
+            quantizer.done();
+        }
+
+        @Override
+        public void quantizedStatistics(DataPointStatisticsGenerator generator) throws QueryCancelledException {
+            put(generator);
+        }
+
+        private void put(DataPointStatisticsGenerator generator) throws QueryCancelledException {
+            parallelQuery.put(periods, generator, () -> cancelled);
+        }
+
+        /**
+         * Write the array of this point as its periods are quantized
+         * @throws QueryCancelledException
+         * @throws IOException
+         */
+        void write() throws QueryCancelledException, IOException {
+            writer.writeStartArray(vo.getXid());
+            writeStoredPeriods(vo);
+            try {
+                while(true) {
+                    DataPointStatisticsGenerator generator = periods.poll(1, TimeUnit.SECONDS);
+                    if(generator == null) {
+                        if(finished)
+                            break;
+                        //The quantization will never finish if the executor was shut down
+                        if(queryExecutor.isShutdown())
+                            throw new QueryCancelledException(new Exception("Point value query executor shut down"));
+                        continue;
+                    }
+                    if(generator == end)
+                        break;
+                    parallelQuery.written();
+                    MultiDataPointStatisticsQuantizerStream.this.quantizedStatistics(generator);
+                }
+            }catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new QueryCancelledException(e);
+            }
+            if(failure instanceof RuntimeException)
+                throw (RuntimeException)failure;
+            else if(failure != null)
+                throw new QueryCancelledException(failure);
+            writer.writeEndArray();
+        }
+    }
+
     /**
      *
      * Container for intra interval samples
@@ -237,13 +590,22 @@ public class MultiDataPointStatisticsQuantizerStream<T, INFO extends ZonedDateTi
      *
      */
     private static final class IdPointValueTimeRow {
-        final IdPointValueTime value;
-        final int index;
+        final DataPointStatisticsQuantizer<?> quantizer;
+        IdPointValueTime value;
+        int index;
 
-        public IdPointValueTimeRow(IdPointValueTime value, int index) {
-            this.value = value;
-            this.index = index;
+        public IdPointValueTimeRow(DataPointStatisticsQuantizer<?> quantizer) {
+            this.quantizer = quantizer;
         }
 
+        /**
+         * Send the value to the quantizer and empty the row
+         * @throws QueryCancelledException
+         */
+        void flush() throws QueryCancelledException {
+            IdPointValueTime row = value;
+            value = null;
+            quantizer.row(row, index);
+        }
     }
 }
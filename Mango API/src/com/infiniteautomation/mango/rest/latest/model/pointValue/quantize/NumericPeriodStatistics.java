@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue.quantize;
+
+import com.infiniteautomation.mango.statistics.AnalogStatistics;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+
+/**
+ * Statistics of a numeric period accumulated in primitive fields.  One instance is reused for every period of a
+ * point, it is opened at the start of a period, values are added as (time, value) pairs and it is read through the
+ * AnalogStatistics getters until the next period is opened.
+ *
+ * The delta is not computed.
+ */
+class NumericPeriodStatistics extends AnalogStatistics {
+
+    private long periodStart;
+    private long periodEnd;
+
+    private boolean hasStart;
+    private double startValue;
+    private double firstValue;
+    private long firstTime;
+    private double lastValue;
+    private long lastTime;
+    private boolean hasExtremes;
+    private double minimumValue;
+    private long minimumTime;
+    private double maximumValue;
+    private long maximumTime;
+    private double sum;
+    private int count;
+
+    //Value in effect since latestTime, weights the average and the integral
+    private boolean hasLatest;
+    private double latestValue;
+    private long latestTime;
+    private double weightedSum;
+    private long valueDuration;
+    private double integral;
+    private boolean closed;
+
+    NumericPeriodStatistics() {
+        super(0, 0, (PointValueTime) null);
+    }
+
+    /**
+     * Start a period, forgetting the statistics of the previous one
+     * @param start
+     * @param end
+     * @param hasStart - true if the point had a value at the start of the period
+     * @param startValue
+     */
+    void open(long start, long end, boolean hasStart, double startValue) {
+        this.periodStart = start;
+        this.periodEnd = end;
+        this.hasStart = hasStart;
+        this.startValue = startValue;
+        this.count = 0;
+        this.sum = 0;
+        this.hasExtremes = hasStart;
+        this.minimumValue = this.maximumValue = startValue;
+        this.minimumTime = this.maximumTime = start;
+        this.hasLatest = hasStart;
+        this.latestValue = startValue;
+        this.latestTime = start;
+        this.weightedSum = 0;
+        this.valueDuration = 0;
+        this.integral = 0;
+        this.closed = false;
+    }
+
+    /**
+     * Add a value of the period, values are added in time order
+     * @param time
+     * @param value
+     */
+    void add(long time, double value) {
+        if(count == 0) {
+            firstValue = value;
+            firstTime = time;
+        }
+        lastValue = value;
+        lastTime = time;
+        count++;
+        sum += value;
+
+        if(!hasExtremes || value < minimumValue) {
+            minimumValue = value;
+            minimumTime = time;
+        }
+        if(!hasExtremes || value > maximumValue) {
+            maximumValue = value;
+            maximumTime = time;
+        }
+        hasExtremes = true;
+
+        if(hasLatest)
+            accumulate(time);
+        hasLatest = true;
+        latestValue = value;
+        latestTime = time;
+    }
+
+    /**
+     * The latest value lasts until the end of the period
+     */
+    @Override
+    public void done() {
+        if(hasLatest)
+            accumulate(periodEnd);
+        closed = true;
+    }
+
+    private void accumulate(long time) {
+        long duration = time - latestTime;
+        if(duration > 0) {
+            weightedSum += latestValue * duration;
+            valueDuration += duration;
+            integral += latestValue * ((double) duration / 1000d);
+        }
+    }
+
+    /**
+     * @return true if a value was added or the period has a start value
+     */
+    boolean hasValue() {
+        return hasLatest;
+    }
+
+    /**
+     * @return the value at the end of the period
+     */
+    double getLatestValue() {
+        return latestValue;
+    }
+
+    @Override
+    public long getPeriodStartTime() {
+        return periodStart;
+    }
+
+    @Override
+    public long getPeriodEndTime() {
+        return periodEnd;
+    }
+
+    @Override
+    public Double getStartValue() {
+        return hasStart ? startValue : null;
+    }
+
+    @Override
+    public Double getFirstValue() {
+        return count > 0 ? firstValue : null;
+    }
+
+    @Override
+    public Long getFirstTime() {
+        return count > 0 ? firstTime : null;
+    }
+
+    @Override
+    public Double getLastValue() {
+        return count > 0 ? lastValue : null;
+    }
+
+    @Override
+    public Long getLastTime() {
+        return count > 0 ? lastTime : null;
+    }
+
+    @Override
+    public Double getMinimumValue() {
+        return hasExtremes ? minimumValue : null;
+    }
+
+    @Override
+    public Long getMinimumTime() {
+        return hasExtremes ? minimumTime : null;
+    }
+
+    @Override
+    public Double getMaximumValue() {
+        return hasExtremes ? maximumValue : null;
+    }
+
+    @Override
+    public Long getMaximumTime() {
+        return hasExtremes ? maximumTime : null;
+    }
+
+    @Override
+    public Double getAverage() {
+        return closed && valueDuration > 0 ? weightedSum / valueDuration : null;
+    }
+
+    @Override
+    public Double getIntegral() {
+        return closed && valueDuration > 0 ? integral : null;
+    }
+
+    @Override
+    public double getSum() {
+        return sum;
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue.quantize;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.infiniteautomation.mango.db.query.QueryCancelledException;
+import com.infiniteautomation.mango.quantize.BucketCalculator;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.RollupEnum;
+import com.infiniteautomation.mango.statistics.AnalogStatistics;
+import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Quantizes a numeric point without creating objects per value or per period.  Each value is added to the period
+ * as a (time, double) pair and the statistics, the generator and the period value handed to the callback are
+ * reused for every period, so the callback must be done with a period before the next value is quantized.
+ *
+ * Produces the same periods as {@link AnalogStatisticsDataPointQuantizer} for the rollups in {@link #supports(RollupEnum)}.
+ */
+public class NumericStatisticsDataPointQuantizer extends DataPointStatisticsQuantizer<AnalogStatistics> {
+
+    private static final Set<RollupEnum> ROLLUPS = EnumSet.of(RollupEnum.AVERAGE, RollupEnum.MINIMUM, RollupEnum.MAXIMUM,
+            RollupEnum.SUM, RollupEnum.INTEGRAL, RollupEnum.FIRST, RollupEnum.LAST, RollupEnum.START, RollupEnum.COUNT,
+            RollupEnum.ACCUMULATOR);
+
+    private final BucketCalculator calculator;
+    private final long endTime;
+    private long periodFrom;
+    private long periodTo;
+    private final NumericPeriodStatistics statistics;
+    private final PeriodGenerator generator;
+
+    public NumericStatisticsDataPointQuantizer(DataPointVO vo, BucketCalculator calculator, ChildStatisticsGeneratorCallback callback, RollupEnum rollup) {
+        super(vo, callback);
+        this.calculator = calculator;
+        this.endTime = calculator.getEndTime().toInstant().toEpochMilli();
+        this.periodFrom = calculator.getStartTime().toInstant().toEpochMilli();
+        this.periodTo = calculator.getNextPeriodTo().toInstant().toEpochMilli();
+        this.statistics = new NumericPeriodStatistics();
+        this.generator = new PeriodGenerator(vo, statistics, rollup);
+    }
+
+    /**
+     * @param rollup
+     * @return true if the rollup is computed by this quantizer
+     */
+    public static boolean supports(RollupEnum rollup) {
+        return ROLLUPS.contains(rollup);
+    }
+
+    @Override
+    public void firstValue(IdPointValueTime value, int index, boolean bookend) throws QueryCancelledException {
+        if(value != null && value.getValue() != null) {
+            statistics.open(periodFrom, periodTo, true, value.getValue().getDoubleValue());
+            open = true;
+            //Bookends are not values of the period
+            if(!bookend)
+                row(value, index);
+        }else {
+            statistics.open(periodFrom, periodTo, false, 0);
+            open = true;
+        }
+    }
+
+    @Override
+    public void row(IdPointValueTime value, int index) throws QueryCancelledException {
+        long time = value.getTime();
+        while(time >= periodTo)
+            nextPeriod();
+        statistics.add(time, value.getValue().getDoubleValue());
+    }
+
+    @Override
+    public void lastValue(IdPointValueTime value, int index, boolean bookend) throws QueryCancelledException {
+        if(!bookend)
+            row(value, index);
+    }
+
+    @Override
+    public void fastForward(long time) throws QueryCancelledException {
+        if(!open)
+            firstValue(null, 0, true);
+        while(time >= periodTo && periodTo < endTime)
+            nextPeriod();
+    }
+
+    /**
+     * Close the current period and the empty periods up to the end of the query
+     */
+    @Override
+    public void done() throws QueryCancelledException {
+        if(!open)
+            firstValue(null, 0, true);
+        closePeriod();
+        while(periodTo < endTime) {
+            openNextPeriod();
+            closePeriod();
+        }
+        done = true;
+    }
+
+    private void nextPeriod() throws QueryCancelledException {
+        closePeriod();
+        openNextPeriod();
+    }
+
+    private void closePeriod() throws QueryCancelledException {
+        statistics.done();
+        callback.quantizedStatistics(generator);
+    }
+
+    /**
+     * The value at the end of the period is the start value of the next
+     */
+    private void openNextPeriod() {
+        periodFrom = periodTo;
+        periodTo = calculator.getNextPeriodTo().toInstant().toEpochMilli();
+        statistics.open(periodFrom, periodTo, statistics.hasValue(), statistics.getLatestValue());
+    }
+
+    /**
+     * The generator of every period of a point, with the value written for the period
+     */
+    static final class PeriodGenerator extends DataPointStatisticsGenerator {
+
+        final DataPointRollupPeriodValue periodValue;
+
+        PeriodGenerator(DataPointVO vo, AnalogStatistics statistics, RollupEnum rollup) {
+            super(vo, statistics);
+            this.periodValue = new DataPointRollupPeriodValue(this, rollup);
+        }
+    }
+}
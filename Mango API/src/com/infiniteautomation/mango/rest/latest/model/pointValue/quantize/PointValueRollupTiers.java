@@ -0,0 +1,628 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue.quantize;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import com.infiniteautomation.mango.db.query.QueryCancelledException;
+import com.infiniteautomation.mango.quantize.TimePeriodBucketCalculator;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueChangeTracker;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueChangeTracker.PointValueChangeListener;
+import com.infiniteautomation.mango.rest.latest.model.time.TimePeriod;
+import com.infiniteautomation.mango.rest.latest.model.time.TimePeriodType;
+import com.infiniteautomation.mango.statistics.AnalogStatistics;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.db.dao.PointValueDao;
+import com.serotonin.m2m2.view.stats.StatisticsGenerator;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Keeps 1 minute, 1 hour and 1 day statistics of the running numeric points that are queried for these periods,
+ * aggregated in the background as periods close. Rollup queries in the server's time zone for a period made of
+ * whole tier periods, such as 15 minutes, 6 hours, a week or a month, merge the stored periods of the coarsest such
+ * tier instead of reading the raw values.  A point is added by its first such query, the hours are merged from the
+ * minutes and the days from the hours where the finer tier covers them, only older periods are aggregated from the
+ * raw values.
+ *
+ * Disabled unless rest.pointValues.rollupTiers.enabled is true.  The tiers are updated every
+ * rest.pointValues.rollupTiers.updatePeriod ms (default 60000) by rest.pointValues.rollupTiers.threads workers
+ * (default 2), a period is aggregated once it ended rest.pointValues.rollupTiers.settlePeriod ms ago (default 60000)
+ * and rest.pointValues.rollupTiers.{tier}.retention periods are kept per point (default 1440 minutes, 744 hours and
+ * 366 days).  When more than rest.pointValues.rollupTiers.maxPeriods periods are stored (default 500000) the points
+ * queried least recently are dropped.  Changes reported by the {@link PointValueChangeTracker} discard the
+ * periods from the time of the change.
+ */
+@Component
+public class PointValueRollupTiers implements PointValueChangeListener {
+
+    private static final Log LOG = LogFactory.getLog(PointValueRollupTiers.class);
+
+    public enum Tier {
+        MINUTES(TimePeriodType.MINUTES, ChronoUnit.MINUTES, 1440, null),
+        HOURS(TimePeriodType.HOURS, ChronoUnit.HOURS, 744, MINUTES),
+        DAYS(TimePeriodType.DAYS, ChronoUnit.DAYS, 366, HOURS);
+
+        private final TimePeriodType periodType;
+        private final ChronoUnit unit;
+        private final int defaultRetention;
+        private final Tier finer;
+
+        private Tier(TimePeriodType periodType, ChronoUnit unit, int defaultRetention, Tier finer) {
+            this.periodType = periodType;
+            this.unit = unit;
+            this.defaultRetention = defaultRetention;
+            this.finer = finer;
+        }
+
+        public TimePeriodType getPeriodType() {
+            return periodType;
+        }
+
+        /**
+         * Days are not merged into periods of hours or smaller units as a day is not always 24 hours
+         * @param period
+         * @return the coarsest tier whose periods divide the period or null
+         */
+        public static Tier forPeriod(TimePeriod period) {
+            if(period == null || period.getType() == null || period.getPeriods() < 1)
+                return null;
+            int periods = period.getPeriods();
+            switch(period.getType()) {
+                case SECONDS:
+                    if(periods % 3600 == 0)
+                        return HOURS;
+                    return periods % 60 == 0 ? MINUTES : null;
+                case MINUTES:
+                    return periods % 60 == 0 ? HOURS : MINUTES;
+                case HOURS:
+                    return HOURS;
+                case DAYS:
+                case WEEKS:
+                case MONTHS:
+                case YEARS:
+                    return DAYS;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    private final boolean enabled;
+    private final long updatePeriod;
+    private final long settlePeriod;
+    private final long maxPeriods;
+    private final int threads;
+    private final Map<Tier, Integer> retention = new EnumMap<>(Tier.class);
+    private final ZoneId zoneId = ZoneId.systemDefault();
+    private final ScheduledExecutorService scheduledExecutor;
+    private final ExecutorService executor;
+    private final PointValueChangeTracker changeTracker;
+
+    //Map key is seriesId
+    private final Map<Integer, SeriesTiers> series = new ConcurrentHashMap<>();
+    private final AtomicBoolean updating = new AtomicBoolean();
+    //Set when an update is requested while updating so another runs after it
+    private final AtomicBoolean updateRequested = new AtomicBoolean();
+    //Orders the series by their last query
+    private final AtomicLong queryCounter = new AtomicLong();
+    private PointValueDao dao;
+    private ScheduledFuture<?> schedule;
+    private volatile long lastUpdateStart;
+    private volatile long lastUpdateDuration;
+
+    @Autowired
+    public PointValueRollupTiers(Environment env, ScheduledExecutorService scheduledExecutor, ExecutorService executor,
+            PointValueChangeTracker changeTracker) {
+        this.enabled = env.getProperty("rest.pointValues.rollupTiers.enabled", Boolean.class, false);
+        this.updatePeriod = env.getProperty("rest.pointValues.rollupTiers.updatePeriod", Long.class, 60000L);
+        this.settlePeriod = env.getProperty("rest.pointValues.rollupTiers.settlePeriod", Long.class, 60000L);
+        this.maxPeriods = env.getProperty("rest.pointValues.rollupTiers.maxPeriods", Long.class, 500000L);
+        this.threads = Math.max(1, env.getProperty("rest.pointValues.rollupTiers.threads", Integer.class, 2));
+        for(Tier tier : Tier.values()) {
+            this.retention.put(tier, env.getProperty("rest.pointValues.rollupTiers." + tier.name().toLowerCase() + ".retention", Integer.class, tier.defaultRetention));
+        }
+        this.scheduledExecutor = scheduledExecutor;
+        this.executor = executor;
+        this.changeTracker = changeTracker;
+    }
+
+    @PostConstruct
+    public void start() {
+        if(enabled) {
+            this.dao = Common.databaseProxy.newPointValueDao();
+            this.changeTracker.addListener(this);
+            this.schedule = scheduledExecutor.scheduleWithFixedDelay(this::scheduleUpdate, updatePeriod, updatePeriod, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if(schedule != null)
+            schedule.cancel(false);
+        changeTracker.removeListener(this);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public ZoneId getZoneId() {
+        return zoneId;
+    }
+
+    /**
+     * Update the tiers in the background, if an update is running another one follows it
+     */
+    public void scheduleUpdate() {
+        if(!enabled)
+            return;
+        if(!updating.compareAndSet(false, true)) {
+            updateRequested.set(true);
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    long start = Common.timer.currentTimeMillis();
+                    update(start);
+                    lastUpdateStart = start;
+                    lastUpdateDuration = Common.timer.currentTimeMillis() - start;
+                }catch(Exception e) {
+                    LOG.error("Failed to update rollup tiers", e);
+                }finally {
+                    updating.set(false);
+                }
+                if(updateRequested.getAndSet(false))
+                    scheduleUpdate();
+            });
+        }catch(RejectedExecutionException e) {
+            updating.set(false);
+            LOG.warn("Rollup tier update rejected, will retry on the next update period");
+        }
+    }
+
+    /**
+     * Get the stored statistics for consecutive periods, each merged from the stored periods it covers.  A numeric
+     *  point that is not stored yet is added and the following queries use its periods once they are aggregated.
+     * @param vo
+     * @param period - period of the query
+     * @param zoneId - time zone of the query
+     * @param periodStarts - start of each period in time order
+     * @return statistics of the periods from the first one up to the first period that is not stored
+     */
+    public List<StatisticsGenerator> getPeriods(DataPointVO vo, TimePeriod period, ZoneId zoneId, List<Long> periodStarts) {
+        Tier tier = Tier.forPeriod(period);
+        if(!enabled || tier == null || !this.zoneId.equals(zoneId) || vo.getPointLocator().getDataTypeId() != DataTypes.NUMERIC)
+            return Collections.emptyList();
+        SeriesTiers tiers = series.get(vo.getSeriesId());
+        if(tiers == null) {
+            add(vo);
+            return Collections.emptyList();
+        }
+        tiers.lastQueried = queryCounter.incrementAndGet();
+        return tiers.getPeriods(tier, period, periodStarts);
+    }
+
+    /**
+     * Discard the tiers of a series and aggregate them again
+     * @param seriesId
+     */
+    public void rebuild(int seriesId) {
+        invalidate(seriesId);
+        scheduleUpdate();
+    }
+
+    /**
+     * Discard the tiers of a series.  They are aggregated again on the next update.
+     * @param seriesId
+     */
+    public void invalidate(int seriesId) {
+        SeriesTiers tiers = series.get(seriesId);
+        if(tiers != null)
+            tiers.invalidate(Long.MIN_VALUE);
+    }
+
+    @Override
+    public void pointValuesChanged(int seriesId, long from) {
+        SeriesTiers tiers = series.get(seriesId);
+        //Values saved after the aggregated periods are the common case
+        if(tiers != null && from < tiers.aggregatedTo)
+            tiers.invalidate(from);
+    }
+
+    /**
+     * @param seriesId
+     * @return status of each tier for a series
+     */
+    public List<RollupTierStatusModel> getStatus(int seriesId) {
+        long now = Common.timer.currentTimeMillis();
+        SeriesTiers tiers = series.get(seriesId);
+        List<RollupTierStatusModel> status = new ArrayList<>();
+        for(Tier tier : Tier.values()) {
+            RollupTierStatusModel model = new RollupTierStatusModel(tier, retention.get(tier));
+            if(tiers != null)
+                tiers.addStatus(tier, model, now);
+            status.add(model);
+        }
+        return status;
+    }
+
+    /**
+     * @return status of each tier over all series, the lag is that of the series furthest behind
+     */
+    public List<RollupTierStatusModel> getStatus() {
+        long now = Common.timer.currentTimeMillis();
+        List<RollupTierStatusModel> status = new ArrayList<>();
+        for(Tier tier : Tier.values()) {
+            RollupTierStatusModel model = new RollupTierStatusModel(tier, retention.get(tier));
+            for(SeriesTiers tiers : series.values())
+                tiers.addStatus(tier, model, now);
+            status.add(model);
+        }
+        return status;
+    }
+
+    public int getSeriesCount() {
+        return series.size();
+    }
+
+    public long getLastUpdateStart() {
+        return lastUpdateStart;
+    }
+
+    public long getLastUpdateDuration() {
+        return lastUpdateDuration;
+    }
+
+    /**
+     * Start storing the tiers of a running point
+     * @param vo
+     */
+    void add(DataPointVO vo) {
+        if(!isRunning(vo))
+            return;
+        SeriesTiers tiers = new SeriesTiers(vo);
+        tiers.lastQueried = queryCounter.incrementAndGet();
+        if(series.putIfAbsent(vo.getSeriesId(), tiers) == null) {
+            changeTracker.track(vo);
+            scheduleUpdate();
+        }
+    }
+
+    /**
+     * Aggregate the periods that closed since the last update, the series are shared between the workers.  Points
+     * that stopped are dropped and then the points queried least recently until at most maxPeriods are stored.
+     * @param now
+     */
+    void update(long now) {
+        Queue<SeriesTiers> pending = new ConcurrentLinkedQueue<>();
+        for(SeriesTiers tiers : series.values()) {
+            if(isRunning(tiers.vo))
+                pending.add(tiers);
+            else
+                remove(tiers);
+        }
+
+        Runnable worker = () -> {
+            SeriesTiers tiers;
+            while((tiers = pending.poll()) != null) {
+                for(Tier tier : Tier.values()) {
+                    try {
+                        tiers.update(tier, now);
+                    }catch(Exception e) {
+                        LOG.warn("Failed to aggregate " + tier + " tier for " + tiers.vo.getXid(), e);
+                    }
+                }
+            }
+        };
+        List<CompletableFuture<Void>> workers = new ArrayList<>();
+        for(int i = 1; i < Math.min(threads, pending.size()); i++) {
+            try {
+                workers.add(CompletableFuture.runAsync(worker, executor));
+            }catch(RejectedExecutionException e) {
+                break;
+            }
+        }
+        worker.run();
+        workers.forEach(CompletableFuture::join);
+
+        long stored = 0;
+        for(SeriesTiers tiers : series.values())
+            stored += tiers.size();
+        if(stored > maxPeriods) {
+            List<SeriesTiers> leastRecent = new ArrayList<>(series.values());
+            leastRecent.sort(Comparator.comparingLong(t -> t.lastQueried));
+            for(SeriesTiers tiers : leastRecent) {
+                if(stored <= maxPeriods)
+                    break;
+                stored -= tiers.size();
+                remove(tiers);
+            }
+        }
+    }
+
+    private void remove(SeriesTiers tiers) {
+        if(series.remove(tiers.vo.getSeriesId(), tiers))
+            changeTracker.untrack(tiers.vo.getId());
+    }
+
+    protected boolean isRunning(DataPointVO vo) {
+        return Common.runtimeManager.getDataPoint(vo.getId()) != null;
+    }
+
+    /**
+     * Aggregate the raw values of a point
+     * @param vo
+     * @param tier
+     * @param from - start of the first period
+     * @param to - end of the last period
+     * @return statistics of each period in time order
+     * @throws QueryCancelledException
+     */
+    protected List<RollupTierPeriod> aggregate(DataPointVO vo, Tier tier, long from, long to) throws QueryCancelledException {
+        List<RollupTierPeriod> computed = new ArrayList<>();
+        TimePeriodBucketCalculator calculator = new TimePeriodBucketCalculator(
+                ZonedDateTime.ofInstant(Instant.ofEpochMilli(from), zoneId), ZonedDateTime.ofInstant(Instant.ofEpochMilli(to), zoneId),
+                TimePeriodType.convertFrom(tier.periodType), 1);
+        AnalogStatisticsDataPointQuantizer quantizer = new AnalogStatisticsDataPointQuantizer(vo, calculator,
+                generator -> computed.add(RollupTierPeriod.of((AnalogStatistics) generator.getGenerator())));
+        dao.wideBookendQuery(Collections.singletonList(vo), from, to, true, null, quantizer);
+        if(!quantizer.isDone())
+            quantizer.done();
+        return computed;
+    }
+
+    long floor(Tier tier, long time) {
+        return ZonedDateTime.ofInstant(Instant.ofEpochMilli(time), zoneId).truncatedTo(tier.unit).toInstant().toEpochMilli();
+    }
+
+    private long ceil(Tier tier, long time) {
+        long floor = floor(tier, time);
+        return floor == time ? time : plus(tier, floor, 1);
+    }
+
+    long plus(Tier tier, long time, int periods) {
+        return ZonedDateTime.ofInstant(Instant.ofEpochMilli(time), zoneId).plus(periods, tier.unit).toInstant().toEpochMilli();
+    }
+
+    /**
+     * @param period - a period with a tier
+     * @param start
+     * @return end of the period starting at a time
+     */
+    long end(TimePeriod period, long start) {
+        ChronoUnit unit;
+        switch(period.getType()) {
+            case SECONDS:
+                unit = ChronoUnit.SECONDS;
+                break;
+            case MINUTES:
+                unit = ChronoUnit.MINUTES;
+                break;
+            case HOURS:
+                unit = ChronoUnit.HOURS;
+                break;
+            case DAYS:
+                unit = ChronoUnit.DAYS;
+                break;
+            case WEEKS:
+                unit = ChronoUnit.WEEKS;
+                break;
+            case MONTHS:
+                unit = ChronoUnit.MONTHS;
+                break;
+            case YEARS:
+                unit = ChronoUnit.YEARS;
+                break;
+            default:
+                throw new IllegalArgumentException("No rollup tier for " + period.getType());
+        }
+        return ZonedDateTime.ofInstant(Instant.ofEpochMilli(start), zoneId).plus(period.getPeriods(), unit).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Tiers of one series, the periods of each tier are consecutive and in time order
+     */
+    private class SeriesTiers {
+        private final DataPointVO vo;
+        private final Map<Tier, List<RollupTierPeriod>> periods = new EnumMap<>(Tier.class);
+        //End of the last stored period, values saved before it change stored periods
+        private volatile long aggregatedTo = Long.MIN_VALUE;
+        private volatile long lastQueried;
+        //Incremented when invalidated so aggregations started before are discarded
+        private int generation;
+
+        SeriesTiers(DataPointVO vo) {
+            this.vo = vo;
+            for(Tier tier : Tier.values())
+                periods.put(tier, new ArrayList<>());
+        }
+
+        /**
+         * Aggregate the closed periods after the last stored period, from the finer tier where it covers them
+         */
+        void update(Tier tier, long now) throws QueryCancelledException {
+            long to = floor(tier, now - settlePeriod);
+            long oldest = plus(tier, to, -retention.get(tier));
+            long from;
+            long mergeFrom = to;
+            long mergeTo = to;
+            int startGeneration;
+            synchronized(this) {
+                List<RollupTierPeriod> stored = periods.get(tier);
+                from = stored.isEmpty() ? oldest : Math.max(stored.get(stored.size() - 1).end, oldest);
+                startGeneration = generation;
+                if(tier.finer != null) {
+                    List<RollupTierPeriod> finer = periods.get(tier.finer);
+                    if(!finer.isEmpty()) {
+                        long finerFrom = ceil(tier, finer.get(0).start);
+                        long finerTo = floor(tier, finer.get(finer.size() - 1).end);
+                        if(Math.max(from, finerFrom) < Math.min(to, finerTo)) {
+                            mergeFrom = Math.max(from, finerFrom);
+                            mergeTo = Math.min(to, finerTo);
+                        }
+                    }
+                }
+            }
+            if(from >= to)
+                return;
+
+            List<RollupTierPeriod> computed = from < mergeFrom ? aggregate(vo, tier, from, mergeFrom) : new ArrayList<>();
+
+            synchronized(this) {
+                if(generation != startGeneration)
+                    return;
+                if(mergeFrom < mergeTo)
+                    merge(tier, mergeFrom, mergeTo, computed);
+                List<RollupTierPeriod> stored = periods.get(tier);
+                stored.addAll(computed);
+                int expired = indexOf(stored, oldest);
+                if(expired > 0)
+                    stored.subList(0, expired).clear();
+                if(!stored.isEmpty())
+                    aggregatedTo = Math.max(aggregatedTo, stored.get(stored.size() - 1).end);
+            }
+        }
+
+        /**
+         * Merge the periods of the finer tier, stops at the first period the finer tier does not cover
+         */
+        private void merge(Tier tier, long from, long to, List<RollupTierPeriod> computed) {
+            List<RollupTierPeriod> finer = periods.get(tier.finer);
+            int index = indexOf(finer, from);
+            long start = from;
+            while(start < to) {
+                long end = plus(tier, start, 1);
+                int last = lastCovering(finer, index, start, end);
+                if(last < 0)
+                    return;
+                computed.add(RollupTierPeriod.merge(finer.subList(index, last + 1)));
+                index = last + 1;
+                start = end;
+            }
+        }
+
+        /**
+         * Merge the periods of a tier that cover each period, stops at the first period the tier does not cover
+         */
+        synchronized List<StatisticsGenerator> getPeriods(Tier tier, TimePeriod period, List<Long> periodStarts) {
+            List<RollupTierPeriod> stored = periods.get(tier);
+            if(periodStarts.isEmpty())
+                return Collections.emptyList();
+            int index = indexOf(stored, periodStarts.get(0));
+            List<StatisticsGenerator> result = new ArrayList<>();
+            for(Long start : periodStarts) {
+                int last = lastCovering(stored, index, start, end(period, start));
+                if(last < 0)
+                    break;
+                RollupTierPeriod covering = last == index ? stored.get(index) : RollupTierPeriod.merge(stored.subList(index, last + 1));
+                result.add(covering.toStatistics());
+                index = last + 1;
+            }
+            return result;
+        }
+
+        /**
+         * Discard the periods that end after a time
+         * @param from
+         */
+        synchronized void invalidate(long from) {
+            long to = Long.MIN_VALUE;
+            for(List<RollupTierPeriod> stored : periods.values()) {
+                int index = indexOf(stored, from);
+                //The period containing the time
+                if(index > 0 && stored.get(index - 1).end > from)
+                    index--;
+                stored.subList(index, stored.size()).clear();
+                if(!stored.isEmpty())
+                    to = Math.max(to, stored.get(stored.size() - 1).end);
+            }
+            aggregatedTo = to;
+            generation++;
+        }
+
+        synchronized int size() {
+            int size = 0;
+            for(List<RollupTierPeriod> stored : periods.values())
+                size += stored.size();
+            return size;
+        }
+
+        synchronized void addStatus(Tier tier, RollupTierStatusModel model, long now) {
+            List<RollupTierPeriod> stored = periods.get(tier);
+            model.setPeriodCount(model.getPeriodCount() + stored.size());
+            if(!stored.isEmpty()) {
+                long to = stored.get(stored.size() - 1).end;
+                if(model.getAggregatedTo() == null || to < model.getAggregatedTo()) {
+                    model.setAggregatedTo(to);
+                    model.setLag(now - to);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param periods - consecutive periods in time order
+     * @param index - index of the period starting at the time
+     * @param start
+     * @param end
+     * @return index of the period ending at the end or -1 if the periods do not cover the time range exactly
+     */
+    private static int lastCovering(List<RollupTierPeriod> periods, int index, long start, long end) {
+        int last = index;
+        while(last < periods.size() && periods.get(last).end < end)
+            last++;
+        if(last >= periods.size() || periods.get(index).start != start || periods.get(last).end != end)
+            return -1;
+        return last;
+    }
+
+    /**
+     * @param periods - in time order
+     * @param start
+     * @return index of the first period starting at or after the time
+     */
+    private static int indexOf(List<RollupTierPeriod> periods, long start) {
+        int low = 0;
+        int high = periods.size();
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(periods.get(mid).start < start)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue.quantize;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueChangeTracker;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueChangeTracker.PointValueChangeListener;
+import com.infiniteautomation.mango.rest.latest.model.time.TimePeriodType;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.view.stats.StatisticsGenerator;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Store of the statistics of closed rollup periods keyed by series, period type and period start.  The store is
+ * filled as rollup queries run so that later queries over the same periods only need to read the raw values
+ * of periods that are still open.
+ *
+ * A period is closed once it ended more than rest.pointValues.rollupCache.settlePeriod ms (default 300000) ago.
+ * Changes reported by the {@link PointValueChangeTracker}, including values the stored points save late, discard
+ * the periods that end after the change.  Values saved without being reported are reflected once the periods of
+ * the series expire, rest.pointValues.rollupCache.ttl ms (default 3600000) after the first of them was stored.
+ * Disabled unless rest.pointValues.rollupCache.maxPeriods is set, when more periods than this are stored the least
+ * recently used series are evicted.
+ */
+@Component
+public class RollupStatisticsCache implements PointValueChangeListener {
+
+    private final long maxPeriods;
+    private final long settlePeriod;
+    private final long ttl;
+    private final PointValueChangeTracker changeTracker;
+
+    private final LinkedHashMap<Key, Periods> series = new LinkedHashMap<>(16, 0.75f, true);
+    //End of the last period stored for each seriesId, read without locking by the change listener
+    private final Map<Integer, Long> storedTo = new ConcurrentHashMap<>();
+    private long periods;
+
+    @Autowired
+    public RollupStatisticsCache(Environment env, PointValueChangeTracker changeTracker) {
+        this(env.getProperty("rest.pointValues.rollupCache.maxPeriods", Long.class, 0L),
+                env.getProperty("rest.pointValues.rollupCache.settlePeriod", Long.class, 300000L),
+                env.getProperty("rest.pointValues.rollupCache.ttl", Long.class, 3600000L),
+                changeTracker);
+    }
+
+    public RollupStatisticsCache(long maxPeriods, long settlePeriod) {
+        this(maxPeriods, settlePeriod, 0, null);
+    }
+
+    /**
+     * @param maxPeriods
+     * @param settlePeriod
+     * @param ttl - 0 to keep periods until they are evicted
+     * @param changeTracker - may be null if changes are not tracked
+     */
+    public RollupStatisticsCache(long maxPeriods, long settlePeriod, long ttl, PointValueChangeTracker changeTracker) {
+        this.maxPeriods = maxPeriods;
+        this.settlePeriod = settlePeriod;
+        this.ttl = ttl;
+        this.changeTracker = changeTracker;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (isEnabled() && changeTracker != null) {
+            changeTracker.addListener(this);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (changeTracker != null) {
+            changeTracker.removeListener(this);
+        }
+    }
+
+    public boolean isEnabled() {
+        return maxPeriods > 0;
+    }
+
+    /**
+     * @param now
+     * @return periods that end at or before this time are closed and can be stored
+     */
+    public long getClosedBefore(long now) {
+        return now - settlePeriod;
+    }
+
+    /**
+     * Get the stored statistics for consecutive periods
+     * @param key
+     * @param periodStarts - start of each period in time order
+     * @return statistics of the periods from the first one up to the first period that is not stored
+     */
+    public List<StatisticsGenerator> getPeriods(Key key, List<Long> periodStarts) {
+        long now = currentTimeMillis();
+        List<StatisticsGenerator> result = new ArrayList<>();
+        DataPointVO expired;
+        synchronized (this) {
+            Periods stored = series.get(key);
+            if (stored == null) {
+                return Collections.emptyList();
+            }
+            if (isExpired(stored, now)) {
+                expired = remove(key);
+            } else {
+                expired = null;
+                for (Long start : periodStarts) {
+                    StatisticsGenerator generator = stored.map.get(start);
+                    if (generator == null) {
+                        break;
+                    }
+                    result.add(generator);
+                }
+            }
+        }
+        untrack(expired);
+        return result;
+    }
+
+    /**
+     * Store the statistics of a closed period
+     * @param key
+     * @param vo - point of the series, values it saves late are tracked
+     * @param generator
+     */
+    public void put(Key key, DataPointVO vo, StatisticsGenerator generator) {
+        long now = currentTimeMillis();
+        List<DataPointVO> removed = new ArrayList<>();
+        boolean added = false;
+        synchronized (this) {
+            Periods stored = series.get(key);
+            if (stored != null && isExpired(stored, now)) {
+                removed.add(remove(key));
+                stored = null;
+            }
+            if (stored == null) {
+                stored = new Periods(vo, now);
+                series.put(key, stored);
+                added = true;
+            }
+            if (stored.map.put(generator.getPeriodStartTime(), generator) == null) {
+                periods++;
+            }
+            storedTo.merge(key.seriesId, generator.getPeriodEndTime(), Math::max);
+
+            //Evict least recently used series, never the one we just added to
+            Iterator<Map.Entry<Key, Periods>> it = series.entrySet().iterator();
+            while (periods > maxPeriods && it.hasNext()) {
+                Map.Entry<Key, Periods> next = it.next();
+                if (next.getKey().equals(key)) {
+                    continue;
+                }
+                periods -= next.getValue().map.size();
+                removed.add(next.getValue().vo);
+                it.remove();
+                updateStoredTo(next.getKey().seriesId);
+            }
+        }
+        if (added && changeTracker != null) {
+            changeTracker.track(vo);
+        }
+        removed.forEach(this::untrack);
+    }
+
+    @Override
+    public void pointValuesChanged(int seriesId, long from) {
+        //Values saved after the stored periods are the common case
+        Long to = storedTo.get(seriesId);
+        if (to != null && from < to) {
+            invalidate(seriesId, from);
+        }
+    }
+
+    /**
+     * Remove all periods of a series
+     * @param seriesId
+     */
+    public void invalidate(int seriesId) {
+        List<DataPointVO> removed = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<Key, Periods>> it = series.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Key, Periods> next = it.next();
+                if (next.getKey().seriesId == seriesId) {
+                    periods -= next.getValue().map.size();
+                    removed.add(next.getValue().vo);
+                    it.remove();
+                }
+            }
+            storedTo.remove(seriesId);
+        }
+        removed.forEach(this::untrack);
+    }
+
+    /**
+     * Remove the periods of a series that end after a time, the series stay tracked
+     * @param seriesId
+     * @param from
+     */
+    public synchronized void invalidate(int seriesId, long from) {
+        for (Map.Entry<Key, Periods> entry : series.entrySet()) {
+            if (entry.getKey().seriesId == seriesId) {
+                NavigableMap<Long, StatisticsGenerator> map = entry.getValue().map;
+                //The period containing the time starts at or before it
+                Map.Entry<Long, StatisticsGenerator> containing = map.floorEntry(from);
+                long removeFrom = containing != null && containing.getValue().getPeriodEndTime() > from ? containing.getKey() : from;
+                NavigableMap<Long, StatisticsGenerator> after = map.tailMap(removeFrom, true);
+                periods -= after.size();
+                after.clear();
+            }
+        }
+        updateStoredTo(seriesId);
+    }
+
+    public void clear() {
+        List<DataPointVO> removed = new ArrayList<>();
+        synchronized (this) {
+            for (Periods stored : series.values()) {
+                removed.add(stored.vo);
+            }
+            series.clear();
+            storedTo.clear();
+            periods = 0;
+        }
+        removed.forEach(this::untrack);
+    }
+
+    /**
+     * @return number of periods stored
+     */
+    public synchronized long getPeriodCount() {
+        return periods;
+    }
+
+    protected long currentTimeMillis() {
+        return Common.timer.currentTimeMillis();
+    }
+
+    private boolean isExpired(Periods stored, long now) {
+        return ttl > 0 && now - stored.created >= ttl;
+    }
+
+    /**
+     * @return the point of the removed series
+     */
+    private DataPointVO remove(Key key) {
+        Periods removed = series.remove(key);
+        periods -= removed.map.size();
+        updateStoredTo(key.seriesId);
+        return removed.vo;
+    }
+
+    private void updateStoredTo(int seriesId) {
+        long to = Long.MIN_VALUE;
+        for (Map.Entry<Key, Periods> entry : series.entrySet()) {
+            if (entry.getKey().seriesId == seriesId && !entry.getValue().map.isEmpty()) {
+                to = Math.max(to, entry.getValue().map.lastEntry().getValue().getPeriodEndTime());
+            }
+        }
+        if (to == Long.MIN_VALUE) {
+            storedTo.remove(seriesId);
+        } else {
+            storedTo.put(seriesId, to);
+        }
+    }
+
+    private void untrack(DataPointVO vo) {
+        if (vo != null && changeTracker != null) {
+            changeTracker.untrack(vo.getId());
+        }
+    }
+
+    /**
+     * Stored periods of one key
+     */
+    private static class Periods {
+        private final NavigableMap<Long, StatisticsGenerator> map = new TreeMap<>();
+        private final DataPointVO vo;
+        private final long created;
+
+        Periods(DataPointVO vo, long created) {
+            this.vo = vo;
+            this.created = created;
+        }
+    }
+
+    /**
+     * Periods of a series that are computed the same way
+     */
+    public static class Key {
+        private final int seriesId;
+        private final String statistics;
+        private final TimePeriodType periodType;
+        private final int periods;
+        private final ZoneId zoneId;
+
+        /**
+         * @param seriesId
+         * @param statistics - type of statistics computed for the series
+         * @param periodType
+         * @param periods
+         * @param zoneId - periods of days and longer depend on the zone
+         */
+        public Key(int seriesId, String statistics, TimePeriodType periodType, int periods, ZoneId zoneId) {
+            this.seriesId = seriesId;
+            this.statistics = statistics;
+            this.periodType = periodType;
+            this.periods = periods;
+            this.zoneId = zoneId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(seriesId, statistics, periodType, periods, zoneId);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return seriesId == other.seriesId && periods == other.periods && periodType == other.periodType
+                    && Objects.equals(statistics, other.statistics) && Objects.equals(zoneId, other.zoneId);
+        }
+    }
+}
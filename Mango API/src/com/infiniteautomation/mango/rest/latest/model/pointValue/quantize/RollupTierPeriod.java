@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue.quantize;
+
+import java.util.List;
+
+import com.infiniteautomation.mango.statistics.AnalogStatistics;
+
+/**
+ * Statistics of one period of a rollup tier kept in primitive fields, a fraction of the size of the
+ * AnalogStatistics it is made from.  Consecutive periods are merged into the statistics of the period they cover.
+ *
+ * Immutable
+ */
+final class RollupTierPeriod {
+
+    //Bits of the statistics that have a value
+    static final int START = 1;
+    static final int FIRST = 1 << 1;
+    static final int LAST = 1 << 2;
+    static final int MINIMUM = 1 << 3;
+    static final int MAXIMUM = 1 << 4;
+    static final int AVERAGE = 1 << 5;
+    static final int INTEGRAL = 1 << 6;
+
+    final long start;
+    final long end;
+    final int present;
+    final double startValue;
+    final double firstValue;
+    final long firstTime;
+    final double lastValue;
+    final long lastTime;
+    final double minimumValue;
+    final long minimumTime;
+    final double maximumValue;
+    final long maximumTime;
+    final double average;
+    //Time the period had a value for, weights the average when merging
+    final long valueDuration;
+    final double integral;
+    final double sum;
+    final double delta;
+    final int count;
+
+    RollupTierPeriod(long start, long end, int present, double startValue, double firstValue, long firstTime,
+            double lastValue, long lastTime, double minimumValue, long minimumTime, double maximumValue, long maximumTime,
+            double average, long valueDuration, double integral, double sum, double delta, int count) {
+        this.start = start;
+        this.end = end;
+        this.present = present;
+        this.startValue = startValue;
+        this.firstValue = firstValue;
+        this.firstTime = firstTime;
+        this.lastValue = lastValue;
+        this.lastTime = lastTime;
+        this.minimumValue = minimumValue;
+        this.minimumTime = minimumTime;
+        this.maximumValue = maximumValue;
+        this.maximumTime = maximumTime;
+        this.average = average;
+        this.valueDuration = valueDuration;
+        this.integral = integral;
+        this.sum = sum;
+        this.delta = delta;
+        this.count = count;
+    }
+
+    boolean has(int statistic) {
+        return (present & statistic) != 0;
+    }
+
+    /**
+     * @param stats - statistics of a closed period
+     * @return
+     */
+    static RollupTierPeriod of(AnalogStatistics stats) {
+        int present = 0;
+        if(stats.getStartValue() != null)
+            present |= START;
+        if(stats.getFirstValue() != null)
+            present |= FIRST;
+        if(stats.getLastValue() != null)
+            present |= LAST;
+        if(stats.getMinimumValue() != null)
+            present |= MINIMUM;
+        if(stats.getMaximumValue() != null)
+            present |= MAXIMUM;
+        if(stats.getAverage() != null)
+            present |= AVERAGE;
+        if(stats.getIntegral() != null)
+            present |= INTEGRAL;
+
+        long start = stats.getPeriodStartTime();
+        long end = stats.getPeriodEndTime();
+        long valueDuration = 0;
+        if((present & AVERAGE) != 0) {
+            if((present & START) != 0)
+                valueDuration = end - start;
+            else if((present & FIRST) != 0)
+                valueDuration = end - stats.getFirstTime();
+        }
+
+        return new RollupTierPeriod(start, end, present,
+                (present & START) != 0 ? stats.getStartValue() : 0,
+                (present & FIRST) != 0 ? stats.getFirstValue() : 0,
+                (present & FIRST) != 0 ? stats.getFirstTime() : 0,
+                (present & LAST) != 0 ? stats.getLastValue() : 0,
+                (present & LAST) != 0 ? stats.getLastTime() : 0,
+                (present & MINIMUM) != 0 ? stats.getMinimumValue() : 0,
+                (present & MINIMUM) != 0 ? stats.getMinimumTime() : 0,
+                (present & MAXIMUM) != 0 ? stats.getMaximumValue() : 0,
+                (present & MAXIMUM) != 0 ? stats.getMaximumTime() : 0,
+                (present & AVERAGE) != 0 ? stats.getAverage() : 0,
+                valueDuration,
+                (present & INTEGRAL) != 0 ? stats.getIntegral() : 0,
+                stats.getSum(), stats.getDelta(), stats.getCount());
+    }
+
+    /**
+     * Merge consecutive periods, the start and first values come from the earliest periods that have them, the last
+     * value from the latest, the extremes are the earliest extreme values.  The average is weighted by the time
+     * each period had a value for, sums, counts, deltas and integrals are added.
+     *
+     * @param periods - consecutive periods in time order, at least one
+     * @return statistics from the start of the first period to the end of the last
+     */
+    static RollupTierPeriod merge(List<RollupTierPeriod> periods) {
+        RollupTierPeriod first = periods.get(0);
+        int present = first.present & START;
+        double firstValue = 0, lastValue = 0, minimumValue = 0, maximumValue = 0, integral = 0, sum = 0, delta = 0;
+        long firstTime = 0, lastTime = 0, minimumTime = 0, maximumTime = 0, valueDuration = 0;
+        double weightedAverage = 0;
+        int count = 0;
+
+        for(RollupTierPeriod period : periods) {
+            if(period.has(FIRST) && (present & FIRST) == 0) {
+                firstValue = period.firstValue;
+                firstTime = period.firstTime;
+                present |= FIRST;
+            }
+            if(period.has(LAST)) {
+                lastValue = period.lastValue;
+                lastTime = period.lastTime;
+                present |= LAST;
+            }
+            if(period.has(MINIMUM) && ((present & MINIMUM) == 0 || period.minimumValue < minimumValue)) {
+                minimumValue = period.minimumValue;
+                minimumTime = period.minimumTime;
+                present |= MINIMUM;
+            }
+            if(period.has(MAXIMUM) && ((present & MAXIMUM) == 0 || period.maximumValue > maximumValue)) {
+                maximumValue = period.maximumValue;
+                maximumTime = period.maximumTime;
+                present |= MAXIMUM;
+            }
+            if(period.has(AVERAGE)) {
+                weightedAverage += period.average * period.valueDuration;
+                valueDuration += period.valueDuration;
+                present |= AVERAGE;
+            }
+            if(period.has(INTEGRAL)) {
+                integral += period.integral;
+                present |= INTEGRAL;
+            }
+            sum += period.sum;
+            delta += period.delta;
+            count += period.count;
+        }
+
+        double average = 0;
+        if((present & AVERAGE) != 0) {
+            if(valueDuration > 0)
+                average = weightedAverage / valueDuration;
+            else
+                present &= ~AVERAGE;
+        }
+
+        RollupTierPeriod last = periods.get(periods.size() - 1);
+        return new RollupTierPeriod(first.start, last.end, present, first.startValue, firstValue, firstTime,
+                lastValue, lastTime, minimumValue, minimumTime, maximumValue, maximumTime,
+                average, valueDuration, integral, sum, delta, count);
+    }
+
+    /**
+     * @return a view of the period for writing
+     */
+    AnalogStatistics toStatistics() {
+        return new RollupTierStatistics(this);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue.quantize;
+
+import com.infiniteautomation.mango.statistics.AnalogStatistics;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+
+/**
+ * AnalogStatistics view of a stored rollup tier period
+ */
+class RollupTierStatistics extends AnalogStatistics {
+
+    private final RollupTierPeriod period;
+
+    RollupTierStatistics(RollupTierPeriod period) {
+        super(period.start, period.end, (PointValueTime) null);
+        this.period = period;
+    }
+
+    @Override
+    public Double getStartValue() {
+        return period.has(RollupTierPeriod.START) ? period.startValue : null;
+    }
+
+    @Override
+    public Double getFirstValue() {
+        return period.has(RollupTierPeriod.FIRST) ? period.firstValue : null;
+    }
+
+    @Override
+    public Long getFirstTime() {
+        return period.has(RollupTierPeriod.FIRST) ? period.firstTime : null;
+    }
+
+    @Override
+    public Double getLastValue() {
+        return period.has(RollupTierPeriod.LAST) ? period.lastValue : null;
+    }
+
+    @Override
+    public Long getLastTime() {
+        return period.has(RollupTierPeriod.LAST) ? period.lastTime : null;
+    }
+
+    @Override
+    public Double getMinimumValue() {
+        return period.has(RollupTierPeriod.MINIMUM) ? period.minimumValue : null;
+    }
+
+    @Override
+    public Long getMinimumTime() {
+        return period.has(RollupTierPeriod.MINIMUM) ? period.minimumTime : null;
+    }
+
+    @Override
+    public Double getMaximumValue() {
+        return period.has(RollupTierPeriod.MAXIMUM) ? period.maximumValue : null;
+    }
+
+    @Override
+    public Long getMaximumTime() {
+        return period.has(RollupTierPeriod.MAXIMUM) ? period.maximumTime : null;
+    }
+
+    @Override
+    public Double getAverage() {
+        return period.has(RollupTierPeriod.AVERAGE) ? period.average : null;
+    }
+
+    @Override
+    public Double getIntegral() {
+        return period.has(RollupTierPeriod.INTEGRAL) ? period.integral : null;
+    }
+
+    @Override
+    public double getSum() {
+        return period.sum;
+    }
+
+    @Override
+    public double getDelta() {
+        return period.delta;
+    }
+
+    @Override
+    public int getCount() {
+        return period.count;
+    }
+}
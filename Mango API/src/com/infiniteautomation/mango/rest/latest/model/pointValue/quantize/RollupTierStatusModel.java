@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue.quantize;
+
+import com.infiniteautomation.mango.rest.latest.model.pointValue.quantize.PointValueRollupTiers.Tier;
+
+/**
+ * Status of a pre-aggregated rollup tier for one or all points
+ */
+public class RollupTierStatusModel {
+
+    private Tier tier;
+    private int retentionPeriods;
+    private long periodCount;
+    private Long aggregatedTo;
+    private Long lag;
+
+    public RollupTierStatusModel() { }
+
+    public RollupTierStatusModel(Tier tier, int retentionPeriods) {
+        this.tier = tier;
+        this.retentionPeriods = retentionPeriods;
+    }
+
+    public Tier getTier() {
+        return tier;
+    }
+
+    public void setTier(Tier tier) {
+        this.tier = tier;
+    }
+
+    /**
+     * @return number of periods kept per point
+     */
+    public int getRetentionPeriods() {
+        return retentionPeriods;
+    }
+
+    public void setRetentionPeriods(int retentionPeriods) {
+        this.retentionPeriods = retentionPeriods;
+    }
+
+    /**
+     * @return number of periods currently stored
+     */
+    public long getPeriodCount() {
+        return periodCount;
+    }
+
+    public void setPeriodCount(long periodCount) {
+        this.periodCount = periodCount;
+    }
+
+    /**
+     * @return end of the last period aggregated, the earliest of all points for the overall status.
+     * Null if not yet aggregated.
+     */
+    public Long getAggregatedTo() {
+        return aggregatedTo;
+    }
+
+    public void setAggregatedTo(Long aggregatedTo) {
+        this.aggregatedTo = aggregatedTo;
+    }
+
+    /**
+     * @return ms between now and aggregatedTo
+     */
+    public Long getLag() {
+        return lag;
+    }
+
+    public void setLag(Long lag) {
+        this.lag = lag;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.goebl.simplify.Point;
+
+/**
+ * Streaming Largest-Triangle-Three-Buckets downsampler for one series of points in time order.
+ *
+ * The time range is split into target - 2 equal buckets, the first and last points are always kept and one point
+ * is kept from each bucket that has points, so approximately target points are kept.  A point is selected from a
+ * bucket as soon as the next bucket is complete, only the points of those two buckets are held in memory.
+ *
+ * Not thread safe.
+ *
+ * @param <P>
+ */
+public class LttbDownsampler<P extends Point> {
+
+    private final long from;
+    private final double bucketWidth;
+
+    //Last point kept
+    private P selected;
+    //Points of the bucket to select from next
+    private List<P> pending = new ArrayList<>();
+    private long pendingBucket;
+    //Points of the bucket after the pending bucket
+    private List<P> current = new ArrayList<>();
+    private long currentBucket;
+    private double currentSumX;
+    private double currentSumY;
+
+    /**
+     * @param from - start of the time range
+     * @param to - end of the time range
+     * @param target - approximate number of points to keep
+     */
+    public LttbDownsampler(long from, long to, int target) {
+        this.from = from;
+        int buckets = Math.max(1, target - 2);
+        this.bucketWidth = Math.max(1d, (double)(to - from) / buckets);
+    }
+
+    /**
+     * Add the next point in time order
+     * @param point
+     * @param kept - points that are kept as a result of this point are added to this list
+     */
+    public void add(P point, List<P> kept) {
+        if(selected == null) {
+            //Always keep the first point
+            selected = point;
+            kept.add(point);
+            return;
+        }
+
+        long bucket = bucket(point);
+        if(pending.isEmpty() || bucket == pendingBucket) {
+            pendingBucket = bucket;
+            pending.add(point);
+        }else if(current.isEmpty() || bucket == currentBucket) {
+            currentBucket = bucket;
+            addCurrent(point);
+        }else {
+            //The current bucket is complete, we can select from the pending bucket
+            select(pending, currentSumX / current.size(), currentSumY / current.size(), kept);
+            List<P> next = pending;
+            next.clear();
+            pending = current;
+            pendingBucket = currentBucket;
+            current = next;
+            currentBucket = bucket;
+            currentSumX = 0;
+            currentSumY = 0;
+            addCurrent(point);
+        }
+    }
+
+    /**
+     * Select from the remaining buckets and keep the last point, the downsampler can then be reused
+     * @param kept
+     */
+    public void finish(List<P> kept) {
+        if(!pending.isEmpty()) {
+            if(current.isEmpty()) {
+                P last = pending.remove(pending.size() - 1);
+                if(!pending.isEmpty())
+                    select(pending, last.getX(), last.getY(), kept);
+                kept.add(last);
+            }else {
+                select(pending, currentSumX / current.size(), currentSumY / current.size(), kept);
+                P last = current.remove(current.size() - 1);
+                if(!current.isEmpty())
+                    select(current, last.getX(), last.getY(), kept);
+                kept.add(last);
+            }
+        }
+        selected = null;
+        pending.clear();
+        current.clear();
+        currentSumX = 0;
+        currentSumY = 0;
+    }
+
+    /**
+     * @return the earliest point that could still be kept, or null if any point kept will be one not yet added
+     */
+    public P getEarliestPending() {
+        return pending.isEmpty() ? null : pending.get(0);
+    }
+
+    private long bucket(P point) {
+        return (long)((point.getX() - from) / bucketWidth);
+    }
+
+    private void addCurrent(P point) {
+        current.add(point);
+        currentSumX += point.getX();
+        currentSumY += point.getY();
+    }
+
+    /**
+     * Keep the point that forms the largest triangle with the last kept point and the next point
+     * @param candidates
+     * @param nextX
+     * @param nextY
+     * @param kept
+     */
+    private void select(List<P> candidates, double nextX, double nextY, List<P> kept) {
+        double ax = selected.getX();
+        double ay = selected.getY();
+        P best = candidates.get(0);
+        double max = -1;
+        for(P p : candidates) {
+            double area = Math.abs((ax - nextX) * (p.getY() - ay) - (ax - p.getX()) * (nextY - ay));
+            if(area > max) {
+                max = area;
+                best = p;
+            }
+        }
+        selected = best;
+        kept.add(best);
+    }
+}
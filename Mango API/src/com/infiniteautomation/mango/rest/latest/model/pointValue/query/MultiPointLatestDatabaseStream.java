@@ -19,6 +19,8 @@ import com.infiniteautomation.mango.rest.latest.model.pointValue.DataPointVOPoin
 import com.infiniteautomation.mango.rest.latest.model.pointValue.DataPointValueTime;
 import com.infiniteautomation.mango.rest.latest.model.pointValue.LimitCounter;
 import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueTimeWriter;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.query.PointValueQueryCache.Key;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.query.PointValueQueryCache.Row;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.db.dao.PointValueDao;
 import com.serotonin.m2m2.rt.dataImage.AnnotatedIdPointValueTime;
@@ -43,10 +45,20 @@ public class MultiPointLatestDatabaseStream <T, INFO extends LatestQueryInfo> ex
     protected final Map<Integer, List<IdPointValueTime>> cache;
     protected final Map<Integer, LimitCounter> limiters;  //For use with cache so we don't return too many values, assuming that caches sizes are small this should have minimal effects
     protected final List<DataPointValueTime> bookends;
+    //Optional cache of database query windows
+    protected final PointValueQueryCache queryCache;
+    //Values returned from the database per series while we are filling the query cache
+    protected Map<Integer, List<Row>> recording;
 
     public MultiPointLatestDatabaseStream(INFO info,
             Map<Integer, DataPointVO> voMap, PointValueDao dao) {
+        this(info, voMap, dao, null);
+    }
+
+    public MultiPointLatestDatabaseStream(INFO info,
+            Map<Integer, DataPointVO> voMap, PointValueDao dao, PointValueQueryCache queryCache) {
         super(info, voMap, dao);
+        this.queryCache = queryCache;
 
         this.currentValues = new ArrayList<>(voMap.size());
         this.currentDataPointSeriesId = Common.NEW_ID;
@@ -68,11 +80,99 @@ public class MultiPointLatestDatabaseStream <T, INFO extends LatestQueryInfo> ex
             processCacheOnly();
             return;
         }
-        this.dao.getLatestPointValues(new ArrayList<DataPointVO>(voMap.values()), info.getFromMillis(), !info.isSingleArray(), info.getLimit(), this);
+
+        //The query cache can only be used when each series is written separately
+        if(queryCache != null && queryCache.isEnabled() && (!info.isSingleArray() || voMap.size() == 1))
+            streamDataThroughQueryCache();
+        else
+            queryDatabase(new ArrayList<DataPointVO>(voMap.values()));
+    }
+
+    /**
+     * Query the database for some of our points
+     * @param vos
+     * @throws QueryCancelledException
+     */
+    protected void queryDatabase(List<DataPointVO> vos) throws QueryCancelledException {
+        this.dao.getLatestPointValues(vos, info.getFromMillis(), !info.isSingleArray(), info.getLimit(), this);
+    }
+
+    /**
+     * Key for the query window of a series, queries for the latest values (before now) share a window
+     * @param seriesId
+     * @return
+     */
+    protected Key createQueryCacheKey(int seriesId) {
+        long from = info.getFromMillis() >= Common.timer.currentTimeMillis() ? Long.MAX_VALUE : info.getFromMillis();
+        return new Key("latest", seriesId, from, from, info.getLimit(), false);
+    }
+
+    /**
+     * Replay the cached windows and query the database for the rest, in the order of the voMap
+     * @throws QueryCancelledException
+     */
+    protected void streamDataThroughQueryCache() throws QueryCancelledException {
+        List<DataPointVO> misses = new ArrayList<>();
+        int index = 0;
+        for(DataPointVO vo : voMap.values()) {
+            List<Row> rows = queryCache.get(createQueryCacheKey(vo.getSeriesId()));
+            if(rows == null) {
+                misses.add(vo);
+            }else {
+                queryDatabaseAndCache(misses);
+                misses.clear();
+                for(Row row : rows) {
+                    switch(row.getType()) {
+                        case Row.FIRST:
+                            processRow(row.getValue(), index++, row.isBookend(), false, false);
+                            break;
+                        case Row.LAST:
+                            processRow(row.getValue(), index++, false, row.isBookend(), false);
+                            break;
+                        default:
+                            processRow(row.getValue(), index++, false, false, false);
+                            break;
+                    }
+                }
+            }
+        }
+        queryDatabaseAndCache(misses);
+    }
+
+    private void queryDatabaseAndCache(List<DataPointVO> vos) throws QueryCancelledException {
+        if(vos.isEmpty())
+            return;
+        Map<Integer, List<Row>> recorded = new HashMap<>();
+        for(DataPointVO vo : vos)
+            recorded.put(vo.getSeriesId(), new ArrayList<>());
+        this.recording = recorded;
+        try {
+            queryDatabase(vos);
+        }finally {
+            this.recording = null;
+        }
+        //Only cache complete windows
+        for(DataPointVO vo : vos)
+            queryCache.put(createQueryCacheKey(vo.getSeriesId()), vo, recorded.get(vo.getSeriesId()));
+    }
+
+    /**
+     * Record a value returned from the database if we are filling the query cache
+     * @param value
+     * @param type
+     * @param bookend
+     */
+    protected void record(IdPointValueTime value, int type, boolean bookend) {
+        if(recording != null) {
+            List<Row> rows = recording.get(value.getSeriesId());
+            if(rows != null)
+                rows.add(new Row(value, type, bookend));
+        }
     }
 
     @Override
     public void row(IdPointValueTime value, int index) throws QueryCancelledException{
+        record(value, Row.VALUE, false);
         processRow(value, index, false, false, false);
     }
 
@@ -17,10 +17,13 @@ import com.goebl.simplify.SimplifyUtility;
 import com.infiniteautomation.mango.db.query.QueryCancelledException;
 import com.infiniteautomation.mango.rest.latest.model.pointValue.DataPointVOPointValueTimeBookend;
 import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueTimeWriter;
+import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.db.dao.PointValueDao;
 import com.serotonin.m2m2.vo.DataPointVO;
 
 /**
+ * Simplify the values of each series.  When only a target is supplied the values are downsampled as they
+ * are streamed (see {@link StreamingDownsampler}) instead of being collected and simplified at the end.
  *
  * @author Terry Packer
  */
@@ -31,6 +34,10 @@ public class MultiPointSimplifyTimeRangeDatabaseStream<T, INFO extends ZonedDate
     //Map key is seriesId
     protected final Map<Integer, List<DataPointVOPointValueTimeBookend>> valuesMap;
 
+    //Downsample as we stream instead of collecting all values
+    protected final StreamingDownsampler downsampler;
+    protected int streamingSeriesId = Common.NEW_ID;
+
     /**
      * @param info
      * @param voMap
@@ -41,10 +48,33 @@ public class MultiPointSimplifyTimeRangeDatabaseStream<T, INFO extends ZonedDate
         super(info, voMap, dao);
         this.valuesMap = new LinkedHashMap<>();
         this.bookendMap = new HashMap<>();
+        //LTTB compares every value of a bucket like high quality simplify and passes unprocessable values through
+        // like pre/post processing, other settings use Douglas-Peucker
+        if(info.simplifyTarget != null && info.simplifyTolerance == null && info.simplifyHighQuality && info.simplifyPrePostProcess)
+            this.downsampler = new StreamingDownsampler(info.getFromMillis(), info.getToMillis(), info.simplifyTarget, super::writeValue);
+        else
+            this.downsampler = null;
     }
 
     @Override
     protected void writeValue(DataPointVOPointValueTimeBookend value) throws IOException {
+        if(downsampler != null) {
+            if(info.isSingleArray() && voMap.size() > 1) {
+                downsampler.add(value);
+            }else {
+                //A series at a time
+                if(streamingSeriesId != value.getSeriesId()) {
+                    if(streamingSeriesId != Common.NEW_ID)
+                        downsampler.finishSeries(streamingSeriesId);
+                    streamingSeriesId = value.getSeriesId();
+                }
+                downsampler.add(value);
+                if(value.isLastBookend())
+                    downsampler.finishSeries(streamingSeriesId);
+            }
+            return;
+        }
+
         if(value.isBookend()) {
             BookendPair pair = bookendMap.get(value.getSeriesId());
             if(pair == null) {
@@ -65,6 +95,12 @@ public class MultiPointSimplifyTimeRangeDatabaseStream<T, INFO extends ZonedDate
 
     @Override
     public void finish(PointValueTimeWriter writer) throws QueryCancelledException, IOException {
+        if(downsampler != null) {
+            downsampler.finish();
+            super.finish(writer);
+            return;
+        }
+
         //Write out the values after simplifying
         Iterator<Integer> it = voMap.keySet().iterator();
         if(info.isSingleArray() && voMap.size() > 1) {
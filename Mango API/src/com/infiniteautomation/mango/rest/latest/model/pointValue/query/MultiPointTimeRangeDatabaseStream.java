@@ -3,16 +3,21 @@
  */
 package com.infiniteautomation.mango.rest.latest.model.pointValue.query;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
+import com.infiniteautomation.mango.db.query.BookendQueryCallback;
 import com.infiniteautomation.mango.db.query.QueryCancelledException;
-import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueTimeWriter;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.query.PointValueQueryCache.Key;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.query.PointValueQueryCache.Row;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.query.PointValueQueryExecutor.ParallelQuery;
 import com.serotonin.m2m2.db.dao.PointValueDao;
 import com.serotonin.m2m2.rt.dataImage.AnnotatedIdPointValueTime;
 import com.serotonin.m2m2.rt.dataImage.IAnnotated;
@@ -27,37 +32,195 @@ import com.serotonin.m2m2.vo.DataPointVO;
  */
 public class MultiPointTimeRangeDatabaseStream<T, INFO extends ZonedDateTimeRangeQueryInfo> extends MultiPointLatestDatabaseStream<T, INFO>{
 
+    //Optional pool to query series concurrently
+    protected final PointValueQueryExecutor queryExecutor;
+
     public MultiPointTimeRangeDatabaseStream(INFO info,
             Map<Integer, DataPointVO> voMap, PointValueDao dao) {
-        super(info, voMap, dao);
+        this(info, voMap, dao, null, null);
     }
 
-    @Override
-    public void streamData(PointValueTimeWriter writer) throws QueryCancelledException, IOException {
+    public MultiPointTimeRangeDatabaseStream(INFO info,
+            Map<Integer, DataPointVO> voMap, PointValueDao dao, PointValueQueryCache queryCache) {
+        this(info, voMap, dao, queryCache, null);
+    }
 
-        //Can we use just the cache?
-        if(info.isUseCache() == PointValueTimeCacheControl.CACHE_ONLY) {
-            processCacheOnly();
-            return;
-        }
+    public MultiPointTimeRangeDatabaseStream(INFO info,
+            Map<Integer, DataPointVO> voMap, PointValueDao dao, PointValueQueryCache queryCache, PointValueQueryExecutor queryExecutor) {
+        super(info, voMap, dao, queryCache);
+        this.queryExecutor = queryExecutor;
+    }
+
+    @Override
+    protected void queryDatabase(List<DataPointVO> vos) throws QueryCancelledException {
+        //Series are independent when they are not written as a single array
+        if(queryExecutor != null && queryExecutor.isEnabled() && !info.isSingleArray() && vos.size() > 1)
+            queryDatabaseInParallel(vos);
+        else
+            queryDatabase(vos, this);
+    }
 
+    protected void queryDatabase(List<DataPointVO> vos, BookendQueryCallback<IdPointValueTime> callback) throws QueryCancelledException {
         //Do we need bookends?
         if(info.isBookend())
-            this.dao.wideBookendQuery(new ArrayList<DataPointVO>(voMap.values()), info.getFromMillis(), info.getToMillis(), !info.isSingleArray(), info.getLimit(), this);
+            this.dao.wideBookendQuery(vos, info.getFromMillis(), info.getToMillis(), !info.isSingleArray(), info.getLimit(), callback);
         else
-            this.dao.getPointValuesBetween(new ArrayList<DataPointVO>(voMap.values()), info.getFromMillis(), info.getToMillis(), !info.isSingleArray(), info.getLimit(), this);
+            this.dao.getPointValuesBetween(vos, info.getFromMillis(), info.getToMillis(), !info.isSingleArray(), info.getLimit(), callback);
+    }
+
+    /**
+     * Query the series on the query executor ahead of the writer and write them in order as they become available,
+     * the number of values buffered per series is limited so a slow writer blocks the queries until it stalls.
+     * @param vos
+     * @throws QueryCancelledException
+     */
+    protected void queryDatabaseInParallel(List<DataPointVO> vos) throws QueryCancelledException {
+        ParallelQuery parallelQuery = queryExecutor.newQuery();
+        List<SeriesQuery> queries = new ArrayList<>(vos.size());
+        try {
+            for(DataPointVO vo : vos) {
+                SeriesQuery query = new SeriesQuery(vo, parallelQuery, queryExecutor.getBufferSize());
+                queries.add(query);
+                parallelQuery.add(query);
+            }
+            int index = 0;
+            for(int i = 0; i < queries.size(); i++) {
+                parallelQuery.writing(i);
+                index = queries.get(i).write(index);
+            }
+        }finally {
+            for(SeriesQuery query : queries) {
+                query.cancelled = true;
+            }
+            parallelQuery.cancel();
+        }
+    }
+
+    @Override
+    protected Key createQueryCacheKey(int seriesId) {
+        return new Key("timeRange", seriesId, info.getFromMillis(), info.getToMillis(), info.getLimit(), info.isBookend());
     }
 
     @Override
     public void firstValue(IdPointValueTime value, int index, boolean bookend) throws QueryCancelledException {
+        record(value, Row.FIRST, bookend);
         processRow(value, index, bookend, false, false);
     }
 
     @Override
     public void lastValue(IdPointValueTime value, int index, boolean bookend) throws QueryCancelledException {
+        record(value, Row.LAST, bookend);
         processRow(value, index, false, bookend, false);
     }
 
+    /**
+     * Query for one series that buffers its values until they are written
+     */
+    private class SeriesQuery implements Runnable, BookendQueryCallback<IdPointValueTime> {
+
+        private final Row end = new Row(null, Row.VALUE, false);
+        private final DataPointVO vo;
+        private final ParallelQuery parallelQuery;
+        private final BlockingQueue<Row> values;
+        private volatile boolean cancelled;
+        //Set when the query ended without buffering the end row
+        private volatile boolean finished;
+        private volatile Throwable failure;
+
+        SeriesQuery(DataPointVO vo, ParallelQuery parallelQuery, int bufferSize) {
+            this.vo = vo;
+            this.parallelQuery = parallelQuery;
+            this.values = new LinkedBlockingQueue<>(bufferSize);
+        }
+
+        @Override
+        public void run() {
+            try {
+                queryDatabase(Collections.singletonList(vo), this);
+            }catch(QueryCancelledException e) {
+                //Cancelled by the writer or the client stalled
+                if(!cancelled)
+                    failure = e;
+            }catch(Throwable t) {
+                failure = t;
+            }finally {
+                try {
+                    //Don't wait again for a client that stalled
+                    if(failure == null)
+                        put(end);
+                    else if(!values.offer(end))
+                        finished = true;
+                }catch(QueryCancelledException e) {
+                    //Nobody is waiting
+                    finished = true;
+                }
+            }
+        }
+
+        @Override
+        public void row(IdPointValueTime value, int index) throws QueryCancelledException {
+            put(new Row(value, Row.VALUE, false));
+        }
+
+        @Override
+        public void firstValue(IdPointValueTime value, int index, boolean bookend) throws QueryCancelledException {
+            put(new Row(value, Row.FIRST, bookend));
+        }
+
+        @Override
+        public void lastValue(IdPointValueTime value, int index, boolean bookend) throws QueryCancelledException {
+            put(new Row(value, Row.LAST, bookend));
+        }
+
+        private void put(Row row) throws QueryCancelledException {
+            parallelQuery.put(values, row, () -> cancelled);
+        }
+
+        /**
+         * Write the values of this series through the stream as the query produces them
+         * @param index of the first value
+         * @return index of the next value
+         * @throws QueryCancelledException
+         */
+        int write(int index) throws QueryCancelledException {
+            try {
+                while(true) {
+                    Row row = values.poll(1, TimeUnit.SECONDS);
+                    if(row == null) {
+                        if(finished)
+                            break;
+                        //The query will never finish if the executor was shut down
+                        if(queryExecutor.isShutdown())
+                            throw new QueryCancelledException(new Exception("Point value query executor shut down"));
+                        continue;
+                    }
+                    if(row == end)
+                        break;
+                    parallelQuery.written();
+                    switch(row.getType()) {
+                        case Row.FIRST:
+                            MultiPointTimeRangeDatabaseStream.this.firstValue(row.getValue(), index++, row.isBookend());
+                            break;
+                        case Row.LAST:
+                            MultiPointTimeRangeDatabaseStream.this.lastValue(row.getValue(), index++, row.isBookend());
+                            break;
+                        default:
+                            MultiPointTimeRangeDatabaseStream.this.row(row.getValue(), index++);
+                            break;
+                    }
+                }
+            }catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new QueryCancelledException(e);
+            }
+            if(failure instanceof RuntimeException)
+                throw (RuntimeException)failure;
+            else if(failure != null)
+                throw new QueryCancelledException(failure);
+            return index;
+        }
+    }
+
     /**
      * Does this point's time fit within our query range
      * @param pvt
@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueChangeTracker;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueChangeTracker.PointValueChangeListener;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.rt.dataImage.IAnnotated;
+import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
+import com.serotonin.m2m2.rt.dataImage.types.AlphanumericValue;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Least recently used cache of the values returned from the database for a series and query window,
+ * so repeated queries (i.e. dashboards polling the same points) can be answered without a database query.
+ * The size of the cache is limited by the estimated size of the values it holds.
+ *
+ * Disabled unless rest.pointValues.queryCache.maxBytes is set, entries expire after
+ * rest.pointValues.queryCache.expiryMs (default 5000) as values may have been saved into an open window.
+ * Windows that end after a value modified, deleted or imported through the {@link PointValueChangeTracker} are removed,
+ * the points are tracked while they have cached windows so the values they save late remove windows too.
+ */
+@Component
+public class PointValueQueryCache implements PointValueChangeListener {
+
+    /**
+     * Estimated overhead of a cached value
+     */
+    private static final int VALUE_BYTES = 64;
+
+    private final long maxBytes;
+    private final long expiryMs;
+    private final PointValueChangeTracker changeTracker;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    //Keys of the cached windows of each series
+    private final Map<Integer, Set<Key>> seriesKeys = new HashMap<>();
+    private long bytes;
+
+    @Autowired
+    public PointValueQueryCache(Environment env, PointValueChangeTracker changeTracker) {
+        this(env.getProperty("rest.pointValues.queryCache.maxBytes", Long.class, 0L),
+                env.getProperty("rest.pointValues.queryCache.expiryMs", Long.class, 5000L),
+                changeTracker);
+    }
+
+    public PointValueQueryCache(long maxBytes, long expiryMs) {
+        this(maxBytes, expiryMs, null);
+    }
+
+    /**
+     * @param maxBytes
+     * @param expiryMs
+     * @param changeTracker - may be null if changes are not tracked
+     */
+    public PointValueQueryCache(long maxBytes, long expiryMs, PointValueChangeTracker changeTracker) {
+        this.maxBytes = maxBytes;
+        this.expiryMs = expiryMs;
+        this.changeTracker = changeTracker;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (isEnabled() && changeTracker != null) {
+            changeTracker.addListener(this);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (changeTracker != null) {
+            changeTracker.removeListener(this);
+        }
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Get the values for a window
+     * @param key
+     * @return values in the order they were returned from the database or null if not cached
+     */
+    public List<Row> get(Key key) {
+        Entry expired;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (currentTimeMillis() - entry.created <= expiryMs) {
+                return entry.rows;
+            }
+            expired = remove(key);
+        }
+        untrack(expired);
+        return null;
+    }
+
+    /**
+     * Cache the values for a window, windows larger than the cache are not cached
+     * @param key
+     * @param vo - point of the series, values it saves late are tracked
+     * @param rows
+     */
+    public void put(Key key, DataPointVO vo, List<Row> rows) {
+        long size = VALUE_BYTES;
+        for (Row row : rows) {
+            size += estimateSize(row.getValue());
+        }
+        List<Entry> removed = new ArrayList<>();
+        boolean added = false;
+        synchronized (this) {
+            removed.add(remove(key));
+            if (size <= maxBytes) {
+                entries.put(key, new Entry(vo, Collections.unmodifiableList(new ArrayList<>(rows)), size, currentTimeMillis()));
+                seriesKeys.computeIfAbsent(key.seriesId, k -> new HashSet<>()).add(key);
+                bytes += size;
+                added = true;
+
+                //Evict least recently used, never the window we just added as it fits
+                while (bytes > maxBytes) {
+                    removed.add(remove(entries.keySet().iterator().next()));
+                }
+            }
+        }
+        if (added && changeTracker != null) {
+            changeTracker.track(vo);
+        }
+        removed.forEach(this::untrack);
+    }
+
+    @Override
+    public void pointValuesChanged(int seriesId, long from) {
+        invalidate(seriesId, from);
+    }
+
+    /**
+     * Remove all windows for a series, its values were modified
+     * @param seriesId
+     */
+    public void invalidate(int seriesId) {
+        invalidate(seriesId, Long.MIN_VALUE);
+    }
+
+    /**
+     * Remove the windows of a series that a value at or after a time can appear in, a value before the start
+     *  of a window can be its start bookend so only windows ending before the time are kept
+     * @param seriesId
+     * @param from
+     */
+    public void invalidate(int seriesId, long from) {
+        List<Entry> removed = new ArrayList<>();
+        synchronized (this) {
+            Set<Key> keys = seriesKeys.get(seriesId);
+            if (keys == null) {
+                return;
+            }
+            for (Key key : new ArrayList<>(keys)) {
+                if (key.to >= from) {
+                    removed.add(remove(key));
+                }
+            }
+        }
+        removed.forEach(this::untrack);
+    }
+
+    public void clear() {
+        List<Entry> removed;
+        synchronized (this) {
+            removed = new ArrayList<>(entries.values());
+            entries.clear();
+            seriesKeys.clear();
+            bytes = 0;
+        }
+        removed.forEach(this::untrack);
+    }
+
+    /**
+     * @return estimated size of the cached values
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    protected long currentTimeMillis() {
+        return Common.timer.currentTimeMillis();
+    }
+
+    /**
+     * @return the removed window or null if not cached
+     */
+    private Entry remove(Key key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            bytes -= removed.size;
+            Set<Key> keys = seriesKeys.get(key.seriesId);
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                seriesKeys.remove(key.seriesId);
+            }
+        }
+        return removed;
+    }
+
+    private void untrack(Entry removed) {
+        if (removed != null && changeTracker != null) {
+            changeTracker.untrack(removed.vo.getId());
+        }
+    }
+
+    private static long estimateSize(IdPointValueTime value) {
+        long size = VALUE_BYTES;
+        if (value.getValue() instanceof AlphanumericValue) {
+            size += 2L * value.getValue().getStringValue().length();
+        }
+        if (value instanceof IAnnotated) {
+            size += VALUE_BYTES;
+        }
+        return size;
+    }
+
+    private static class Entry {
+        private final DataPointVO vo;
+        private final List<Row> rows;
+        private final long size;
+        private final long created;
+
+        Entry(DataPointVO vo, List<Row> rows, long size, long created) {
+            this.vo = vo;
+            this.rows = rows;
+            this.size = size;
+            this.created = created;
+        }
+    }
+
+    /**
+     * A value as it was returned by the database
+     */
+    public static class Row {
+        public static final int VALUE = 0;
+        public static final int FIRST = 1;
+        public static final int LAST = 2;
+
+        private final IdPointValueTime value;
+        private final int type;
+        private final boolean bookend;
+
+        public Row(IdPointValueTime value, int type, boolean bookend) {
+            this.value = value;
+            this.type = type;
+            this.bookend = bookend;
+        }
+
+        public IdPointValueTime getValue() {
+            return value;
+        }
+
+        /**
+         * @return VALUE, FIRST or LAST
+         */
+        public int getType() {
+            return type;
+        }
+
+        public boolean isBookend() {
+            return bookend;
+        }
+    }
+
+    /**
+     * A query window for one series
+     */
+    public static class Key {
+        private final String type;
+        private final int seriesId;
+        private final long from;
+        private final long to;
+        private final Integer limit;
+        private final boolean bookend;
+
+        /**
+         * @param type - type of query
+         * @param seriesId
+         * @param from
+         * @param to
+         * @param limit
+         * @param bookend
+         */
+        public Key(String type, int seriesId, long from, long to, Integer limit, boolean bookend) {
+            this.type = type;
+            this.seriesId = seriesId;
+            this.from = from;
+            this.to = to;
+            this.limit = limit;
+            this.bookend = bookend;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, seriesId, from, to, limit, bookend);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return seriesId == other.seriesId && from == other.from && to == other.to && bookend == other.bookend
+                    && Objects.equals(type, other.type) && Objects.equals(limit, other.limit);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import com.infiniteautomation.mango.db.query.QueryCancelledException;
+
+/**
+ * Bounded pool used to query and quantize the values of several series concurrently.  Tasks run in the order they
+ * were submitted, so the first series of a query is always running before any series after it.
+ *
+ * Disabled unless rest.pointValues.parallelQuery.threads is set, rest.pointValues.parallelQuery.bufferSize
+ * (default 1000) is the number of values buffered per series while waiting to be written.
+ *
+ * A query only runs rest.pointValues.parallelQuery.maxSeriesPerQuery (default half the threads) series ahead of its
+ * writer so a slow client can't hold the whole pool, and a series that can't buffer a value because the client took no
+ * value for rest.pointValues.parallelQuery.stallTimeout (default 30000) ms gives up its thread and fails the query.
+ */
+@Component
+public class PointValueQueryExecutor {
+
+    private final int threads;
+    private final int bufferSize;
+    private final int maxSeriesPerQuery;
+    private final long stallTimeout;
+    private final ExecutorService executor;
+
+    @Autowired
+    public PointValueQueryExecutor(Environment env) {
+        this(env.getProperty("rest.pointValues.parallelQuery.threads", Integer.class, 0),
+                env.getProperty("rest.pointValues.parallelQuery.bufferSize", Integer.class, 1000),
+                env.getProperty("rest.pointValues.parallelQuery.maxSeriesPerQuery", Integer.class, 0),
+                env.getProperty("rest.pointValues.parallelQuery.stallTimeout", Long.class, 30000L));
+    }
+
+    public PointValueQueryExecutor(int threads, int bufferSize) {
+        this(threads, bufferSize, 0, 30000L);
+    }
+
+    /**
+     * @param threads - 0 to disable
+     * @param bufferSize - values buffered per series
+     * @param maxSeriesPerQuery - series of a query running at once, 0 for half the threads
+     * @param stallTimeout - ms a series waits for the client to take a value before the query fails
+     */
+    public PointValueQueryExecutor(int threads, int bufferSize, int maxSeriesPerQuery, long stallTimeout) {
+        this.threads = threads;
+        this.bufferSize = Math.max(1, bufferSize);
+        this.maxSeriesPerQuery = maxSeriesPerQuery > 0 ? maxSeriesPerQuery : Math.max(1, threads / 2);
+        this.stallTimeout = Math.max(1, stallTimeout);
+        if (threads > 0) {
+            this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    new BasicThreadFactory.Builder().namingPattern("point-value-query-%d").daemon(true).build());
+        } else {
+            this.executor = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return executor != null;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return number of values to buffer for each series
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getMaxSeriesPerQuery() {
+        return maxSeriesPerQuery;
+    }
+
+    public long getStallTimeout() {
+        return stallTimeout;
+    }
+
+    /**
+     * @return a query to add the task of each series to, in the order they are written
+     */
+    public ParallelQuery newQuery() {
+        return new ParallelQuery();
+    }
+
+    public boolean isShutdown() {
+        return executor == null || executor.isShutdown();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The series tasks of one query.  The writer takes the series in order, when it starts a series the tasks up to
+     * maxSeriesPerQuery after it are submitted.  The tasks buffer their values with {@link #put} which waits while the
+     * writer makes progress.
+     */
+    public class ParallelQuery {
+
+        private final List<Runnable> tasks = new ArrayList<>();
+        private final List<Future<?>> futures = new ArrayList<>();
+        //Only incremented by the writer
+        private volatile long written;
+
+        public void add(Runnable task) {
+            tasks.add(task);
+        }
+
+        /**
+         * The writer is starting a series, submit the series that may run ahead of it
+         * @param index of the series
+         * @throws QueryCancelledException if the executor was shut down
+         */
+        public void writing(int index) throws QueryCancelledException {
+            int end = Math.min(tasks.size(), index + maxSeriesPerQuery);
+            try {
+                while (futures.size() < end) {
+                    futures.add(executor.submit(tasks.get(futures.size())));
+                }
+            } catch (RejectedExecutionException e) {
+                throw new QueryCancelledException(e);
+            }
+        }
+
+        /**
+         * The writer wrote a value
+         */
+        public void written() {
+            written++;
+        }
+
+        /**
+         * Buffer a value of a series, waits while the buffer is full
+         * @param buffer
+         * @param value
+         * @param cancelled - true once the writer cancelled the series
+         * @throws QueryCancelledException if cancelled or the writer took no value for the stall timeout
+         */
+        public <E> void put(BlockingQueue<E> buffer, E value, BooleanSupplier cancelled) throws QueryCancelledException {
+            long seen = written;
+            long since = System.nanoTime();
+            try {
+                while (!buffer.offer(value, 100, TimeUnit.MILLISECONDS)) {
+                    if (cancelled.getAsBoolean()) {
+                        throw new QueryCancelledException(new Exception("Series query cancelled"));
+                    }
+                    long current = written;
+                    if (current != seen) {
+                        seen = current;
+                        since = System.nanoTime();
+                    } else if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - since) >= stallTimeout) {
+                        throw new QueryCancelledException(new Exception("Client took no values for " + stallTimeout + "ms"));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new QueryCancelledException(e);
+            }
+        }
+
+        /**
+         * Cancel the tasks that are submitted, the rest never run
+         */
+        public void cancel() {
+            for (Future<?> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
+}
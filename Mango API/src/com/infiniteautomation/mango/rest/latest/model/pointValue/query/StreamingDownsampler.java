@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.pointValue.query;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import com.infiniteautomation.mango.rest.latest.model.pointValue.DataPointVOPointValueTimeBookend;
+import com.serotonin.m2m2.DataTypes;
+
+/**
+ * Downsamples the values of one or more series with a {@link LttbDownsampler} per series as they are streamed in
+ * time order.  Values that are not downsampled (bookends, unprocessable values and values of other data types) and
+ * the values kept by the downsamplers are merged and written in time order once no downsampler can keep an
+ * earlier value.
+ *
+ * Not thread safe.
+ */
+public class StreamingDownsampler {
+
+    /**
+     * Receives the values to write in time order
+     */
+    @FunctionalInterface
+    public interface ValueWriter {
+        void write(DataPointVOPointValueTimeBookend value) throws IOException;
+    }
+
+    private final long from;
+    private final long to;
+    private final int target;
+    private final ValueWriter writer;
+
+    //Map key is seriesId
+    private final Map<Integer, LttbDownsampler<DataPointVOPointValueTimeBookend>> downsamplers = new HashMap<>();
+    //Values kept by a downsampler
+    private final List<DataPointVOPointValueTimeBookend> kept = new ArrayList<>();
+    //Values waiting to be written in time order, start bookends before and end bookends after values of the same time
+    private final PriorityQueue<DataPointVOPointValueTimeBookend> merge = new PriorityQueue<>(
+            Comparator.comparingLong(DataPointVOPointValueTimeBookend::getTime)
+            .thenComparing(v -> !v.isFirstBookend())
+            .thenComparing(DataPointVOPointValueTimeBookend::isLastBookend));
+
+    /**
+     * @param from - start of the time range
+     * @param to - end of the time range
+     * @param target - approximate number of values to keep per series
+     * @param writer
+     */
+    public StreamingDownsampler(long from, long to, int target, ValueWriter writer) {
+        this.from = from;
+        this.to = to;
+        this.target = target;
+        this.writer = writer;
+    }
+
+    /**
+     * Add the next value in time order
+     * @param value
+     * @throws IOException
+     */
+    public void add(DataPointVOPointValueTimeBookend value) throws IOException {
+        if(value.isBookend() || !isDownsampled(value)) {
+            merge.add(value);
+        }else {
+            downsamplers.computeIfAbsent(value.getSeriesId(), k -> new LttbDownsampler<>(from, to, target)).add(value, kept);
+            merge.addAll(kept);
+            kept.clear();
+        }
+        write(value.getTime());
+    }
+
+    /**
+     * Select the remaining values of a series, the values that no other series can precede are written
+     * @param seriesId
+     * @throws IOException
+     */
+    public void finishSeries(int seriesId) throws IOException {
+        LttbDownsampler<DataPointVOPointValueTimeBookend> downsampler = downsamplers.remove(seriesId);
+        if(downsampler != null) {
+            downsampler.finish(kept);
+            merge.addAll(kept);
+            kept.clear();
+        }
+        write(Long.MAX_VALUE);
+    }
+
+    /**
+     * Select the remaining values of all series and write them
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        for(LttbDownsampler<DataPointVOPointValueTimeBookend> downsampler : downsamplers.values()) {
+            downsampler.finish(kept);
+            merge.addAll(kept);
+            kept.clear();
+        }
+        downsamplers.clear();
+        while(!merge.isEmpty())
+            writer.write(merge.poll());
+    }
+
+    /**
+     * Only values of numeric, binary and multistate points are downsampled
+     * @param value
+     * @return
+     */
+    protected boolean isDownsampled(DataPointVOPointValueTimeBookend value) {
+        if(!value.isProcessable())
+            return false;
+        switch(value.getVo().getPointLocator().getDataTypeId()) {
+            case DataTypes.NUMERIC:
+            case DataTypes.BINARY:
+            case DataTypes.MULTISTATE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Write the merged values that are before the time and before any value still pending in a downsampler
+     * @param time
+     * @throws IOException
+     */
+    private void write(long time) throws IOException {
+        long horizon = time;
+        for(LttbDownsampler<DataPointVOPointValueTimeBookend> downsampler : downsamplers.values()) {
+            DataPointVOPointValueTimeBookend earliest = downsampler.getEarliestPending();
+            if(earliest != null && earliest.getTime() < horizon)
+                horizon = earliest.getTime();
+        }
+        while(!merge.isEmpty() && merge.peek().getTime() < horizon)
+            writer.write(merge.poll());
+    }
+}
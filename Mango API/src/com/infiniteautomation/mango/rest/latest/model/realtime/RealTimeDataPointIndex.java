@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.realtime;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.infiniteautomation.mango.spring.events.DataPointTagsUpdatedEvent;
+import com.infiniteautomation.mango.spring.events.StateChangeEvent;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.i18n.Translations;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.util.ILifecycleState;
+
+/**
+ * Index of the ids of running data points by xid, device name, tags and data type.  It is built from the runtime
+ * manager on first use and then kept current by the point start, stop and tag update events.
+ *
+ * The ids returned may include points that have just stopped, callers must check the runtime manager.
+ */
+@Component
+public class RealTimeDataPointIndex {
+
+    public static final String XID = "xid";
+    public static final String DEVICE_NAME = "deviceName";
+    public static final String TYPE = "type";
+    public static final String TAG_PREFIX = "tags.";
+
+    private final Map<Integer, IndexedPoint> points = new HashMap<>();
+    private final Map<String, Integer> byXid = new HashMap<>();
+    private final Map<String, Set<Integer>> byDeviceName = new HashMap<>();
+    private final Map<Integer, Set<Integer>> byDataType = new HashMap<>();
+    private final Map<Integer, TranslatableMessage> dataTypeMessages = new HashMap<>();
+    private final Map<String, Map<String, Set<Integer>>> byTag = new HashMap<>();
+    private boolean built;
+
+    /**
+     * @return true if equality on the property can be answered by the index
+     */
+    public static boolean isIndexed(String property) {
+        return XID.equals(property) || DEVICE_NAME.equals(property) || TYPE.equals(property)
+                || (property.startsWith(TAG_PREFIX) && property.length() > TAG_PREFIX.length());
+    }
+
+    /**
+     * @return ids of all running points
+     */
+    public synchronized SortedSet<Integer> getIds() {
+        ensureBuilt();
+        return new TreeSet<>(points.keySet());
+    }
+
+    /**
+     * Ids of the running points where the property equals the value
+     * @param property one of the properties accepted by {@link #isIndexed(String)}
+     * @param value
+     * @param translations used to match the translated data type
+     * @return
+     */
+    public synchronized SortedSet<Integer> getIds(String property, String value, Translations translations) {
+        ensureBuilt();
+        SortedSet<Integer> ids = new TreeSet<>();
+        if (XID.equals(property)) {
+            Integer id = byXid.get(value);
+            if (id != null) {
+                ids.add(id);
+            }
+        } else if (DEVICE_NAME.equals(property)) {
+            ids.addAll(byDeviceName.getOrDefault(value, Collections.emptySet()));
+        } else if (TYPE.equals(property)) {
+            for (Entry<Integer, TranslatableMessage> entry : dataTypeMessages.entrySet()) {
+                if (value.equals(entry.getValue().translate(translations))) {
+                    ids.addAll(byDataType.getOrDefault(entry.getKey(), Collections.emptySet()));
+                }
+            }
+        } else if (property.startsWith(TAG_PREFIX)) {
+            Map<String, Set<Integer>> values = byTag.get(property.substring(TAG_PREFIX.length()));
+            if (values != null) {
+                ids.addAll(values.getOrDefault(value, Collections.emptySet()));
+            }
+        } else {
+            throw new IllegalArgumentException("Property is not indexed: " + property);
+        }
+        return ids;
+    }
+
+    @EventListener
+    private void handleStateChangeEvent(StateChangeEvent<DataPointVO> event) {
+        if (event.getState() == ILifecycleState.RUNNING) {
+            update(event.getVo());
+        } else if (event.getState() == ILifecycleState.TERMINATED) {
+            remove(event.getVo().getId());
+        }
+    }
+
+    @EventListener
+    private void handleDataPointTagsUpdatedEvent(DataPointTagsUpdatedEvent event) {
+        tagsUpdated(event.getVo());
+    }
+
+    /**
+     * Re-index the tags of a point if it is running
+     */
+    synchronized void tagsUpdated(DataPointVO vo) {
+        if (points.containsKey(vo.getId())) {
+            update(vo);
+        }
+    }
+
+    /**
+     * Index a point that started
+     */
+    synchronized void update(DataPointVO vo) {
+        if (!built) {
+            //Picked up when the index is built
+            return;
+        }
+        add(vo);
+    }
+
+    /**
+     * Remove a point that stopped
+     */
+    synchronized void remove(int id) {
+        IndexedPoint point = points.remove(id);
+        if (point == null) {
+            return;
+        }
+        byXid.remove(point.xid, id);
+        removeFrom(byDeviceName, point.deviceName, id);
+        removeFrom(byDataType, point.dataTypeId, id);
+        for (Entry<String, String> tag : point.tags.entrySet()) {
+            Map<String, Set<Integer>> values = byTag.get(tag.getKey());
+            if (values != null) {
+                removeFrom(values, tag.getValue(), id);
+                if (values.isEmpty()) {
+                    byTag.remove(tag.getKey());
+                }
+            }
+        }
+    }
+
+    private void add(DataPointVO vo) {
+        remove(vo.getId());
+
+        IndexedPoint point = new IndexedPoint(vo);
+        points.put(vo.getId(), point);
+        byXid.put(point.xid, vo.getId());
+        addTo(byDeviceName, point.deviceName, vo.getId());
+        addTo(byDataType, point.dataTypeId, vo.getId());
+        dataTypeMessages.putIfAbsent(point.dataTypeId, vo.getPointLocator().getDataTypeMessage());
+        for (Entry<String, String> tag : point.tags.entrySet()) {
+            addTo(byTag.computeIfAbsent(tag.getKey(), k -> new HashMap<>()), tag.getValue(), vo.getId());
+        }
+    }
+
+    private void ensureBuilt() {
+        if (!built) {
+            for (DataPointRT rt : Common.runtimeManager.getRunningDataPoints()) {
+                add(rt.getVO());
+            }
+            built = true;
+        }
+    }
+
+    private static <K> void addTo(Map<K, Set<Integer>> map, K key, int id) {
+        map.computeIfAbsent(key, k -> new HashSet<>()).add(id);
+    }
+
+    private static <K> void removeFrom(Map<K, Set<Integer>> map, K key, int id) {
+        Set<Integer> ids = map.get(key);
+        if (ids != null && ids.remove(id) && ids.isEmpty()) {
+            map.remove(key);
+        }
+    }
+
+    private static class IndexedPoint {
+        private final String xid;
+        private final String deviceName;
+        private final int dataTypeId;
+        private final Map<String, String> tags;
+
+        private IndexedPoint(DataPointVO vo) {
+            this.xid = vo.getXid();
+            this.deviceName = vo.getDeviceName();
+            this.dataTypeId = vo.getPointLocator().getDataTypeId();
+            this.tags = vo.getTags() == null ? Collections.emptyMap() : new HashMap<>(vo.getTags());
+        }
+    }
+}
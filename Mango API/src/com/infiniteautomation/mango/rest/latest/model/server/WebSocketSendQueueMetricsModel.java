@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.model.server;
+
+/**
+ * Depth of the websocket outbound queues
+ */
+public class WebSocketSendQueueMetricsModel {
+
+    private int maxMessages;
+    private long maxBytes;
+    private String overflowPolicy;
+    private int sessions;
+    private long queuedMessages;
+    private long queuedBytes;
+    private int deepestQueue;
+    private long dropped;
+    private long coalesced;
+    private long closed;
+
+    /**
+     * @return limit of queued messages per session
+     */
+    public int getMaxMessages() {
+        return maxMessages;
+    }
+
+    public void setMaxMessages(int maxMessages) {
+        this.maxMessages = maxMessages;
+    }
+
+    /**
+     * @return limit of queued message length per session
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public String getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(String overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * @return sessions that have sent a message
+     */
+    public int getSessions() {
+        return sessions;
+    }
+
+    public void setSessions(int sessions) {
+        this.sessions = sessions;
+    }
+
+    public long getQueuedMessages() {
+        return queuedMessages;
+    }
+
+    public void setQueuedMessages(long queuedMessages) {
+        this.queuedMessages = queuedMessages;
+    }
+
+    public long getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    public void setQueuedBytes(long queuedBytes) {
+        this.queuedBytes = queuedBytes;
+    }
+
+    /**
+     * @return messages queued for the slowest session
+     */
+    public int getDeepestQueue() {
+        return deepestQueue;
+    }
+
+    public void setDeepestQueue(int deepestQueue) {
+        this.deepestQueue = deepestQueue;
+    }
+
+    /**
+     * @return messages dropped because a queue was full since startup
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    public void setDropped(long dropped) {
+        this.dropped = dropped;
+    }
+
+    /**
+     * @return messages replaced by a newer message with the same key since startup
+     */
+    public long getCoalesced() {
+        return coalesced;
+    }
+
+    public void setCoalesced(long coalesced) {
+        this.coalesced = coalesced;
+    }
+
+    /**
+     * @return sessions closed because their queue was full since startup
+     */
+    public long getClosed() {
+        return closed;
+    }
+
+    public void setClosed(long closed) {
+        this.closed = closed;
+    }
+}
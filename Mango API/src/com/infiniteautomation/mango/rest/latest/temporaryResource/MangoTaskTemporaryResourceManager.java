@@ -87,12 +87,30 @@ public final class MangoTaskTemporaryResourceManager<T> extends TemporaryResourc
         if (tasks.mainTask != null) {
             tasks.mainTask.cancel();
         }
-        if (tasks.timeoutTask != null) {
-            tasks.timeoutTask.cancel();
+        synchronized (tasks) {
+            if (tasks.timeoutTask != null) {
+                tasks.timeoutTask.cancel();
+            }
         }
         this.scheduleRemoval(resource);
     }
 
+    /**
+     * Restart the timeout of a resource from now, for resources that time out when they are inactive
+     * @param resource
+     */
+    public void extendTimeout(TemporaryResource<T, AbstractRestException> resource) {
+        if (resource.getTimeout() <= 0 || resource.isComplete()) return;
+
+        TaskData tasks = (TaskData) resource.getData();
+        synchronized (tasks) {
+            if (tasks.timeoutTask != null) {
+                tasks.timeoutTask.cancel();
+            }
+            this.scheduleTimeout(resource, new Date(Common.timer.currentTimeMillis() + resource.getTimeout()));
+        }
+    }
+
     private void scheduleTask(TemporaryResource<T, AbstractRestException> resource) {
         TaskData tasks = (TaskData) resource.getData();
 
@@ -132,14 +150,15 @@ public final class MangoTaskTemporaryResourceManager<T> extends TemporaryResourc
         };
 
         Common.backgroundProcessing.execute(tasks.mainTask);
-        this.scheduleTimeout(resource);
+        if (resource.getTimeout() > 0) {
+            synchronized (tasks) {
+                this.scheduleTimeout(resource, new Date(resource.getStartTime().getTime() + resource.getTimeout()));
+            }
+        }
     }
 
-    private void scheduleTimeout(TemporaryResource<T, AbstractRestException> resource) {
-        if (resource.getTimeout() <= 0) return;
-
+    private void scheduleTimeout(TemporaryResource<T, AbstractRestException> resource, Date timeoutDate) {
         TaskData tasks = (TaskData) resource.getData();
-        Date timeoutDate = new Date(resource.getStartTime().getTime() + resource.getTimeout());
 
         // TimeoutTask schedules itself to be executed
         tasks.timeoutTask = new TimeoutTask(timeoutDate, new TimeoutClient() {
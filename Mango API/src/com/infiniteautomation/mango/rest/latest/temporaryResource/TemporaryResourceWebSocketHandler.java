@@ -4,6 +4,7 @@
 package com.infiniteautomation.mango.rest.latest.temporaryResource;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.Set;
@@ -107,7 +108,9 @@ public class TemporaryResourceWebSocketHandler extends MultiSessionWebSocketHand
                 }
 
                 try {
-                    this.sendRawMessageUsingView(session, notificationMessage, view);
+                    //Only the latest state of a resource matters, a queued update is replaced by a newer one
+                    Object coalesceKey = type == CrudNotificationType.UPDATE ? Arrays.asList(type, resource.getId()) : null;
+                    this.sendRawNotificationUsingView(session, notificationMessage, view, coalesceKey);
                 } catch (Exception e) {
                     if (log.isWarnEnabled()) {
                         log.warn("Error notifying session " + session.getId() + " of change to resource " + resource, e);
@@ -3,6 +3,14 @@
  */
 package com.infiniteautomation.mango.rest.latest.websocket;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.context.ApplicationEvent;
 import org.springframework.web.socket.WebSocketSession;
@@ -21,39 +29,96 @@ import com.serotonin.m2m2.vo.permission.PermissionHolder;
  */
 public abstract class DaoNotificationWebSocketHandler<T extends AbstractBasicVO> extends MultiSessionWebSocketHandler {
 
+    private final Queue<Runnable> pendingNotifications = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean notifying = new AtomicBoolean();
+
     /**
+     * Queue a notification, notifications are sent in order off the publishing thread
+     *
      * @param action add, update or delete
      * @param vo
      * @param originalVo
      * @param event
      */
     public void notify(String action, T vo, T originalVo, ApplicationEvent event) {
+        if (sessions.isEmpty()) {
+            return;
+        }
+        pendingNotifications.add(() -> notifySessions(action, vo, originalVo, event));
+        if (notifying.compareAndSet(false, true)) {
+            scheduledExecutor.execute(this::sendPendingNotifications);
+        }
+    }
+
+    private void sendPendingNotifications() {
+        try {
+            Runnable notification;
+            while ((notification = pendingNotifications.poll()) != null) {
+                try {
+                    notification.run();
+                } catch (Exception e) {
+                    log.error("Failed to send notification", e);
+                }
+            }
+        } finally {
+            notifying.set(false);
+            //A notification may have been queued after the last poll
+            if (!pendingNotifications.isEmpty() && notifying.compareAndSet(false, true)) {
+                scheduledExecutor.execute(this::sendPendingNotifications);
+            }
+        }
+    }
+
+    /**
+     * The message is created and serialized once for each group of users, see {@link #notificationGroup(PermissionHolder)}
+     */
+    protected void notifySessions(String action, T vo, T originalVo, ApplicationEvent event) {
+        Map<Object, Optional<String>> messages = new HashMap<>();
         for (WebSocketSession session : sessions) {
             PermissionHolder user = getUser(session);
             if (hasPermission(user, vo) && isSubscribed(session, action, vo, originalVo)) {
-                this.runAs.runAs(user, () -> {
-                    Object userMessage = createNotification(action, vo, originalVo, event, user);
-                    if (userMessage != null) {
-                        try {
-                            ObjectWriter writer;
-                            Class<?> view = this.viewForUser(user);
-                            if (view != null) {
-                                writer = this.jacksonMapper.writerWithView(view);
-                            } else {
-                                writer = this.jacksonMapper.writer();
-                            }
-
-                            String userJsonMessage = writer.writeValueAsString(userMessage);
-                            notify(session, userJsonMessage);
-                        } catch (JsonProcessingException e) {
-                            log.warn("Failed to write object as JSON", e);
-                        }
-                    }
-                });
+                Optional<String> userJsonMessage = messages.computeIfAbsent(notificationGroup(user),
+                        k -> Optional.ofNullable(createJsonNotification(action, vo, originalVo, event, user)));
+                if (userJsonMessage.isPresent()) {
+                    notify(session, userJsonMessage.get());
+                }
             }
         }
     }
 
+    private String createJsonNotification(String action, T vo, T originalVo, ApplicationEvent event, PermissionHolder user) {
+        return this.runAs.runAs(user, () -> {
+            Object userMessage = createNotification(action, vo, originalVo, event, user);
+            if (userMessage == null) {
+                return null;
+            }
+            try {
+                ObjectWriter writer;
+                Class<?> view = this.viewForUser(user);
+                if (view != null) {
+                    writer = this.jacksonMapper.writerWithView(view);
+                } else {
+                    writer = this.jacksonMapper.writer();
+                }
+                return writer.writeValueAsString(userMessage);
+            } catch (JsonProcessingException e) {
+                log.warn("Failed to write object as JSON", e);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Users in the same group receive the same serialized notification, override if the model depends on
+     *  more than the serialization view, roles and locale of the user.
+     *
+     * @param user
+     * @return
+     */
+    protected Object notificationGroup(PermissionHolder user) {
+        return Arrays.asList(viewForUser(user), user.getRoles(), user.getLocaleObject());
+    }
+
     abstract protected boolean hasPermission(PermissionHolder user, T vo);
 
     abstract protected Object createModel(T vo, ApplicationEvent event, PermissionHolder user);
@@ -96,7 +161,7 @@ public abstract class DaoNotificationWebSocketHandler<T extends AbstractBasicVO>
 
     protected void notify(WebSocketSession session, String jsonMessage) {
         try {
-            this.sendStringMessageAsync(session, jsonMessage);
+            this.sendNotificationAsync(session, jsonMessage, null);
         } catch (WebSocketSendException e) {
             log.warn("Error notifying websocket", e);
         } catch (Exception e) {
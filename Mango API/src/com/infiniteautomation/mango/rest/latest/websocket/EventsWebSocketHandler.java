@@ -6,8 +6,10 @@ package com.infiniteautomation.mango.rest.latest.websocket;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -27,13 +29,22 @@ import com.infiniteautomation.mango.rest.latest.model.ArrayWithTotal;
 import com.infiniteautomation.mango.rest.latest.model.FilteredStreamWithTotal;
 import com.infiniteautomation.mango.rest.latest.model.RestModelMapper;
 import com.infiniteautomation.mango.rest.latest.model.event.DataPointEventSummaryModel;
+import com.infiniteautomation.mango.rest.latest.model.event.EventAcknowledgeCoalescer;
+import com.infiniteautomation.mango.rest.latest.model.event.EventAcknowledgeCoalescer.AcknowledgedBatchListener;
+import com.infiniteautomation.mango.rest.latest.model.event.EventAcknowledgedBatchModel;
 import com.infiniteautomation.mango.rest.latest.model.event.EventActionEnum;
 import com.infiniteautomation.mango.rest.latest.model.event.EventInstanceModel;
+import com.infiniteautomation.mango.rest.latest.model.event.EventLevelSummaryDeltaModel;
 import com.infiniteautomation.mango.rest.latest.model.event.EventLevelSummaryModel;
+import com.infiniteautomation.mango.rest.latest.model.event.EventSummaryCache;
+import com.infiniteautomation.mango.rest.latest.model.event.EventSummaryCache.EventSummaryListener;
+import com.infiniteautomation.mango.rest.latest.model.event.EventSummaryCache.LevelSummary;
+import com.infiniteautomation.mango.permission.MangoPermission;
 import com.infiniteautomation.mango.spring.service.EventInstanceService;
 import com.infiniteautomation.mango.util.RQLUtils;
 import com.infiniteautomation.mango.util.exception.NotFoundException;
 import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.db.dao.DataPointDao;
 import com.serotonin.m2m2.i18n.ProcessResult;
 import com.serotonin.m2m2.i18n.TranslatableMessage;
 import com.serotonin.m2m2.rt.event.AlarmLevels;
@@ -43,6 +54,7 @@ import com.serotonin.m2m2.rt.event.UserEventLevelSummary;
 import com.serotonin.m2m2.rt.event.UserEventListener;
 import com.serotonin.m2m2.vo.User;
 import com.serotonin.m2m2.vo.Validatable;
+import com.serotonin.m2m2.vo.event.EventInstanceVO;
 import com.serotonin.m2m2.vo.permission.PermissionException;
 
 import net.jazdw.rql.parser.ASTNode;
@@ -60,6 +72,8 @@ public class EventsWebSocketHandler extends MangoWebSocketHandler implements Use
     public static final String REQUEST_TYPE_DATA_POINT_SUMMARY = "DATA_POINT_SUMMARY";
     public static final String REQUEST_TYPE_ALL_ACTIVE_EVENTS = "ALL_ACTIVE_EVENTS";
     public static final String REQUEST_TYPE_ACTIVE_EVENTS_QUERY = "ACTIVE_EVENTS_QUERY";
+    public static final String SUMMARY_CHANGE = "SUMMARY_CHANGE";
+    public static final String ACKNOWLEDGED_BATCH = "ACKNOWLEDGED_BATCH";
 
     @JsonTypeInfo(use=JsonTypeInfo.Id.NAME, include=JsonTypeInfo.As.PROPERTY, property="requestType")
     @JsonSubTypes({
@@ -96,6 +110,7 @@ public class EventsWebSocketHandler extends MangoWebSocketHandler implements Use
         private Set<EventActionEnum> actions;
         private boolean sendActiveSummary;
         private boolean sendUnacknowledgedSummary;
+        private boolean sendSummaryChanges;
 
         @Override
         public void validate(ProcessResult response) { }
@@ -129,6 +144,18 @@ public class EventsWebSocketHandler extends MangoWebSocketHandler implements Use
             this.sendUnacknowledgedSummary = sendUnacknowledgedSummary;
         }
 
+        /**
+         * Send a {@link EventLevelSummaryDeltaModel} when the active or unacknowledged count of a level changes,
+         *  only when rest.events.summaryCache.enabled is set
+         */
+        public boolean isSendSummaryChanges() {
+            return sendSummaryChanges;
+        }
+
+        public void setSendSummaryChanges(boolean sendSummaryChanges) {
+            this.sendSummaryChanges = sendSummaryChanges;
+        }
+
     }
 
     public static class EventsSubscriptionResponse {
@@ -163,6 +190,10 @@ public class EventsWebSocketHandler extends MangoWebSocketHandler implements Use
 
     private final RestModelMapper modelMapper;
     private final EventInstanceService service;
+    private final EventSummaryCache summaryCache;
+    private final EventSummaryListener summaryListener = this::summaryChanged;
+    private final EventAcknowledgeCoalescer acknowledgeCoalescer;
+    private final AcknowledgedBatchListener batchListener = this::acknowledgedBatch;
 
     private volatile Set<AlarmLevels> levels;
     private volatile EnumSet<EventActionEnum> actions;
@@ -171,10 +202,13 @@ public class EventsWebSocketHandler extends MangoWebSocketHandler implements Use
     private final Object lock = new Object();
 
     @Autowired
-    public EventsWebSocketHandler(RestModelMapper modelMapper, EventInstanceService service) {
+    public EventsWebSocketHandler(RestModelMapper modelMapper, EventInstanceService service, EventSummaryCache summaryCache,
+            EventAcknowledgeCoalescer acknowledgeCoalescer) {
         super();
         this.modelMapper = modelMapper;
         this.service = service;
+        this.summaryCache = summaryCache;
+        this.acknowledgeCoalescer = acknowledgeCoalescer;
     }
 
     @Override
@@ -190,6 +224,7 @@ public class EventsWebSocketHandler extends MangoWebSocketHandler implements Use
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        summaryCache.removeListener(summaryListener);
         synchronized(this.lock) {
             try {
                 Boolean subscribed = (Boolean)session.getAttributes().get(SUBSCRIPTION_ATTRIBUTE);
@@ -206,6 +241,7 @@ public class EventsWebSocketHandler extends MangoWebSocketHandler implements Use
 
     @Override
     public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
+        summaryCache.removeListener(summaryListener);
         synchronized(this.lock) {
             try {
                 Boolean subscribed = (Boolean)session.getAttributes().get(SUBSCRIPTION_ATTRIBUTE);
@@ -266,33 +302,60 @@ public class EventsWebSocketHandler extends MangoWebSocketHandler implements Use
                     }
                 }
 
+                boolean cached = summaryCache.isEnabled();
+                if (cached && subscription.isSendSummaryChanges()) {
+                    summaryCache.addListener(summaryListener);
+                } else {
+                    summaryCache.removeListener(summaryListener);
+                }
+
                 EventsSubscriptionResponse response = new EventsSubscriptionResponse();
                 if (subscription.isSendActiveSummary()) {
-                    List<UserEventLevelSummary> summaries = service.getActiveSummary();
+                    if (cached) {
+                        response.setActiveSummary(mapSummaries(summaryCache.getActiveSummary(user)));
+                    } else {
+                        List<UserEventLevelSummary> summaries = service.getActiveSummary();
 
-                    List<EventLevelSummaryModel> models = summaries.stream().map(s -> {
-                        EventInstanceModel instanceModel = s.getLatest() != null ? modelMapper.map(s.getLatest(), EventInstanceModel.class, user) : null;
-                        return new EventLevelSummaryModel(s.getAlarmLevel(), s.getCount(), instanceModel);
-                    }).collect(Collectors.toList());
+                        List<EventLevelSummaryModel> models = summaries.stream().map(s -> {
+                            EventInstanceModel instanceModel = s.getLatest() != null ? modelMapper.map(s.getLatest(), EventInstanceModel.class, user) : null;
+                            return new EventLevelSummaryModel(s.getAlarmLevel(), s.getCount(), instanceModel);
+                        }).collect(Collectors.toList());
 
-                    response.setActiveSummary(models);
+                        response.setActiveSummary(models);
+                    }
                 }
                 if (subscription.isSendUnacknowledgedSummary()) {
-                    List<UserEventLevelSummary> summaries = service.getUnacknowledgedSummary();
+                    if (cached) {
+                        response.setUnacknowledgedSummary(mapSummaries(summaryCache.getUnacknowledgedSummary(user)));
+                    } else {
+                        List<UserEventLevelSummary> summaries = service.getUnacknowledgedSummary();
 
-                    List<EventLevelSummaryModel> models = summaries.stream().map(s -> {
-                        EventInstanceModel instanceModel = s.getLatest() != null ? modelMapper.map(s.getLatest(), EventInstanceModel.class, user) : null;
-                        return new EventLevelSummaryModel(s.getAlarmLevel(), s.getCount(), instanceModel);
-                    }).collect(Collectors.toList());
+                        List<EventLevelSummaryModel> models = summaries.stream().map(s -> {
+                            EventInstanceModel instanceModel = s.getLatest() != null ? modelMapper.map(s.getLatest(), EventInstanceModel.class, user) : null;
+                            return new EventLevelSummaryModel(s.getAlarmLevel(), s.getCount(), instanceModel);
+                        }).collect(Collectors.toList());
 
-                    response.setUnacknowledgedSummary(models);
+                        response.setUnacknowledgedSummary(models);
+                    }
                 }
                 this.sendRawMessage(session, new WebSocketResponse<>(request.getSequenceNumber(), response));
             }else if(request instanceof EventsDataPointSummaryRequest) {
                 EventsDataPointSummaryRequest query = (EventsDataPointSummaryRequest)request;
                 WebSocketResponse<List<DataPointEventSummaryModel>> response = new WebSocketResponse<>(request.getSequenceNumber());
-                Collection<DataPointEventLevelSummary> summaries = service.getDataPointEventSummaries(query.getDataPointXids());
-                List<DataPointEventSummaryModel> models = summaries.stream().map(s -> new DataPointEventSummaryModel(s.getXid(), s.getCounts())).collect(Collectors.toList());
+                List<DataPointEventSummaryModel> models;
+                if (summaryCache.isEnabled()) {
+                    models = new ArrayList<>(query.getDataPointXids().length);
+                    for (String xid : query.getDataPointXids()) {
+                        Integer id = DataPointDao.getInstance().getIdByXid(xid);
+                        if (id != null) {
+                            Map<AlarmLevels, Integer> counts = summaryCache.getDataPointCounts(user, id);
+                            models.add(new DataPointEventSummaryModel(xid, counts));
+                        }
+                    }
+                } else {
+                    Collection<DataPointEventLevelSummary> summaries = service.getDataPointEventSummaries(query.getDataPointXids());
+                    models = summaries.stream().map(s -> new DataPointEventSummaryModel(s.getXid(), s.getCounts())).collect(Collectors.toList());
+                }
                 response.setPayload(models);
                 this.sendRawMessage(session, response);
             }else if(request instanceof AllActiveEventsRequest) {
@@ -340,12 +403,74 @@ public class EventsWebSocketHandler extends MangoWebSocketHandler implements Use
         }
     }
 
+    private List<EventLevelSummaryModel> mapSummaries(List<LevelSummary> summaries) {
+        return summaries.stream().map(s -> {
+            EventInstanceModel instanceModel = s.getLatest() != null ? modelMapper.map(s.getLatest(), EventInstanceModel.class, user) : null;
+            return new EventLevelSummaryModel(s.getLevel(), s.getCount(), instanceModel);
+        }).collect(Collectors.toList());
+    }
+
+    private void summaryChanged(MangoPermission readPermission, EventLevelSummaryDeltaModel delta) {
+        if (!session.isOpen() || getUser(session) == null) {
+            summaryCache.removeListener(summaryListener);
+            return;
+        }
+        if (!permissionService.hasPermission(user, readPermission)) {
+            return;
+        }
+        try {
+            //Deltas are never dropped, the client's counts would be wrong from then on
+            sendRawMessage(session, new WebSocketNotification<>(SUMMARY_CHANGE, delta));
+        } catch(WebSocketSendException e) {
+            log.warn("Error notifying websocket session", e);
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Error notifying of event summary change", e);
+            }
+        }
+    }
+
+    private void acknowledgedBatch(List<EventInstanceVO> events) {
+        if (!session.isOpen() || getUser(session) == null) {
+            this.terminate();
+            return;
+        }
+
+        if(!this.actions.contains(EventActionEnum.ACKNOWLEDGED))
+            return;
+
+        List<Integer> ids = new ArrayList<>();
+        Map<AlarmLevels, EventLevelSummaryDeltaModel> changes = new EnumMap<>(AlarmLevels.class);
+        for (EventInstanceVO event : events) {
+            if (this.levels.contains(event.getAlarmLevel()) && permissionService.hasPermission(user, event.getReadPermission())) {
+                ids.add(event.getId());
+                EventLevelSummaryDeltaModel change = changes.computeIfAbsent(event.getAlarmLevel(), l -> new EventLevelSummaryDeltaModel(l, 0, 0, null));
+                change.setUnacknowledgedCount(change.getUnacknowledgedCount() - 1);
+            }
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        try {
+            //Carries summary deltas, never dropped
+            sendRawMessage(session, new WebSocketNotification<>(ACKNOWLEDGED_BATCH,
+                    new EventAcknowledgedBatchModel(ids, new ArrayList<>(changes.values()))));
+        } catch(WebSocketSendException e) {
+            log.warn("Error notifying websocket session", e);
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Error notifying of acknowledged events", e);
+            }
+        }
+    }
+
     protected void notify(EventActionEnum action, EventInstance event, WebSocketSession session) {
         //This is used for serialization where things like the TranslatableMessageSerializer
         this.runAs.runAs(user, () -> {
             try {
                 EventInstanceModel instanceModel = modelMapper.map(event, EventInstanceModel.class, user);
-                sendRawMessage(session, new WebSocketNotification<EventInstanceModel>(action.name(), instanceModel));
+                sendRawNotification(session, new WebSocketNotification<EventInstanceModel>(action.name(), instanceModel));
             } catch(WebSocketSendException e) {
                 log.warn("Error notifying websocket session", e);
             } catch (Exception e) {
@@ -361,10 +486,12 @@ public class EventsWebSocketHandler extends MangoWebSocketHandler implements Use
 
     public void initialize() {
         Common.eventManager.addUserEventListener(this);
+        acknowledgeCoalescer.addListener(batchListener);
     }
 
     public void terminate(){
         Common.eventManager.removeUserEventListener(this);
+        acknowledgeCoalescer.removeListener(batchListener);
     }
 
     public void changeLevels(Set<AlarmLevels> levels) {
@@ -483,6 +610,10 @@ public class EventsWebSocketHandler extends MangoWebSocketHandler implements Use
         if(!this.levels.contains(evt.getAlarmLevel()))
             return;
 
+        //Sent with the other events of its batch
+        if(acknowledgeCoalescer.isCoalesced(evt.getId()))
+            return;
+
         if (log.isDebugEnabled()) {
             log.debug("Event acknowledged, notifying session " + session.getId() + ": " + evt.toString());
         }
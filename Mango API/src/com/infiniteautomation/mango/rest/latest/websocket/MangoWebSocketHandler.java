@@ -20,7 +20,6 @@ import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.PongMessage;
 import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.adapter.jetty.JettyWebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -73,6 +72,9 @@ public abstract class MangoWebSocketHandler extends TextWebSocketHandler {
     @Autowired
     protected RunAs runAs;
 
+    @Autowired
+    protected WebSocketSendQueues sendQueues;
+
     public MangoWebSocketHandler() {
     }
 
@@ -105,6 +107,20 @@ public abstract class MangoWebSocketHandler extends TextWebSocketHandler {
         this.sendStringMessageAsync(session, this.jacksonMapper.writeValueAsString(model));
     }
 
+    /**
+     * Send a positive response as a notification that replaces any queued message with the same key,
+     *  it may be dropped if the client is too slow
+     *
+     * @param session
+     * @param payload
+     * @param coalesceKey
+     * @throws JsonProcessingException
+     */
+    protected void sendNotification(WebSocketSession session, Object payload, Object coalesceKey) throws JsonProcessingException {
+        MangoWebSocketResponseModel model = new MangoWebSocketResponseModel(MangoWebSocketResponseStatus.OK, payload);
+        this.sendNotificationAsync(session, this.jacksonMapper.writeValueAsString(model), coalesceKey);
+    }
+
     /**
      * Sends a message raw without wrapping it in a MangoWebSocketResponseModel
      * @param session
@@ -115,6 +131,16 @@ public abstract class MangoWebSocketHandler extends TextWebSocketHandler {
         this.sendStringMessageAsync(session, this.jacksonMapper.writeValueAsString(message));
     }
 
+    /**
+     * Sends a notification raw without wrapping it in a MangoWebSocketResponseModel, it may be dropped if the client is too slow
+     * @param session
+     * @param message
+     * @throws JsonProcessingException
+     */
+    protected void sendRawNotification(WebSocketSession session, Object message) throws JsonProcessingException {
+        this.sendNotificationAsync(session, this.jacksonMapper.writeValueAsString(message), null);
+    }
+
     /**
      * Sends a message raw without wrapping it in a MangoWebSocketResponseModel using a Jackson serialization view
      * @param session
@@ -128,21 +154,53 @@ public abstract class MangoWebSocketHandler extends TextWebSocketHandler {
     }
 
     /**
-     * WebSocketSession.sendMessage() is blocking and will throw exceptions on concurrent sends, this method uses the aysnc RemoteEndpoint.sendStringByFuture() method instead
-     * <p>TODO use {@link org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator} instead of Jetty API</p>
+     * Sends a notification raw using a Jackson serialization view, it replaces any queued message with the same key
+     *  and may be dropped if the client is too slow
+     * @param session
+     * @param message
+     * @param view
+     * @param coalesceKey null to always send the notification
+     * @throws JsonProcessingException
+     */
+    protected void sendRawNotificationUsingView(WebSocketSession session, Object message, Class<?> view, Object coalesceKey) throws JsonProcessingException {
+        ObjectWriter objectWriter = this.jacksonMapper.writerWithView(view);
+        this.sendNotificationAsync(session, objectWriter.writeValueAsString(message), coalesceKey);
+    }
+
+    /**
+     * WebSocketSession.sendMessage() is blocking and will throw exceptions on concurrent sends, this method queues the message
+     * in the session's {@link WebSocketSendQueue} which writes with the async Jetty API one message at a time.
+     * The message is never dropped from the queue, use it for responses to client requests.
      *
      * @param session
      * @param message
      * @throws IOException
      */
     protected void sendStringMessageAsync(WebSocketSession session, String message) {
+        this.queueMessage(session, message, null, false);
+    }
+
+    /**
+     * Queue a notification that replaces any queued message with the same key, the oldest notification is dropped
+     *  when the queue is full
+     *
+     * @param session
+     * @param message
+     * @param coalesceKey null to always send the message
+     */
+    protected void sendNotificationAsync(WebSocketSession session, String message, Object coalesceKey) {
+        this.queueMessage(session, message, coalesceKey, true);
+    }
+
+    private void queueMessage(WebSocketSession session, String message, Object coalesceKey, boolean notification) {
         if (!session.isOpen()) {
             throw new WebSocketClosedException();
         }
 
         try {
-            JettyWebSocketSession jettySession = (JettyWebSocketSession) session;
-            jettySession.getNativeSession().getRemote().sendStringByFuture(message);
+            sendQueues.getQueue(session).send(message, coalesceKey, notification);
+        } catch (WebSocketSendException e) {
+            throw e;
         } catch (Exception e) {
             throw new WebSocketSendException(e);
         }
@@ -193,6 +251,7 @@ public abstract class MangoWebSocketHandler extends TextWebSocketHandler {
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
         this.sessionTracker.afterConnectionClosed(session, status);
+        this.sendQueues.sessionClosed(session);
 
         this.stopPingPong(session);
     }
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.websocket;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.jetty.JettyWebSocketSession;
+
+import com.infiniteautomation.mango.rest.latest.websocket.WebSocketSendQueues.OverflowPolicy;
+
+/**
+ * Outbound messages of one websocket session, only one message is written at a time and the rest wait here.
+ * A message sent with a coalesce key replaces the waiting message with the same key and moves to the end of the queue.
+ * When the queue is full the oldest notification is dropped or the session is closed, see {@link WebSocketSendQueues}.
+ * Responses to client requests are never dropped, if only responses are waiting the session is closed instead.
+ */
+public class WebSocketSendQueue implements WriteCallback {
+
+    public final static CloseStatus SEND_QUEUE_FULL = new CloseStatus(4106, "Send queue full");
+
+    private final Log log = LogFactory.getLog(WebSocketSendQueue.class);
+
+    private final WebSocketSession session;
+    private final WebSocketSendQueues queues;
+
+    //Unique keys are used for messages that can't be coalesced
+    private final Map<Object, QueuedMessage> pending = new LinkedHashMap<>();
+    private long pendingBytes;
+    private boolean sending;
+    private boolean writing;
+    private boolean written;
+    private boolean closed;
+
+    WebSocketSendQueue(WebSocketSession session, WebSocketSendQueues queues) {
+        this.session = session;
+        this.queues = queues;
+    }
+
+    /**
+     * Queue a response to a client request, it is never dropped
+     * @param message
+     */
+    public void send(String message) {
+        send(message, null, false);
+    }
+
+    /**
+     * Queue a message for sending
+     * @param message
+     * @param coalesceKey replace any waiting message with this key, null to always send
+     * @param notification true if the message may be dropped when the queue is full
+     */
+    public void send(String message, Object coalesceKey, boolean notification) {
+        String next;
+        synchronized (this) {
+            if (closed || !session.isOpen()) {
+                throw new WebSocketClosedException();
+            }
+
+            Object key = coalesceKey == null ? new Object() : coalesceKey;
+            QueuedMessage previous = pending.remove(key);
+            if (previous != null) {
+                pendingBytes -= previous.message.length();
+                queues.coalesced();
+            }
+
+            while (!pending.isEmpty() && (pending.size() >= queues.getMaxMessages() || pendingBytes + message.length() > queues.getMaxBytes())) {
+                if (queues.getOverflowPolicy() == OverflowPolicy.DROP_OLDEST && dropOldestNotification()) {
+                    queues.dropped();
+                } else if (queues.getOverflowPolicy() == OverflowPolicy.DROP_OLDEST && notification) {
+                    //Only responses are waiting, this notification is the oldest one
+                    queues.dropped();
+                    return;
+                } else {
+                    clear();
+                    closed = true;
+                }
+            }
+
+            if (closed) {
+                next = null;
+            } else {
+                pending.put(key, new QueuedMessage(message, notification));
+                pendingBytes += message.length();
+                if (sending) {
+                    return;
+                }
+                sending = true;
+                next = poll();
+            }
+        }
+
+        if (next == null) {
+            queues.closed();
+            close(SEND_QUEUE_FULL);
+        } else {
+            write(next);
+        }
+    }
+
+    /**
+     * Writes the message and any that are queued while it is written, if the write completes later
+     *  the callback continues with the next message.
+     */
+    private void write(String message) {
+        while (message != null) {
+            synchronized (this) {
+                writing = true;
+                written = false;
+            }
+            try {
+                sendString(message);
+            } catch (Exception e) {
+                writeFailed(e);
+                return;
+            }
+            synchronized (this) {
+                writing = false;
+                if (!written) {
+                    return;
+                }
+                message = next();
+            }
+        }
+    }
+
+    /**
+     * Start writing a message, this queue is called back when the write completes
+     * @param message
+     * @throws Exception
+     */
+    protected void sendString(String message) throws Exception {
+        JettyWebSocketSession jettySession = (JettyWebSocketSession) session;
+        jettySession.getNativeSession().getRemote().sendString(message, this);
+    }
+
+    @Override
+    public void writeSuccess() {
+        String next;
+        synchronized (this) {
+            if (writing) {
+                //Continue in the write loop
+                written = true;
+                return;
+            }
+            next = next();
+        }
+        write(next);
+    }
+
+    @Override
+    public void writeFailed(Throwable e) {
+        synchronized (this) {
+            writing = false;
+            sending = false;
+            closed = true;
+            clear();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Failed to send websocket message for session " + session.getId(), e);
+        }
+        //The client can't tell which messages were lost, it has to reconnect
+        close(CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    /**
+     * Discard the waiting messages, called when the session closes
+     */
+    public synchronized void close() {
+        closed = true;
+        clear();
+    }
+
+    public synchronized int getMessages() {
+        return pending.size();
+    }
+
+    public synchronized long getBytes() {
+        return pendingBytes;
+    }
+
+    /**
+     * @return the next message to write or null if the queue is empty
+     */
+    private String next() {
+        String next = closed ? null : poll();
+        if (next == null) {
+            sending = false;
+        }
+        return next;
+    }
+
+    private String poll() {
+        Iterator<QueuedMessage> it = pending.values().iterator();
+        if (!it.hasNext()) {
+            return null;
+        }
+        QueuedMessage queued = it.next();
+        it.remove();
+        pendingBytes -= queued.message.length();
+        return queued.message;
+    }
+
+    /**
+     * @return false if no notification is waiting
+     */
+    private boolean dropOldestNotification() {
+        Iterator<QueuedMessage> it = pending.values().iterator();
+        while (it.hasNext()) {
+            QueuedMessage queued = it.next();
+            if (queued.notification) {
+                it.remove();
+                pendingBytes -= queued.message.length();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void clear() {
+        pending.clear();
+        pendingBytes = 0;
+    }
+
+    private void close(CloseStatus status) {
+        queues.remove(this);
+        try {
+            session.close(status);
+        } catch (Exception e) {
+            log.error("Error closing websocket session", e);
+        }
+    }
+
+    private static class QueuedMessage {
+        private final String message;
+        private final boolean notification;
+
+        private QueuedMessage(String message, boolean notification) {
+            this.message = message;
+            this.notification = notification;
+        }
+    }
+}
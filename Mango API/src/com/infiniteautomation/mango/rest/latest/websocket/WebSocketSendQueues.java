@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.websocket;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.infiniteautomation.mango.rest.latest.model.server.WebSocketSendQueueMetricsModel;
+
+/**
+ * Creates the outbound queues of the websocket sessions and tracks their depth.
+ *
+ * Each session queues at most web.websocket.sendQueue.maxMessages (default 1000) messages and
+ * web.websocket.sendQueue.maxBytes (default 8MB, measured as message length) while waiting for the client, when the limit is
+ * reached web.websocket.sendQueue.overflowPolicy decides if the oldest notification is dropped (DROP_OLDEST, the default) or
+ * the session is closed (CLOSE). Responses to client requests are never dropped, a session with only responses waiting
+ * is closed under either policy.
+ */
+@Component
+public class WebSocketSendQueues {
+
+    public static final String SEND_QUEUE_ATTR = "MA_WEBSOCKET_SEND_QUEUE";
+
+    public enum OverflowPolicy {
+        DROP_OLDEST, CLOSE
+    }
+
+    private final int maxMessages;
+    private final long maxBytes;
+    private final OverflowPolicy overflowPolicy;
+
+    private final Set<WebSocketSendQueue> queues = ConcurrentHashMap.newKeySet();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder closed = new LongAdder();
+
+    @Autowired
+    public WebSocketSendQueues(Environment env) {
+        this.maxMessages = Math.max(1, env.getProperty("web.websocket.sendQueue.maxMessages", Integer.class, 1000));
+        this.maxBytes = Math.max(1, env.getProperty("web.websocket.sendQueue.maxBytes", Long.class, 8L * 1024 * 1024));
+        this.overflowPolicy = env.getProperty("web.websocket.sendQueue.overflowPolicy", OverflowPolicy.class, OverflowPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * Get the queue of a session, creating it if necessary
+     * @param session
+     * @return
+     * @throws WebSocketClosedException if the session is closed
+     */
+    public WebSocketSendQueue getQueue(WebSocketSession session) {
+        synchronized (session) {
+            //A queue created after the session closed would never be removed
+            if (!session.isOpen()) {
+                throw new WebSocketClosedException();
+            }
+            WebSocketSendQueue queue = (WebSocketSendQueue) session.getAttributes().get(SEND_QUEUE_ATTR);
+            if (queue == null) {
+                queue = new WebSocketSendQueue(session, this);
+                session.getAttributes().put(SEND_QUEUE_ATTR, queue);
+                queues.add(queue);
+            }
+            return queue;
+        }
+    }
+
+    /**
+     * Discard the queue of a closed session
+     * @param session
+     */
+    public void sessionClosed(WebSocketSession session) {
+        WebSocketSendQueue queue;
+        synchronized (session) {
+            queue = (WebSocketSendQueue) session.getAttributes().remove(SEND_QUEUE_ATTR);
+        }
+        if (queue != null) {
+            queue.close();
+            remove(queue);
+        }
+    }
+
+    public WebSocketSendQueueMetricsModel getMetrics() {
+        WebSocketSendQueueMetricsModel model = new WebSocketSendQueueMetricsModel();
+        model.setMaxMessages(maxMessages);
+        model.setMaxBytes(maxBytes);
+        model.setOverflowPolicy(overflowPolicy.name());
+        int sessions = 0;
+        long messages = 0;
+        long bytes = 0;
+        int deepest = 0;
+        for (WebSocketSendQueue queue : queues) {
+            int depth = queue.getMessages();
+            sessions++;
+            messages += depth;
+            bytes += queue.getBytes();
+            deepest = Math.max(deepest, depth);
+        }
+        model.setSessions(sessions);
+        model.setQueuedMessages(messages);
+        model.setQueuedBytes(bytes);
+        model.setDeepestQueue(deepest);
+        model.setDropped(dropped.sum());
+        model.setCoalesced(coalesced.sum());
+        model.setClosed(closed.sum());
+        return model;
+    }
+
+    int getMaxMessages() {
+        return maxMessages;
+    }
+
+    long getMaxBytes() {
+        return maxBytes;
+    }
+
+    OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    void remove(WebSocketSendQueue queue) {
+        queues.remove(queue);
+    }
+
+    void dropped() {
+        dropped.increment();
+    }
+
+    void coalesced() {
+        coalesced.increment();
+    }
+
+    void closed() {
+        closed.increment();
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.websocket.pointValue;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Subscribe many points to the same event types, empty event types unsubscribes the points
+ */
+public class MultiPointValueRegistrationModel {
+
+    private Set<String> xids;
+    private Set<PointValueEventType> eventTypes;
+    private Integer batchWindowMs;
+
+    public Set<String> getXids() {
+        return xids == null ? Collections.emptySet() : xids;
+    }
+
+    public void setXids(Set<String> xids) {
+        this.xids = xids;
+    }
+
+    public Set<PointValueEventType> getEventTypes() {
+        return eventTypes == null ? EnumSet.noneOf(PointValueEventType.class) : eventTypes;
+    }
+
+    public void setEventTypes(Set<PointValueEventType> eventTypes) {
+        this.eventTypes = eventTypes;
+    }
+
+    /**
+     * @return ms to collect events before sending them, null to keep the current window
+     */
+    public Integer getBatchWindowMs() {
+        return batchWindowMs;
+    }
+
+    public void setBatchWindowMs(Integer batchWindowMs) {
+        this.batchWindowMs = batchWindowMs;
+    }
+}
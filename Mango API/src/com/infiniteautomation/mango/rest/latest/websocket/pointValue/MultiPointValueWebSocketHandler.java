@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.websocket.pointValue;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.infiniteautomation.mango.rest.latest.websocket.MangoWebSocketErrorType;
+import com.infiniteautomation.mango.rest.latest.websocket.MangoWebSocketHandler;
+import com.infiniteautomation.mango.rest.latest.websocket.WebSocketSendException;
+import com.infiniteautomation.mango.rest.latest.websocket.pointValue.PointValueEventPublisher.PointValueEventSubscriber;
+import com.serotonin.m2m2.db.dao.DataPointDao;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.i18n.Translations;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.permission.PermissionHolder;
+
+/**
+ * Point value events for many points of a single web socket session, the events are collected for a window and sent
+ * as one {@link PointValueBatchModel}.  Within a window only the latest UPDATE event of each point is sent.
+ *
+ * The window defaults to web.websocket.pointValues.batchWindowMs (100ms) and can be changed by each registration
+ * up to web.websocket.pointValues.maxBatchWindowMs (1000ms).
+ *
+ * Batches are sent as notifications, a batch that is still waiting to be written to a slow client is replaced by the
+ * next one instead of the session being closed.  Only the reply to a registration is sent as a response.
+ */
+public class MultiPointValueWebSocketHandler extends MangoWebSocketHandler implements PointValueEventSubscriber {
+
+    private static final int MIN_BATCH_WINDOW_MS = 10;
+
+    @Value("${web.websocket.pointValues.batchWindowMs:100}")
+    private int defaultBatchWindowMs;
+
+    @Value("${web.websocket.pointValues.maxBatchWindowMs:1000}")
+    private int maxBatchWindowMs;
+
+    private final DataPointDao dataPointDao;
+    private final PointValueEventPublisher publisher;
+
+    private final Map<Integer, Set<PointValueEventType>> subscriptions = new ConcurrentHashMap<>();
+    private WebSocketSession session;
+    private boolean connectionClosed;
+    private volatile int batchWindowMs = -1;
+
+    //Pending events, UPDATE events are keyed by point so a newer update replaces the pending one
+    private final Map<Object, PointValueBatchEventModel> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> flushTask;
+    //Coalesces the batches of this session in its send queue
+    private final Object batchKey = new Object();
+
+    @Autowired
+    public MultiPointValueWebSocketHandler(DataPointDao dataPointDao, PointValueEventPublisher publisher) {
+        super();
+        this.dataPointDao = dataPointDao;
+        this.publisher = publisher;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        super.afterConnectionEstablished(session);
+        this.session = session;
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        super.afterConnectionClosed(session, status);
+
+        synchronized (subscriptions) {
+            this.connectionClosed = true;
+            for (Integer dataPointId : subscriptions.keySet()) {
+                publisher.unsubscribe(dataPointId, this);
+            }
+            subscriptions.clear();
+        }
+        synchronized (pending) {
+            pending.clear();
+            if (flushTask != null) {
+                flushTask.cancel(false);
+                flushTask = null;
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Websocket connection closed, status code: " + status.getCode() + ", reason: " + status.getReason());
+        }
+    }
+
+    @Override
+    public void handleTextMessage(WebSocketSession session, TextMessage message) {
+        try {
+            PermissionHolder user = getUser(session);
+            MultiPointValueRegistrationModel model = this.jacksonMapper.readValue(message.getPayload(), MultiPointValueRegistrationModel.class);
+            if (model.getBatchWindowMs() != null) {
+                this.batchWindowMs = Math.max(MIN_BATCH_WINDOW_MS, Math.min(maxBatchWindowMs, model.getBatchWindowMs()));
+            }
+
+            Set<PointValueEventType> eventTypes = model.getEventTypes();
+            Translations translations = Translations.getTranslations(user.getLocaleObject());
+            List<PointValueBatchEventModel> registered = new ArrayList<>();
+            Map<String, String> errors = new HashMap<>();
+
+            for (String xid : model.getXids()) {
+                DataPointVO vo = dataPointDao.getByXid(xid);
+                if (vo == null) {
+                    errors.put(xid, new TranslatableMessage("rest.error.pointNotFound", xid).translate(translations));
+                    continue;
+                }
+                if (!permissionService.hasPermission(user, vo.getReadPermission())) {
+                    errors.put(xid, new TranslatableMessage("permission.exception.readDataPoint", user.getPermissionHolderName()).translate(translations));
+                    continue;
+                }
+
+                synchronized (subscriptions) {
+                    if (this.connectionClosed) {
+                        return;
+                    }
+                    if (eventTypes.isEmpty()) {
+                        if (subscriptions.remove(vo.getId()) != null) {
+                            publisher.unsubscribe(vo.getId(), this);
+                        }
+                    } else if (subscriptions.put(vo.getId(), EnumSet.copyOf(eventTypes)) == null) {
+                        //Immediately send the most recent Point Value and the status of the data point
+                        registered.add(publisher.subscribe(vo, this));
+                    }
+                }
+            }
+
+            sendMessage(session, new PointValueBatchModel(registered, errors.isEmpty() ? null : errors));
+        } catch (WebSocketSendException e) {
+            log.warn("Error sending websocket message", e);
+        } catch (Exception e) {
+            try {
+                this.sendErrorMessage(session, MangoWebSocketErrorType.SERVER_ERROR, new TranslatableMessage("rest.error.serverError", e.getMessage()));
+            } catch (Exception e1) {
+                log.error(e);
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug(message.getPayload());
+        }
+    }
+
+    @Override
+    public boolean isSubscribed(int dataPointId, PointValueEventType type) {
+        Set<PointValueEventType> eventTypes = subscriptions.get(dataPointId);
+        return eventTypes != null && eventTypes.contains(type);
+    }
+
+    @Override
+    public void pointValueEvent(PointValueBatchEventModel event) {
+        synchronized (pending) {
+            if (event.getEvent() == PointValueEventType.UPDATE) {
+                //Move the latest update to the end so it stays after any other events of the point
+                pending.remove(event.getXid());
+                pending.put(event.getXid(), event);
+            } else {
+                pending.put(new Object(), event);
+            }
+
+            if (flushTask == null && session != null) {
+                int window = batchWindowMs < 0 ? defaultBatchWindowMs : batchWindowMs;
+                flushTask = scheduledExecutor.schedule(this::flush, window, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void flush() {
+        List<PointValueBatchEventModel> events;
+        synchronized (pending) {
+            flushTask = null;
+            if (pending.isEmpty()) {
+                return;
+            }
+            events = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+
+        try {
+            if (!session.isOpen() || getUser(session) == null) {
+                return;
+            }
+            sendNotification(session, new PointValueBatchModel(events, null), batchKey);
+        } catch (WebSocketSendException e) {
+            log.warn("Error sending websocket message", e);
+        } catch (Exception e) {
+            log.error("Failed to send point value events", e);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.websocket.pointValue;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.handler.PerConnectionWebSocketHandler;
+
+import com.infiniteautomation.mango.rest.latest.websocket.WebSocketMapping;
+
+/**
+ * Point value events of many points per connection, sent in batches
+ */
+@Component
+@WebSocketMapping("/websocket/point-values")
+public class PerConnectionMultiPointValueWebSocketHandler extends PerConnectionWebSocketHandler {
+
+    public PerConnectionMultiPointValueWebSocketHandler() {
+        super(MultiPointValueWebSocketHandler.class);
+    }
+}
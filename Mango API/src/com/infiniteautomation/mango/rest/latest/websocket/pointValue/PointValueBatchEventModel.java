@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.websocket.pointValue;
+
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueTimeModel;
+
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * Point value event sent in a batch, properties that don't apply to the event are omitted
+ */
+@JsonInclude(Include.NON_NULL)
+public class PointValueBatchEventModel {
+
+    private String xid;
+    private PointValueEventType event;
+    private PointValueTimeModel value;
+    private String renderedValue;
+    private Double convertedValue;
+    @ApiModelProperty("Is the point running in the runtime")
+    private Boolean enabled;
+    @ApiModelProperty("The state of the point's enabled property")
+    private Boolean pointEnabled;
+    private Map<String, Object> attributes;
+
+    public PointValueBatchEventModel() {
+    }
+
+    public PointValueBatchEventModel(String xid, PointValueEventType event) {
+        this.xid = xid;
+        this.event = event;
+    }
+
+    public String getXid() {
+        return xid;
+    }
+
+    public void setXid(String xid) {
+        this.xid = xid;
+    }
+
+    public PointValueEventType getEvent() {
+        return event;
+    }
+
+    public void setEvent(PointValueEventType event) {
+        this.event = event;
+    }
+
+    public PointValueTimeModel getValue() {
+        return value;
+    }
+
+    public void setValue(PointValueTimeModel value) {
+        this.value = value;
+    }
+
+    public String getRenderedValue() {
+        return renderedValue;
+    }
+
+    public void setRenderedValue(String renderedValue) {
+        this.renderedValue = renderedValue;
+    }
+
+    public Double getConvertedValue() {
+        return convertedValue;
+    }
+
+    public void setConvertedValue(Double convertedValue) {
+        this.convertedValue = convertedValue;
+    }
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Boolean getPointEnabled() {
+        return pointEnabled;
+    }
+
+    public void setPointEnabled(Boolean pointEnabled) {
+        this.pointEnabled = pointEnabled;
+    }
+
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    public void setAttributes(Map<String, Object> attributes) {
+        this.attributes = attributes;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.websocket.pointValue;
+
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * Events of many points sent in one message
+ */
+@JsonInclude(Include.NON_NULL)
+public class PointValueBatchModel {
+
+    private List<PointValueBatchEventModel> events;
+    private Map<String, String> errors;
+
+    public PointValueBatchModel() {
+    }
+
+    public PointValueBatchModel(List<PointValueBatchEventModel> events, Map<String, String> errors) {
+        this.events = events;
+        this.errors = errors;
+    }
+
+    public List<PointValueBatchEventModel> getEvents() {
+        return events;
+    }
+
+    public void setEvents(List<PointValueBatchEventModel> events) {
+        this.events = events;
+    }
+
+    /**
+     * @return error message by XID for XIDs of a registration that could not be subscribed
+     */
+    public Map<String, String> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(Map<String, String> errors) {
+        this.errors = errors;
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.latest.websocket.pointValue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.infiniteautomation.mango.rest.latest.model.pointValue.PointValueTimeModel;
+import com.infiniteautomation.mango.util.Functions;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.db.dao.DataPointDao;
+import com.serotonin.m2m2.rt.dataImage.DataPointListener;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Registers one data point listener per point for all subscribed websocket sessions, the event model is created once
+ * per event and handed to every subscriber that wants that event type.
+ */
+@Component
+public class PointValueEventPublisher {
+
+    private final Log log = LogFactory.getLog(PointValueEventPublisher.class);
+
+    /**
+     * Receives the events of the subscribed points
+     */
+    public interface PointValueEventSubscriber {
+        boolean isSubscribed(int dataPointId, PointValueEventType type);
+        void pointValueEvent(PointValueBatchEventModel event);
+    }
+
+    private final DataPointDao dataPointDao;
+    private final Map<Integer, SharedListener> listeners = new HashMap<>();
+
+    @Autowired
+    public PointValueEventPublisher(DataPointDao dataPointDao) {
+        this.dataPointDao = dataPointDao;
+    }
+
+    /**
+     * Subscribe to the events of a point
+     * @param vo
+     * @param subscriber
+     * @return the current status of the point as a REGISTERED event
+     */
+    public PointValueBatchEventModel subscribe(DataPointVO vo, PointValueEventSubscriber subscriber) {
+        SharedListener listener;
+        synchronized (listeners) {
+            listener = listeners.get(vo.getId());
+            if (listener == null) {
+                listener = new SharedListener(vo);
+                listeners.put(vo.getId(), listener);
+                listener.subscribers.add(subscriber);
+                Common.runtimeManager.addDataPointListener(vo.getId(), listener);
+            } else {
+                listener.subscribers.add(subscriber);
+            }
+        }
+        return listener.createEvent(PointValueEventType.REGISTERED, null, true);
+    }
+
+    public void unsubscribe(int dataPointId, PointValueEventSubscriber subscriber) {
+        synchronized (listeners) {
+            SharedListener listener = listeners.get(dataPointId);
+            if (listener != null && listener.subscribers.remove(subscriber) && listener.subscribers.isEmpty()) {
+                listeners.remove(dataPointId);
+                Common.runtimeManager.removeDataPointListener(dataPointId, listener);
+            }
+        }
+    }
+
+    private class SharedListener implements DataPointListener {
+
+        private final Set<PointValueEventSubscriber> subscribers = new CopyOnWriteArraySet<>();
+        private final UriComponentsBuilder imageServletBuilder;
+        private volatile DataPointVO vo;
+        private volatile DataPointRT rt;
+
+        SharedListener(DataPointVO vo) {
+            this.vo = vo;
+            this.rt = Common.runtimeManager.getDataPoint(vo.getId());
+            if (vo.getPointLocator().getDataTypeId() == DataTypes.IMAGE) {
+                imageServletBuilder = UriComponentsBuilder.fromPath("/imageValue/{ts}_{id}.jpg");
+            } else {
+                imageServletBuilder = null;
+            }
+        }
+
+        /**
+         * Same content as the notifications of {@link PointValueWebSocketHandler}, except the attributes are only
+         *  sent on registration, initialization and when they change
+         */
+        PointValueBatchEventModel createEvent(PointValueEventType type, PointValueTime pvt, boolean attributes) {
+            DataPointVO vo = this.vo;
+            DataPointRT rt = this.rt;
+            PointValueBatchEventModel event = new PointValueBatchEventModel(vo.getXid(), type);
+            if (rt != null) {
+                event.setEnabled(true);
+                event.setPointEnabled(true);
+                if (pvt == null) {
+                    pvt = rt.getPointValue();
+                }
+                if (attributes) {
+                    event.setAttributes(new HashMap<>(rt.getAttributes()));
+                }
+                event.setRenderedValue(Functions.getRenderedText(vo, pvt));
+                if (vo.getPointLocator().getDataTypeId() == DataTypes.NUMERIC && pvt != null) {
+                    event.setConvertedValue(vo.getUnit().getConverterTo(vo.getRenderedUnit()).convert(pvt.getValue().getDoubleValue()));
+                }
+            } else {
+                event.setEnabled(false);
+                event.setPointEnabled(dataPointDao.isEnabled(vo.getId()));
+            }
+
+            if (pvt != null) {
+                PointValueTimeModel model = new PointValueTimeModel(pvt);
+                if (imageServletBuilder != null) {
+                    model.setValue(imageServletBuilder.buildAndExpand(pvt.getTime(), vo.getId()).toUri().toString());
+                }
+                event.setValue(model);
+            }
+            return event;
+        }
+
+        private void publish(PointValueEventType type, PointValueTime pvt) {
+            PointValueBatchEventModel event = null;
+            for (PointValueEventSubscriber subscriber : subscribers) {
+                try {
+                    if (subscriber.isSubscribed(vo.getId(), type)) {
+                        if (event == null) {
+                            event = createEvent(type, pvt, type == PointValueEventType.INITIALIZE);
+                        }
+                        subscriber.pointValueEvent(event);
+                    }
+                } catch (Exception e) {
+                    log.error("Failed to publish point value event", e);
+                }
+            }
+        }
+
+        @Override
+        public void pointInitialized() {
+            rt = Common.runtimeManager.getDataPoint(vo.getId());
+            if (rt != null) {
+                vo = rt.getVO();
+            }
+            publish(PointValueEventType.INITIALIZE, null);
+        }
+
+        @Override
+        public void pointUpdated(PointValueTime newValue) {
+            publish(PointValueEventType.UPDATE, newValue);
+        }
+
+        @Override
+        public void pointChanged(PointValueTime oldValue, PointValueTime newValue) {
+            publish(PointValueEventType.CHANGE, newValue);
+        }
+
+        @Override
+        public void pointSet(PointValueTime oldValue, PointValueTime newValue) {
+            publish(PointValueEventType.SET, newValue);
+        }
+
+        @Override
+        public void pointBackdated(PointValueTime value) {
+            publish(PointValueEventType.BACKDATE, value);
+        }
+
+        @Override
+        public void pointLogged(PointValueTime value) {
+            publish(PointValueEventType.LOGGED, value);
+        }
+
+        @Override
+        public void attributeChanged(Map<String, Object> attributes) {
+            PointValueBatchEventModel event = new PointValueBatchEventModel(vo.getXid(), PointValueEventType.ATTRIBUTE_CHANGE);
+            event.setEnabled(true);
+            event.setPointEnabled(true);
+            event.setAttributes(attributes);
+            for (PointValueEventSubscriber subscriber : subscribers) {
+                if (subscriber.isSubscribed(vo.getId(), PointValueEventType.ATTRIBUTE_CHANGE)) {
+                    subscriber.pointValueEvent(event);
+                }
+            }
+        }
+
+        @Override
+        public void pointTerminated(DataPointVO dp) {
+            rt = null;
+            PointValueBatchEventModel event = new PointValueBatchEventModel(vo.getXid(), PointValueEventType.TERMINATE);
+            event.setEnabled(false);
+            event.setPointEnabled(dp.isEnabled());
+            for (PointValueEventSubscriber subscriber : subscribers) {
+                if (subscriber.isSubscribed(vo.getId(), PointValueEventType.TERMINATE)) {
+                    subscriber.pointValueEvent(event);
+                }
+            }
+        }
+
+        @Override
+        public String getListenerName() {
+            return "Websocket for DP " + vo.getXid() + "'s point values (" + subscribers.size() + " subscribers).";
+        }
+    }
+}
@@ -146,6 +146,13 @@ public class PointValueWebSocketHandler extends MangoWebSocketHandler {
         super.sendMessage(session, payload);
     }
 
+    /**
+     * Send a notification that may be dropped if the client is too slow
+     */
+    protected void sendMessage(Object payload, Object coalesceKey) throws JsonProcessingException, Exception {
+        super.sendNotification(session, payload, coalesceKey);
+    }
+
     /**
      * @author Terry Packer
      * @author Jared Wiltshire
@@ -195,7 +202,15 @@ public class PointValueWebSocketHandler extends MangoWebSocketHandler {
                     pvtModel.setValue(imageServletBuilder.buildAndExpand(pvt.getTime(), vo.getId()).toUri().toString());
                 }
             }
-            sendMessage(new PointValueEventModel(vo.getXid(), enabled, pointEnabled, attributes, eventType, pvtModel, renderedValue, convertedValue));
+            PointValueEventModel model = new PointValueEventModel(vo.getXid(), enabled, pointEnabled, attributes, eventType, pvtModel, renderedValue, convertedValue);
+            if (eventType == PointValueEventType.REGISTERED) {
+                //Answers the registration request, never dropped
+                sendMessage(model);
+            } else {
+                //Only the latest update of the point is sent if the client is behind
+                Object coalesceKey = eventType == PointValueEventType.UPDATE ? vo.getXid() : null;
+                sendMessage(model, coalesceKey);
+            }
         }
 
         /**
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.mango.rt;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.rt.maint.work.WorkItem;
+import com.serotonin.timer.RejectedTaskReason;
+
+/**
+ * Collects the values a data source reads and hands them to the points off of the reading thread. Values are grouped
+ * per point and each batch is delivered in the order it was flushed, so a point always receives its values in the
+ * order they were read.
+ *
+ * At most maxPending values wait for delivery, a flush that goes over delivers the pending batches on the flushing
+ * thread so a reader can't get ahead of the points.  A flush can be given a callback that runs once its values are
+ * delivered, for example to remember how far the source was read.
+ */
+public class PointValueBatch {
+
+    private static final Log LOG = LogFactory.getLog(PointValueBatch.class);
+
+    /**
+     * Flush after this many values even if the read is not complete
+     */
+    public static final int MAX_BATCH_SIZE = 1000;
+
+    /**
+     * Default number of flushed values that may wait for delivery
+     */
+    public static final int MAX_PENDING = 10 * MAX_BATCH_SIZE;
+
+    private final String description;
+    private final int maxPending;
+    private Map<DataPointRT, List<PointValueTime>> batch = new LinkedHashMap<>();
+    private int batchSize;
+
+    private final Queue<Batch> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingValues = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Object deliveryLock = new Object();
+
+    /**
+     * @param description - for the work item that delivers the values
+     */
+    public PointValueBatch(String description) {
+        this(description, MAX_PENDING);
+    }
+
+    /**
+     * @param description - for the work item that delivers the values
+     * @param maxPending - values that may wait for delivery
+     */
+    public PointValueBatch(String description, int maxPending) {
+        this.description = description;
+        this.maxPending = Math.max(MAX_BATCH_SIZE, maxPending);
+    }
+
+    /**
+     * Add a value to the current batch
+     * @param dp
+     * @param pvt
+     */
+    public synchronized void add(DataPointRT dp, PointValueTime pvt) {
+        batch.computeIfAbsent(dp, k -> new ArrayList<>()).add(pvt);
+        if (++batchSize >= MAX_BATCH_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * Queue the current batch for delivery and start a new one, delivers on the calling thread if too many values
+     * are waiting
+     */
+    public synchronized void flush() {
+        flush(null);
+    }
+
+    /**
+     * Queue the current batch for delivery and start a new one, delivers on the calling thread if too many values
+     * are waiting
+     * @param delivered - run once all values added so far are delivered, may be null
+     */
+    public synchronized void flush(Runnable delivered) {
+        if (batch.isEmpty() && delivered == null) {
+            return;
+        }
+        pending.add(new Batch(batch, delivered));
+        int waiting = pendingValues.addAndGet(batchSize);
+        batch = new LinkedHashMap<>();
+        batchSize = 0;
+        if (waiting > maxPending) {
+            if (LOG.isDebugEnabled())
+                LOG.debug(waiting + " values waiting for delivery, delivering on the reading thread for " + description);
+            deliverPending();
+        } else if (scheduled.compareAndSet(false, true)) {
+            Common.backgroundProcessing.addWorkItem(new DeliveryWorkItem());
+        }
+    }
+
+    /**
+     * Deliver all queued batches on the calling thread
+     */
+    public void deliverPending() {
+        synchronized (deliveryLock) {
+            Batch next;
+            while ((next = pending.poll()) != null) {
+                for (Map.Entry<DataPointRT, List<PointValueTime>> entry : next.values.entrySet()) {
+                    deliver(entry.getKey(), entry.getValue());
+                    pendingValues.addAndGet(-entry.getValue().size());
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Saved " + entry.getValue().size() + " values for " + entry.getKey().getVO().getXid());
+                }
+                if (next.delivered != null) {
+                    next.delivered.run();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of flushed values waiting for delivery
+     */
+    public int getPendingValues() {
+        return pendingValues.get();
+    }
+
+    /**
+     * Hand the values of a batch to a point, in the order they were read
+     * @param dp
+     * @param values
+     */
+    protected void deliver(DataPointRT dp, List<PointValueTime> values) {
+        for (PointValueTime pvt : values) {
+            dp.updatePointValue(pvt);
+        }
+    }
+
+    private static class Batch {
+        final Map<DataPointRT, List<PointValueTime>> values;
+        final Runnable delivered;
+
+        Batch(Map<DataPointRT, List<PointValueTime>> values, Runnable delivered) {
+            this.values = values;
+            this.delivered = delivered;
+        }
+    }
+
+    private class DeliveryWorkItem implements WorkItem {
+
+        @Override
+        public void execute() {
+            //Clear first so a flush while we are delivering schedules another run
+            scheduled.set(false);
+            deliverPending();
+        }
+
+        @Override
+        public int getPriority() {
+            return WorkItem.PRIORITY_MEDIUM;
+        }
+
+        @Override
+        public String getDescription() {
+            return description;
+        }
+
+        @Override
+        public void rejected(RejectedTaskReason reason) {
+            scheduled.set(false);
+            LOG.warn("Point value delivery rejected, delivering on the calling thread");
+            deliverPending();
+        }
+    }
+}
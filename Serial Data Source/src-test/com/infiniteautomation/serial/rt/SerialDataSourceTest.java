@@ -147,6 +147,7 @@ public class SerialDataSourceTest extends MangoTestBase {
         //Create an event to force the Data Source to read the port
         SerialPortProxyEvent evt = new SerialPortProxyEvent(System.currentTimeMillis());
         rt.serialEvent(evt);
+        rt.deliverPointValues();
 
         //test the return value(s), reverse list because Mango stores latest value at [0]
         List<PointValueTime> windSpeedValues = Lists.reverse(windSpeed.getLatestPointValues(1));
@@ -205,6 +206,7 @@ public class SerialDataSourceTest extends MangoTestBase {
             //Fast Forward to fire any events
             time = time + 5;
             timer.fastForwardTo(time);
+            rt.deliverPointValues();
 
             List<PointValueTime> pvts = Lists.reverse(stc.getTargetPoint().getLatestPointValues(stc.getNewValueCount()));
 
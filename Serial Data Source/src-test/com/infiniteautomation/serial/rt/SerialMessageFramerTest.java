@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.serial.rt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class SerialMessageFramerTest {
+
+    @Test
+    public void testTerminatorArrivingInChunks() {
+        SerialRingBuffer buffer = new SerialRingBuffer(64);
+        SerialMessageFramer framer = new SerialMessageFramer.TerminatorFramer("\r\n", false, "\r\n".getBytes(StandardCharsets.UTF_8));
+
+        push(buffer, "01Hello");
+        assertFalse(framer.nextFrame(buffer));
+        push(buffer, "World\r");
+        assertFalse(framer.nextFrame(buffer));
+        push(buffer, "\n02");
+        assertTrue(framer.nextFrame(buffer));
+        assertEquals("01HelloWorld\r\n", buffer.view(framer.getMessageOffset(), framer.getMessageLength()).toString());
+        buffer.pop(framer.getFrameLength());
+        assertFalse(framer.nextFrame(buffer));
+        assertEquals("02", buffer.view(buffer.size()).toString());
+    }
+
+    @Test
+    public void testHexTerminator() throws ConvertHexException {
+        SerialRingBuffer buffer = new SerialRingBuffer(64);
+        SerialMessageFramer framer = new SerialMessageFramer.TerminatorFramer("0D", true, SerialDataSourceRT.convertToHex("0D"));
+        for (byte b : SerialDataSourceRT.convertToHex("01030D0204")) {
+            buffer.push(b);
+        }
+        assertTrue(framer.nextFrame(buffer));
+        assertEquals(3, framer.getFrameLength());
+        buffer.pop(framer.getFrameLength());
+        assertFalse(framer.nextFrame(buffer));
+    }
+
+    @Test
+    public void testLengthPrefix() {
+        SerialRingBuffer buffer = new SerialRingBuffer(64);
+        SerialMessageFramer framer = new SerialMessageFramer.LengthPrefixFramer(2);
+
+        buffer.push((byte)0);
+        assertFalse(framer.nextFrame(buffer));
+        buffer.push((byte)3);
+        push(buffer, "ab");
+        assertFalse(framer.nextFrame(buffer));
+        push(buffer, "c");
+        assertTrue(framer.nextFrame(buffer));
+        assertEquals(2, framer.getMessageOffset());
+        assertEquals("abc", buffer.view(framer.getMessageOffset(), framer.getMessageLength()).toString());
+        assertEquals(5, framer.getFrameLength());
+        buffer.pop(framer.getFrameLength());
+        assertEquals(0, buffer.size());
+        assertFalse(framer.nextFrame(buffer));
+    }
+
+    private void push(SerialRingBuffer buffer, String data) {
+        for (byte b : data.getBytes(StandardCharsets.UTF_8)) {
+            assertTrue(buffer.push(b));
+        }
+    }
+}
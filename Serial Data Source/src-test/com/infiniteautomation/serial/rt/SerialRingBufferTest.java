@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.serial.rt;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class SerialRingBufferTest {
+
+    @Test
+    public void testWrappedMessages() {
+        SerialRingBuffer buffer = new SerialRingBuffer(8);
+        byte[] terminator = ";".getBytes(StandardCharsets.UTF_8);
+
+        push(buffer, "abc;de");
+        int end = buffer.indexOf(terminator, 0);
+        assertEquals(3, end);
+        assertEquals("abc;", buffer.view(end + 1).toString());
+        buffer.pop(end + 1);
+
+        //Wraps around the end of the array
+        push(buffer, "fg;hi");
+        assertEquals(7, buffer.size());
+        end = buffer.indexOf(terminator, 0);
+        assertEquals(4, end);
+        CharSequence message = buffer.view(end + 1);
+        assertEquals('d', message.charAt(0));
+        assertEquals("fg", message.subSequence(2, 4).toString());
+        assertEquals("defg;", message.toString());
+        assertArrayEquals("defg;".getBytes(StandardCharsets.UTF_8), buffer.toByteArray(0, end + 1));
+        buffer.pop(end + 1);
+        assertEquals(-1, buffer.indexOf(terminator, 0));
+        assertEquals("hi", buffer.view(buffer.size()).toString());
+    }
+
+    @Test
+    public void testMultiByteTerminator() {
+        SerialRingBuffer buffer = new SerialRingBuffer(16);
+        byte[] terminator = "\r\n".getBytes(StandardCharsets.UTF_8);
+        push(buffer, "ab\r");
+        assertEquals(-1, buffer.indexOf(terminator, 0));
+        //Resume the scan one byte before where the last scan stopped
+        push(buffer, "\ncd");
+        assertEquals(2, buffer.indexOf(terminator, 3 - terminator.length + 1));
+    }
+
+    @Test
+    public void testMultiByteCharacters() {
+        SerialRingBuffer buffer = new SerialRingBuffer(16);
+        push(buffer, "\u00e9t\u00e9;");
+        assertEquals("\u00e9t\u00e9;", buffer.view(buffer.size()).toString());
+    }
+
+    @Test
+    public void testWrappedHexMessage() {
+        SerialRingBuffer buffer = new SerialRingBuffer(4);
+        buffer.push((byte)0x01);
+        buffer.push((byte)0x02);
+        buffer.pop(2);
+        //Wraps around the end of the array
+        for (byte b : new byte[] {(byte)0xAB, 0x0D, (byte)0xF0, 0x7E}) {
+            assertTrue(buffer.push(b));
+        }
+
+        CharSequence message = buffer.hexView(0, 4);
+        assertEquals(SerialDataSourceRT.convertFromHex(buffer.toByteArray(0, 4)), message.toString());
+        assertEquals("ab0df07e", message.toString());
+        assertEquals('d', message.charAt(3));
+        assertEquals("0df0", message.subSequence(2, 6).toString());
+        //Starting at the second digit of a byte
+        CharSequence odd = message.subSequence(3, 7);
+        assertEquals("df07", odd.toString());
+        assertEquals("f0", odd.subSequence(1, 3).toString());
+        assertEquals("f07e", buffer.hexView(2, 2).toString());
+    }
+
+    @Test
+    public void testFull() {
+        SerialRingBuffer buffer = new SerialRingBuffer(2);
+        assertTrue(buffer.push((byte)1));
+        assertTrue(buffer.push((byte)2));
+        assertTrue(buffer.isFull());
+        assertFalse(buffer.push((byte)3));
+        buffer.clear();
+        assertEquals(0, buffer.size());
+    }
+
+    private void push(SerialRingBuffer buffer, String data) {
+        for (byte b : data.getBytes(StandardCharsets.UTF_8)) {
+            assertTrue(buffer.push(b));
+        }
+    }
+}
@@ -39,6 +39,7 @@ public class SerialDataSourceModel extends AbstractDataSourceModel<SerialDataSou
     private float ioLogFileSizeMBytes;
     private int maxHistoricalIOLogs;
     private int retries;
+    private int lengthPrefixSize;
     
     
     public SerialDataSourceModel() {
@@ -75,6 +76,7 @@ public class SerialDataSourceModel extends AbstractDataSourceModel<SerialDataSou
         vo.setIoLogFileSizeMBytes(ioLogFileSizeMBytes);
         vo.setMaxHistoricalIOLogs(maxHistoricalIOLogs);
         vo.setRetries(retries);
+        vo.setLengthPrefixSize(lengthPrefixSize);
         return vo;
     }
     
@@ -99,6 +101,7 @@ public class SerialDataSourceModel extends AbstractDataSourceModel<SerialDataSou
         this.ioLogFileSizeMBytes = vo.getIoLogFileSizeMBytes();
         this.maxHistoricalIOLogs = vo.getMaxHistoricalIOLogs();
         this.retries = vo.getRetries();
+        this.lengthPrefixSize = vo.getLengthPrefixSize();
     }
 
     /**
@@ -352,6 +355,20 @@ public class SerialDataSourceModel extends AbstractDataSourceModel<SerialDataSou
     public void setRetries(int retries) {
         this.retries = retries;
     }
+
+    /**
+     * @return the lengthPrefixSize
+     */
+    public int getLengthPrefixSize() {
+        return lengthPrefixSize;
+    }
+
+    /**
+     * @param lengthPrefixSize the lengthPrefixSize to set
+     */
+    public void setLengthPrefixSize(int lengthPrefixSize) {
+        this.lengthPrefixSize = lengthPrefixSize;
+    }
     
     
 }
@@ -50,7 +50,14 @@ public class SerialDataSourceDefinition extends DataSourceDefinition<SerialDataS
         if (ds.getParity() == null)
             response.addContextualMessage("parity", "validate.required");
 
-        if(ds.getUseTerminator()) {
+        if(ds.getLengthPrefixSize() != 0) {
+            if(ds.getLengthPrefixSize() != 1 && ds.getLengthPrefixSize() != 2 && ds.getLengthPrefixSize() != 4)
+                response.addContextualMessage("lengthPrefixSize", "validate.invalidValue");
+            if (StringUtils.isBlank(ds.getMessageRegex()))
+                response.addContextualMessage("messageRegex", "validate.required");
+            if(ds.getPointIdentifierIndex() < 0)
+                response.addContextualMessage("pointIdentifierIndex", "validate.invalidValue");
+        }else if(ds.getUseTerminator()) {
             if(ds.getMessageTerminator().length() <= 0)
                 response.addContextualMessage("messageTerminator", "validate.required");
             if (StringUtils.isBlank(ds.getMessageRegex()))
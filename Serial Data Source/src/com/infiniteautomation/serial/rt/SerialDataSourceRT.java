@@ -17,6 +17,7 @@ import com.infiniteautomation.mango.io.serial.SerialPortProxy;
 import com.infiniteautomation.mango.io.serial.SerialPortProxyEvent;
 import com.infiniteautomation.mango.io.serial.SerialPortProxyEventListener;
 import com.infiniteautomation.mango.regex.MatchCallback;
+import com.infiniteautomation.mango.rt.PointValueBatch;
 import com.infiniteautomation.serial.vo.SerialDataSourceVO;
 import com.infiniteautomation.serial.vo.SerialPointLocatorVO;
 import com.serotonin.ShouldNeverHappenException;
@@ -37,7 +38,6 @@ import com.serotonin.m2m2.rt.dataSource.EventDataSource;
 import com.serotonin.m2m2.util.timeout.TimeoutClient;
 import com.serotonin.m2m2.util.timeout.TimeoutTask;
 import com.serotonin.util.ILifecycleState;
-import com.serotonin.util.queue.ByteQueue;
 
 public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> implements SerialPortProxyEventListener{
     private final Log LOG = LogFactory.getLog(SerialDataSourceRT.class);
@@ -49,14 +49,18 @@ public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> impl
     private static final String HEX_REGEX = "^[0-9A-Fa-f]*$";
 
     private SerialPortProxy port; //Serial Communication Port
-    private ByteQueue buffer; //Max size is Max Message Size
+    private final SerialRingBuffer buffer; //Max size is Max Message Size
+    private SerialMessageFramer framer; //Finds complete messages in the buffer
     private TimeoutTask timeoutTask; //Task to retrieve buffer contents after timeout
+    private final PointValueBatch pointValues; //Matched values waiting to be handed to the points
+    private Pattern messagePattern;
 
     private RollingIOLog ioLog;
 
     public SerialDataSourceRT(SerialDataSourceVO vo) {
         super(vo);
-        buffer = new ByteQueue(vo.getMaxMessageSize());
+        buffer = new SerialRingBuffer(vo.getMaxMessageSize());
+        pointValues = new PointValueBatch("Serial data source point updates " + vo.getXid());
     }
 
 
@@ -124,6 +128,9 @@ public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> impl
     }
     @Override
     public void terminateImpl() {
+        //Hand over any values we have already read
+        deliverPointValues();
+
         if(this.port != null)
             try {
                 Common.serialPortManager.close(this.port);
@@ -261,26 +268,25 @@ public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> impl
                 return;
             }
 
-            //String msg = null;
             try{
                 //Read the data in from the port
                 //Don't read during timeout events as there could be no data and this would block till there is
                 if(!(evt instanceof TimeoutSerialEvent)){
                     InputStream in = this.port.getInputStream();
                     int data;
+                    int start = buffer.size();
                     //Read in all the data we can from the InputStream
                     // this may not be the full message, or may read multiple messages
                     while (( data = in.read()) > -1 ){
-                        if(buffer.size() >= this.vo.getMaxMessageSize()){
-                            buffer.popAll();
+                        if(!buffer.push((byte)data)){
+                            clearBuffer();
                             raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true, new TranslatableMessage("event.serial.readFailed", "Max message size reached!"));
                             return; //Give up
                         }
-                        buffer.push(data);
                     }
-                    //Log our buffer contents
-                    byte[] logMsg = buffer.peekAll();
-                    if(this.vo.isLogIO()) {
+                    //Log what we just read
+                    if(this.vo.isLogIO() && buffer.size() > start) {
+                        byte[] logMsg = buffer.toByteArray(start, buffer.size() - start);
                         if(this.vo.isHex())
                             this.ioLog.log(true, logMsg);
                         else
@@ -296,193 +302,150 @@ public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> impl
                     }
                 }
 
-
-                //We either use a terminator and timeout OR just a Timeout
-                if(vo.getUseTerminator()) {
-
-                    //If timeout then process the buffer
-                    //If serial event then read input and process buffer
-
-                    String messageRegex = vo.getMessageRegex(); //"!([A-Z0-9]{3,3})([a-zA-Z])(.*);";
-                    //DS Information
-                    int pointIdentifierIndex = vo.getPointIdentifierIndex();
-
-                    //Create a String so we can use Regex and matching
-                    String msg = null;
-                    if(this.vo.isHex()){
-                        msg = convertFromHex(buffer.peekAll());
-                    }else{
-                        msg = new String(buffer.peekAll(), StandardCharsets.UTF_8);
+                //We either use framed messages and timeout OR just a Timeout
+                SerialMessageFramer framer = getFramer();
+                if(framer != null) {
+                    //The framer only scans the bytes it has not already looked at,
+                    // each complete frame is popped once its message is matched
+                    while(framer.nextFrame(buffer)) {
+                        matchMessage(messageView(framer.getMessageOffset(), framer.getMessageLength()));
+                        buffer.pop(framer.getFrameLength());
                     }
 
-                    //Now we have a string that contains the entire contents of the buffer,
-                    // split on terminator, keep it on the end of the message and process any full messages
-                    // and pop them from the buffer
-                    String[] messages = splitMessages(msg, this.vo.getMessageTerminator());
-                    for(String message : messages) {
-                        //Does our message contain the terminator?
-                        //It should be impossible to have a non-terminated message
-                        // that is before a message with a terminator in the buffer
-                        // so it is assumed here that popping from the buffer will
-                        // not cause any issues. As the only data left in the buffer will
-                        // potentially be one incomplete message.
-                        if(canProcessTerminatedMessage(message, this.vo.getMessageTerminator())){
-                            //Pop off this message
-                            this.buffer.pop(message.length());
-                            if(LOG.isDebugEnabled())
-                                LOG.debug("Matching will use String: " + message);
-                            final AtomicBoolean matcherFailed = new AtomicBoolean(false);
-                            pointListChangeLock.readLock().lock();
-                            try {
-                                for(final DataPointRT dp: this.dataPoints){
-                                    SerialPointLocatorVO plVo = dp.getVO().getPointLocator();
-                                    MatchCallback callback = new MatchCallback(){
-
-                                        @Override
-                                        public void onMatch(String pointIdentifier, PointValueTime value) {
-                                            if(!updatePointValue(value, dp)){
-                                                matcherFailed.set(true);
-                                                raiseEvent(POINT_READ_PATTERN_MISMATCH_EVENT,System.currentTimeMillis(), true, new TranslatableMessage("event.serial.invalidValue", dp.getVO().getXid()));
-                                            }
-                                        }
-
-                                        @Override
-                                        public void pointPatternMismatch(String message, String messageRegex) {
-                                            //Ignore as this just isn't a message we care about
-                                        }
-
-                                        @Override
-                                        public void messagePatternMismatch(String message, String messageRegex) {
-                                            raiseEvent(POINT_READ_PATTERN_MISMATCH_EVENT,System.currentTimeMillis(), true, new TranslatableMessage("event.serial.patternMismatch",messageRegex, message));
-                                            matcherFailed.set(true);
-                                        }
-
-                                        @Override
-                                        public void pointNotIdentified(String message, String messageRegex, int pointIdentifierIndex) {
-                                            //Don't Care
-                                        }
-
-                                        @Override
-                                        public void matchGeneralFailure(Exception e) {
-                                            raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true, new TranslatableMessage("event.serial.readFailed", e.getMessage()));
-                                            matcherFailed.set(true);
-                                        }
-                                    };
-
-                                    try{
-                                        matchPointValue(message, messageRegex, pointIdentifierIndex, plVo, vo.isHex(), LOG, callback);
-                                    }catch(Exception e){
-                                        callback.matchGeneralFailure(e);
-                                    }
-                                }
-                            } finally {
-                                pointListChangeLock.readLock().unlock();
-                            }
-
-                            //Did we have a failure?
-                            //If no failures...
-                            if(!matcherFailed.get())
-                                returnToNormal(POINT_READ_PATTERN_MISMATCH_EVENT, System.currentTimeMillis());
-                            returnToNormal(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis());
-                        }
-
-                        if(evt instanceof TimeoutSerialEvent){
-                            //Clear the buffer
-                            this.buffer.popAll();
-                        }else{
-                            //Check to see if we have remaining data, if not cancel timeout
-                            if(this.buffer.size() == 0)
-                                if(this.timeoutTask != null)
-                                    this.timeoutTask.cancel();
-                        }
-
+                    if(evt instanceof TimeoutSerialEvent){
+                        //Clear the buffer
+                        clearBuffer();
+                    }else{
+                        //Check to see if we have remaining data, if not cancel timeout
+                        if(this.buffer.size() == 0)
+                            if(this.timeoutTask != null)
+                                this.timeoutTask.cancel();
                     }
-                    return;
                 }else{
                     //No Terminator case
                     //Do we have a timeout generated message?
                     if(evt instanceof TimeoutSerialEvent){
-                        String msg = null;
-                        //We are a timeout event so we have a timeout, pop everything into the message and assume its a message
-                        if(this.vo.isHex()){
-                            msg = convertFromHex(buffer.popAll());
-                        }else{
-                            msg = new String(buffer.popAll(), StandardCharsets.UTF_8);
-                        }
-                        //Just do a match on the Entire Message because we are not using Terminator
-                        //String messageRegex = ".*"; //Match everything
-                        //int pointIdentifierIndex = 0; //Whole message
-                        String messageRegex = vo.getMessageRegex(); //"!([A-Z0-9]{3,3})([a-zA-Z])(.*);";
-                        //DS Information
-                        int pointIdentifierIndex = vo.getPointIdentifierIndex();
-
-                        if(LOG.isDebugEnabled())
-                            LOG.debug("Matching will use String: " + msg);
-                        final AtomicBoolean matcherFailed = new AtomicBoolean(false);
-                        pointListChangeLock.readLock().lock();
-                        try {
-                            for(final DataPointRT dp: this.dataPoints){
-                                SerialPointLocatorVO plVo = dp.getVO().getPointLocator();
-                                MatchCallback callback = new MatchCallback(){
-
-                                    @Override
-                                    public void onMatch(String pointIdentifier, PointValueTime pvt) {
-                                        if(!updatePointValue(pvt, dp)){
-                                            matcherFailed.set(true);
-                                            raiseEvent(POINT_READ_PATTERN_MISMATCH_EVENT,System.currentTimeMillis(), true, new TranslatableMessage("event.serial.invalidValue", dp.getVO().getXid()));
-                                        }
-                                        buffer.popAll(); //Ensure we clear out the buffer...
-                                    }
-
-                                    @Override
-                                    public void pointPatternMismatch(String message, String messageRegex) {
-                                        //Ignore as this just isn't a message we care about
-                                    }
-
-                                    @Override
-                                    public void messagePatternMismatch(String message, String messageRegex) {
-                                        raiseEvent(POINT_READ_PATTERN_MISMATCH_EVENT,System.currentTimeMillis(), true, new TranslatableMessage("event.serial.patternMismatch",messageRegex, message));
-                                        matcherFailed.set(true);
-                                    }
-
-                                    @Override
-                                    public void pointNotIdentified(String message, String messageRegex, int pointIdentifierIndex) {
-                                        //Don't Care
-                                    }
-
-                                    @Override
-                                    public void matchGeneralFailure(Exception e) {
-                                        raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true, new TranslatableMessage("event.serial.readFailed", e.getMessage()));
-                                        matcherFailed.set(true);
-                                    }
-
-                                };
-                                try{
-                                    matchPointValue(msg, messageRegex, pointIdentifierIndex, plVo, vo.isHex(), LOG, callback);
-                                }catch(Exception e){
-                                    callback.matchGeneralFailure(e);
-                                }
-                            }
-                        } finally {
-                            pointListChangeLock.readLock().unlock();
-                        }
-
-                        //Did we have a failure?
-                        //If no failures...
-                        if(!matcherFailed.get())
-                            returnToNormal(POINT_READ_PATTERN_MISMATCH_EVENT, System.currentTimeMillis());
-                        returnToNormal(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis());
+                        //We are a timeout event so we have a timeout, use everything as the message
+                        matchMessage(messageView(0, buffer.size()));
+                        clearBuffer();
                     }
                 }
             }catch(Exception e){
                 LOG.error(e.getMessage(),e);
-                this.buffer.popAll(); //Ensure we clear out the buffer...
+                clearBuffer(); //Ensure we clear out the buffer...
                 raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true, new TranslatableMessage("event.serial.readFailed",e.getMessage()));
 
+            }finally {
+                //Hand the values from this read to the points off of the serial thread
+                pointValues.flush();
             }
         }//End synch
     }
 
+    /**
+     * Match a complete message against all points
+     * @param message - only valid until the buffer is modified
+     */
+    private void matchMessage(CharSequence message) {
+        Pattern messagePattern = getMessagePattern();
+        //DS Information
+        int pointIdentifierIndex = vo.getPointIdentifierIndex();
+
+        if(LOG.isDebugEnabled())
+            LOG.debug("Matching will use String: " + message);
+        final AtomicBoolean matcherFailed = new AtomicBoolean(false);
+        pointListChangeLock.readLock().lock();
+        try {
+            for(final DataPointRT dp: this.dataPoints){
+                SerialPointLocatorRT pl = dp.getPointLocator();
+                MatchCallback callback = new MatchCallback(){
+
+                    @Override
+                    public void onMatch(String pointIdentifier, PointValueTime value) {
+                        if(!updatePointValue(value, dp)){
+                            matcherFailed.set(true);
+                            raiseEvent(POINT_READ_PATTERN_MISMATCH_EVENT,System.currentTimeMillis(), true, new TranslatableMessage("event.serial.invalidValue", dp.getVO().getXid()));
+                        }
+                    }
+
+                    @Override
+                    public void pointPatternMismatch(String message, String messageRegex) {
+                        //Ignore as this just isn't a message we care about
+                    }
+
+                    @Override
+                    public void messagePatternMismatch(String message, String messageRegex) {
+                        raiseEvent(POINT_READ_PATTERN_MISMATCH_EVENT,System.currentTimeMillis(), true, new TranslatableMessage("event.serial.patternMismatch",messageRegex, message));
+                        matcherFailed.set(true);
+                    }
+
+                    @Override
+                    public void pointNotIdentified(String message, String messageRegex, int pointIdentifierIndex) {
+                        //Don't Care
+                    }
+
+                    @Override
+                    public void matchGeneralFailure(Exception e) {
+                        raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true, new TranslatableMessage("event.serial.readFailed", e.getMessage()));
+                        matcherFailed.set(true);
+                    }
+                };
+
+                try{
+                    matchPointValue(message, messagePattern, pointIdentifierIndex, pl.getVo(), pl.getPattern(), vo.isHex(), LOG, callback);
+                }catch(Exception e){
+                    callback.matchGeneralFailure(e);
+                }
+            }
+        } finally {
+            pointListChangeLock.readLock().unlock();
+        }
+
+        //Did we have a failure?
+        //If no failures...
+        if(!matcherFailed.get())
+            returnToNormal(POINT_READ_PATTERN_MISMATCH_EVENT, System.currentTimeMillis());
+        returnToNormal(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis());
+    }
+
+    /**
+     * View bytes of the buffer as a message, hex data sources match on the hex string
+     * @param start
+     * @param length
+     * @return
+     */
+    private CharSequence messageView(int start, int length) {
+        if(this.vo.isHex())
+            return buffer.hexView(start, length);
+        else
+            return buffer.view(start, length);
+    }
+
+    private void clearBuffer() {
+        buffer.clear();
+        if(framer != null)
+            framer.reset();
+    }
+
+    /**
+     * Get the framer for the current settings, the settings may change while we are running
+     * @return framer or null if messages are only ended by the read timeout
+     * @throws ConvertHexException
+     */
+    private SerialMessageFramer getFramer() throws ConvertHexException {
+        if(this.framer == null || !this.framer.isConfiguredFor(this.vo)) {
+            this.framer = SerialMessageFramer.create(this.vo);
+        }
+        return this.framer;
+    }
+
+    private Pattern getMessagePattern() {
+        String messageRegex = this.vo.getMessageRegex();
+        if(this.messagePattern == null || !this.messagePattern.pattern().equals(messageRegex))
+            this.messagePattern = Pattern.compile(messageRegex);
+        return this.messagePattern;
+    }
+
     /**
      * Convert to a point value time or NULL if not possible
      * @param value
@@ -533,17 +496,26 @@ public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> impl
     }
 
     /**
-     * Update a value if possible and return if we did
+     * Deliver the values that have been read to the points on the calling thread
+     */
+    void deliverPointValues() {
+        synchronized(this.buffer) {
+            pointValues.flush();
+        }
+        pointValues.deliverPending();
+    }
+
+    /**
+     * Queue a value for the point if possible and return if we did
      * @param pvt
      * @param dp
-     * @param dp
      * @return
      */
     private boolean updatePointValue(PointValueTime pvt, DataPointRT dp){
         if(pvt != null){
-            dp.updatePointValue(pvt);
+            pointValues.add(dp, pvt);
             if(LOG.isDebugEnabled())
-                LOG.debug("Saving value: " + pvt.toString());
+                LOG.debug("Queued value: " + pvt.toString());
             return true;
         }else{
             return false;
@@ -628,7 +600,22 @@ public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> impl
      * @param log
      */
     public static void matchPointValue(String msg, String messageRegex, int pointIdentifierIndex, SerialPointLocatorVO plVo, boolean isHex, Log log, MatchCallback callback) throws Exception{
-        Pattern messagePattern = Pattern.compile(messageRegex);
+        matchPointValue(msg, Pattern.compile(messageRegex), pointIdentifierIndex, plVo, Pattern.compile(plVo.getValueRegex()), isHex, log, callback);
+    }
+
+    /**
+     * Match for 1 point using pre-compiled patterns
+     * @param msg - converted to a String only when passed to the callback
+     * @param messagePattern
+     * @param pointIdentifierIndex
+     * @param plVo
+     * @param pointValuePattern - compiled value regex of the locator
+     * @param isHex
+     * @param log
+     * @param callback
+     */
+    public static void matchPointValue(CharSequence msg, Pattern messagePattern, int pointIdentifierIndex, SerialPointLocatorVO plVo, Pattern pointValuePattern, boolean isHex, Log log, MatchCallback callback) throws Exception{
+        String messageRegex = messagePattern.pattern();
         Matcher messageMatcher = messagePattern.matcher(msg);
         if(messageMatcher.find()){
             if(log.isDebugEnabled())
@@ -639,14 +626,13 @@ public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> impl
             try{
                 pointIdentifier = messageMatcher.group(pointIdentifierIndex);
             }catch(Exception e){
-                callback.pointNotIdentified(msg, messageRegex, pointIdentifierIndex);
+                callback.pointNotIdentified(msg.toString(), messageRegex, pointIdentifierIndex);
                 return;
             }
 
             if(plVo.getPointIdentifier().equals(pointIdentifier)){
                 if(log.isDebugEnabled())
                     log.debug("Point Identified: " + pointIdentifier);
-                Pattern pointValuePattern = Pattern.compile(plVo.getValueRegex());
                 Matcher pointValueMatcher = pointValuePattern.matcher(msg); //Use the index from the above message
                 if(pointValueMatcher.find()){
                     String value = pointValueMatcher.group(plVo.getValueIndex());
@@ -656,13 +642,13 @@ public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> impl
                     PointValueTime pvt = convertToPointValue(value, plVo.getDataTypeId(), isHex);
                     callback.onMatch(pointIdentifier, pvt);
                 } else {
-                    callback.pointPatternMismatch(msg, plVo.getValueRegex());
+                    callback.pointPatternMismatch(msg.toString(), plVo.getValueRegex());
                 }
             }else{
-                callback.pointNotIdentified(msg, messageRegex, pointIdentifierIndex);
+                callback.pointNotIdentified(msg.toString(), messageRegex, pointIdentifierIndex);
             }
         }else {
-            callback.messagePatternMismatch(msg, messageRegex);
+            callback.messagePatternMismatch(msg.toString(), messageRegex);
         }
     }
 
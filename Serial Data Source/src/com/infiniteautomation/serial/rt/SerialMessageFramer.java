@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.serial.rt;
+
+import java.nio.charset.StandardCharsets;
+
+import com.infiniteautomation.serial.vo.SerialDataSourceVO;
+
+/**
+ * Finds complete messages (frames) at the start of a {@link SerialRingBuffer}. Framers keep their scan
+ * state between calls so bytes that have already been examined are not examined again when more
+ * data arrives.
+ *
+ * Usage: while {@link #nextFrame(SerialRingBuffer)} returns true, use the message and then pop
+ * {@link #getFrameLength()} bytes from the buffer.  {@link #reset()} must be called if the buffer is
+ * cleared.
+ *
+ * Not thread safe.
+ */
+public abstract class SerialMessageFramer {
+
+    protected int messageOffset;
+    protected int messageLength;
+    protected int frameLength;
+
+    /**
+     * Create the framer for a data source's settings
+     * @param vo
+     * @return framer or null if messages are not framed (read timeout only)
+     * @throws ConvertHexException if hex terminator is not valid hex
+     */
+    public static SerialMessageFramer create(SerialDataSourceVO vo) throws ConvertHexException {
+        if (vo.getLengthPrefixSize() > 0) {
+            return new LengthPrefixFramer(vo.getLengthPrefixSize());
+        } else if (vo.getUseTerminator()) {
+            String terminator = vo.getMessageTerminator();
+            if (vo.isHex()) {
+                //Terminator is hex, an odd number of digits is padded with a leading 0
+                return new TerminatorFramer(terminator, true, SerialDataSourceRT.convertToHex((terminator.length() & 1) == 1 ? "0" + terminator : terminator));
+            } else {
+                return new TerminatorFramer(terminator, false, terminator.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Scan for a complete frame, resuming from where the last call stopped
+     * @param buffer
+     * @return true if a complete frame is at the start of the buffer
+     */
+    public abstract boolean nextFrame(SerialRingBuffer buffer);
+
+    /**
+     * Forget the scan state, the buffer was cleared
+     */
+    public abstract void reset();
+
+    /**
+     * @param vo
+     * @return true if this framer was created from the same framing settings
+     */
+    public abstract boolean isConfiguredFor(SerialDataSourceVO vo);
+
+    /**
+     * @return offset of the message to match within the frame
+     */
+    public int getMessageOffset() {
+        return messageOffset;
+    }
+
+    /**
+     * @return length of the message to match
+     */
+    public int getMessageLength() {
+        return messageLength;
+    }
+
+    /**
+     * @return number of bytes to pop from the buffer once the message is matched
+     */
+    public int getFrameLength() {
+        return frameLength;
+    }
+
+    /**
+     * Messages end with a literal terminator which is part of the message. In hex mode the terminator
+     * is configured as a hex string and matched as the bytes it represents.
+     */
+    static class TerminatorFramer extends SerialMessageFramer {
+        private final String terminator;
+        private final boolean hex;
+        private final byte[] terminatorBytes;
+        //Bytes already searched for a terminator
+        private int scanPosition;
+
+        TerminatorFramer(String terminator, boolean hex, byte[] terminatorBytes) {
+            this.terminator = terminator;
+            this.hex = hex;
+            this.terminatorBytes = terminatorBytes;
+        }
+
+        @Override
+        public boolean nextFrame(SerialRingBuffer buffer) {
+            //A terminator may have started in the last bytes of the previous scan
+            int end = buffer.indexOf(terminatorBytes, scanPosition - terminatorBytes.length + 1);
+            if (end < 0) {
+                scanPosition = buffer.size();
+                return false;
+            }
+            messageOffset = 0;
+            messageLength = frameLength = end + terminatorBytes.length;
+            scanPosition = 0;
+            return true;
+        }
+
+        @Override
+        public void reset() {
+            scanPosition = 0;
+        }
+
+        @Override
+        public boolean isConfiguredFor(SerialDataSourceVO vo) {
+            return vo.getLengthPrefixSize() == 0 && vo.getUseTerminator() && vo.isHex() == hex
+                    && terminator.equals(vo.getMessageTerminator());
+        }
+    }
+
+    /**
+     * Messages are preceded by an unsigned big endian length of 1, 2 or 4 bytes. The length is the
+     * number of bytes in the message and does not include the prefix, only the message is matched.
+     */
+    static class LengthPrefixFramer extends SerialMessageFramer {
+        private final int prefixSize;
+        //Length of the message being received or -1 if the prefix is not complete
+        private int pending = -1;
+
+        LengthPrefixFramer(int prefixSize) {
+            this.prefixSize = prefixSize;
+        }
+
+        @Override
+        public boolean nextFrame(SerialRingBuffer buffer) {
+            if (pending < 0) {
+                if (buffer.size() < prefixSize) {
+                    return false;
+                }
+                long length = 0;
+                for (int i = 0; i < prefixSize; i++) {
+                    length = (length << 8) | (buffer.get(i) & 0xFF);
+                }
+                pending = (int) Math.min(length, Integer.MAX_VALUE - prefixSize);
+            }
+            if (buffer.size() < prefixSize + pending) {
+                return false;
+            }
+            messageOffset = prefixSize;
+            messageLength = pending;
+            frameLength = prefixSize + pending;
+            pending = -1;
+            return true;
+        }
+
+        @Override
+        public void reset() {
+            pending = -1;
+        }
+
+        @Override
+        public boolean isConfiguredFor(SerialDataSourceVO vo) {
+            return vo.getLengthPrefixSize() == prefixSize;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+package com.infiniteautomation.serial.rt;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Fixed capacity ring buffer of the bytes received from a serial port. Messages are exposed
+ * as CharSequence views onto the buffer so matching a message does not require copying it.
+ *
+ * Not thread safe, access must be synchronized externally.
+ */
+public class SerialRingBuffer {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final byte[] data;
+    private int head;
+    private int size;
+
+    public SerialRingBuffer(int capacity) {
+        this.data = new byte[capacity];
+    }
+
+    public int capacity() {
+        return data.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == data.length;
+    }
+
+    /**
+     * Add a byte to the end of the buffer
+     * @param b
+     * @return false if the buffer is full and the byte was not added
+     */
+    public boolean push(byte b) {
+        if (size == data.length) {
+            return false;
+        }
+        data[(head + size) % data.length] = b;
+        size++;
+        return true;
+    }
+
+    /**
+     * @param index relative to the start of the buffer
+     * @return
+     */
+    public byte get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return data[(head + index) % data.length];
+    }
+
+    /**
+     * Find a sequence of bytes in the buffer
+     * @param pattern
+     * @param fromIndex index to start searching from, bytes before this are not examined
+     * @return index of the first byte of the pattern or -1 if not found
+     */
+    public int indexOf(byte[] pattern, int fromIndex) {
+        if (pattern.length == 0) {
+            return -1;
+        }
+        int last = size - pattern.length;
+        for (int i = Math.max(0, fromIndex); i <= last; i++) {
+            int j = 0;
+            while (j < pattern.length && data[(head + i + j) % data.length] == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Remove bytes from the start of the buffer
+     * @param length
+     */
+    public void pop(int length) {
+        if (length > size) {
+            throw new IndexOutOfBoundsException("Length: " + length + ", Size: " + size);
+        }
+        head = (head + length) % data.length;
+        size -= length;
+        if (size == 0) {
+            head = 0;
+        }
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * Copy bytes out of the buffer
+     * @param start
+     * @param length
+     * @return
+     */
+    public byte[] toByteArray(int start, int length) {
+        if (start < 0 || start + length > size) {
+            throw new IndexOutOfBoundsException("Start: " + start + ", Length: " + length + ", Size: " + size);
+        }
+        byte[] result = new byte[length];
+        int from = (head + start) % data.length;
+        int first = Math.min(length, data.length - from);
+        System.arraycopy(data, from, result, 0, first);
+        System.arraycopy(data, 0, result, first, length - first);
+        return result;
+    }
+
+    /**
+     * View the first bytes of the buffer as UTF-8 characters. The view is only valid until the
+     * buffer is next modified, call toString() to keep the message.
+     *
+     * @param length number of bytes
+     * @return
+     */
+    public CharSequence view(int length) {
+        return view(0, length);
+    }
+
+    /**
+     * View bytes of the buffer as UTF-8 characters. The view is only valid until the
+     * buffer is next modified, call toString() to keep the message.
+     *
+     * @param start index of the first byte
+     * @param length number of bytes
+     * @return
+     */
+    public CharSequence view(int start, int length) {
+        if (start < 0 || start + length > size) {
+            throw new IndexOutOfBoundsException("Start: " + start + ", Length: " + length + ", Size: " + size);
+        }
+        int offset = (head + start) % data.length;
+        for (int i = 0; i < length; i++) {
+            if (data[(offset + i) % data.length] < 0) {
+                //Multi-byte characters, must decode
+                return new String(toByteArray(start, length), StandardCharsets.UTF_8);
+            }
+        }
+        return new AsciiView(offset, length);
+    }
+
+    /**
+     * View bytes of the buffer as a hex string, two lower case digits per byte as written by
+     * StreamUtils.dumpHex. The view is only valid until the buffer is next modified, call toString()
+     * to keep the message.
+     *
+     * @param start index of the first byte
+     * @param length number of bytes
+     * @return
+     */
+    public CharSequence hexView(int start, int length) {
+        if (start < 0 || start + length > size) {
+            throw new IndexOutOfBoundsException("Start: " + start + ", Length: " + length + ", Size: " + size);
+        }
+        return new HexView((head + start) % data.length, 2 * length);
+    }
+
+    /**
+     * View of ASCII bytes where each byte is one character
+     */
+    private class AsciiView implements CharSequence {
+        private final int offset;
+        private final int length;
+        private String string;
+
+        AsciiView(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + length);
+            }
+            return (char) data[(offset + index) % data.length];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException("Start: " + start + ", End: " + end + ", Length: " + length);
+            }
+            return new AsciiView((offset + start) % data.length, end - start);
+        }
+
+        @Override
+        public String toString() {
+            if (string == null) {
+                char[] chars = new char[length];
+                for (int i = 0; i < length; i++) {
+                    chars[i] = (char) data[(offset + i) % data.length];
+                }
+                string = new String(chars);
+            }
+            return string;
+        }
+    }
+
+    /**
+     * View of bytes where each byte is two hex digits
+     */
+    private class HexView implements CharSequence {
+        //Index of the byte of the first digit
+        private final int offset;
+        //True if the view starts with the second digit of its first byte
+        private final boolean low;
+        private final int length;
+        private String string;
+
+        HexView(int offset, int length) {
+            this(offset, false, length);
+        }
+
+        HexView(int offset, boolean low, int length) {
+            this.offset = offset;
+            this.low = low;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + length);
+            }
+            int digit = low ? index + 1 : index;
+            byte b = data[(offset + digit / 2) % data.length];
+            return HEX_DIGITS[(digit & 1) == 0 ? (b >> 4) & 0x0F : b & 0x0F];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException("Start: " + start + ", End: " + end + ", Length: " + length);
+            }
+            int digit = low ? start + 1 : start;
+            return new HexView((offset + digit / 2) % data.length, (digit & 1) == 1, end - start);
+        }
+
+        @Override
+        public String toString() {
+            if (string == null) {
+                char[] chars = new char[length];
+                for (int i = 0; i < length; i++) {
+                    chars[i] = charAt(i);
+                }
+                string = new String(chars);
+            }
+            return string;
+        }
+    }
+}
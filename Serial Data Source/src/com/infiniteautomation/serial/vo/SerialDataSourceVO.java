@@ -72,6 +72,8 @@ public class SerialDataSourceVO extends DataSourceVO {
     private int maxHistoricalIOLogs = 1;
     @JsonProperty
     private int retries = 1;
+    @JsonProperty
+    private int lengthPrefixSize = 0; //Bytes in the length prefix of each message, 0 for none
 
     @Override
     public TranslatableMessage getConnectionDescription() {
@@ -279,6 +281,17 @@ public class SerialDataSourceVO extends DataSourceVO {
         this.retries = retries;
     }
 
+    /**
+     * @return number of bytes (1, 2 or 4) in the big endian length that precedes each message, 0 if messages are not length prefixed
+     */
+    public int getLengthPrefixSize() {
+        return lengthPrefixSize;
+    }
+
+    public void setLengthPrefixSize(int lengthPrefixSize) {
+        this.lengthPrefixSize = lengthPrefixSize;
+    }
+
 
     public String getIoLogPath() {
         return new File(Common.getLogsDir(), SerialDataSourceRT.getIOLogFileName(getId())).getPath();
@@ -290,7 +303,7 @@ public class SerialDataSourceVO extends DataSourceVO {
     // /
     //
     private static final long serialVersionUID = -1;
-    private static final int version = 6;
+    private static final int version = 7;
     //Track previous data types for field serialization
     private static final ObjectStreamField[] serialPersistentFields
     = {
@@ -320,6 +333,7 @@ public class SerialDataSourceVO extends DataSourceVO {
         out.writeFloat(ioLogFileSizeMBytes);
         out.writeInt(maxHistoricalIOLogs);
         out.writeInt(retries);
+        out.writeInt(lengthPrefixSize);
     }
 
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
@@ -544,6 +558,27 @@ public class SerialDataSourceVO extends DataSourceVO {
             ioLogFileSizeMBytes = in.readFloat();
             maxHistoricalIOLogs = in.readInt();
             retries = in.readInt();
+            lengthPrefixSize = 0;
+        }else if(ver == 7){
+            commPortId = SerializationHelper.readSafeUTF(in);
+            baudRate = in.readInt();
+            flowControlIn = FlowControl.fromValue(in.readInt());
+            flowControlOut = FlowControl.fromValue(in.readInt());
+            dataBits = DataBits.fromValue(in.readInt());
+            stopBits = StopBits.fromValue(in.readInt());
+            parity = Parity.fromValue(in.readInt());
+            messageTerminator = SerializationHelper.readSafeUTF(in);
+            readTimeout = in.readInt();
+            messageRegex = SerializationHelper.readSafeUTF(in);
+            pointIdentifierIndex = in.readInt();
+            useTerminator = in.readBoolean();
+            hex = in.readBoolean();
+            logIO = in.readBoolean();
+            maxMessageSize = in.readInt();
+            ioLogFileSizeMBytes = in.readFloat();
+            maxHistoricalIOLogs = in.readInt();
+            retries = in.readInt();
+            lengthPrefixSize = in.readInt();
         }
     }
 
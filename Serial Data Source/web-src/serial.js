@@ -58,6 +58,7 @@ const serialSourceModule = angular.module('maSerialDataSource', ['maUiApp'])
             flowControlOut: 'NONE',
             hex: false,
             ioLogFileSizeMBytes: 1,
+            lengthPrefixSize: 0,
             logIO: false,
             maxHistoricalIOLogs: 1,
             maxMessageSize: 1024,